@@ -0,0 +1,31 @@
+package com.jcwhatever.nucleus.localizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end key file generation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GeneratorBenchmark {
+
+    @Benchmark
+    public GeneratorReport generate(SyntheticJar jar) throws IOException {
+
+        LanguageGenerator generator = new LanguageGenerator(jar.jarFile, jar.outputFile, "1.0");
+
+        return generator.generate();
+    }
+}
@@ -0,0 +1,208 @@
+package com.jcwhatever.nucleus.localizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each phase of key file generation on its own, single threaded.
+ *
+ * <p>The input of each phase is prepared from the output of the phases
+ * before it during setup.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PhaseBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Phases {
+
+        SyntheticJar jar;
+        List<SourceEntry> entries;
+        byte[][] classBytes;
+        List<ClassRecord> records;
+        List<LiteralInfo> literals;
+        List<LiteralInfo> unique;
+        int[] keys;
+
+        @Setup
+        public void setup(SyntheticJar jar) throws IOException {
+
+            this.jar = jar;
+
+            // read
+            try (ClassSource source = ClassSource.open(jar.jarFile)) {
+
+                ReadBuffer buffer = new ReadBuffer();
+
+                entries = source.getEntries();
+                classBytes = new byte[entries.size()][];
+
+                for (int i=0; i < entries.size(); i++) {
+                    ByteBuffer bytes = source.read(entries.get(i), buffer);
+                    classBytes[i] = new byte[bytes.remaining()];
+                    bytes.get(classBytes[i]);
+                }
+
+                buffer.close();
+            }
+
+            // parse
+            records = new ArrayList<>(entries.size());
+            for (int i=0; i < entries.size(); i++) {
+                records.add(LanguageGenerator.scanClass(entries.get(i), ByteBuffer.wrap(classBytes[i])));
+            }
+
+            // resolve
+            literals = resolveLiterals(this);
+
+            // dedup
+            unique = dedupLiterals(literals, Long.MAX_VALUE);
+
+            keys = new int[unique.size()];
+            for (int i=0; i < keys.length; i++) {
+                keys[i] = i;
+            }
+        }
+    }
+
+    /**
+     * Memory budget of the dedup phase. 0 does not limit the table, as the
+     * generator does, the smaller budget makes the table spill to run files.
+     */
+    @State(Scope.Benchmark)
+    public static class DedupBudget {
+
+        @Param({ "0", "65536" })
+        public long memoryBudget;
+    }
+
+    @Benchmark
+    public void read(Phases phases, Blackhole blackhole) throws IOException {
+
+        try (ClassSource source = ClassSource.open(phases.jar.jarFile)) {
+
+            ReadBuffer buffer = new ReadBuffer();
+
+            for (SourceEntry entry : source.getEntries()) {
+                blackhole.consume(source.read(entry, buffer).remaining());
+            }
+
+            buffer.close();
+        }
+    }
+
+    @Benchmark
+    public void parse(Phases phases, Blackhole blackhole) {
+
+        for (int i=0; i < phases.classBytes.length; i++) {
+            blackhole.consume(LanguageGenerator.scanClass(
+                    phases.entries.get(i), ByteBuffer.wrap(phases.classBytes[i])));
+        }
+    }
+
+    @Benchmark
+    public List<LiteralInfo> resolve(Phases phases) {
+        return resolveLiterals(phases);
+    }
+
+    @Benchmark
+    public void dedup(Phases phases, DedupBudget budget, final Blackhole blackhole) throws IOException {
+
+        try (ExternalLiteralTable table = new ExternalLiteralTable(
+                budget.memoryBudget > 0 ? budget.memoryBudget : Long.MAX_VALUE)) {
+
+            for (LiteralInfo literal : phases.literals) {
+                table.add(literal);
+            }
+
+            table.finish();
+            table.readLiterals(new LiteralSink() {
+                @Override
+                public boolean accept(LiteralInfo literal) {
+                    blackhole.consume(literal);
+                    return true;
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void write(Phases phases) throws IOException {
+        LanguageGenerator.writeKeyFile(
+                LanguageGenerator.openWriters(phases.jar.outputFile, TextKeyFileWriter.DEFAULT_CHARSET, false),
+                "1.0", phases.unique, phases.keys);
+    }
+
+    // de-duplicate literals through the table used by the generator
+    static List<LiteralInfo> dedupLiterals(List<LiteralInfo> literals, long memoryBudget) throws IOException {
+
+        try (ExternalLiteralTable table = new ExternalLiteralTable(memoryBudget)) {
+
+            for (LiteralInfo literal : literals) {
+                table.add(literal);
+            }
+
+            table.finish();
+            return table.getLiterals();
+        }
+    }
+
+    // parse deferred classes and resolve annotation usages, as the generator does
+    static List<LiteralInfo> resolveLiterals(Phases phases) {
+
+        Map<String, AnnotationInfo> annotations = new HashMap<>(10);
+        Set<Integer> annotationHashes = new HashSet<>(10);
+
+        for (ClassRecord record : phases.records) {
+            if (record.annotation != null) {
+                annotations.put(record.annotation.className, record.annotation);
+                annotationHashes.add(ConstantPoolFilter.hash('L' + record.annotation.className + ';'));
+            }
+        }
+
+        List<LiteralInfo> result = new ArrayList<>(phases.records.size());
+
+        for (int i=0; i < phases.records.size(); i++) {
+
+            ClassRecord record = phases.records.get(i);
+
+            if (record == ClassRecord.SKIPPED || record.annotation != null)
+                continue;
+
+            if (record.isDeferred()) {
+
+                if (!record.mayUse(annotationHashes))
+                    continue;
+
+                record = LiteralExtractor.extract(record.entryName, phases.classBytes[i]);
+            }
+
+            result.addAll(LanguageGenerator.parseClass(record, annotations));
+        }
+
+        return result;
+    }
+}
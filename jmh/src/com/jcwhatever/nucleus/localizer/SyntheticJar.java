@@ -0,0 +1,76 @@
+package com.jcwhatever.nucleus.localizer;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+/**
+ * Synthetic jar file shared by the benchmarks of a trial.
+ */
+@State(Scope.Benchmark)
+public class SyntheticJar {
+
+    @Param({ "100", "1000", "10000", "100000" })
+    public int classCount;
+
+    @Param({ "0.2" })
+    public double localizableClassRatio;
+
+    @Param({ "0.1" })
+    public double duplicateRate;
+
+    File dir;
+    File jarFile;
+    File outputFile;
+
+    private PrintStream _out;
+
+    @Setup
+    public void setup() throws IOException {
+
+        dir = Files.createTempDirectory("localizer-bench").toFile();
+        jarFile = new File(dir, "synthetic-" + classCount + ".jar");
+        outputFile = new File(dir, "lang.keys.txt");
+
+        new SyntheticJarBuilder()
+                .setClassCount(classCount)
+                .setLocalizableClassRatio(localizableClassRatio)
+                .setDuplicateRate(duplicateRate)
+                .build(jarFile);
+
+        // console output of the generator is not part of the measurement
+        _out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        System.setOut(_out);
+
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        dir.delete();
+    }
+}
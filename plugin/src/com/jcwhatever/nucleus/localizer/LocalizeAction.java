@@ -0,0 +1,101 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * Worker action that runs a {@link LanguageGenerator} for a {@link LocalizeTask}.
+ */
+public abstract class LocalizeAction implements WorkAction<LocalizeAction.Parameters> {
+
+    @Override
+    public void execute() {
+
+        Parameters parameters = getParameters();
+
+        File keyFile = parameters.getKeyFile().get().getAsFile();
+
+        LanguageGenerator generator = new LanguageGenerator(
+                parameters.getInput().get().getAsFile(), keyFile, parameters.getVersion().get());
+
+        generator.setIncremental(true);
+        generator.setIndexFile(parameters.getIndexFile().get().getAsFile());
+        generator.setClasspath(new ArrayList<>(parameters.getClasspath().getFiles()));
+        generator.setClasspathCacheFile(parameters.getClasspathCacheFile().get().getAsFile());
+        generator.setCharset(Charset.forName(parameters.getEncoding().get()));
+        generator.setBinary(parameters.getBinary().get());
+        generator.setNestedDepth(parameters.getNestedDepth().get());
+        generator.setThreadCount(parameters.getThreadCount().get());
+
+        // remove a binary key file left from a previous configuration
+        File binaryFile = generator.getBinaryFile();
+        if (!generator.isBinary() && binaryFile.exists() && !binaryFile.delete())
+            throw new GradleException("Failed to delete binary key file: " + binaryFile);
+
+        try {
+            generator.generate();
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to generate language key file: " + keyFile, e);
+        }
+    }
+
+    /**
+     * Parameters of the worker action.
+     */
+    public interface Parameters extends WorkParameters {
+
+        RegularFileProperty getInput();
+
+        RegularFileProperty getKeyFile();
+
+        RegularFileProperty getIndexFile();
+
+        ConfigurableFileCollection getClasspath();
+
+        RegularFileProperty getClasspathCacheFile();
+
+        Property<String> getVersion();
+
+        Property<String> getEncoding();
+
+        Property<Boolean> getBinary();
+
+        Property<Integer> getNestedDepth();
+
+        Property<Integer> getThreadCount();
+    }
+}
@@ -0,0 +1,167 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkerExecutor;
+
+import java.io.File;
+import javax.inject.Inject;
+
+/**
+ * Gradle task that generates the language key file of a jar file or compiled
+ * classes directory.
+ *
+ * <p>The key file is a cacheable output so the task is skipped when the classes
+ * have not changed. The scan runs in a worker so the key files of many projects
+ * are generated at the same time.</p>
+ *
+ * <p>The results of each class are kept in an index file in the temporary directory
+ * of the task. When only some classes changed, the other classes are not read again.
+ * Each class in the index is checked against the CRC and size of its entry, so the
+ * task does not need the input changes reported by Gradle.</p>
+ */
+@CacheableTask
+public abstract class LocalizeTask extends DefaultTask {
+
+    /**
+     * The name of the key file written to the output directory.
+     */
+    public static final String KEY_FILE_NAME = "lang.keys.txt";
+
+    /**
+     * Constructor.
+     */
+    public LocalizeTask() {
+        getEncoding().convention("UTF-16");
+        getBinary().convention(false);
+        getNestedDepth().convention(3);
+        getThreadCount().convention(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Get the jar file or compiled classes directory to scan. Must contain a
+     * single file or directory.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getInput();
+
+    /**
+     * Get the dependency jar files and classes directories searched for
+     * localizable annotations that are not in the input.
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    /**
+     * Get the key file version.
+     */
+    @Input
+    public abstract Property<String> getVersion();
+
+    /**
+     * Get the name of the key file charset. Defaults to UTF-16.
+     */
+    @Input
+    public abstract Property<String> getEncoding();
+
+    /**
+     * Determine if a binary key file is also written. Defaults to false.
+     */
+    @Input
+    public abstract Property<Boolean> getBinary();
+
+    /**
+     * Get the maximum depth of nested jar files that are scanned. Defaults to 3.
+     */
+    @Input
+    public abstract Property<Integer> getNestedDepth();
+
+    /**
+     * Get the number of threads used to scan class files. Defaults to the
+     * number of available processors.
+     */
+    @Internal
+    public abstract Property<Integer> getThreadCount();
+
+    /**
+     * Get the directory the key file is written to.
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDir();
+
+    /**
+     * Get the key file.
+     */
+    @Internal
+    public Provider<RegularFile> getKeyFile() {
+        return getOutputDir().file(KEY_FILE_NAME);
+    }
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    @TaskAction
+    public void localize() {
+
+        final File input = getInput().getSingleFile();
+        final File indexFile = new File(getTemporaryDir(), "scan.index");
+        final File classpathCacheFile = new File(getTemporaryDir(), "classpath.cache");
+
+        getWorkerExecutor().noIsolation().submit(LocalizeAction.class,
+                new Action<LocalizeAction.Parameters>() {
+
+            @Override
+            public void execute(LocalizeAction.Parameters parameters) {
+                parameters.getInput().set(input);
+                parameters.getKeyFile().set(getKeyFile());
+                parameters.getIndexFile().set(indexFile);
+                parameters.getClasspath().from(getClasspath());
+                parameters.getClasspathCacheFile().set(classpathCacheFile);
+                parameters.getVersion().set(getVersion());
+                parameters.getEncoding().set(getEncoding());
+                parameters.getBinary().set(getBinary());
+                parameters.getNestedDepth().set(getNestedDepth());
+                parameters.getThreadCount().set(getThreadCount());
+            }
+        });
+    }
+}
@@ -0,0 +1,92 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import org.gradle.api.Action;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.jvm.tasks.Jar;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Gradle plugin that adds a "localize" task of type {@link LocalizeTask} to
+ * java projects.
+ *
+ * <p>The task scans the output of the "jar" task and writes the key file to
+ * "build/localizer". The key file version defaults to the project version.</p>
+ */
+public class LocalizerPlugin implements Plugin<Project> {
+
+    /**
+     * The name of the task added to java projects.
+     */
+    public static final String TASK_NAME = "localize";
+
+    @Override
+    public void apply(final Project project) {
+
+        project.getPlugins().withType(JavaPlugin.class, new Action<JavaPlugin>() {
+            @Override
+            public void execute(JavaPlugin plugin) {
+                addTask(project);
+            }
+        });
+    }
+
+    // add the localize task for the jar of a java project
+    private static void addTask(final Project project) {
+
+        final TaskProvider<Jar> jar = project.getTasks().named(JavaPlugin.JAR_TASK_NAME, Jar.class);
+
+        project.getTasks().register(TASK_NAME, LocalizeTask.class, new Action<LocalizeTask>() {
+            @Override
+            public void execute(LocalizeTask task) {
+
+                task.setGroup("build");
+                task.setDescription("Generates the language key file of the project jar.");
+
+                // the outputs of the jar task, which is the jar file
+                task.getInput().from(jar);
+
+                // localizable annotations can be declared in dependencies
+                task.getClasspath().from(project.getConfigurations().named(
+                        JavaPlugin.COMPILE_CLASSPATH_CONFIGURATION_NAME));
+
+                task.getVersion().convention(project.provider(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return String.valueOf(project.getVersion());
+                    }
+                }));
+
+                task.getOutputDir().convention(
+                        project.getLayout().getBuildDirectory().dir("localizer"));
+            }
+        });
+    }
+}
@@ -0,0 +1,98 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replaces a file atomically using a temporary file in the same directory.
+ */
+class AtomicFile {
+
+    private final File _file;
+    private final Path _temp;
+    private boolean _isCommitted;
+
+    /**
+     * Constructor.
+     *
+     * @param file  The file to replace.
+     */
+    AtomicFile(File file) throws IOException {
+
+        File dir = file.getAbsoluteFile().getParentFile();
+
+        _file = file;
+        // java.io temp files use the default permissions, unlike Files.createTempFile
+        _temp = File.createTempFile(file.getName(), ".tmp", dir).toPath();
+    }
+
+    /**
+     * Open an output stream to the temporary file.
+     */
+    OutputStream openStream() throws IOException {
+        return Files.newOutputStream(_temp);
+    }
+
+    /**
+     * Open a file channel to write the temporary file.
+     */
+    FileChannel openChannel() throws IOException {
+        return FileChannel.open(_temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Replace the file with the temporary file. The output stream or channel
+     * must be closed first.
+     */
+    void commit() throws IOException {
+
+        try {
+            Files.move(_temp, _file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(_temp, _file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        _isCommitted = true;
+    }
+
+    /**
+     * Delete the temporary file if it was not committed.
+     */
+    void discard() throws IOException {
+        if (!_isCommitted)
+            Files.deleteIfExists(_temp);
+    }
+}
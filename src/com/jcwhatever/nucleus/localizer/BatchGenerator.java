@@ -0,0 +1,411 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates key files for many jar files in a single process.
+ *
+ * <p>Jar files are scanned in parallel on a work-stealing pool. Each jar file gets
+ * its own key file in a sub directory of the output directory named after the jar
+ * file, i.e. {@code <outputDir>/MyPlugin/lang.keys.txt} for {@code MyPlugin.jar}.</p>
+ */
+public class BatchGenerator {
+
+    private final List<File> _jarFiles;
+    private final File _outputDir;
+    private final String _version;
+
+    private int _parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean _isIncremental;
+    private Charset _charset = TextKeyFileWriter.DEFAULT_CHARSET;
+    private boolean _isBinary;
+    private int _nestedDepth = -1;
+    private List<File> _classpath = Collections.emptyList();
+    private long _memoryBudget;
+    private boolean _isSharedPool;
+
+    /**
+     * Constructor.
+     *
+     * @param inputs     The jar files to scan. Directories are searched for jar files.
+     * @param outputDir  The directory to write key files into.
+     * @param version    The output file version.
+     */
+    public BatchGenerator(List<File> inputs, File outputDir, String version) {
+
+        _jarFiles = findJarFiles(inputs);
+        _outputDir = outputDir;
+        _version = version;
+
+        // key files are placed by jar name so names must be unique
+        Set<String> names = new HashSet<>(_jarFiles.size());
+        for (File jarFile : _jarFiles) {
+            if (!names.add(getBaseName(jarFile)))
+                throw new IllegalArgumentException("Jar file names must be unique: " + jarFile.getName());
+        }
+    }
+
+    /**
+     * Get the jar files that will be scanned.
+     */
+    public List<File> getJarFiles() {
+        return Collections.unmodifiableList(_jarFiles);
+    }
+
+    /**
+     * Get the number of jar files scanned at the same time.
+     */
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    /**
+     * Set the number of jar files scanned at the same time.
+     *
+     * <p>Defaults to the number of available processors.</p>
+     *
+     * @param parallelism  The number of jar files. Must be at least 1.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1.");
+
+        _parallelism = parallelism;
+    }
+
+    /**
+     * Set incremental scanning for each jar file.
+     *
+     * @param isIncremental  True to enable.
+     *
+     * @see LanguageGenerator#setIncremental
+     */
+    public void setIncremental(boolean isIncremental) {
+        _isIncremental = isIncremental;
+    }
+
+    /**
+     * Set the charset used to write each key file.
+     *
+     * @param charset  The charset.
+     *
+     * @see LanguageGenerator#setCharset
+     */
+    public void setCharset(Charset charset) {
+        if (charset == null)
+            throw new IllegalArgumentException("charset cannot be null.");
+
+        _charset = charset;
+    }
+
+    /**
+     * Set writing a binary key file with each text key file.
+     *
+     * @param isBinary  True to enable.
+     *
+     * @see LanguageGenerator#setBinary
+     */
+    public void setBinary(boolean isBinary) {
+        _isBinary = isBinary;
+    }
+
+    /**
+     * Set the maximum depth of nested jar files scanned in each jar file.
+     *
+     * @param nestedDepth  The depth. 0 disables scanning nested jar files.
+     *
+     * @see LanguageGenerator#setNestedDepth
+     */
+    public void setNestedDepth(int nestedDepth) {
+        if (nestedDepth < 0)
+            throw new IllegalArgumentException("nestedDepth cannot be negative.");
+
+        _nestedDepth = nestedDepth;
+    }
+
+    /**
+     * Set the estimated maximum number of bytes used by literals held in memory
+     * across all jar files scanned at the same time.
+     *
+     * <p>Each jar file scanned at the same time gets an equal share of the budget.</p>
+     *
+     * @param memoryBudget  The number of bytes or 0 to not limit.
+     *
+     * @see LanguageGenerator#setMemoryBudget
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0)
+            throw new IllegalArgumentException("memoryBudget cannot be negative.");
+
+        _memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Determine if a shared string pool is written for the key files.
+     */
+    public boolean isSharedPool() {
+        return _isSharedPool;
+    }
+
+    /**
+     * Set writing a string pool shared by the key files of every jar file.
+     *
+     * <p>When enabled, the text of every key file is written once to the pool file,
+     * along with an index file for each jar file that maps its keys into the pool.
+     * Plugins that load their keys with {@link PooledKeyFile} share a single copy of
+     * each string. See {@link #getPoolFile} and {@link #getIndexFile}.</p>
+     *
+     * <p>The text key files are written either way.</p>
+     *
+     * @param isSharedPool  True to enable.
+     */
+    public void setSharedPool(boolean isSharedPool) {
+        _isSharedPool = isSharedPool;
+    }
+
+    /**
+     * Get the shared string pool file, i.e. {@code <outputDir>/lang.pool.bin}.
+     */
+    public File getPoolFile() {
+        return new File(_outputDir, "lang.pool.bin");
+    }
+
+    /**
+     * Get the index file of a jar file that maps its keys into the shared string pool,
+     * i.e. {@code <outputDir>/MyPlugin/lang.keys.idx} for {@code MyPlugin.jar}.
+     *
+     * @param jarFile  The jar file.
+     */
+    public File getIndexFile(File jarFile) {
+        return new File(new File(_outputDir, getBaseName(jarFile)), "lang.keys.idx");
+    }
+
+    /**
+     * Set the jar files and classes directories searched for localizable
+     * annotations that are not in the scanned jar files.
+     *
+     * @param classpath  The jar files and directories in lookup order.
+     *
+     * @see LanguageGenerator#setClasspath
+     */
+    public void setClasspath(List<File> classpath) {
+        if (classpath == null)
+            throw new IllegalArgumentException("classpath cannot be null.");
+
+        _classpath = new ArrayList<>(classpath);
+    }
+
+    /**
+     * Get the key file a jar file is written to.
+     *
+     * @param jarFile  The jar file.
+     */
+    public File getOutputFile(File jarFile) {
+        return new File(new File(_outputDir, getBaseName(jarFile)), "lang.keys.txt");
+    }
+
+    /**
+     * Generate the key files.
+     *
+     * <p>A failure to generate one key file does not stop the others. Errors are
+     * available from the returned reports.</p>
+     *
+     * @return  A report for each jar file in the same order as {@link #getJarFiles}.
+     */
+    @SuppressWarnings("serial") // fork join tasks are never serialized
+    public List<GeneratorReport> generate() {
+
+        GeneratorReport[] reports = new GeneratorReport[_jarFiles.size()];
+        final List<JarTask> tasks = new ArrayList<>(_jarFiles.size());
+
+        for (int i=0; i < _jarFiles.size(); i++) {
+            tasks.add(new JarTask(_jarFiles.get(i), reports, i));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        if (_isSharedPool)
+            writePool(reports);
+
+        return Arrays.asList(reports);
+    }
+
+    // write the shared string pool and the index file of each written key file
+    private void writePool(GeneratorReport[] reports) {
+
+        SharedPoolWriter writer = new SharedPoolWriter(getPoolFile(), _version);
+        LanguageLoader loader = new LanguageLoader(_charset);
+
+        try {
+            int count = 0;
+
+            for (int i=0; i < reports.length; i++) {
+
+                GeneratorReport report = reports[i];
+                if (report.error != null || !report.isWritten)
+                    continue;
+
+                writer.add(getIndexFile(_jarFiles.get(i)), loader.load(report.getOutputFile()));
+                count++;
+            }
+
+            if (count == 0)
+                return;
+
+            writer.write();
+
+            System.out.println("Shared pool: " + writer.getPoolSize() + " strings for "
+                    + writer.getKeyCount() + " keys in " + count + " key files.");
+        }
+        catch (IOException | RuntimeException e) {
+
+            // the index files depend on the pool, so each key file is affected
+            for (GeneratorReport report : reports) {
+                if (report.error == null && report.isWritten)
+                    report.error = e;
+            }
+        }
+    }
+
+    // find jar files in inputs
+    private static List<File> findJarFiles(List<File> inputs) {
+
+        List<File> result = new ArrayList<>(inputs.size());
+
+        for (File input : inputs) {
+
+            if (!input.isDirectory()) {
+                result.add(input);
+                continue;
+            }
+
+            File[] files = input.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return file.isFile() && file.getName().endsWith(".jar");
+                }
+            });
+
+            if (files == null)
+                continue;
+
+            Arrays.sort(files);
+            result.addAll(Arrays.asList(files));
+        }
+
+        return result;
+    }
+
+    private static String getBaseName(File jarFile) {
+        String name = jarFile.getName();
+        return name.endsWith(".jar")
+                ? name.substring(0, name.length() - 4)
+                : name;
+    }
+
+    // generates the key file of a single jar. never serialized.
+    @SuppressWarnings("serial")
+    private class JarTask extends RecursiveAction {
+
+        final File jarFile;
+        final GeneratorReport[] reports;
+        final int index;
+
+        JarTask(File jarFile, GeneratorReport[] reports, int index) {
+            this.jarFile = jarFile;
+            this.reports = reports;
+            this.index = index;
+        }
+
+        @Override
+        protected void compute() {
+
+            File outputFile = getOutputFile(jarFile);
+            File dir = outputFile.getParentFile();
+
+            if (!dir.exists() && !dir.mkdirs()) {
+                reports[index] = failed(outputFile, new IOException("Failed to create directory: " + dir));
+                return;
+            }
+
+            LanguageGenerator generator = new LanguageGenerator(jarFile, outputFile, _version);
+
+            // parallelism comes from scanning many jars at once
+            generator.setThreadCount(1);
+
+            // progress of jars scanned at once would interleave, only the summary is printed
+            generator.setQuiet(true);
+            generator.setIncremental(_isIncremental);
+            generator.setCharset(_charset);
+            generator.setBinary(_isBinary);
+
+            if (_nestedDepth != -1)
+                generator.setNestedDepth(_nestedDepth);
+
+            generator.setClasspath(_classpath);
+
+            if (_memoryBudget > 0)
+                generator.setMemoryBudget(Math.max(1, _memoryBudget / _parallelism));
+
+            try {
+                reports[index] = generator.generate();
+            }
+            catch (IOException | RuntimeException e) {
+                reports[index] = failed(outputFile, e);
+            }
+        }
+
+        private GeneratorReport failed(File outputFile, Exception error) {
+            GeneratorReport report = new GeneratorReport(jarFile, outputFile);
+            report.error = error;
+            return report;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Writes the binary key file format read by {@link MappedKeyFile}.
+ *
+ * <pre>
+ * int     magic
+ * int     format version
+ * int     version length, followed by the version in UTF-8
+ * int     slot count, the highest key + 1
+ * int[2]  offset and length of each key in the text blob. The length
+ *         of keys with no text is -1.
+ * byte[]  UTF-8 text blob
+ * </pre>
+ *
+ * <p>The file only contains the key text. Comments are not written.</p>
+ */
+class BinaryKeyFileWriter implements KeyFileWriter {
+
+    static final int MAGIC = 0x4E4C4B46;
+    static final int FORMAT_VERSION = 1;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final AtomicFile _file;
+
+    private String _version = "";
+    private int[] _offsets = new int[64];
+    private int[] _lengths = new int[64];
+    private int _slotCount;
+    private byte[] _blob = new byte[4096];
+    private int _blobSize;
+    private boolean _isCommitted;
+
+    /**
+     * Constructor.
+     *
+     * @param outputFile  The binary key file.
+     */
+    BinaryKeyFileWriter(File outputFile) throws IOException {
+        _file = new AtomicFile(outputFile);
+        Arrays.fill(_lengths, -1);
+    }
+
+    /**
+     * Get the binary key file that accompanies a text key file.
+     *
+     * <p>The ".txt" extension is replaced with ".bin", i.e. lang.keys.bin</p>
+     *
+     * @param textFile  The text key file.
+     */
+    static File getBinaryFile(File textFile) {
+
+        String name = textFile.getName();
+        if (name.endsWith(".txt"))
+            name = name.substring(0, name.length() - 4);
+
+        return new File(textFile.getAbsoluteFile().getParentFile(), name + ".bin");
+    }
+
+    @Override
+    public void begin(String version) throws IOException {
+        _version = version;
+    }
+
+    @Override
+    public void write(int key, LiteralInfo literal) throws IOException {
+
+        if (key < 0)
+            throw new IllegalArgumentException("key cannot be negative.");
+
+        byte[] bytes = literal.getLiteral().getBytes(UTF_8);
+
+        ensureSlots(key + 1);
+        ensureBlob(_blobSize + bytes.length);
+
+        System.arraycopy(bytes, 0, _blob, _blobSize, bytes.length);
+
+        _offsets[key] = _blobSize;
+        _lengths[key] = bytes.length;
+        _blobSize += bytes.length;
+        _slotCount = Math.max(_slotCount, key + 1);
+    }
+
+    @Override
+    public void commit() throws IOException {
+
+        byte[] version = _version.getBytes(UTF_8);
+
+        try (DataOutputStream stream = new DataOutputStream(
+                new BufferedOutputStream(_file.openStream(), 64 * 1024))) {
+
+            stream.writeInt(MAGIC);
+            stream.writeInt(FORMAT_VERSION);
+            stream.writeInt(version.length);
+            stream.write(version);
+            stream.writeInt(_slotCount);
+
+            for (int i=0; i < _slotCount; i++) {
+                stream.writeInt(_offsets[i]);
+                stream.writeInt(_lengths[i]);
+            }
+
+            stream.write(_blob, 0, _blobSize);
+        }
+
+        _file.commit();
+        _isCommitted = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!_isCommitted)
+            _file.discard();
+    }
+
+    // grow the slot arrays to hold the specified number of keys
+    private void ensureSlots(int size) {
+
+        if (size <= _offsets.length)
+            return;
+
+        int capacity = Math.max(size, _offsets.length * 2);
+        int current = _lengths.length;
+
+        _offsets = Arrays.copyOf(_offsets, capacity);
+        _lengths = Arrays.copyOf(_lengths, capacity);
+        Arrays.fill(_lengths, current, capacity, -1);
+    }
+
+    // grow the blob to hold the specified number of bytes
+    private void ensureBlob(int size) {
+
+        if (size <= _blob.length)
+            return;
+
+        _blob = Arrays.copyOf(_blob, Math.max(size, _blob.length * 2));
+    }
+}
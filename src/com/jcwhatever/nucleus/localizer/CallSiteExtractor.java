@@ -0,0 +1,680 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds String constants that are passed directly to the localizable parameters
+ * of a method.
+ *
+ * <p>Only methods that contain an instruction calling one of the localizable
+ * methods are analyzed. The operand stack is simulated from the start of the method
+ * keeping track of which stack slots hold a String loaded by an LDC instruction.
+ * Where jumps meet, a slot keeps its constant only if every jump brings the same
+ * constant so only constants that are certain to be passed to the parameter are
+ * found. The stack at the target of a backward jump is treated as unknown.</p>
+ */
+class CallSiteExtractor {
+
+    private static final Logger LOGGER = Logger.getLogger(CallSiteExtractor.class.getName());
+
+    static final int PARSE_FLAGS = ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+    // value of a stack slot that is not a String constant
+    private static final Object UNKNOWN = new Object();
+
+    private final String _entryName;
+    private final Map<String, LocalizableMethod> _methods;
+    private ClassRecord _record;
+
+    /**
+     * Extract the literals passed to localizable parameters from a class file.
+     *
+     * @param entryName  The name of the entry the class is read from.
+     * @param bytes      The buffer containing the class file from its position to its limit.
+     * @param methods    The localizable methods keyed by {@link LocalizableMethod#getKey}.
+     *
+     * @return  A record containing the call literals or {@link ClassRecord#SKIPPED}
+     * if none were found.
+     */
+    static ClassRecord extract(String entryName, ByteBuffer bytes,
+                               Map<String, LocalizableMethod> methods) {
+
+        ClassReader reader;
+
+        if (bytes.hasArray()) {
+            reader = new ClassReader(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        }
+        else {
+            byte[] copy = new byte[bytes.remaining()];
+            bytes.duplicate().get(copy);
+            reader = new ClassReader(copy);
+        }
+
+        ClassNode node = new ClassNode();
+        reader.accept(node, PARSE_FLAGS);
+
+        CallSiteExtractor extractor = new CallSiteExtractor(entryName, methods);
+        extractor.extract(node);
+
+        ClassRecord record = extractor._record;
+        return record != null ? record : ClassRecord.SKIPPED;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param entryName  The name of the entry the class is read from.
+     * @param methods    The localizable methods keyed by {@link LocalizableMethod#getKey}.
+     */
+    CallSiteExtractor(String entryName, Map<String, LocalizableMethod> methods) {
+        _entryName = entryName;
+        _methods = methods;
+    }
+
+    /**
+     * Get the record of the extracted call literals.
+     *
+     * @return  The record or null if no literals were found.
+     */
+    ClassRecord getRecord() {
+        return _record;
+    }
+
+    /**
+     * Extract the call literals of a class.
+     *
+     * @param node  The class node, including method code.
+     */
+    void extract(ClassNode node) {
+
+        @SuppressWarnings("unchecked")
+        List<MethodNode> methods = node.methods;
+
+        for (MethodNode method : methods) {
+            if (hasCallSite(method))
+                analyze(node.name, method);
+        }
+    }
+
+    // determine if a method calls a localizable method
+    private boolean hasCallSite(MethodNode method) {
+
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+
+            if (insn.getType() == AbstractInsnNode.METHOD_INSN && getLocalizableMethod(insn) != null)
+                return true;
+        }
+        return false;
+    }
+
+    private LocalizableMethod getLocalizableMethod(AbstractInsnNode insn) {
+        MethodInsnNode methodInsn = (MethodInsnNode) insn;
+        return _methods.get(LocalizableMethod.getKey(methodInsn.owner, methodInsn.name, methodInsn.desc));
+    }
+
+    // simulate the operand stack of a method and record the constants
+    // at localizable parameters
+    private void analyze(String className, MethodNode method) {
+
+        Set<LabelNode> backwardTargets = new HashSet<>(5);
+
+        // merged stack at the jump targets seen so far
+        Map<LabelNode, List<Object>> frames = new HashMap<>(10);
+
+        @SuppressWarnings("unchecked")
+        List<TryCatchBlockNode> handlers = method.tryCatchBlocks;
+
+        for (TryCatchBlockNode handler : handlers) {
+            frames.put(handler.handler, new ArrayList<>(Collections.singletonList(UNKNOWN)));
+        }
+
+        // find labels that are jumped to from a later instruction
+        Set<LabelNode> labels = new HashSet<>(10);
+
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+
+            if (insn.getType() == AbstractInsnNode.LABEL) {
+                labels.add((LabelNode) insn);
+                continue;
+            }
+
+            for (LabelNode label : getJumpLabels(insn)) {
+                if (labels.contains(label))
+                    backwardTargets.add(label);
+            }
+        }
+
+        List<Object> stack = new ArrayList<>(method.maxStack);
+        boolean isReachable = true;
+
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+
+            int type = insn.getType();
+
+            if (type == AbstractInsnNode.LABEL) {
+
+                List<Object> frame = frames.remove(insn);
+
+                if (frame == null && !backwardTargets.contains(insn))
+                    continue;
+
+                if (isReachable)
+                    frame = merge(frame, stack);
+
+                if (frame == null) {
+                    // only reached by a backward jump, the stack is not known
+                    isReachable = false;
+                    continue;
+                }
+
+                stack = frame;
+                isReachable = true;
+
+                // values arriving from a later instruction are not known yet
+                if (backwardTargets.contains(insn))
+                    Collections.fill(stack, UNKNOWN);
+
+                continue;
+            }
+
+            if (!isReachable || insn.getOpcode() == -1)
+                continue;
+
+            if (type == AbstractInsnNode.METHOD_INSN) {
+                LocalizableMethod target = getLocalizableMethod(insn);
+                if (target != null)
+                    addCallLiterals(className, method, target, stack);
+            }
+
+            if (!execute(insn, stack)) {
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.fine("Unable to analyze method: " + method.name + ' ' + className);
+                return;
+            }
+
+            // merge the stack into the forward jump targets
+            for (LabelNode label : getJumpLabels(insn)) {
+                if (!backwardTargets.contains(label))
+                    frames.put(label, merge(frames.get(label), stack));
+            }
+
+            isReachable = !isUnconditional(insn.getOpcode());
+        }
+    }
+
+    // merge a stack into the stack at a jump target. Slots that hold
+    // different values become unknown.
+    private static List<Object> merge(List<Object> frame, List<Object> stack) {
+
+        if (frame == null)
+            return new ArrayList<>(stack);
+
+        if (frame.size() != stack.size()) {
+            // malformed code, keep the depth of the first stack
+            Collections.fill(frame, UNKNOWN);
+            return frame;
+        }
+
+        for (int i=0; i < frame.size(); i++) {
+            if (!frame.get(i).equals(stack.get(i)))
+                frame.set(i, UNKNOWN);
+        }
+
+        return frame;
+    }
+
+    // add the String constants at the localizable parameters of a method call
+    private void addCallLiterals(String className, MethodNode caller,
+                                 LocalizableMethod target, List<Object> stack) {
+
+        Type[] arguments = Type.getArgumentTypes(target.desc);
+
+        // stack index of the first argument
+        int index = stack.size();
+        for (Type argument : arguments) {
+            index -= argument.getSize();
+        }
+
+        if (index < 0)
+            return;
+
+        for (int i=0, slot = index; i < arguments.length; slot += arguments[i].getSize(), i++) {
+
+            if (!contains(target.parameters, i))
+                continue;
+
+            Object value = stack.get(slot);
+            if (!(value instanceof String))
+                continue;
+
+            String desc = "METHOD ARGUMENT: " + caller.name + "() " + className.replace('/', '.') + ' ' +
+                    target.owner.replace('/', '.') + '.' + target.name + '[' + (i + 1) + ']';
+
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.fine("Localizable method argument found: " + desc);
+
+            if (_record == null)
+                _record = new ClassRecord(_entryName, className);
+
+            _record.addCallLiteral(new LiteralInfo((String) value, desc,
+                    ClassSource.getArchivePath(_entryName), className));
+        }
+    }
+
+    // update the stack for an instruction. Returns false if the stack underflows.
+    private static boolean execute(AbstractInsnNode insn, List<Object> stack) {
+
+        int opcode = insn.getOpcode();
+        int pop;
+        int push;
+
+        switch (opcode) {
+            case Opcodes.NOP:
+            case Opcodes.IINC:
+            case Opcodes.GOTO:
+            case Opcodes.RET:
+            case Opcodes.RETURN:
+                return true;
+
+            case Opcodes.LDC:
+                Object cst = ((LdcInsnNode) insn).cst;
+                if (cst instanceof Long || cst instanceof Double) {
+                    fill(stack, stack.size() + 2);
+                }
+                else {
+                    stack.add(cst instanceof String ? cst : UNKNOWN);
+                }
+                return true;
+
+            case Opcodes.ACONST_NULL:
+            case Opcodes.ICONST_M1:
+            case Opcodes.ICONST_0:
+            case Opcodes.ICONST_1:
+            case Opcodes.ICONST_2:
+            case Opcodes.ICONST_3:
+            case Opcodes.ICONST_4:
+            case Opcodes.ICONST_5:
+            case Opcodes.FCONST_0:
+            case Opcodes.FCONST_1:
+            case Opcodes.FCONST_2:
+            case Opcodes.BIPUSH:
+            case Opcodes.SIPUSH:
+            case Opcodes.ILOAD:
+            case Opcodes.FLOAD:
+            case Opcodes.ALOAD:
+            case Opcodes.NEW:
+            case Opcodes.JSR:
+                pop = 0;
+                push = 1;
+                break;
+
+            case Opcodes.LCONST_0:
+            case Opcodes.LCONST_1:
+            case Opcodes.DCONST_0:
+            case Opcodes.DCONST_1:
+            case Opcodes.LLOAD:
+            case Opcodes.DLOAD:
+                pop = 0;
+                push = 2;
+                break;
+
+            case Opcodes.ISTORE:
+            case Opcodes.FSTORE:
+            case Opcodes.ASTORE:
+            case Opcodes.POP:
+            case Opcodes.IFEQ:
+            case Opcodes.IFNE:
+            case Opcodes.IFLT:
+            case Opcodes.IFGE:
+            case Opcodes.IFGT:
+            case Opcodes.IFLE:
+            case Opcodes.IFNULL:
+            case Opcodes.IFNONNULL:
+            case Opcodes.TABLESWITCH:
+            case Opcodes.LOOKUPSWITCH:
+            case Opcodes.IRETURN:
+            case Opcodes.FRETURN:
+            case Opcodes.ARETURN:
+            case Opcodes.ATHROW:
+            case Opcodes.MONITORENTER:
+            case Opcodes.MONITOREXIT:
+                pop = 1;
+                push = 0;
+                break;
+
+            case Opcodes.LSTORE:
+            case Opcodes.DSTORE:
+            case Opcodes.POP2:
+            case Opcodes.IF_ICMPEQ:
+            case Opcodes.IF_ICMPNE:
+            case Opcodes.IF_ICMPLT:
+            case Opcodes.IF_ICMPGE:
+            case Opcodes.IF_ICMPGT:
+            case Opcodes.IF_ICMPLE:
+            case Opcodes.IF_ACMPEQ:
+            case Opcodes.IF_ACMPNE:
+            case Opcodes.LRETURN:
+            case Opcodes.DRETURN:
+                pop = 2;
+                push = 0;
+                break;
+
+            case Opcodes.IASTORE:
+            case Opcodes.FASTORE:
+            case Opcodes.AASTORE:
+            case Opcodes.BASTORE:
+            case Opcodes.CASTORE:
+            case Opcodes.SASTORE:
+                pop = 3;
+                push = 0;
+                break;
+
+            case Opcodes.LASTORE:
+            case Opcodes.DASTORE:
+                pop = 4;
+                push = 0;
+                break;
+
+            case Opcodes.INEG:
+            case Opcodes.FNEG:
+            case Opcodes.I2F:
+            case Opcodes.F2I:
+            case Opcodes.I2B:
+            case Opcodes.I2C:
+            case Opcodes.I2S:
+            case Opcodes.NEWARRAY:
+            case Opcodes.ANEWARRAY:
+            case Opcodes.ARRAYLENGTH:
+            case Opcodes.CHECKCAST:
+            case Opcodes.INSTANCEOF:
+                pop = 1;
+                push = 1;
+                break;
+
+            case Opcodes.I2L:
+            case Opcodes.I2D:
+            case Opcodes.F2L:
+            case Opcodes.F2D:
+                pop = 1;
+                push = 2;
+                break;
+
+            case Opcodes.IALOAD:
+            case Opcodes.FALOAD:
+            case Opcodes.AALOAD:
+            case Opcodes.BALOAD:
+            case Opcodes.CALOAD:
+            case Opcodes.SALOAD:
+            case Opcodes.IADD:
+            case Opcodes.FADD:
+            case Opcodes.ISUB:
+            case Opcodes.FSUB:
+            case Opcodes.IMUL:
+            case Opcodes.FMUL:
+            case Opcodes.IDIV:
+            case Opcodes.FDIV:
+            case Opcodes.IREM:
+            case Opcodes.FREM:
+            case Opcodes.ISHL:
+            case Opcodes.ISHR:
+            case Opcodes.IUSHR:
+            case Opcodes.IAND:
+            case Opcodes.IOR:
+            case Opcodes.IXOR:
+            case Opcodes.L2I:
+            case Opcodes.L2F:
+            case Opcodes.D2I:
+            case Opcodes.D2F:
+            case Opcodes.FCMPL:
+            case Opcodes.FCMPG:
+                pop = 2;
+                push = 1;
+                break;
+
+            case Opcodes.LALOAD:
+            case Opcodes.DALOAD:
+            case Opcodes.LNEG:
+            case Opcodes.DNEG:
+            case Opcodes.L2D:
+            case Opcodes.D2L:
+                pop = 2;
+                push = 2;
+                break;
+
+            case Opcodes.LSHL:
+            case Opcodes.LSHR:
+            case Opcodes.LUSHR:
+                pop = 3;
+                push = 2;
+                break;
+
+            case Opcodes.LCMP:
+            case Opcodes.DCMPL:
+            case Opcodes.DCMPG:
+                pop = 4;
+                push = 1;
+                break;
+
+            case Opcodes.LADD:
+            case Opcodes.DADD:
+            case Opcodes.LSUB:
+            case Opcodes.DSUB:
+            case Opcodes.LMUL:
+            case Opcodes.DMUL:
+            case Opcodes.LDIV:
+            case Opcodes.DDIV:
+            case Opcodes.LREM:
+            case Opcodes.DREM:
+            case Opcodes.LAND:
+            case Opcodes.LOR:
+            case Opcodes.LXOR:
+                pop = 4;
+                push = 2;
+                break;
+
+            case Opcodes.GETSTATIC:
+                pop = 0;
+                push = Type.getType(((FieldInsnNode) insn).desc).getSize();
+                break;
+
+            case Opcodes.PUTSTATIC:
+                pop = Type.getType(((FieldInsnNode) insn).desc).getSize();
+                push = 0;
+                break;
+
+            case Opcodes.GETFIELD:
+                pop = 1;
+                push = Type.getType(((FieldInsnNode) insn).desc).getSize();
+                break;
+
+            case Opcodes.PUTFIELD:
+                pop = 1 + Type.getType(((FieldInsnNode) insn).desc).getSize();
+                push = 0;
+                break;
+
+            case Opcodes.INVOKEVIRTUAL:
+            case Opcodes.INVOKESPECIAL:
+            case Opcodes.INVOKESTATIC:
+            case Opcodes.INVOKEINTERFACE:
+                String desc = ((MethodInsnNode) insn).desc;
+                pop = opcode == Opcodes.INVOKESTATIC ? 0 : 1;
+                for (Type argument : Type.getArgumentTypes(desc)) {
+                    pop += argument.getSize();
+                }
+                push = Type.getReturnType(desc).getSize();
+                break;
+
+            case Opcodes.MULTIANEWARRAY:
+                pop = ((MultiANewArrayInsnNode) insn).dims;
+                push = 1;
+                break;
+
+            case Opcodes.DUP:
+                return dup(stack, 1, 0);
+
+            case Opcodes.DUP_X1:
+                return dup(stack, 1, 1);
+
+            case Opcodes.DUP_X2:
+                return dup(stack, 1, 2);
+
+            case Opcodes.DUP2:
+                return dup(stack, 2, 0);
+
+            case Opcodes.DUP2_X1:
+                return dup(stack, 2, 1);
+
+            case Opcodes.DUP2_X2:
+                return dup(stack, 2, 2);
+
+            case Opcodes.SWAP:
+                if (stack.size() < 2)
+                    return false;
+
+                stack.add(stack.size() - 2, stack.remove(stack.size() - 1));
+                return true;
+
+            default:
+                return false;
+        }
+
+        if (stack.size() < pop)
+            return false;
+
+        for (int i=0; i < pop; i++) {
+            stack.remove(stack.size() - 1);
+        }
+
+        fill(stack, stack.size() + push);
+        return true;
+    }
+
+    // duplicate the top slots of the stack and insert them below the slots under them
+    private static boolean dup(List<Object> stack, int count, int under) {
+
+        int size = stack.size();
+        if (size < count + under)
+            return false;
+
+        List<Object> top = new ArrayList<>(stack.subList(size - count, size));
+        stack.addAll(size - count - under, top);
+        return true;
+    }
+
+    // add unknown values until the stack has the specified depth
+    private static void fill(List<Object> stack, int depth) {
+        while (stack.size() < depth) {
+            stack.add(UNKNOWN);
+        }
+    }
+
+    // get the labels an instruction can jump to
+    private static List<LabelNode> getJumpLabels(AbstractInsnNode insn) {
+
+        List<LabelNode> labels;
+
+        switch (insn.getType()) {
+            case AbstractInsnNode.JUMP_INSN:
+                return Collections.singletonList(((JumpInsnNode) insn).label);
+
+            case AbstractInsnNode.TABLESWITCH_INSN:
+                TableSwitchInsnNode table = (TableSwitchInsnNode) insn;
+
+                @SuppressWarnings("unchecked")
+                List<LabelNode> tableLabels = table.labels;
+
+                labels = new ArrayList<>(tableLabels);
+                labels.add(table.dflt);
+                return labels;
+
+            case AbstractInsnNode.LOOKUPSWITCH_INSN:
+                LookupSwitchInsnNode lookup = (LookupSwitchInsnNode) insn;
+
+                @SuppressWarnings("unchecked")
+                List<LabelNode> lookupLabels = lookup.labels;
+
+                labels = new ArrayList<>(lookupLabels);
+                labels.add(lookup.dflt);
+                return labels;
+
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    private static boolean isUnconditional(int opcode) {
+        switch (opcode) {
+            case Opcodes.GOTO:
+            case Opcodes.RET:
+            case Opcodes.TABLESWITCH:
+            case Opcodes.LOOKUPSWITCH:
+            case Opcodes.IRETURN:
+            case Opcodes.LRETURN:
+            case Opcodes.FRETURN:
+            case Opcodes.DRETURN:
+            case Opcodes.ARETURN:
+            case Opcodes.RETURN:
+            case Opcodes.ATHROW:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int element : values) {
+            if (element == value)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,333 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import com.jcwhatever.nucleus.localizer.ClassRecord.AnnotationUsage;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory cache of the records extracted from the class entries of any number
+ * of jar files or classes directories.
+ *
+ * <p>Records are keyed to the input path and entry name and are only reused if the
+ * CRC and size of the entry have not changed. Call literals are kept with the record
+ * of their entry and are only reused for the same localizable methods. The least
+ * recently used records are removed when the estimated size of the cached records
+ * exceeds the memory bound.</p>
+ *
+ * <p>Thread safe. Used by {@link LocalizerDaemon} to keep results between requests.</p>
+ */
+class ClassCache {
+
+    // estimated object overhead of a cache entry and its map node
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int OBJECT_OVERHEAD = 48;
+
+    private final long _maxBytes;
+    private final Map<String, Entry> _entries = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private long _bytes;
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes  The estimated maximum number of bytes used by cached records.
+     */
+    ClassCache(long maxBytes) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("maxBytes cannot be negative.");
+
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the number of cached records.
+     */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Get the estimated number of bytes used by cached records.
+     */
+    synchronized long getBytes() {
+        return _bytes;
+    }
+
+    /**
+     * Remove all records.
+     */
+    synchronized void clear() {
+        _entries.clear();
+        _bytes = 0;
+    }
+
+    /**
+     * Get a view of the cache for the class entries of an input.
+     *
+     * @param input  The jar file or classes directory.
+     */
+    RecordCache forInput(File input) {
+        return new InputView(input.getAbsolutePath() + '|');
+    }
+
+    // get a record if it is cached and the entry has not changed
+    private synchronized ClassRecord get(String key, SourceEntry sourceEntry) {
+
+        Entry entry = _entries.get(key);
+        if (entry == null)
+            return null;
+
+        if (entry.crc != sourceEntry.crc || entry.size != sourceEntry.size) {
+            _entries.remove(key);
+            _bytes -= entry.bytes;
+            return null;
+        }
+
+        return entry.record;
+    }
+
+    // add a record and remove the least recently used records if over the bound
+    private synchronized void put(String key, SourceEntry sourceEntry, ClassRecord record) {
+
+        // reused records are added back after the scan, no need to estimate again
+        Entry current = _entries.get(key);
+        if (current != null && current.record == record)
+            return;
+
+        Entry entry = new Entry(sourceEntry.crc, sourceEntry.size, record,
+                ENTRY_OVERHEAD + size(key) + estimateSize(record));
+
+        Entry previous = _entries.put(key, entry);
+        if (previous != null) {
+            _bytes -= previous.bytes;
+
+            // deferred records are added again once parsed, keep their call literals
+            if (previous.crc == entry.crc && previous.size == entry.size && previous.calls != null) {
+                entry.callKey = previous.callKey;
+                entry.calls = previous.calls;
+                entry.bytes += previous.bytes - previous.recordBytes;
+            }
+        }
+
+        _bytes += entry.bytes;
+        trim();
+    }
+
+    // get the call literals of an entry if found for the same localizable methods
+    private synchronized ClassRecord getCalls(String key, SourceEntry sourceEntry, String callKey) {
+
+        Entry entry = _entries.get(key);
+        if (entry == null || entry.crc != sourceEntry.crc || entry.size != sourceEntry.size
+                || !callKey.equals(entry.callKey)) {
+            return null;
+        }
+
+        return entry.calls;
+    }
+
+    // add the call literals to the entry of their record
+    private synchronized void putCalls(String key, SourceEntry sourceEntry, String callKey, ClassRecord record) {
+
+        Entry entry = _entries.get(key);
+        if (entry == null || entry.crc != sourceEntry.crc || entry.size != sourceEntry.size)
+            return;
+
+        if (entry.calls == record && callKey.equals(entry.callKey))
+            return;
+
+        long bytes = entry.recordBytes + size(callKey) + estimateSize(record);
+
+        _bytes += bytes - entry.bytes;
+        entry.bytes = bytes;
+        entry.callKey = callKey;
+        entry.calls = record;
+
+        trim();
+    }
+
+    // remove the least recently used records until within the bound
+    private void trim() {
+
+        Iterator<Entry> iterator = _entries.values().iterator();
+        while (_bytes > _maxBytes && iterator.hasNext()) {
+            _bytes -= iterator.next().bytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Estimate the number of bytes retained by a record.
+     *
+     * @param record  The record.
+     */
+    static long estimateSize(ClassRecord record) {
+
+        // shared instance
+        if (record == ClassRecord.SKIPPED)
+            return 0;
+
+        long bytes = OBJECT_OVERHEAD + size(record.entryName) + size(record.className);
+
+        if (record.descriptorHashes != null)
+            bytes += OBJECT_OVERHEAD + record.descriptorHashes.length * 4;
+
+        if (record.methodHashes != null)
+            bytes += OBJECT_OVERHEAD + record.methodHashes.length * 4;
+
+        if (record.annotation != null)
+            bytes += OBJECT_OVERHEAD + size(record.annotation.methodNames);
+
+        if (record.usages != null) {
+            for (AnnotationUsage usage : record.usages) {
+                bytes += OBJECT_OVERHEAD * 3 + size(usage.desc) + size(usage.methodNames);
+
+                for (Object value : usage.values) {
+                    if (value instanceof String) {
+                        bytes += size((String) value);
+                    }
+                    else if (value instanceof List) {
+                        @SuppressWarnings("unchecked")
+                        List<String> list = (List<String>) value;
+                        bytes += OBJECT_OVERHEAD + size(list);
+                    }
+                }
+            }
+        }
+
+        if (record.fieldLiterals != null) {
+            for (LiteralInfo literal : record.fieldLiterals) {
+                bytes += OBJECT_OVERHEAD + size(literal.getLiteral()) + size(literal.getRawComment())
+                        + size(literal.getSource());
+            }
+        }
+
+        if (record.localizableMethods != null) {
+            for (LocalizableMethod method : record.localizableMethods) {
+                bytes += OBJECT_OVERHEAD * 2 + size(method.name) + size(method.desc)
+                        + method.parameters.length * 4;
+            }
+        }
+
+        if (record.callLiterals != null) {
+            for (LiteralInfo literal : record.callLiterals) {
+                bytes += OBJECT_OVERHEAD + size(literal.getLiteral()) + size(literal.getRawComment())
+                        + size(literal.getSource());
+            }
+        }
+
+        return bytes;
+    }
+
+    private static long size(List<String> strings) {
+        long bytes = strings.size() * 8L;
+        for (String string : strings) {
+            bytes += size(string);
+        }
+        return bytes;
+    }
+
+    private static long size(String string) {
+        return string == null ? 0 : OBJECT_OVERHEAD + string.length() * 2L;
+    }
+
+    // cache of a single input
+    private class InputView implements RecordCache {
+
+        final String prefix;
+        final AtomicInteger reused = new AtomicInteger();
+
+        InputView(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public ClassRecord get(SourceEntry sourceEntry) {
+
+            ClassRecord record = ClassCache.this.get(prefix + sourceEntry.name, sourceEntry);
+            if (record != null)
+                reused.incrementAndGet();
+
+            return record;
+        }
+
+        @Override
+        public void put(SourceEntry sourceEntry, ClassRecord record) {
+
+            // entries without a known crc can't be validated
+            if (sourceEntry.crc == -1 || sourceEntry.size == -1)
+                return;
+
+            ClassCache.this.put(prefix + sourceEntry.name, sourceEntry, record);
+        }
+
+        @Override
+        public ClassRecord getCalls(SourceEntry sourceEntry, String callKey) {
+            return ClassCache.this.getCalls(prefix + sourceEntry.name, sourceEntry, callKey);
+        }
+
+        @Override
+        public void putCalls(SourceEntry sourceEntry, String callKey, ClassRecord record) {
+
+            if (sourceEntry.crc == -1 || sourceEntry.size == -1)
+                return;
+
+            ClassCache.this.putCalls(prefix + sourceEntry.name, sourceEntry, callKey, record);
+        }
+
+        @Override
+        public int getReusedCount() {
+            return reused.get();
+        }
+    }
+
+    private static class Entry {
+        final long crc;
+        final long size;
+        final ClassRecord record;
+        final long recordBytes;
+
+        // estimated bytes of the record and call literals
+        long bytes;
+
+        // call literals and the key of the localizable methods they were found for
+        String callKey;
+        ClassRecord calls;
+
+        Entry(long crc, long size, ClassRecord record, long bytes) {
+            this.crc = crc;
+            this.size = size;
+            this.record = record;
+            this.recordBytes = bytes;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The localizable data extracted from a single class file.
+ *
+ * <p>Field literals are complete once the class is read. Class annotation usages
+ * are kept until all annotation classes are known since they can only be
+ * resolved once it is known which annotations are localizable.</p>
+ *
+ * <p>Call literals are found by a separate pass over the method code of classes
+ * that call a method with localizable parameters. The hashes of the methods a class
+ * references are kept so the pass only reads the classes that might call one. Records
+ * holding call literals are cached separately, keyed to the localizable methods the
+ * class references.</p>
+ */
+class ClassRecord {
+
+    /**
+     * Record used for classes that do not contain localizable data.
+     */
+    static final ClassRecord SKIPPED = new ClassRecord(null, null);
+
+    final String entryName;
+    final String className;
+
+    // set if the class was not parsed yet because it can only contain
+    // usages of localizable annotations. Holds the hashes of the type
+    // descriptors in its constant pool.
+    int[] descriptorHashes;
+
+    // hashes of the methods referenced by the class or null if not known,
+    // in which case the class might call any method.
+    int[] methodHashes;
+
+    // set if the class is an annotation
+    AnnotationInfo annotation;
+
+    List<AnnotationUsage> usages;
+    List<LiteralInfo> fieldLiterals;
+    List<LocalizableMethod> localizableMethods;
+    List<LiteralInfo> callLiterals;
+
+    /**
+     * Constructor.
+     *
+     * @param entryName  The name of the entry the class was read from.
+     * @param className  The internal name of the class.
+     */
+    ClassRecord(String entryName, String className) {
+        this.entryName = entryName;
+        this.className = className;
+    }
+
+    /**
+     * Create a record for a class that has not been parsed yet.
+     *
+     * @param entryName         The name of the entry the class was read from.
+     * @param className         The internal name of the class.
+     * @param descriptorHashes  The hashes of the type descriptors in the class constant pool.
+     */
+    static ClassRecord deferred(String entryName, String className, int[] descriptorHashes) {
+        ClassRecord record = new ClassRecord(entryName, className);
+        record.descriptorHashes = descriptorHashes;
+        return record;
+    }
+
+    /**
+     * Create a record for a class that has no localizable data but references
+     * methods that might have localizable parameters.
+     *
+     * @param entryName     The name of the entry the class was read from.
+     * @param methodHashes  The hashes of the methods referenced by the class.
+     */
+    static ClassRecord caller(String entryName, int[] methodHashes) {
+        ClassRecord record = new ClassRecord(entryName, null);
+        record.methodHashes = methodHashes;
+        return record;
+    }
+
+    /**
+     * Determine if the class has no localizable data of its own, i.e. the
+     * record is {@link #SKIPPED} or only has method hashes.
+     */
+    boolean isSkipped() {
+        return className == null;
+    }
+
+    /**
+     * Determine if the class might call one of the specified methods.
+     *
+     * @param hashes  The method hashes or null for any method.
+     */
+    boolean mayCall(Set<Integer> hashes) {
+
+        if (this == SKIPPED)
+            return false;
+
+        if (methodHashes == null)
+            return true;
+
+        if (hashes == null)
+            return methodHashes.length > 0;
+
+        for (int hash : methodHashes) {
+            if (hashes.contains(hash))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determine if the class has not been parsed yet.
+     */
+    boolean isDeferred() {
+        return descriptorHashes != null;
+    }
+
+    /**
+     * Determine if a deferred class might use one of the specified annotations.
+     *
+     * @param annotationHashes  The descriptor hashes of the annotations.
+     */
+    boolean mayUse(Set<Integer> annotationHashes) {
+
+        for (int hash : descriptorHashes) {
+            if (annotationHashes.contains(hash))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Create a copy of the record without its field and method argument literals.
+     * Used to keep the parts of a record that need resolving after its literals
+     * were given out.
+     */
+    ClassRecord withoutLiterals() {
+
+        ClassRecord copy = new ClassRecord(entryName, className);
+        copy.descriptorHashes = descriptorHashes;
+        copy.methodHashes = methodHashes;
+        copy.annotation = annotation;
+        copy.usages = usages;
+        copy.localizableMethods = localizableMethods;
+        return copy;
+    }
+
+    /**
+     * Determine if the record has anything left to resolve or output.
+     */
+    boolean isEmpty() {
+        return annotation == null && descriptorHashes == null &&
+                (usages == null || usages.isEmpty()) &&
+                (fieldLiterals == null || fieldLiterals.isEmpty()) &&
+                (localizableMethods == null || localizableMethods.isEmpty()) &&
+                (callLiterals == null || callLiterals.isEmpty());
+    }
+
+    void addUsage(AnnotationUsage usage) {
+        if (usages == null)
+            usages = new ArrayList<>(2);
+
+        usages.add(usage);
+    }
+
+    void addFieldLiteral(LiteralInfo literal) {
+        if (fieldLiterals == null)
+            fieldLiterals = new ArrayList<>(5);
+
+        fieldLiterals.add(literal);
+    }
+
+    void addLocalizableMethod(LocalizableMethod method) {
+        if (localizableMethods == null)
+            localizableMethods = new ArrayList<>(2);
+
+        localizableMethods.add(method);
+    }
+
+    void addCallLiteral(LiteralInfo literal) {
+        if (callLiterals == null)
+            callLiterals = new ArrayList<>(5);
+
+        callLiterals.add(literal);
+    }
+
+    /**
+     * The String values of a class level annotation.
+     */
+    static class AnnotationUsage {
+
+        final String desc;
+
+        // annotation method names and their values in declaration order
+        final List<String> methodNames = new ArrayList<>(3);
+        final List<Object> values = new ArrayList<>(3);
+
+        AnnotationUsage(String desc) {
+            this.desc = desc;
+        }
+
+        /**
+         * Get the internal class name of the annotation.
+         */
+        String getClassName() {
+            return desc.substring(1, desc.length() - 1);
+        }
+
+        /**
+         * Add a value.
+         *
+         * @param methodName  The annotation method name.
+         * @param value       The value. Either a String or a List of Strings.
+         */
+        void add(String methodName, Object value) {
+            methodNames.add(methodName);
+            values.add(value);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * A source of class files to scan.
+ */
+abstract class ClassSource implements Closeable {
+
+    private static final Comparator<SourceEntry> NAME_COMPARATOR = new Comparator<SourceEntry>() {
+        @Override
+        public int compare(SourceEntry o1, SourceEntry o2) {
+            return o1.name.compareTo(o2.name);
+        }
+    };
+
+    /**
+     * Open a jar file or compiled classes directory as a class source.
+     *
+     * <p>Jar files are memory mapped if possible. Archives that cannot be
+     * mapped or use zip features the mapped reader does not support are read
+     * using {@link java.util.jar.JarFile}.</p>
+     *
+     * @param file  The jar file or directory.
+     */
+    static ClassSource open(File file) throws IOException {
+
+        if (file.isDirectory())
+            return new DirectoryClassSource(file);
+
+        try {
+            return new MappedJarSource(file);
+        }
+        catch (ZipException e) {
+            return new JarFileSource(file);
+        }
+    }
+
+    /**
+     * Open a zip archive held in memory as a class source.
+     *
+     * <p>Archives the mapped reader does not support are read using a
+     * {@link java.util.zip.ZipInputStream}.</p>
+     *
+     * @param name    The name of the archive.
+     * @param buffer  The archive contents from its position to its limit.
+     */
+    static ClassSource open(String name, ByteBuffer buffer) throws IOException {
+
+        try {
+            return new MappedJarSource(name, buffer);
+        }
+        catch (ZipException e) {
+            return new ZipStreamSource(name, buffer);
+        }
+    }
+
+    /**
+     * Get the class entries sorted by name.
+     */
+    abstract List<SourceEntry> getEntries() throws IOException;
+
+    /**
+     * Get the nested jar file entries sorted by name.
+     *
+     * <p>Sources that cannot contain nested archives return an empty list.</p>
+     */
+    List<SourceEntry> getArchiveEntries() throws IOException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Open a nested jar file entry as a class source.
+     *
+     * <p>The entry is read into memory and is not written to disk.</p>
+     *
+     * @param entry  The archive entry.
+     */
+    ClassSource openArchive(SourceEntry entry) throws IOException {
+
+        ReadBuffer buffer = new ReadBuffer();
+
+        try {
+            // the read buffer is reused, keep a copy
+            ByteBuffer data = read(entry, buffer);
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+
+            return open(entry.name, ByteBuffer.wrap(bytes));
+        }
+        finally {
+            buffer.close();
+        }
+    }
+
+    /**
+     * Read the contents of an entry. May be invoked from multiple threads at
+     * the same time, each using its own buffer.
+     *
+     * <p>The returned buffer is only valid until the next read using the same
+     * {@link ReadBuffer}.</p>
+     *
+     * @param entry   The entry to read.
+     * @param buffer  The calling threads buffer.
+     *
+     * @return  A buffer positioned at the start of the class file and limited
+     * to its end.
+     */
+    abstract ByteBuffer read(SourceEntry entry, ReadBuffer buffer) throws IOException;
+
+    /**
+     * Sort entries by name.
+     */
+    static void sort(List<SourceEntry> entries) {
+        Collections.sort(entries, NAME_COMPARATOR);
+    }
+
+    /**
+     * Determine if an entry name is a class file.
+     */
+    static boolean isClassEntry(String name) {
+        return name.endsWith(".class");
+    }
+
+    /**
+     * Determine if an entry name is a nested jar file.
+     */
+    static boolean isArchiveEntry(String name) {
+        return name.endsWith(".jar");
+    }
+
+    /**
+     * Get the path of the nested archive an entry was read from.
+     *
+     * @param entryName  The entry name, i.e. "lib/inner.jar!/com/example/Foo.class"
+     *
+     * @return  The archive path, i.e. "lib/inner.jar", or null if the entry is
+     * not from a nested archive.
+     */
+    static String getArchivePath(String entryName) {
+
+        int index = entryName.lastIndexOf(NestedJarSource.SEPARATOR);
+        return index == -1 ? null : entryName.substring(0, index);
+    }
+}
@@ -0,0 +1,411 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds localizable annotation classes in the jar files and classes directories
+ * of a classpath.
+ *
+ * <p>Dependencies are indexed lazily. The class names of a dependency are only
+ * listed when a lookup needs them and a class file is only read when its name or
+ * descriptor hash is looked up. The class names and lookup results of jar files are
+ * saved to a cache file and reused while the size and modified time of the jar
+ * file are unchanged.</p>
+ *
+ * <p>Only annotation classes with at least one method marked as Localizable are
+ * returned.</p>
+ */
+class ClasspathIndex {
+
+    private static final int MAGIC = 0x4E4C4350;
+    private static final int FORMAT_VERSION = 1;
+
+    // lookup result of a class that is not a localizable annotation
+    private static final AnnotationInfo NONE = new AnnotationInfo("", new ArrayList<String>(0));
+
+    private final List<Dependency> _dependencies;
+    private final File _cacheFile;
+    private boolean _isChanged;
+
+    /**
+     * Create an index of a classpath using the results in a cache file. If the cache
+     * file does not exist or cannot be read, the dependencies are indexed again.
+     *
+     * @param classpath  The jar files and classes directories in lookup order.
+     * @param cacheFile  The cache file or null to not cache results.
+     */
+    static ClasspathIndex load(List<File> classpath, File cacheFile) {
+
+        Map<String, Dependency> cached = new HashMap<>(0);
+
+        if (cacheFile != null && cacheFile.exists()) {
+            try {
+                cached = read(cacheFile);
+            }
+            catch (IOException e) {
+                System.out.println("Classpath cache file could not be read, dependencies will be indexed again: "
+                        + cacheFile.getName());
+            }
+        }
+
+        List<Dependency> dependencies = new ArrayList<>(classpath.size());
+
+        for (File file : classpath) {
+
+            Dependency dependency = cached.get(file.getAbsolutePath());
+
+            if (dependency == null || !dependency.matches(file))
+                dependency = new Dependency(file);
+
+            dependencies.add(dependency);
+        }
+
+        return new ClasspathIndex(dependencies, cacheFile);
+    }
+
+    private ClasspathIndex(List<Dependency> dependencies, File cacheFile) {
+        _dependencies = dependencies;
+        _cacheFile = cacheFile;
+    }
+
+    /**
+     * Find a localizable annotation class by name.
+     *
+     * @param className  The internal name of the class.
+     *
+     * @return  The annotation info or null if the class is not found in the
+     * classpath or is not a localizable annotation.
+     */
+    AnnotationInfo find(String className) throws IOException {
+
+        for (Dependency dependency : _dependencies) {
+
+            if (!getClassNames(dependency).containsKey(className))
+                continue;
+
+            AnnotationInfo info = dependency.results.get(className);
+
+            if (info == null) {
+                info = readAnnotation(dependency, className);
+                dependency.results.put(className, info);
+                _isChanged = true;
+            }
+
+            // the first dependency with the class hides the others
+            return info == NONE ? null : info;
+        }
+
+        return null;
+    }
+
+    /**
+     * Find localizable annotation classes by the hashes of their descriptors.
+     *
+     * @param descriptorHashes  The hashes of the type descriptors.
+     *
+     * @return  The localizable annotations found.
+     */
+    List<AnnotationInfo> findByHashes(Set<Integer> descriptorHashes) throws IOException {
+
+        List<AnnotationInfo> result = new ArrayList<>(5);
+
+        for (Dependency dependency : _dependencies) {
+
+            for (Map.Entry<String, Integer> entry : getClassNames(dependency).entrySet()) {
+
+                if (!descriptorHashes.contains(entry.getValue()))
+                    continue;
+
+                AnnotationInfo info = find(entry.getKey());
+                if (info != null && !result.contains(info))
+                    result.add(info);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Save the class names and results of jar files to the cache file if
+     * anything changed.
+     */
+    void save() throws IOException {
+
+        if (_cacheFile == null || !_isChanged)
+            return;
+
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(_cacheFile)));
+
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+
+            int count = 0;
+            for (Dependency dependency : _dependencies) {
+                if (dependency.isCacheable())
+                    count++;
+            }
+
+            output.writeInt(count);
+
+            for (Dependency dependency : _dependencies) {
+                if (dependency.isCacheable())
+                    dependency.write(output);
+            }
+        }
+        finally {
+            output.close();
+        }
+
+        _isChanged = false;
+    }
+
+    /**
+     * Close the dependencies opened by lookups.
+     */
+    void close() throws IOException {
+
+        for (Dependency dependency : _dependencies) {
+            if (dependency.source != null) {
+                dependency.source.close();
+                dependency.source = null;
+            }
+        }
+    }
+
+    // get the class names of a dependency and their descriptor hashes
+    private Map<String, Integer> getClassNames(Dependency dependency) throws IOException {
+
+        if (dependency.classNames != null)
+            return dependency.classNames;
+
+        Map<String, Integer> classNames = new HashMap<>(256);
+
+        // a missing dependency has no classes
+        if (dependency.file.exists()) {
+
+            for (SourceEntry entry : getSource(dependency).getEntries()) {
+                String className = entry.name.substring(0, entry.name.length() - ".class".length());
+                classNames.put(className, ConstantPoolFilter.hash('L' + className + ';'));
+            }
+        }
+
+        dependency.classNames = classNames;
+        _isChanged = true;
+
+        return classNames;
+    }
+
+    // read a class of a dependency and check if it is a localizable annotation
+    private AnnotationInfo readAnnotation(Dependency dependency, String className) throws IOException {
+
+        ClassSource source = getSource(dependency);
+
+        if (dependency.entries == null) {
+
+            List<SourceEntry> entries = source.getEntries();
+            dependency.entries = new HashMap<>(entries.size() * 2);
+
+            for (SourceEntry entry : entries) {
+                dependency.entries.put(entry.name, entry);
+            }
+        }
+
+        SourceEntry entry = dependency.entries.get(className + ".class");
+        if (entry == null)
+            return NONE;
+
+        ReadBuffer buffer = new ReadBuffer();
+
+        try {
+            ByteBuffer bytes = source.read(entry, buffer);
+            ClassRecord record = LiteralExtractor.extract(entry.name, bytes);
+
+            return record.annotation != null && !record.annotation.methodNames.isEmpty()
+                    ? record.annotation
+                    : NONE;
+        }
+        finally {
+            buffer.close();
+        }
+    }
+
+    private static ClassSource getSource(Dependency dependency) throws IOException {
+
+        if (dependency.source == null)
+            dependency.source = ClassSource.open(dependency.file);
+
+        return dependency.source;
+    }
+
+    private static Map<String, Dependency> read(File file) throws IOException {
+
+        DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION)
+                throw new IOException("Unsupported classpath cache file.");
+
+            int count = input.readInt();
+            Map<String, Dependency> dependencies = new HashMap<>(count * 2);
+
+            for (int i=0; i < count; i++) {
+                Dependency dependency = Dependency.read(input);
+                dependencies.put(dependency.file.getAbsolutePath(), dependency);
+            }
+
+            return dependencies;
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    // a jar file or classes directory of the classpath
+    private static class Dependency {
+
+        final File file;
+        final long size;
+        final long lastModified;
+
+        // class names and their descriptor hashes, null until needed
+        Map<String, Integer> classNames;
+
+        // lookup results keyed to class name
+        final Map<String, AnnotationInfo> results;
+
+        // opened when a class needs to be read
+        ClassSource source;
+        Map<String, SourceEntry> entries;
+
+        Dependency(File file) {
+            this(file.getAbsoluteFile(), file.length(), file.lastModified(),
+                    new HashMap<String, AnnotationInfo>(10));
+        }
+
+        Dependency(File file, long size, long lastModified, Map<String, AnnotationInfo> results) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.results = results;
+        }
+
+        boolean matches(File file) {
+            return file.isFile() && size == file.length() && lastModified == file.lastModified();
+        }
+
+        // directory contents can change without changing the directory
+        boolean isCacheable() {
+            return file.isFile() && classNames != null;
+        }
+
+        void write(DataOutputStream output) throws IOException {
+
+            output.writeUTF(file.getPath());
+            output.writeLong(size);
+            output.writeLong(lastModified);
+
+            output.writeInt(classNames.size());
+            for (String className : classNames.keySet()) {
+                output.writeUTF(className);
+            }
+
+            output.writeInt(results.size());
+            for (Map.Entry<String, AnnotationInfo> entry : results.entrySet()) {
+
+                AnnotationInfo info = entry.getValue();
+
+                output.writeUTF(entry.getKey());
+                output.writeBoolean(info != NONE);
+
+                if (info == NONE)
+                    continue;
+
+                output.writeInt(info.methodNames.size());
+                for (String methodName : info.methodNames) {
+                    output.writeUTF(methodName);
+                }
+            }
+        }
+
+        static Dependency read(DataInputStream input) throws IOException {
+
+            File file = new File(input.readUTF());
+            long size = input.readLong();
+            long lastModified = input.readLong();
+
+            int count = input.readInt();
+            Map<String, Integer> classNames = new HashMap<>(count * 2);
+
+            for (int i=0; i < count; i++) {
+                String className = input.readUTF();
+                classNames.put(className, ConstantPoolFilter.hash('L' + className + ';'));
+            }
+
+            count = input.readInt();
+            Map<String, AnnotationInfo> results = new HashMap<>(count * 2);
+
+            for (int i=0; i < count; i++) {
+
+                String className = input.readUTF();
+
+                if (!input.readBoolean()) {
+                    results.put(className, NONE);
+                    continue;
+                }
+
+                int methodCount = input.readInt();
+                List<String> methodNames = new ArrayList<>(methodCount);
+
+                for (int j=0; j < methodCount; j++) {
+                    methodNames.add(input.readUTF());
+                }
+
+                results.put(className, new AnnotationInfo(className, methodNames));
+            }
+
+            Dependency dependency = new Dependency(file, size, lastModified, results);
+            dependency.classNames = classNames;
+            return dependency;
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Reads the constant pool of a raw class file to decide if the class needs
+ * to be parsed.
+ *
+ * <p>A class can only contain localizable fields or define localizable annotation
+ * methods if its constant pool contains the Localizable annotation descriptor. A
+ * class without it can still use a localizable annotation, but only if it has
+ * visible annotations. Since the localizable annotations are not known until the
+ * whole jar is read, the hashes of the type descriptors in the constant pool of
+ * such classes are kept so they can be checked once the annotations are known.</p>
+ *
+ * <p>The method references in the constant pool can also be checked to find the
+ * classes that call a method with localizable parameters, or kept as hashes so the
+ * check can be made without reading the class again.</p>
+ *
+ * <p>Instances reuse internal buffers and are not thread safe.</p>
+ */
+class ConstantPoolFilter {
+
+    /**
+     * The class does not need to be parsed.
+     */
+    static final int SKIP = 0;
+
+    /**
+     * The class needs to be parsed.
+     */
+    static final int PARSE = 1;
+
+    /**
+     * The class only needs to be parsed if one of its descriptors is the
+     * descriptor of a localizable annotation.
+     */
+    static final int DEFER = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] LOCALIZABLE =
+            LiteralExtractor.LOCALIZABLE_CLASSPATH.getBytes(UTF_8);
+
+    private static final byte[] VISIBLE_ANNOTATIONS =
+            "RuntimeVisibleAnnotations".getBytes(UTF_8);
+
+    private static final byte[] JAVA_PACKAGE = "java/".getBytes(UTF_8);
+    private static final byte[] JAVAX_PACKAGE = "javax/".getBytes(UTF_8);
+
+    private static final int ACC_ANNOTATION = 0x2000;
+
+    private static final int TAG_UTF8 = 1;
+    private static final int TAG_INTEGER = 3;
+    private static final int TAG_FLOAT = 4;
+    private static final int TAG_LONG = 5;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_CLASS = 7;
+    private static final int TAG_STRING = 8;
+    private static final int TAG_FIELD = 9;
+    private static final int TAG_METHOD = 10;
+    private static final int TAG_INTERFACE_METHOD = 11;
+    private static final int TAG_NAME_AND_TYPE = 12;
+    private static final int TAG_METHOD_HANDLE = 15;
+    private static final int TAG_METHOD_TYPE = 16;
+    private static final int TAG_DYNAMIC = 17;
+    private static final int TAG_INVOKE_DYNAMIC = 18;
+    private static final int TAG_MODULE = 19;
+    private static final int TAG_PACKAGE = 20;
+
+    // returned by methodHash instead of a hash, outside of the int range
+    private static final long MALFORMED = Long.MIN_VALUE;
+    private static final long NOT_METHOD = Long.MIN_VALUE + 1;
+    private static final long PLATFORM = Long.MIN_VALUE + 2;
+
+    private int[] _offsets = new int[256];
+    private int[] _hashes = new int[32];
+    private int _hashCount;
+    private int[] _methodHashes = new int[32];
+    private int _poolCount;
+    private String _className;
+
+    /**
+     * Get the hash of a type descriptor as it is calculated for the
+     * descriptors found in the constant pool.
+     *
+     * @param desc  The type descriptor.
+     */
+    static int hash(String desc) {
+        byte[] bytes = desc.getBytes(UTF_8);
+        return hash(0, ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Get the hash of a method reference as it is calculated for the method
+     * references found in the constant pool.
+     *
+     * @param owner  The internal name of the method owner.
+     * @param name   The method name.
+     * @param desc   The method descriptor.
+     */
+    static int hash(String owner, String name, String desc) {
+        return hash(LocalizableMethod.getKey(owner, name, desc));
+    }
+
+    /**
+     * Check a class file.
+     *
+     * @param bytes   The array containing the class file.
+     * @param offset  The offset of the class file in the array.
+     * @param length  The length of the class file.
+     *
+     * @return  {@link #SKIP}, {@link #PARSE} or {@link #DEFER}.
+     */
+    int check(byte[] bytes, int offset, int length) {
+        return check(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Check a class file. The buffer position and limit are not changed.
+     *
+     * @param bytes  The buffer containing the class file from its position to its limit.
+     *
+     * @return  {@link #SKIP}, {@link #PARSE} or {@link #DEFER}. Malformed or unknown
+     * class files always return {@link #PARSE} so the parser can report the problem.
+     */
+    int check(ByteBuffer bytes) {
+
+        _hashCount = 0;
+        _poolCount = 0;
+        _className = null;
+
+        int offset = bytes.position();
+        int length = bytes.remaining();
+        int end = bytes.limit();
+
+        if (length < 10 || readInt(bytes, offset) != 0xCAFEBABE)
+            return PARSE;
+
+        int count = readShort(bytes, offset + 8);
+        int index = offset + 10;
+
+        if (_offsets.length < count)
+            _offsets = new int[count];
+
+        boolean hasLocalizable = false;
+        boolean hasAnnotations = false;
+
+        for (int i=1; i < count; i++) {
+
+            if (index >= end)
+                return PARSE;
+
+            int tag = bytes.get(index) & 0xFF;
+            _offsets[i] = index;
+
+            switch (tag) {
+                case TAG_UTF8:
+                    if (index + 3 > end)
+                        return PARSE;
+
+                    int start = index + 3;
+                    int len = readShort(bytes, index + 1);
+                    if (start + len > end)
+                        return PARSE;
+
+                    if (equals(bytes, start, len, LOCALIZABLE)) {
+                        hasLocalizable = true;
+                    }
+                    else if (equals(bytes, start, len, VISIBLE_ANNOTATIONS)) {
+                        hasAnnotations = true;
+                    }
+                    else if (len > 2 && bytes.get(start) == 'L' && bytes.get(start + len - 1) == ';') {
+                        addHash(hash(0, bytes, start, len));
+                    }
+
+                    index = start + len;
+                    break;
+
+                case TAG_CLASS:
+                case TAG_STRING:
+                case TAG_METHOD_TYPE:
+                case TAG_MODULE:
+                case TAG_PACKAGE:
+                    index += 3;
+                    break;
+
+                case TAG_METHOD_HANDLE:
+                    index += 4;
+                    break;
+
+                case TAG_INTEGER:
+                case TAG_FLOAT:
+                case TAG_FIELD:
+                case TAG_METHOD:
+                case TAG_INTERFACE_METHOD:
+                case TAG_NAME_AND_TYPE:
+                case TAG_DYNAMIC:
+                case TAG_INVOKE_DYNAMIC:
+                    index += 5;
+                    break;
+
+                case TAG_LONG:
+                case TAG_DOUBLE:
+                    // takes two entries
+                    if (i + 1 < count)
+                        _offsets[i + 1] = index;
+
+                    index += 9;
+                    i++;
+                    break;
+
+                default:
+                    return PARSE;
+            }
+        }
+
+        if (index + 4 > end)
+            return PARSE;
+
+        _poolCount = count;
+
+        int access = readShort(bytes, index);
+
+        if (hasLocalizable || (access & ACC_ANNOTATION) != 0)
+            return PARSE;
+
+        if (!hasAnnotations)
+            return SKIP;
+
+        _className = readClassName(bytes, readShort(bytes, index + 2), count);
+        if (_className == null)
+            return PARSE;
+
+        return DEFER;
+    }
+
+    /**
+     * Determine if a class file references one of the specified methods.
+     *
+     * <p>Hash collisions can cause false positives, the method instructions of
+     * the class still need to be matched.</p>
+     *
+     * @param bytes         The buffer containing the class file from its position to its limit.
+     * @param methodHashes  The method reference hashes. See {@link #hash(String, String, String)}.
+     *
+     * @return  True if the class references one of the methods or if the class file
+     * is malformed.
+     */
+    boolean referencesMethod(ByteBuffer bytes, Set<Integer> methodHashes) {
+
+        check(bytes);
+
+        if (_poolCount == 0)
+            return true;
+
+        for (int i=1; i < _poolCount; i++) {
+
+            long hash = methodHash(bytes, i, false);
+            if (hash == MALFORMED || (hash != NOT_METHOD && methodHashes.contains((int) hash)))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the hashes of the methods referenced by the last class checked. Methods
+     * of the java and javax packages are left out since they can't have localizable
+     * parameters.
+     *
+     * @param bytes  The buffer containing the class file, as given to {@link #check}.
+     *
+     * @return  The sorted distinct hashes or null if the constant pool could not be read.
+     * See {@link #hash(String, String, String)}.
+     */
+    int[] getMethodHashes(ByteBuffer bytes) {
+
+        if (_poolCount == 0)
+            return null;
+
+        int count = 0;
+
+        for (int i=1; i < _poolCount; i++) {
+
+            long hash = methodHash(bytes, i, true);
+            if (hash == MALFORMED)
+                return null;
+
+            if (hash == NOT_METHOD || hash == PLATFORM)
+                continue;
+
+            if (count == _methodHashes.length) {
+                int[] expanded = new int[count * 2];
+                System.arraycopy(_methodHashes, 0, expanded, 0, count);
+                _methodHashes = expanded;
+            }
+
+            _methodHashes[count++] = (int) hash;
+        }
+
+        Arrays.sort(_methodHashes, 0, count);
+
+        int distinct = 0;
+        for (int i=0; i < count; i++) {
+            if (distinct == 0 || _methodHashes[distinct - 1] != _methodHashes[i])
+                _methodHashes[distinct++] = _methodHashes[i];
+        }
+
+        return Arrays.copyOf(_methodHashes, distinct);
+    }
+
+    // get the hash of a method reference constant as calculated by hash(owner, name, desc)
+    private long methodHash(ByteBuffer bytes, int index, boolean isPlatformSkipped) {
+
+        int tag = bytes.get(_offsets[index]) & 0xFF;
+        if (tag != TAG_METHOD && tag != TAG_INTERFACE_METHOD)
+            return NOT_METHOD;
+
+        int classOffset = entryOffset(bytes, readShort(bytes, _offsets[index] + 1), TAG_CLASS);
+        int typeOffset = entryOffset(bytes, readShort(bytes, _offsets[index] + 3), TAG_NAME_AND_TYPE);
+        if (classOffset == -1 || typeOffset == -1)
+            return MALFORMED;
+
+        int ownerOffset = entryOffset(bytes, readShort(bytes, classOffset + 1), TAG_UTF8);
+        int nameOffset = entryOffset(bytes, readShort(bytes, typeOffset + 1), TAG_UTF8);
+        int descOffset = entryOffset(bytes, readShort(bytes, typeOffset + 3), TAG_UTF8);
+        if (ownerOffset == -1 || nameOffset == -1 || descOffset == -1)
+            return MALFORMED;
+
+        int ownerLength = readShort(bytes, ownerOffset + 1);
+
+        if (isPlatformSkipped && (startsWith(bytes, ownerOffset + 3, ownerLength, JAVA_PACKAGE) ||
+                startsWith(bytes, ownerOffset + 3, ownerLength, JAVAX_PACKAGE))) {
+            return PLATFORM;
+        }
+
+        // hash of owner + '.' + name + desc
+        int hash = hash(0, bytes, ownerOffset + 3, ownerLength);
+        hash = 31 * hash + '.';
+        hash = hash(hash, bytes, nameOffset + 3, readShort(bytes, nameOffset + 1));
+        hash = hash(hash, bytes, descOffset + 3, readShort(bytes, descOffset + 1));
+
+        return hash;
+    }
+
+    /**
+     * Get the internal name of the last class checked. Only available
+     * if the class was deferred.
+     */
+    String getClassName() {
+        return _className;
+    }
+
+    /**
+     * Get the descriptor hashes of the last class checked.
+     */
+    int[] getDescriptorHashes() {
+        int[] hashes = new int[_hashCount];
+        System.arraycopy(_hashes, 0, hashes, 0, _hashCount);
+        return hashes;
+    }
+
+    // read the name from a class constant pool entry
+    private String readClassName(ByteBuffer bytes, int classIndex, int count) {
+
+        if (classIndex < 1 || classIndex >= count || bytes.get(_offsets[classIndex]) != TAG_CLASS)
+            return null;
+
+        int nameIndex = readShort(bytes, _offsets[classIndex] + 1);
+        if (nameIndex < 1 || nameIndex >= count || bytes.get(_offsets[nameIndex]) != TAG_UTF8)
+            return null;
+
+        int offset = _offsets[nameIndex];
+        byte[] name = new byte[readShort(bytes, offset + 1)];
+
+        for (int i=0; i < name.length; i++) {
+            name[i] = bytes.get(offset + 3 + i);
+        }
+
+        return new String(name, UTF_8);
+    }
+
+    // get the offset of a constant pool entry or -1 if the index or tag is invalid
+    private int entryOffset(ByteBuffer bytes, int index, int tag) {
+
+        if (index < 1 || index >= _poolCount || bytes.get(_offsets[index]) != tag)
+            return -1;
+
+        return _offsets[index];
+    }
+
+    private void addHash(int hash) {
+        if (_hashCount == _hashes.length) {
+            int[] hashes = new int[_hashes.length * 2];
+            System.arraycopy(_hashes, 0, hashes, 0, _hashCount);
+            _hashes = hashes;
+        }
+        _hashes[_hashCount++] = hash;
+    }
+
+    private static int hash(int hash, ByteBuffer bytes, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + (bytes.get(i) & 0xFF);
+        }
+        return hash;
+    }
+
+    private static boolean equals(ByteBuffer bytes, int offset, int length, byte[] expected) {
+
+        if (length != expected.length)
+            return false;
+
+        for (int i=0; i < length; i++) {
+            if (bytes.get(offset + i) != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, int offset, int length, byte[] prefix) {
+
+        if (length < prefix.length)
+            return false;
+
+        return equals(bytes, offset, prefix.length, prefix);
+    }
+
+    private static int readShort(ByteBuffer bytes, int index) {
+        return ((bytes.get(index) & 0xFF) << 8) | (bytes.get(index + 1) & 0xFF);
+    }
+
+    private static int readInt(ByteBuffer bytes, int index) {
+        return (readShort(bytes, index) << 16) | readShort(bytes, index + 2);
+    }
+}
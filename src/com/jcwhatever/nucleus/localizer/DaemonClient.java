@@ -0,0 +1,203 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+
+/**
+ * Sends requests to a {@link LocalizerDaemon}.
+ */
+public class DaemonClient {
+
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    private final int _port;
+    private final File _tokenFile;
+
+    /**
+     * Constructor.
+     *
+     * <p>Uses the default token file of the port.</p>
+     *
+     * @param port  The port of the daemon.
+     */
+    public DaemonClient(int port) {
+        this(port, LocalizerDaemon.getDefaultTokenFile(port));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param port       The port of the daemon.
+     * @param tokenFile  The file the daemon wrote its request token to.
+     */
+    public DaemonClient(int port, File tokenFile) {
+        _port = port;
+        _tokenFile = tokenFile;
+    }
+
+    /**
+     * Get the port of the daemon.
+     */
+    public int getPort() {
+        return _port;
+    }
+
+    /**
+     * Generate a key file using the daemon. An existing key file is overwritten.
+     *
+     * @param jarFile      The jar file or classes directory to scan.
+     * @param outputFile   The output key file.
+     * @param version      The key file version.
+     * @param charset      The key file charset.
+     * @param isBinary     True to also write a binary key file.
+     * @param nestedDepth  The maximum depth of nested jar files or -1 for the default.
+     * @param classpath    The jar files and directories searched for localizable annotations.
+     *
+     * @return  A summary of the generation.
+     *
+     * @throws ConnectException  If the daemon is not running.
+     * @throws IOException       If the daemon failed to generate the key file.
+     */
+    public GeneratorReport generate(File jarFile, File outputFile, String version,
+                                    Charset charset, boolean isBinary, int nestedDepth,
+                                    List<File> classpath) throws IOException {
+
+        String token = readToken();
+        Socket socket = connect();
+
+        try {
+            DataOutputStream output = openOutput(socket, token);
+
+            output.writeByte(LocalizerDaemon.COMMAND_SCAN);
+            // the daemon does not share the working directory of the client
+            output.writeUTF(jarFile.getAbsolutePath());
+            output.writeUTF(version);
+            output.writeUTF(outputFile.getAbsolutePath());
+            output.writeUTF(charset.name());
+            output.writeBoolean(isBinary);
+            output.writeInt(nestedDepth);
+            output.writeInt(classpath.size());
+
+            for (File file : classpath) {
+                output.writeUTF(file.getAbsolutePath());
+            }
+
+            output.flush();
+
+            DataInputStream input = openInput(socket);
+
+            return GeneratorReport.read(input);
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Stop the daemon.
+     *
+     * @throws ConnectException  If the daemon is not running.
+     */
+    public void stop() throws IOException {
+
+        String token = readToken();
+        Socket socket = connect();
+
+        try {
+            DataOutputStream output = openOutput(socket, token);
+
+            output.writeByte(LocalizerDaemon.COMMAND_STOP);
+            output.flush();
+
+            openInput(socket);
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    private Socket connect() throws IOException {
+
+        Socket socket = new Socket();
+
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), _port), CONNECT_TIMEOUT);
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        return socket;
+    }
+
+    // read the token written by the daemon when it started
+    private String readToken() throws IOException {
+
+        try {
+            return new String(Files.readAllBytes(_tokenFile.toPath()), "US-ASCII").trim();
+        }
+        catch (NoSuchFileException e) {
+            // written by the daemon on start and deleted on stop
+            throw new ConnectException("Daemon token file not found: " + _tokenFile.getAbsolutePath());
+        }
+    }
+
+    private static DataOutputStream openOutput(Socket socket, String token) throws IOException {
+
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+
+        output.writeInt(LocalizerDaemon.PROTOCOL_VERSION);
+        output.writeUTF(token);
+        return output;
+    }
+
+    // open the response and read its status
+    private static DataInputStream openInput(Socket socket) throws IOException {
+
+        DataInputStream input = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+
+        if (input.readByte() != LocalizerDaemon.STATUS_OK)
+            throw new IOException("Daemon request failed: " + input.readUTF());
+
+        return input;
+    }
+}
@@ -0,0 +1,193 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads class files from a compiled classes directory, i.e. {@code build/classes/java/main}.
+ *
+ * <p>The directory tree is walked in parallel. Entry names are the file paths
+ * relative to the root directory using '/' as the separator, the same as the
+ * entry names the classes would have in a jar file.</p>
+ *
+ * <p>Files do not have a CRC, so the last modified time of each file is used in
+ * its place to detect changes.</p>
+ */
+class DirectoryClassSource extends ClassSource {
+
+    private final Path _root;
+
+    /**
+     * Constructor.
+     *
+     * @param directory  The root directory of the compiled classes.
+     */
+    DirectoryClassSource(File directory) {
+        _root = directory.toPath();
+    }
+
+    /**
+     * Get the file path of an entry.
+     *
+     * @param entryName  The entry name.
+     */
+    Path getPath(String entryName) {
+        return _root.resolve(entryName.replace('/', File.separatorChar));
+    }
+
+    /**
+     * Create an entry for a class file.
+     *
+     * @param file  The class file.
+     */
+    SourceEntry createEntry(Path file) throws IOException {
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        String name = _root.relativize(file).toString().replace(File.separatorChar, '/');
+
+        return new SourceEntry(name, attributes.lastModifiedTime().toMillis(), attributes.size());
+    }
+
+    @Override
+    List<SourceEntry> getEntries() throws IOException {
+
+        ForkJoinPool pool = new ForkJoinPool();
+
+        try {
+            List<SourceEntry> entries = pool.invoke(new WalkTask(_root));
+            sort(entries);
+            return entries;
+        }
+        catch (WalkException e) {
+
+            // the exception may be re-wrapped when rethrown across threads
+            Throwable cause = e;
+            while (!(cause instanceof IOException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            throw cause instanceof IOException
+                    ? (IOException) cause
+                    : new IOException("Failed to list directory: " + _root, e);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    ByteBuffer read(SourceEntry entry, ReadBuffer buffer) throws IOException {
+
+        FileChannel channel = FileChannel.open(getPath(entry.name), StandardOpenOption.READ);
+
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Class file is too large: " + entry.name);
+
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.bytes((int) size), 0, (int) size);
+
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) == -1)
+                    throw new IOException("Unexpected end of class file: " + entry.name);
+            }
+
+            bytes.flip();
+            return bytes;
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        // do nothing
+    }
+
+    // lists a directory, forking a task for each sub directory. never serialized.
+    @SuppressWarnings("serial")
+    private class WalkTask extends RecursiveTask<List<SourceEntry>> {
+
+        final Path directory;
+
+        WalkTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<SourceEntry> compute() {
+
+            List<SourceEntry> entries = new ArrayList<>(20);
+            List<WalkTask> tasks = new ArrayList<>(5);
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+
+                for (Path path : stream) {
+
+                    if (Files.isDirectory(path)) {
+                        WalkTask task = new WalkTask(path);
+                        task.fork();
+                        tasks.add(task);
+                    }
+                    else if (isClassEntry(path.getFileName().toString())) {
+                        entries.add(createEntry(path));
+                    }
+                }
+            }
+            catch (IOException e) {
+                throw new WalkException(e);
+            }
+
+            for (WalkTask task : tasks) {
+                entries.addAll(task.join());
+            }
+
+            return entries;
+        }
+    }
+
+    private static class WalkException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        WalkException(IOException cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,710 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects literals and groups duplicates by literal text within a memory budget.
+ *
+ * <p>Each literal has a position that gives its order. Literals can be added in any
+ * order and the result is the same as if they were added to a {@link LiteralTable}
+ * in position order.</p>
+ *
+ * <p>Literals are held in memory until their estimated size exceeds the budget, then
+ * they are sorted by text and written to a run file. Once all literals are added the
+ * runs are merged to group the duplicates, the groups are sorted by the position of
+ * their first literal in the same way and merged again.</p>
+ *
+ * <p>If the budget is never exceeded no files are written and the literals are
+ * grouped by a {@link LiteralTable}.</p>
+ *
+ * <p>Closing the table deletes its run files.</p>
+ */
+class ExternalLiteralTable implements Closeable {
+
+    // the number of runs merged at once
+    private static final int MAX_RUNS = 64;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // estimated overhead of a buffered literal, its list slot and sort index
+    private static final int LITERAL_OVERHEAD = 72;
+    private static final int OBJECT_OVERHEAD = 48;
+
+    private static final Comparator<Group> TEXT_ORDER = new Comparator<Group>() {
+        @Override
+        public int compare(Group o1, Group o2) {
+            int result = o1.text.compareTo(o2.text);
+            return result != 0 ? result : Long.compare(o1.position, o2.position);
+        }
+    };
+
+    private static final Comparator<Group> POSITION_ORDER = new Comparator<Group>() {
+        @Override
+        public int compare(Group o1, Group o2) {
+            return Long.compare(o1.position, o2.position);
+        }
+    };
+
+    private final long _memoryBudget;
+
+    private List<LiteralInfo> _literals = new ArrayList<>(50);
+    private long[] _positions = new long[50];
+    private boolean _isOrdered = true;
+    private List<Group> _groups = new ArrayList<>(50);
+    private long _bytes;
+    private long _count;
+
+    // runs sorted by text, then runs of groups sorted by position
+    private final List<File> _textRuns = new ArrayList<>(5);
+    private final List<File> _groupRuns = new ArrayList<>(5);
+    private final List<File> _files = new ArrayList<>(10);
+
+    private boolean _isFinished;
+    private List<LiteralInfo> _unique;
+    private int _uniqueCount;
+    private int _duplicateCount;
+
+    /**
+     * Constructor.
+     *
+     * @param memoryBudget  The estimated maximum number of bytes used by literals held
+     *                      in memory before they are written to run files.
+     */
+    ExternalLiteralTable(long memoryBudget) {
+        if (memoryBudget < 1)
+            throw new IllegalArgumentException("memoryBudget must be at least 1.");
+
+        _memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Get the number of literals added, including duplicates.
+     */
+    long size() {
+        return _count;
+    }
+
+    /**
+     * Get the number of run files written.
+     */
+    int getRunCount() {
+        return _files.size();
+    }
+
+    /**
+     * Get the number of unique literals. Valid after {@link #finish}.
+     */
+    int getUniqueCount() {
+        return _uniqueCount;
+    }
+
+    /**
+     * Get the number of literals that were duplicates of an added literal.
+     * Valid after {@link #finish}.
+     */
+    int getDuplicateCount() {
+        return _duplicateCount;
+    }
+
+    /**
+     * Add a literal after the literals already added.
+     *
+     * @param literal  The literal.
+     */
+    void add(LiteralInfo literal) throws IOException {
+        add(literal, _count);
+    }
+
+    /**
+     * Add a literal.
+     *
+     * @param literal   The literal.
+     * @param position  The position of the literal. Each literal must have a
+     *                  different position.
+     */
+    void add(LiteralInfo literal, long position) throws IOException {
+
+        if (_isFinished)
+            throw new IllegalStateException("Literals cannot be added after the table is finished.");
+
+        int size = _literals.size();
+
+        if (size == _positions.length)
+            _positions = Arrays.copyOf(_positions, size * 2);
+
+        if (size > 0 && position < _positions[size - 1])
+            _isOrdered = false;
+
+        _literals.add(literal);
+        _positions[size] = position;
+        _count++;
+        _bytes += estimateSize(literal);
+
+        if (_bytes > _memoryBudget)
+            spillLiterals();
+    }
+
+    /**
+     * Group the added literals by text.
+     *
+     * @return  The number of unique literals.
+     */
+    int finish() throws IOException {
+
+        if (_isFinished)
+            throw new IllegalStateException("The table is already finished.");
+
+        _isFinished = true;
+
+        if (_textRuns.isEmpty()) {
+
+            LiteralTable table = new LiteralTable(_literals.size());
+
+            for (int index : sortByPosition()) {
+                table.add(_literals.get(index));
+            }
+
+            _literals = null;
+            _positions = null;
+            _unique = table.getLiterals();
+            _uniqueCount = _unique.size();
+            _duplicateCount = table.getDuplicateCount();
+            return _uniqueCount;
+        }
+
+        if (!_literals.isEmpty())
+            spillLiterals();
+
+        _literals = null;
+        _positions = null;
+
+        merge(_textRuns, TEXT_ORDER, true, new GroupSink() {
+            @Override
+            public boolean accept(Group group) throws IOException {
+
+                _uniqueCount++;
+                _duplicateCount += group.literals.size() - 1;
+
+                _groups.add(group);
+                _bytes += estimateSize(group);
+
+                if (_bytes > _memoryBudget)
+                    spillGroups();
+
+                return true;
+            }
+        });
+
+        if (!_groupRuns.isEmpty() && !_groups.isEmpty())
+            spillGroups();
+
+        return _uniqueCount;
+    }
+
+    /**
+     * Get the unique literals in the order they were first added. Literals that
+     * have duplicates include the locations of each duplicate.
+     *
+     * <p>Holds every unique literal in memory.</p>
+     */
+    List<LiteralInfo> getLiterals() throws IOException {
+
+        if (_unique != null)
+            return _unique;
+
+        final List<LiteralInfo> result = new ArrayList<>(_uniqueCount);
+
+        readLiterals(new LiteralSink() {
+            @Override
+            public boolean accept(LiteralInfo literal) {
+                result.add(literal);
+                return true;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Give the unique literals to a sink in the order they were first added. Literals
+     * that have duplicates include the locations of each duplicate.
+     *
+     * @param sink  The sink. Returning false stops reading.
+     */
+    void readLiterals(final LiteralSink sink) throws IOException {
+
+        if (!_isFinished)
+            throw new IllegalStateException("The table is not finished.");
+
+        if (_unique != null) {
+            for (LiteralInfo literal : _unique) {
+                if (!sink.accept(literal))
+                    return;
+            }
+            return;
+        }
+
+        GroupSink groupSink = new GroupSink() {
+            @Override
+            public boolean accept(Group group) throws IOException {
+                return sink.accept(group.toLiteral());
+            }
+        };
+
+        if (_groupRuns.isEmpty()) {
+
+            Collections.sort(_groups, POSITION_ORDER);
+
+            for (Group group : _groups) {
+                if (!groupSink.accept(group))
+                    return;
+            }
+        }
+        else {
+            merge(_groupRuns, POSITION_ORDER, false, groupSink);
+        }
+    }
+
+    @Override
+    public void close() {
+
+        _literals = null;
+        _positions = null;
+        _groups = null;
+        _unique = null;
+
+        for (File file : _files) {
+            if (file.exists() && !file.delete())
+                file.deleteOnExit();
+        }
+    }
+
+    // sort the buffered literals by text and write them to a run file
+    private void spillLiterals() throws IOException {
+
+        final List<LiteralInfo> literals = _literals;
+        final long[] positions = _positions;
+
+        Integer[] order = new Integer[literals.size()];
+        for (int i=0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int result = literals.get(o1).getLiteral().compareTo(literals.get(o2).getLiteral());
+                return result != 0 ? result : Long.compare(positions[o1], positions[o2]);
+            }
+        });
+
+        RunWriter writer = new RunWriter(newRunFile(_textRuns));
+
+        try {
+            Group group = null;
+
+            for (Integer index : order) {
+
+                LiteralInfo literal = literals.get(index);
+
+                if (group != null && group.text.equals(literal.getLiteral())) {
+                    group.add(literal, positions[index]);
+                    continue;
+                }
+
+                if (group != null)
+                    writer.write(group);
+
+                group = new Group(literal.getLiteral(), 1);
+                group.add(literal, positions[index]);
+            }
+
+            if (group != null)
+                writer.write(group);
+        }
+        finally {
+            writer.close();
+        }
+
+        literals.clear();
+        _isOrdered = true;
+        _bytes = 0;
+    }
+
+    // get the indexes of the buffered literals in position order
+    private Integer[] sortByPosition() {
+
+        final long[] positions = _positions;
+
+        Integer[] order = new Integer[_literals.size()];
+        for (int i=0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        if (!_isOrdered) {
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Long.compare(positions[o1], positions[o2]);
+                }
+            });
+        }
+
+        return order;
+    }
+
+    // sort the buffered groups by position and write them to a run file
+    private void spillGroups() throws IOException {
+
+        Collections.sort(_groups, POSITION_ORDER);
+
+        RunWriter writer = new RunWriter(newRunFile(_groupRuns));
+
+        try {
+            for (Group group : _groups) {
+                writer.write(group);
+            }
+        }
+        finally {
+            writer.close();
+        }
+
+        _groups.clear();
+        _bytes = 0;
+    }
+
+    // merge runs. runs are merged in batches until few enough remain to merge at once.
+    private void merge(List<File> runs, Comparator<Group> comparator,
+                       boolean isCombined, GroupSink sink) throws IOException {
+
+        while (runs.size() > MAX_RUNS) {
+
+            List<File> batch = runs.subList(0, MAX_RUNS);
+            File merged = newRunFile(null);
+
+            final RunWriter writer = new RunWriter(merged);
+
+            try {
+                mergeRuns(new ArrayList<>(batch), comparator, isCombined, new GroupSink() {
+                    @Override
+                    public boolean accept(Group group) throws IOException {
+                        writer.write(group);
+                        return true;
+                    }
+                });
+            }
+            finally {
+                writer.close();
+            }
+
+            for (File file : batch) {
+                file.delete();
+            }
+
+            batch.clear();
+            runs.add(0, merged);
+        }
+
+        mergeRuns(runs, comparator, isCombined, sink);
+    }
+
+    // merge runs into a sink. groups with the same text are combined if specified.
+    private void mergeRuns(List<File> runs, final Comparator<Group> comparator,
+                           boolean isCombined, GroupSink sink) throws IOException {
+
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(), new Comparator<RunReader>() {
+            @Override
+            public int compare(RunReader o1, RunReader o2) {
+                return comparator.compare(o1.current, o2.current);
+            }
+        });
+
+        List<RunReader> readers = new ArrayList<>(runs.size());
+
+        try {
+            for (File run : runs) {
+
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+
+                if (reader.next())
+                    queue.add(reader);
+            }
+
+            Group pending = null;
+
+            while (!queue.isEmpty()) {
+
+                RunReader reader = queue.poll();
+                Group group = reader.current;
+
+                if (reader.next())
+                    queue.add(reader);
+
+                if (isCombined && pending != null && pending.text.equals(group.text)) {
+                    pending = pending.combine(group);
+                    continue;
+                }
+
+                if (pending != null && !sink.accept(pending))
+                    return;
+
+                pending = group;
+            }
+
+            if (pending != null)
+                sink.accept(pending);
+        }
+        finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    // create a run file and add it to a list of runs
+    private File newRunFile(List<File> runs) throws IOException {
+
+        File file = File.createTempFile("lang-keys-", ".run");
+        _files.add(file);
+
+        if (runs != null)
+            runs.add(file);
+
+        return file;
+    }
+
+    private static long estimateSize(LiteralInfo literal) {
+        return LITERAL_OVERHEAD + size(literal.getLiteral()) + size(literal.getRawComment())
+                + size(literal.getSource()) + size(literal.getRawClassName());
+    }
+
+    private static long estimateSize(Group group) {
+
+        long bytes = OBJECT_OVERHEAD * 2 + size(group.text);
+
+        for (LiteralInfo literal : group.literals) {
+            bytes += estimateSize(literal);
+        }
+
+        return bytes;
+    }
+
+    private static long size(String string) {
+        return string == null ? 0 : OBJECT_OVERHEAD + string.length() * 2L;
+    }
+
+    // receives groups from a merge
+    private interface GroupSink {
+        boolean accept(Group group) throws IOException;
+    }
+
+    // literals with the same text in position order
+    private static class Group {
+
+        final String text;
+        final List<LiteralInfo> literals;
+        long[] positions;
+
+        // the position of the first literal
+        long position;
+
+        Group(String text, int size) {
+            this.text = text;
+            this.literals = new ArrayList<>(size);
+            this.positions = new long[Math.max(1, size)];
+        }
+
+        // add a literal after the literals already added
+        void add(LiteralInfo literal, long literalPosition) {
+
+            int size = literals.size();
+
+            if (size == positions.length)
+                positions = Arrays.copyOf(positions, size * 2);
+
+            if (size == 0)
+                position = literalPosition;
+
+            literals.add(literal);
+            positions[size] = literalPosition;
+        }
+
+        // combine with a group of the same text from another run
+        Group combine(Group other) {
+
+            Group result = new Group(text, literals.size() + other.literals.size());
+
+            int i = 0;
+            int j = 0;
+
+            while (i < literals.size() || j < other.literals.size()) {
+
+                if (j == other.literals.size() ||
+                        (i < literals.size() && positions[i] < other.positions[j])) {
+
+                    result.add(literals.get(i), positions[i]);
+                    i++;
+                }
+                else {
+                    result.add(other.literals.get(j), other.positions[j]);
+                    j++;
+                }
+            }
+
+            return result;
+        }
+
+        LiteralInfo toLiteral() {
+            return literals.size() == 1
+                    ? literals.get(0)
+                    : new LiteralInfo(literals.get(0), literals.subList(1, literals.size()));
+        }
+    }
+
+    // writes groups to a run file. strings are written as chars so unpaired
+    // surrogates are kept.
+    private static class RunWriter implements Closeable {
+
+        final DataOutputStream stream;
+
+        RunWriter(File file) throws IOException {
+            stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        }
+
+        void write(Group group) throws IOException {
+
+            stream.writeBoolean(true);
+            writeString(group.text);
+            stream.writeInt(group.literals.size());
+
+            for (int i=0; i < group.literals.size(); i++) {
+
+                LiteralInfo literal = group.literals.get(i);
+
+                stream.writeLong(group.positions[i]);
+                writeString(literal.getRawComment());
+                writeString(literal.getSource());
+                writeString(literal.getRawClassName());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                stream.writeBoolean(false);
+            }
+            finally {
+                stream.close();
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+
+            if (string == null) {
+                stream.writeInt(-1);
+                return;
+            }
+
+            stream.writeInt(string.length());
+            stream.writeChars(string);
+        }
+    }
+
+    // reads groups from a run file
+    private static class RunReader implements Closeable {
+
+        final DataInputStream stream;
+        char[] chars = new char[64];
+        Group current;
+
+        RunReader(File file) throws IOException {
+            stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        }
+
+        // read the next group into current. false at the end of the run.
+        boolean next() throws IOException {
+
+            if (!stream.readBoolean()) {
+                current = null;
+                return false;
+            }
+
+            String text = readString();
+            int size = stream.readInt();
+
+            Group group = new Group(text, size);
+
+            for (int i=0; i < size; i++) {
+                long position = stream.readLong();
+                String comment = readString();
+                String source = readString();
+                String className = readString();
+
+                group.add(new LiteralInfo(text, comment, source, className), position);
+            }
+
+            current = group;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+
+        private String readString() throws IOException {
+
+            int length = stream.readInt();
+            if (length == -1)
+                return null;
+
+            if (chars.length < length)
+                chars = new char[Math.max(length, chars.length * 2)];
+
+            for (int i=0; i < length; i++) {
+                chars[i] = stream.readChar();
+            }
+
+            return new String(chars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Summary of a single key file generation.
+ */
+public class GeneratorReport {
+
+    /**
+     * Phases of a key file generation.
+     */
+    public enum Phase {
+        /**
+         * Opening the input and reading its entry list.
+         */
+        OPEN,
+        /**
+         * Reading and parsing all class entries, wall time.
+         */
+        SCAN,
+        /**
+         * Reading and inflating class entries, summed across worker threads.
+         */
+        READ,
+        /**
+         * Filtering and parsing class entries, summed across worker threads.
+         */
+        PARSE,
+        /**
+         * Reading the method code of classes that call a method with localizable
+         * parameters, wall time. Only done if the input declares such a method.
+         */
+        CALLS,
+        /**
+         * Parsing deferred classes and resolving annotation usages.
+         */
+        RESOLVE,
+        /**
+         * Removing duplicate literals.
+         */
+        DEDUP,
+        /**
+         * Writing the key files.
+         */
+        WRITE
+    }
+
+    private final AtomicLongArray _phaseNanos = new AtomicLongArray(Phase.values().length);
+
+    private final File _inputFile;
+    private final File _outputFile;
+
+    int classCount;
+    int skippedCount;
+    int reusedCount;
+    int literalCount;
+    int keyCount;
+    long inputBytes;
+    long readBytes;
+    int spillCount;
+    boolean isWritten;
+    long elapsedMillis;
+    Exception error;
+
+    /**
+     * Constructor.
+     *
+     * @param inputFile   The scanned input file.
+     * @param outputFile  The output key file.
+     */
+    GeneratorReport(File inputFile, File outputFile) {
+        _inputFile = inputFile;
+        _outputFile = outputFile;
+    }
+
+    /**
+     * Get the scanned input file.
+     */
+    public File getInputFile() {
+        return _inputFile;
+    }
+
+    /**
+     * Get the output key file.
+     *
+     * @return  The file or null if the literals were only scanned.
+     */
+    public File getOutputFile() {
+        return _outputFile;
+    }
+
+    /**
+     * Get the number of class files in the input.
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Get the number of class files skipped by the constant pool filter.
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Get the number of class files whose results were reused from the
+     * incremental index.
+     */
+    public int getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * Get the number of localizable literals found, including duplicates.
+     */
+    public int getLiteralCount() {
+        return literalCount;
+    }
+
+    /**
+     * Get the number of keys written to the key file.
+     */
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Get the size of the input jar file in bytes. Directories are 0.
+     */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * Get the number of uncompressed class file bytes read.
+     */
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    /**
+     * Get the number of sorted run files written because the literals
+     * exceeded the memory budget.
+     *
+     * @see LanguageGenerator#setMemoryBudget
+     */
+    public int getSpillCount() {
+        return spillCount;
+    }
+
+    /**
+     * Get the time spent in a phase in nanoseconds.
+     *
+     * @param phase  The phase.
+     */
+    public long getPhaseNanos(Phase phase) {
+        return _phaseNanos.get(phase.ordinal());
+    }
+
+    /**
+     * Determine if the key file was written.
+     */
+    public boolean isWritten() {
+        return isWritten;
+    }
+
+    /**
+     * Get the time taken in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Get the error that stopped the generation, if any.
+     *
+     * @return  The error or null.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Get the report as a JSON object.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(512);
+        appendJson(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Get reports as a JSON array.
+     *
+     * @param reports  The reports.
+     */
+    public static String toJson(List<GeneratorReport> reports) {
+
+        StringBuilder sb = new StringBuilder(512 * reports.size() + 2);
+        sb.append('[');
+
+        for (int i=0; i < reports.size(); i++) {
+            if (i > 0)
+                sb.append(',');
+
+            reports.get(i).appendJson(sb);
+        }
+
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * Add time to a phase.
+     *
+     * @param phase  The phase.
+     * @param nanos  The time in nanoseconds.
+     */
+    void addPhaseNanos(Phase phase, long nanos) {
+        _phaseNanos.addAndGet(phase.ordinal(), nanos);
+    }
+
+    /**
+     * Write the report to a stream. The error is not written.
+     *
+     * @param output  The output stream.
+     */
+    void write(DataOutput output) throws IOException {
+
+        output.writeUTF(_inputFile.getPath());
+        output.writeBoolean(_outputFile != null);
+
+        if (_outputFile != null)
+            output.writeUTF(_outputFile.getPath());
+
+        output.writeInt(classCount);
+        output.writeInt(skippedCount);
+        output.writeInt(reusedCount);
+        output.writeInt(literalCount);
+        output.writeInt(keyCount);
+        output.writeLong(inputBytes);
+        output.writeLong(readBytes);
+        output.writeBoolean(isWritten);
+        output.writeLong(elapsedMillis);
+
+        output.writeInt(_phaseNanos.length());
+
+        for (int i=0; i < _phaseNanos.length(); i++) {
+            output.writeLong(_phaseNanos.get(i));
+        }
+    }
+
+    /**
+     * Read a report written by {@link #write}.
+     *
+     * @param input  The input stream.
+     */
+    static GeneratorReport read(DataInput input) throws IOException {
+
+        File inputFile = new File(input.readUTF());
+        File outputFile = input.readBoolean() ? new File(input.readUTF()) : null;
+
+        GeneratorReport report = new GeneratorReport(inputFile, outputFile);
+
+        report.classCount = input.readInt();
+        report.skippedCount = input.readInt();
+        report.reusedCount = input.readInt();
+        report.literalCount = input.readInt();
+        report.keyCount = input.readInt();
+        report.inputBytes = input.readLong();
+        report.readBytes = input.readLong();
+        report.isWritten = input.readBoolean();
+        report.elapsedMillis = input.readLong();
+
+        int phases = input.readInt();
+        if (phases != report._phaseNanos.length())
+            throw new IOException("Unexpected number of report phases: " + phases);
+
+        for (int i=0; i < phases; i++) {
+            report._phaseNanos.set(i, input.readLong());
+        }
+
+        return report;
+    }
+
+    // append the report as a JSON object
+    private void appendJson(StringBuilder sb) {
+
+        sb.append("{\"input\":");
+        appendString(sb, _inputFile.getPath());
+        sb.append(",\"output\":");
+
+        if (_outputFile == null) {
+            sb.append("null");
+        }
+        else {
+            appendString(sb, _outputFile.getPath());
+        }
+
+        sb.append(",\"written\":").append(isWritten);
+        sb.append(",\"error\":");
+
+        if (error == null) {
+            sb.append("null");
+        }
+        else {
+            appendString(sb, String.valueOf(error.getMessage()));
+        }
+
+        sb.append(",\"classes\":").append(classCount);
+        sb.append(",\"skippedClasses\":").append(skippedCount);
+        sb.append(",\"reusedClasses\":").append(reusedCount);
+        sb.append(",\"literals\":").append(literalCount);
+        sb.append(",\"keys\":").append(keyCount);
+        sb.append(",\"inputBytes\":").append(inputBytes);
+        sb.append(",\"readBytes\":").append(readBytes);
+        sb.append(",\"spillRuns\":").append(spillCount);
+        sb.append(",\"elapsedMillis\":").append(elapsedMillis);
+        sb.append(",\"phaseNanos\":{");
+
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0)
+                sb.append(',');
+
+            sb.append('"').append(phase.name().toLowerCase(Locale.ENGLISH)).append("\":");
+            sb.append(getPhaseNanos(phase));
+        }
+
+        sb.append("}}");
+    }
+
+    // append a quoted and escaped JSON string
+    private static void appendString(StringBuilder sb, String text) {
+
+        sb.append('"');
+
+        for (int i=0; i < text.length(); i++) {
+
+            char ch = text.charAt(i);
+
+            switch (ch) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    }
+                    else {
+                        sb.append(ch);
+                    }
+            }
+        }
+
+        sb.append('"');
+    }
+}
@@ -0,0 +1,104 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Reads class entries using {@link JarFile}.
+ */
+class JarFileSource extends ClassSource {
+
+    private final JarFile _jarFile;
+
+    /**
+     * Constructor.
+     *
+     * @param file  The jar file.
+     */
+    JarFileSource(File file) throws IOException {
+        _jarFile = new JarFile(file, false);
+    }
+
+    @Override
+    List<SourceEntry> getEntries() {
+        return getEntries(false);
+    }
+
+    @Override
+    List<SourceEntry> getArchiveEntries() {
+        return getEntries(true);
+    }
+
+    @Override
+    ByteBuffer read(SourceEntry entry, ReadBuffer buffer) throws IOException {
+
+        JarEntry jarEntry = _jarFile.getJarEntry(entry.name);
+        if (jarEntry == null)
+            throw new IOException("Jar entry not found: " + entry.name);
+
+        InputStream stream = _jarFile.getInputStream(jarEntry);
+        try {
+            return buffer.readFully(stream, jarEntry.getSize());
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _jarFile.close();
+    }
+
+    // get the class entries or the nested jar entries
+    private List<SourceEntry> getEntries(boolean isArchive) {
+
+        Enumeration<JarEntry> enumeration = _jarFile.entries();
+        List<SourceEntry> entries = new ArrayList<>(isArchive ? 0 : 50);
+
+        while (enumeration.hasMoreElements()) {
+            JarEntry entry = enumeration.nextElement();
+
+            String name = entry.getName();
+
+            if (entry.isDirectory() || (isArchive ? !isArchiveEntry(name) : !isClassEntry(name)))
+                continue;
+
+            entries.add(new SourceEntry(name, entry.getCrc(), entry.getSize()));
+        }
+
+        sort(entries);
+        return entries;
+    }
+}
@@ -0,0 +1,478 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a copy of a jar file with entries added or replaced.
+ *
+ * <p>Existing entries are not inflated or compressed again. Their local headers and
+ * compressed data are copied as is, in file order, so the copy is close to a
+ * sequential read and write of the file. Only the added entries are compressed
+ * and the central directory is rewritten with the new entry offsets.</p>
+ *
+ * <p>Zip64 archives and split archives are not supported.</p>
+ */
+class JarUpdater {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int LOCAL_SIZE = 30;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private static final int VERSION_DEFLATE = 20;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_UTF8 = 0x800;
+
+    private final File _jarFile;
+    private final Map<String, byte[]> _entries = new LinkedHashMap<>(5);
+
+    /**
+     * Constructor.
+     *
+     * @param jarFile  The jar file to copy.
+     */
+    JarUpdater(File jarFile) {
+        _jarFile = jarFile;
+    }
+
+    /**
+     * Add or replace an entry.
+     *
+     * @param name   The entry name.
+     * @param bytes  The entry content.
+     */
+    void put(String name, byte[] bytes) {
+        _entries.put(name, bytes);
+    }
+
+    /**
+     * Add or replace an entry with the content of a file.
+     *
+     * @param name  The entry name.
+     * @param file  The file.
+     */
+    void put(String name, File file) throws IOException {
+        put(name, Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Write the updated jar file.
+     *
+     * @param outputFile  The output jar file. May be the jar file being copied.
+     *
+     * @throws ZipException  If the jar file is not a zip archive or uses unsupported features.
+     * @throws IOException
+     */
+    void write(File outputFile) throws IOException {
+
+        RandomAccessFile input = new RandomAccessFile(_jarFile, "r");
+        AtomicFile output = new AtomicFile(outputFile);
+
+        try {
+            FileChannel channel = input.getChannel();
+            FileChannel out = output.openChannel();
+
+            try {
+                write(channel, out);
+            }
+            finally {
+                out.close();
+            }
+
+            // release the input before it is replaced
+            input.close();
+            output.commit();
+        }
+        finally {
+            input.close();
+            output.discard();
+        }
+    }
+
+    private void write(FileChannel in, FileChannel out) throws IOException {
+
+        long length = in.size();
+
+        // end of central directory record and archive comment
+        int tailSize = (int) Math.min(length, END_SIZE + MAX_COMMENT);
+        ByteBuffer tail = read(in, length - tailSize, tailSize);
+        int end = findEndRecord(tail);
+
+        int total = tail.getShort(end + 10) & 0xFFFF;
+        long centralSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long centralOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+        if (total == 0xFFFF || centralSize == 0xFFFFFFFFL || centralOffset == 0xFFFFFFFFL)
+            throw new ZipException("Zip64 archives are not supported: " + _jarFile.getName());
+
+        if (centralOffset + centralSize > length - tailSize + end)
+            throw new ZipException("Invalid central directory: " + _jarFile.getName());
+
+        ByteBuffer central = read(in, centralOffset, (int) centralSize);
+        List<Entry> entries = readCentralDirectory(central, total, centralOffset);
+
+        List<Entry> sorted = sortByOffset(entries, centralOffset);
+
+        List<Entry> kept = new ArrayList<>(entries.size());
+        for (Entry entry : sorted) {
+            if (!_entries.containsKey(entry.name))
+                kept.add(entry);
+        }
+
+        if (kept.size() + _entries.size() > MAX_ENTRIES)
+            throw new ZipException("Too many entries for a zip archive without Zip64: " + _jarFile.getName());
+
+        // data before the first entry, i.e. a launcher stub
+        long start = sorted.isEmpty() ? centralOffset : sorted.get(0).localOffset;
+        transfer(in, 0, start, out);
+
+        long position = start;
+
+        // copy kept entries in file order, joining adjacent entries into one transfer
+        for (int i=0; i < kept.size();) {
+
+            Entry first = kept.get(i);
+            long runEnd = first.localEnd;
+            first.newOffset = position;
+            i++;
+
+            while (i < kept.size() && kept.get(i).localOffset == runEnd) {
+                Entry next = kept.get(i);
+                next.newOffset = position + (next.localOffset - first.localOffset);
+                runEnd = next.localEnd;
+                i++;
+            }
+
+            transfer(in, first.localOffset, runEnd - first.localOffset, out);
+            position += runEnd - first.localOffset;
+        }
+
+        // added entries
+        int dosTime = getDosTime(System.currentTimeMillis());
+        List<ByteBuffer> added = new ArrayList<>(_entries.size());
+
+        for (Map.Entry<String, byte[]> mapEntry : _entries.entrySet()) {
+
+            byte[] name = mapEntry.getKey().getBytes(UTF_8);
+            byte[] bytes = mapEntry.getValue();
+            byte[] compressed = deflate(bytes);
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+
+            ByteBuffer local = ByteBuffer.allocate(LOCAL_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            local.putInt(LOCAL_SIGNATURE);
+            local.putShort((short) VERSION_DEFLATE);
+            local.putShort((short) FLAG_UTF8);
+            local.putShort((short) METHOD_DEFLATED);
+            local.putInt(dosTime);
+            local.putInt((int) crc.getValue());
+            local.putInt(compressed.length);
+            local.putInt(bytes.length);
+            local.putShort((short) name.length);
+            local.putShort((short) 0);
+            local.put(name);
+            local.flip();
+
+            ByteBuffer record = ByteBuffer.allocate(CENTRAL_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            record.putInt(CENTRAL_SIGNATURE);
+            record.putShort((short) VERSION_DEFLATE);
+            record.putShort((short) VERSION_DEFLATE);
+            record.putShort((short) FLAG_UTF8);
+            record.putShort((short) METHOD_DEFLATED);
+            record.putInt(dosTime);
+            record.putInt((int) crc.getValue());
+            record.putInt(compressed.length);
+            record.putInt(bytes.length);
+            record.putShort((short) name.length);
+            record.putShort((short) 0); // extra
+            record.putShort((short) 0); // comment
+            record.putShort((short) 0); // disk
+            record.putShort((short) 0); // internal attributes
+            record.putInt(0);           // external attributes
+            record.putInt((int) position);
+            record.put(name);
+            record.flip();
+            added.add(record);
+
+            writeFully(out, local);
+            writeFully(out, ByteBuffer.wrap(compressed));
+            position += local.capacity() + compressed.length;
+        }
+
+        if (position > 0xFFFFFFFFL)
+            throw new ZipException("Updated archive requires Zip64: " + _jarFile.getName());
+
+        // central directory in the original order with the new offsets
+        long newCentralOffset = position;
+
+        for (Entry entry : entries) {
+
+            if (_entries.containsKey(entry.name))
+                continue;
+
+            ByteBuffer record = central.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            record.limit(entry.centralIndex + entry.centralLength);
+            record.position(entry.centralIndex);
+            record = record.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+            ByteBuffer copy = ByteBuffer.allocate(record.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+            copy.put(record);
+            copy.putInt(42, (int) entry.newOffset);
+            copy.flip();
+
+            writeFully(out, copy);
+            position += entry.centralLength;
+        }
+
+        for (ByteBuffer record : added) {
+            position += record.remaining();
+            writeFully(out, record);
+        }
+
+        if (position > 0xFFFFFFFFL)
+            throw new ZipException("Updated archive requires Zip64: " + _jarFile.getName());
+
+        // end record with the original archive comment
+        int commentLength = tail.getShort(end + 20) & 0xFFFF;
+        int entryCount = kept.size() + added.size();
+
+        ByteBuffer endRecord = ByteBuffer.allocate(END_SIZE + commentLength).order(ByteOrder.LITTLE_ENDIAN);
+        endRecord.putInt(END_SIGNATURE);
+        endRecord.putShort((short) 0);
+        endRecord.putShort((short) 0);
+        endRecord.putShort((short) entryCount);
+        endRecord.putShort((short) entryCount);
+        endRecord.putInt((int) (position - newCentralOffset));
+        endRecord.putInt((int) newCentralOffset);
+        endRecord.putShort((short) commentLength);
+
+        ByteBuffer comment = tail.duplicate();
+        comment.position(end + END_SIZE);
+        comment.limit(end + END_SIZE + commentLength);
+        endRecord.put(comment);
+        endRecord.flip();
+
+        writeFully(out, endRecord);
+    }
+
+    // read the central directory entries in directory order
+    private List<Entry> readCentralDirectory(ByteBuffer central, int total, long centralOffset)
+            throws ZipException {
+
+        List<Entry> entries = new ArrayList<>(total);
+        int index = 0;
+
+        for (int i=0; i < total; i++) {
+
+            if (index + CENTRAL_SIZE > central.limit() || central.getInt(index) != CENTRAL_SIGNATURE)
+                throw new ZipException("Invalid central directory entry: " + _jarFile.getName());
+
+            long localOffset = central.getInt(index + 42) & 0xFFFFFFFFL;
+            int nameLength = central.getShort(index + 28) & 0xFFFF;
+            int extraLength = central.getShort(index + 30) & 0xFFFF;
+            int commentLength = central.getShort(index + 32) & 0xFFFF;
+
+            if (localOffset == 0xFFFFFFFFL || localOffset >= centralOffset)
+                throw new ZipException("Invalid or Zip64 entry offset: " + _jarFile.getName());
+
+            byte[] name = new byte[nameLength];
+            ByteBuffer nameBuffer = central.duplicate();
+            nameBuffer.position(index + CENTRAL_SIZE);
+            nameBuffer.get(name);
+
+            int length = CENTRAL_SIZE + nameLength + extraLength + commentLength;
+            entries.add(new Entry(new String(name, UTF_8), index, length, localOffset));
+
+            index += length;
+        }
+
+        return entries;
+    }
+
+    // get the entries in file order. Each entry extends to the next local header,
+    // which includes any data descriptor, or to the central directory
+    private static List<Entry> sortByOffset(List<Entry> entries, long centralOffset) throws ZipException {
+
+        List<Entry> sorted = new ArrayList<>(entries);
+
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                return Long.compare(o1.localOffset, o2.localOffset);
+            }
+        });
+
+        for (int i=0; i < sorted.size(); i++) {
+
+            Entry entry = sorted.get(i);
+            entry.localEnd = i + 1 < sorted.size()
+                    ? sorted.get(i + 1).localOffset
+                    : centralOffset;
+
+            if (entry.localEnd - entry.localOffset < LOCAL_SIZE)
+                throw new ZipException("Invalid local header for entry: " + entry.name);
+        }
+
+        return sorted;
+    }
+
+    // find the end of central directory record in the tail of the file
+    private int findEndRecord(ByteBuffer tail) throws ZipException {
+
+        int limit = tail.limit();
+
+        for (int i = limit - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE &&
+                    i + END_SIZE + (tail.getShort(i + 20) & 0xFFFF) == limit) {
+
+                if ((tail.getShort(i + 4) & 0xFFFF) != 0)
+                    throw new ZipException("Split archives are not supported: " + _jarFile.getName());
+
+                return i;
+            }
+        }
+
+        throw new ZipException("Not a zip archive: " + _jarFile.getName());
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1)
+                throw new ZipException("Unexpected end of archive.");
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+
+        long transferred = 0;
+        while (transferred < count) {
+            long len = in.transferTo(position + transferred, count - transferred, out);
+            if (len <= 0)
+                throw new ZipException("Unexpected end of archive.");
+
+            transferred += len;
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            byte[] buffer = new byte[Math.max(64, bytes.length + bytes.length / 1000 + 64)];
+            int length = 0;
+
+            while (!deflater.finished()) {
+                if (length == buffer.length)
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+
+            return Arrays.copyOf(buffer, length);
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    // get the MS-DOS date and time of a timestamp
+    private static int getDosTime(long millis) {
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+
+        int year = Math.max(0, calendar.get(Calendar.YEAR) - 1980);
+
+        return (year << 25)
+                | ((calendar.get(Calendar.MONTH) + 1) << 21)
+                | (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | (calendar.get(Calendar.MINUTE) << 5)
+                | (calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    // central directory entry
+    private static class Entry {
+
+        final String name;
+        final int centralIndex;
+        final int centralLength;
+        final long localOffset;
+
+        long localEnd;
+        long newOffset;
+
+        Entry(String name, int centralIndex, int centralLength, long localOffset) {
+            this.name = name;
+            this.centralIndex = centralIndex;
+            this.centralLength = centralLength;
+            this.localOffset = localOffset;
+        }
+    }
+}
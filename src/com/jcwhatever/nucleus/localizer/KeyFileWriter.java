@@ -0,0 +1,58 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes localizable literals and their keys to a key file.
+ *
+ * <p>Output is written to a temporary file which replaces the key file when
+ * {@link #commit} is invoked. Closing the writer without committing discards
+ * the output and leaves any existing key file unchanged.</p>
+ */
+interface KeyFileWriter extends Closeable {
+
+    /**
+     * Begin the key file.
+     *
+     * @param version  The key file version.
+     */
+    void begin(String version) throws IOException;
+
+    /**
+     * Write a literal.
+     *
+     * @param key      The literal key.
+     * @param literal  The literal.
+     */
+    void write(int key, LiteralInfo literal) throws IOException;
+
+    /**
+     * Finish writing and replace the key file with the output.
+     */
+    void commit() throws IOException;
+}
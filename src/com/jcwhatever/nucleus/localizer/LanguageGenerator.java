@@ -23,48 +23,83 @@
 
 package com.jcwhatever.nucleus.localizer;
 
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.AnnotationNode;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldNode;
-import org.objectweb.asm.tree.MethodNode;
-
-import java.io.Console;
+import com.jcwhatever.nucleus.localizer.ClassRecord.AnnotationUsage;
+import com.jcwhatever.nucleus.localizer.GeneratorReport.Phase;
+
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintWriter;
-import java.util.ArrayDeque;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Deque;
-import java.util.Enumeration;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * Generates language key file from jar file.
+ * Generates language key file from jar file or compiled classes directory.
+ *
+ * <p>The literals can also be streamed to a {@link LiteralSink} without writing
+ * a key file using {@link #scan}.</p>
  */
 public class LanguageGenerator {
 
-    private static final String LOCALIZABLE_CLASSPATH =
-            "Lcom/jcwhatever/nucleus/managed/language/Localizable;";
+    private static final Logger LOGGER = Logger.getLogger(LanguageGenerator.class.getName());
 
-    private static Pattern NEW_LINE = Pattern.compile("\n");
+    // the kinds of literals of a class, in the order they are given out
+    private static final int USAGE_LITERALS = 0;
+    private static final int FIELD_LITERALS = 1;
+    private static final int CALL_LITERALS = 2;
+
+    private static final ThreadLocal<ConstantPoolFilter> FILTERS = new ThreadLocal<ConstantPoolFilter>() {
+        @Override
+        protected ConstantPoolFilter initialValue() {
+            return new ConstantPoolFilter();
+        }
+    };
 
     private final File _jarFile;
     private final File _outputFile;
     private final String _version;
 
+    private int _threadCount = Runtime.getRuntime().availableProcessors();
+    private boolean _isIncremental;
+    private Charset _charset = TextKeyFileWriter.DEFAULT_CHARSET;
+    private boolean _isBinary;
+    private int _nestedDepth = 3;
+    private File _indexFile;
+    private RecordCache _recordCache;
+    private List<File> _classpath = Collections.emptyList();
+    private File _classpathCacheFile;
+    private ShardMapper _shardMapper;
+    private File _updatedJarFile;
+    private long _memoryBudget;
+    private boolean _isQuiet;
+
     /**
      * Constructor.
      *
-     * @param jarFile     The jar file to parse for Localizable fields and annotations.
+     * <p>Creates a generator that can only {@link #scan} since it has no output
+     * key file.</p>
+     *
+     * @param jarFile  The jar file or compiled classes directory to parse for
+     *                 Localizable fields and annotations.
+     */
+    public LanguageGenerator(File jarFile) {
+        this(jarFile, null, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param jarFile     The jar file or compiled classes directory to parse for
+     *                    Localizable fields and annotations.
      * @param outputFile  The output key file.
      * @param version     The output file version.
      */
@@ -75,258 +110,1157 @@ public class LanguageGenerator {
         _version = version;
     }
 
+    /**
+     * Get the number of threads used to parse class files.
+     */
+    public int getThreadCount() {
+        return _threadCount;
+    }
+
+    /**
+     * Set the number of threads used to parse class files.
+     *
+     * <p>Defaults to the number of available processors.</p>
+     *
+     * @param threadCount  The number of threads. Must be at least 1.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount must be at least 1.");
+
+        _threadCount = threadCount;
+    }
+
+    /**
+     * Determine if incremental scanning is enabled.
+     */
+    public boolean isIncremental() {
+        return _isIncremental;
+    }
+
+    /**
+     * Set incremental scanning.
+     *
+     * <p>When enabled, the results extracted from each class entry are saved to an
+     * index file, by default next to the output file. On the next run, only class
+     * entries whose CRC or size has changed are read again.</p>
+     *
+     * <p>Annotation usages are stored unresolved and resolved on every run so
+     * changes to an annotation class are applied to the classes that use it.</p>
+     *
+     * <p>Ignored if the generator has no output file or index file.</p>
+     *
+     * @param isIncremental  True to enable.
+     */
+    public void setIncremental(boolean isIncremental) {
+        _isIncremental = isIncremental;
+    }
+
+    /**
+     * Get the charset used to write the key file.
+     */
+    public Charset getCharset() {
+        return _charset;
+    }
+
+    /**
+     * Set the charset used to write the key file.
+     *
+     * <p>Defaults to UTF-16.</p>
+     *
+     * @param charset  The charset.
+     */
+    public void setCharset(Charset charset) {
+        if (charset == null)
+            throw new IllegalArgumentException("charset cannot be null.");
+
+        _charset = charset;
+    }
+
+    /**
+     * Determine if a binary key file is written with the text key file.
+     */
+    public boolean isBinary() {
+        return _isBinary;
+    }
+
+    /**
+     * Set writing a binary key file with the text key file.
+     *
+     * <p>The binary key file is written next to the text key file with the
+     * ".bin" extension and can be read with {@link MappedKeyFile}.</p>
+     *
+     * @param isBinary  True to enable.
+     */
+    public void setBinary(boolean isBinary) {
+        _isBinary = isBinary;
+    }
+
+    /**
+     * Get the binary key file written when enabled.
+     *
+     * @return  The file or null if the generator has no output file.
+     */
+    public File getBinaryFile() {
+        return _outputFile != null
+                ? BinaryKeyFileWriter.getBinaryFile(_outputFile)
+                : null;
+    }
+
+    /**
+     * Get the maximum depth of nested jar files that are scanned.
+     */
+    public int getNestedDepth() {
+        return _nestedDepth;
+    }
+
+    /**
+     * Set the maximum depth of nested jar files that are scanned.
+     *
+     * <p>Jar files inside the scanned jar file are read in memory and their classes
+     * are scanned along with the outer classes. The comment of each literal found in
+     * a nested jar includes the path of the jar.</p>
+     *
+     * <p>Defaults to 3.</p>
+     *
+     * @param nestedDepth  The depth. 1 only scans jar files directly inside the scanned
+     *                     jar file, 0 disables scanning nested jar files.
+     */
+    public void setNestedDepth(int nestedDepth) {
+        if (nestedDepth < 0)
+            throw new IllegalArgumentException("nestedDepth cannot be negative.");
+
+        _nestedDepth = nestedDepth;
+    }
+
+    /**
+     * Get the mapper used to split the key file into shards.
+     *
+     * @return  The mapper or null if a single key file is written.
+     */
+    public ShardMapper getShardMapper() {
+        return _shardMapper;
+    }
+
+    /**
+     * Set the mapper used to split the key file into shards.
+     *
+     * <p>When set, literals are written to a key file shard for each shard name
+     * given by the mapper instead of the output file, along with a manifest of the
+     * key range reserved for each shard. A shard keeps its key range between runs
+     * and is only rewritten when its literals change. See {@link #getManifestFile}.</p>
+     *
+     * <p>Duplicate literals are written to the shard of their first location.</p>
+     *
+     * @param shardMapper  The mapper or null to write a single key file.
+     */
+    public void setShardMapper(ShardMapper shardMapper) {
+        _shardMapper = shardMapper;
+    }
+
+    /**
+     * Get the manifest file written when the key file is split into shards.
+     * The shards are written next to it.
+     *
+     * <p>For the output file lang.keys.txt, the manifest is lang.keys.manifest and
+     * the shards are lang.keys.&lt;shard&gt;.txt.</p>
+     *
+     * @return  The file or null if the generator has no output file.
+     */
+    public File getManifestFile() {
+        return _outputFile != null
+                ? ShardWriter.getManifestFile(_outputFile)
+                : null;
+    }
+
+    /**
+     * Get the jar file that is written with the key files added to the scanned jar file.
+     *
+     * @return  The file or null if no jar file is written.
+     */
+    public File getUpdatedJarFile() {
+        return _updatedJarFile;
+    }
+
+    /**
+     * Set the jar file that is written with the key files added to the scanned jar file.
+     *
+     * <p>The updated jar file is a copy of the scanned jar file with the key file, and
+     * the binary key file or the shard files if enabled, added to its root directory
+     * or replacing existing entries of the same name. The entries of the scanned jar
+     * file are copied without being inflated or compressed again.</p>
+     *
+     * <p>The scanned jar file can be updated in place by setting the scanned jar file.
+     * Nothing is written if no literals are found.</p>
+     *
+     * @param updatedJarFile  The jar file or null to not write one. Requires the scanned
+     *                        input to be a jar file.
+     */
+    public void setUpdatedJarFile(File updatedJarFile) {
+        _updatedJarFile = updatedJarFile;
+    }
+
+    /**
+     * Get the estimated maximum number of bytes used by literals held in memory.
+     *
+     * @return  The number of bytes or 0 if not limited.
+     */
+    public long getMemoryBudget() {
+        return _memoryBudget;
+    }
+
+    /**
+     * Set the estimated maximum number of bytes used by literals held in memory.
+     *
+     * <p>When the literals found exceed the budget they are sorted and written to
+     * temporary run files. Duplicates are then removed and the key file written by
+     * merging the run files, which gives the same key file as when the literals are
+     * held in memory.</p>
+     *
+     * <p>Field and method argument literals are given to the budget as soon as their
+     * class is read. The annotation usages of classes are held until the annotations
+     * are known. The binary key file, key file shards and the incremental index are
+     * built in memory and are not limited.</p>
+     *
+     * @param memoryBudget  The number of bytes or 0 to not limit.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0)
+            throw new IllegalArgumentException("memoryBudget cannot be negative.");
+
+        _memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Determine if progress messages are not printed.
+     */
+    public boolean isQuiet() {
+        return _isQuiet;
+    }
+
+    /**
+     * Set not printing progress messages to the console, i.e. when many
+     * generators run at once. Warnings are still logged.
+     *
+     * @param isQuiet  True to disable progress messages.
+     */
+    public void setQuiet(boolean isQuiet) {
+        _isQuiet = isQuiet;
+    }
+
+    /**
+     * Get the index file used for incremental scanning.
+     *
+     * @return  The file or null if the generator has no output file or index file.
+     */
+    public File getIndexFile() {
+        if (_indexFile != null)
+            return _indexFile;
+
+        return _outputFile != null
+                ? new File(_outputFile.getPath() + ".index")
+                : null;
+    }
+
+    /**
+     * Set the index file used for incremental scanning.
+     *
+     * <p>Defaults to the output file path with the ".index" extension added.</p>
+     *
+     * @param indexFile  The index file or null to use the default.
+     */
+    public void setIndexFile(File indexFile) {
+        _indexFile = indexFile;
+    }
+
+    /**
+     * Get the jar files and classes directories searched for localizable
+     * annotations that are not in the scanned jar file.
+     */
+    public List<File> getClasspath() {
+        return Collections.unmodifiableList(_classpath);
+    }
+
+    /**
+     * Set the jar files and classes directories searched for localizable
+     * annotations that are not in the scanned jar file.
+     *
+     * <p>Only the annotations used by scanned classes are looked up. The class names
+     * of each jar file and the lookup results are cached in the classpath cache file,
+     * if the generator has an output file.</p>
+     *
+     * @param classpath  The jar files and directories in lookup order.
+     */
+    public void setClasspath(List<File> classpath) {
+        if (classpath == null)
+            throw new IllegalArgumentException("classpath cannot be null.");
+
+        _classpath = new ArrayList<>(classpath);
+    }
+
+    /**
+     * Get the file used to cache classpath lookups.
+     *
+     * @return  The file or null if the generator has no output file or cache file.
+     */
+    public File getClasspathCacheFile() {
+        if (_classpathCacheFile != null)
+            return _classpathCacheFile;
+
+        return _outputFile != null
+                ? new File(_outputFile.getPath() + ".classpath")
+                : null;
+    }
+
+    /**
+     * Set the file used to cache classpath lookups.
+     *
+     * <p>Defaults to the output file path with the ".classpath" extension added.</p>
+     *
+     * @param classpathCacheFile  The cache file or null to use the default.
+     */
+    public void setClasspathCacheFile(File classpathCacheFile) {
+        _classpathCacheFile = classpathCacheFile;
+    }
+
+    /**
+     * Set a cache of class records to use instead of the index file.
+     *
+     * @param recordCache  The cache or null to use the index file if incremental.
+     */
+    void setRecordCache(RecordCache recordCache) {
+        _recordCache = recordCache;
+    }
+
     /**
      * Generate key file.
+     *
+     * <p>An existing key file is overwritten.</p>
+     *
+     * @return  A summary of the generation.
+     *
+     * @throws IllegalStateException  If the generator has no output file or if an updated
+     *                                jar file is set and the input is not a jar file.
      */
-    public void generate() throws IOException {
+    public GeneratorReport generate() throws IOException {
 
-        // check if file exists
-        if (_outputFile.exists()) {
+        if (_outputFile == null)
+            throw new IllegalStateException("The generator has no output file.");
 
-            Console console = System.console();
-            if (console != null) {
+        if (_updatedJarFile != null && !_jarFile.isFile())
+            throw new IllegalStateException("An updated jar file requires a jar file input.");
 
-                // find out if user wants to overwrite existing file.
-                while (true) {
-                    System.out.print("Language key file already exists. Overwrite? (Y or N)");
+        GeneratorReport report = new GeneratorReport(_jarFile, _outputFile);
+        long start = System.currentTimeMillis();
 
-                    String input = console.readLine();
+        generate(report);
 
-                    if (input.equalsIgnoreCase("Y")) {
-                        break;
-                    }
-                    else if (input.equalsIgnoreCase("N")) {
-                        return;
-                    }
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    /**
+     * Scan for localizable literals without writing a key file.
+     *
+     * <p>Literals are given to the sink class by class, in entry name order, once
+     * the annotation classes of the jar file are known. Literals are not de-duplicated.
+     * Nothing is written to the console.</p>
+     *
+     * @param sink  The sink that receives the literals. Returning false from
+     *              {@link LiteralSink#accept} stops the scan.
+     *
+     * @return  A summary of the scan. The literal count is the number of literals
+     *          given to the sink.
+     */
+    public GeneratorReport scan(final LiteralSink sink) throws IOException {
+        if (sink == null)
+            throw new IllegalArgumentException("sink cannot be null.");
+
+        GeneratorReport report = new GeneratorReport(_jarFile, _outputFile);
+        long start = System.currentTimeMillis();
+
+        scan(report, new PositionSink() {
+            @Override
+            public boolean accept(LiteralInfo literal, long position) throws IOException {
+                return sink.accept(literal);
+            }
+        }, false);
+
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    private void generate(GeneratorReport report) throws IOException {
+
+        progress("Generating...");
+        progress("Opening: " + _jarFile.getAbsolutePath());
+
+        final ExternalLiteralTable table = new ExternalLiteralTable(
+                _memoryBudget > 0 ? _memoryBudget : Long.MAX_VALUE);
+
+        try {
+            // the table puts the literals back in position order
+            scan(report, new PositionSink() {
+                @Override
+                public boolean accept(LiteralInfo literal, long position) throws IOException {
+                    table.add(literal, position);
+                    return true;
                 }
+            }, true);
+
+            if (_isIncremental || _recordCache != null) {
+                progress("Reused " + report.reusedCount + " of " + report.classCount
+                        + " classes from " + (_recordCache != null ? "cache." : "index."));
             }
-        }
 
-        System.out.println("Generating...");
+            progress("Constant pool filter skipped " + report.skippedCount + " of "
+                    + report.classCount + " classes.");
 
+            if (table.size() == 0) {
+                progress("No localizable string literals found. exiting.");
+                return;
+            }
 
-        List<LiteralInfo> literals = getStringLiterals(_jarFile);
-        Map<LiteralInfo, LiteralInfo> added = new HashMap<>(literals.size());
+            progress(table.size() + " literals found.");
 
-        if (literals.size() == 0) {
-            System.out.println("No localizable string literals found. exiting.");
-            return;
-        }
+            long start = System.nanoTime();
+            int keyCount = table.finish();
+            report.addPhaseNanos(Phase.DEDUP, System.nanoTime() - start);
 
-        System.out.println(literals.size() + " literals found.");
-        System.out.println("Opening file: " + _outputFile.getName());
+            if (table.getDuplicateCount() > 0) {
+                progress(table.getDuplicateCount() + " duplicate literals merged into "
+                        + "the entries of their first location.");
+            }
 
-        PrintWriter writer = new PrintWriter(_outputFile, "UTF-16");
+            if (table.getRunCount() > 0) {
+                progress("Memory budget exceeded, merged " + table.getRunCount()
+                        + " sorted run files.");
+            }
 
-        writer.write("version> ");
-        writer.write(_version);
-        writer.write("\n\n");
+            report.spillCount = table.getRunCount();
 
-        for (int i=0, j=0; i < literals.size(); i++) {
+            start = System.nanoTime();
 
-            LiteralInfo info = literals.get(i);
+            List<File> files = new ArrayList<>(2);
 
-            if (added.containsKey(info)) {
+            if (_shardMapper != null) {
+                ShardWriter writer = new ShardWriter(_outputFile, _version, _charset, _isBinary, _threadCount);
+                int written = writer.write(table.getLiterals(), _shardMapper);
 
-                LiteralInfo current = added.get(info);
+                progress("Wrote " + written + " of " + writer.getShardCount() + " key file shards.");
+                files.addAll(writer.getFiles());
+            }
+            else {
+                writeKeyFile(openWriters(_outputFile, _charset, _isBinary, _isQuiet), _version, table);
 
-                System.out.println("[DUPLICATE DETECTED] [SKIPPED]");
-                System.out.println("    added: " + current.getComment());
-                System.out.println("    duplicate: " + info.getComment());
-                continue;
+                files.add(_outputFile);
+                if (_isBinary)
+                    files.add(BinaryKeyFileWriter.getBinaryFile(_outputFile));
             }
 
-            added.put(info, info);
+            if (_updatedJarFile != null) {
+
+                JarUpdater updater = new JarUpdater(_jarFile);
 
-            // write comment
-            writer.write("# ");
-            writer.write(info.getComment());
-            writer.write('\n');
+                for (File file : files) {
+                    updater.put(file.getName(), file);
+                }
+
+                progress("Writing jar file: " + _updatedJarFile.getName());
+                updater.write(_updatedJarFile);
+            }
 
-            // write string literal key
-            Matcher matcher = NEW_LINE.matcher(info.getLiteral());
-            writer.write(String.valueOf(j));
-            writer.write("> ");
-            writer.write(matcher.replaceAll("\\n"));
-            writer.write('\n');
-            writer.write('\n');
-            j++;
+            report.addPhaseNanos(Phase.WRITE, System.nanoTime() - start);
+
+            report.keyCount = keyCount;
+            report.isWritten = true;
+        }
+        finally {
+            table.close();
         }
 
-        writer.close();
+        progress("Finished.");
+    }
+
+    // remove duplicate literals. the first of each is kept and lists the locations of the others.
+    // prints nothing, callers compare the sizes if they report the number merged.
+    static List<LiteralInfo> removeDuplicates(List<LiteralInfo> literals) {
+
+        LiteralTable table = new LiteralTable(literals.size());
+
+        for (LiteralInfo info : literals) {
+            table.add(info);
+        }
 
-        System.out.print("Finished.");
+        return table.getLiterals();
     }
 
-    private boolean isLocalizableAnnotation(String annotationName) {
-        return annotationName.equals(LOCALIZABLE_CLASSPATH);
+    // open the writers of the key file and, if enabled, its binary companion
+    static List<KeyFileWriter> openWriters(File outputFile, Charset charset,
+                                           boolean isBinary) throws IOException {
+        return openWriters(outputFile, charset, isBinary, false);
     }
 
-    // get localizable string literals from class files
-    private List<LiteralInfo> getStringLiterals(File file) throws IOException {
+    // open the writers of the key file and, if enabled, its binary companion
+    private static List<KeyFileWriter> openWriters(File outputFile, Charset charset,
+                                                   boolean isBinary, boolean isQuiet) throws IOException {
 
-        System.out.println("Opening jar file: " + file.getAbsolutePath());
+        List<KeyFileWriter> writers = new ArrayList<>(2);
 
-        JarFile jarFile = new JarFile(file);
-        Enumeration<JarEntry> entries = jarFile.entries();
-        List<LiteralInfo> results = new ArrayList<>(50);
+        if (!isQuiet)
+            System.out.println("Opening file: " + outputFile.getName());
+        writers.add(new TextKeyFileWriter(outputFile, charset));
 
-        Deque<ClassNode> parseQueue = new ArrayDeque<>(10);
-        Map<String, AnnotationInfo> annotations = new HashMap<>(10);
+        if (isBinary) {
+            File binaryFile = BinaryKeyFileWriter.getBinaryFile(outputFile);
 
-        while (entries.hasMoreElements()) {
-            JarEntry entry = entries.nextElement();
+            if (!isQuiet)
+                System.out.println("Opening file: " + binaryFile.getName());
 
-            if (entry.isDirectory() || !entry.getName().endsWith(".class"))
-                continue;
+            try {
+                writers.add(new BinaryKeyFileWriter(binaryFile));
+            }
+            catch (IOException e) {
+                writers.get(0).close();
+                throw e;
+            }
+        }
 
-            InputStream stream = jarFile.getInputStream(entry);
-            ClassReader reader = new ClassReader(stream);
+        return writers;
+    }
 
-            ClassNode classNode = new ClassNode();
-            reader.accept(classNode, 0);
+    // write literals and their keys to each writer
+    static void writeKeyFile(List<KeyFileWriter> writers, String version,
+                             List<LiteralInfo> literals, int[] keys) throws IOException {
 
-            // check if class is an annotation
-            if (!classNode.interfaces.isEmpty() &&
-                    classNode.interfaces.contains("java/lang/annotation/Annotation")) {
+        try {
+            for (KeyFileWriter writer : writers) {
 
-                // get annotation first so they can be applied in classes
-                AnnotationInfo info = parseAnnotation(classNode);
-                if (info == null)
-                    continue;
+                writer.begin(version);
 
-                annotations.put(info.className, info);
+                for (int i=0; i < literals.size(); i++) {
+                    writer.write(keys[i], literals.get(i));
+                }
             }
-            else {
-                // set aside non-annotation classes for now
-                parseQueue.addLast(classNode);
+
+            for (KeyFileWriter writer : writers) {
+                writer.commit();
+            }
+        }
+        finally {
+            for (KeyFileWriter writer : writers) {
+                writer.close();
             }
+        }
+    }
+
+    // write the unique literals of a table to each writer. keys are given in table order.
+    static void writeKeyFile(final List<KeyFileWriter> writers, String version,
+                             ExternalLiteralTable table) throws IOException {
+
+        try {
+            for (KeyFileWriter writer : writers) {
+                writer.begin(version);
+            }
+
+            table.readLiterals(new LiteralSink() {
+
+                int key;
+
+                @Override
+                public boolean accept(LiteralInfo literal) throws IOException {
+
+                    for (KeyFileWriter writer : writers) {
+                        writer.write(key, literal);
+                    }
 
-            stream.close();
+                    key++;
+                    return true;
+                }
+            });
+
+            for (KeyFileWriter writer : writers) {
+                writer.commit();
+            }
         }
+        finally {
+            for (KeyFileWriter writer : writers) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Check a class file and extract its record if it can contain localizable data.
+     *
+     * @param entry  The class entry.
+     * @param bytes  The class file bytes.
+     */
+    static ClassRecord scanClass(SourceEntry entry, ByteBuffer bytes) {
+        return scanClass(entry, bytes, false);
+    }
+
+    /**
+     * Check a class file and extract its record if it can contain localizable data.
+     *
+     * @param entry            The class entry.
+     * @param bytes            The class file bytes.
+     * @param hasMethodHashes  True to keep the hashes of the methods the class references,
+     *                         even if the class has no localizable data.
+     */
+    static ClassRecord scanClass(SourceEntry entry, ByteBuffer bytes, boolean hasMethodHashes) {
+
+        ConstantPoolFilter filter = FILTERS.get();
+        ClassRecord record;
+
+        switch (filter.check(bytes)) {
+            case ConstantPoolFilter.SKIP:
+                record = ClassRecord.SKIPPED;
+                break;
 
-        // parse classes
-        while (!parseQueue.isEmpty()) {
-            ClassNode node = parseQueue.removeFirst();
-            results.addAll(parseClass(node, annotations));
+            case ConstantPoolFilter.DEFER:
+                record = ClassRecord.deferred(
+                        entry.name, filter.getClassName(), filter.getDescriptorHashes());
+                break;
+
+            default:
+                record = LiteralExtractor.extract(entry.name, bytes);
+                break;
         }
 
-        jarFile.close();
+        if (!hasMethodHashes)
+            return record;
+
+        // null if the constant pool could not be read, the class might call anything
+        int[] methodHashes = filter.getMethodHashes(bytes);
 
-        return results;
+        if (record == ClassRecord.SKIPPED) {
+            return methodHashes != null && methodHashes.length == 0
+                    ? ClassRecord.SKIPPED
+                    : ClassRecord.caller(entry.name, methodHashes);
+        }
+
+        record.methodHashes = methodHashes;
+        return record;
     }
 
-    // parse an annotation for localizable methods
-    private AnnotationInfo parseAnnotation(ClassNode classNode) {
+    // give localizable string literals from class files to a sink. if streamed, literals
+    // that do not depend on annotations are given out as soon as their class is read
+    // instead of in entry order, and the sink cannot stop the scan.
+    private void scan(final GeneratorReport report, final PositionSink sink,
+                      final boolean isStreamed) throws IOException {
 
-        @SuppressWarnings("unchecked")
-        List<MethodNode> methods = (List<MethodNode>)classNode.methods;
-        if (methods == null)
-            return null;
+        File file = _jarFile;
+        long start = System.nanoTime();
 
-        List<String> methodNames = new ArrayList<>(5);
+        final ClassSource source = _nestedDepth > 0
+                ? new NestedJarSource(ClassSource.open(file), _nestedDepth)
+                : ClassSource.open(file);
 
-        for (MethodNode node : methods) {
+        final File indexFile = getIndexFile();
+        final ScanIndex index = _recordCache == null && _isIncremental && indexFile != null
+                ? ScanIndex.load(indexFile)
+                : null;
 
-            @SuppressWarnings("unchecked")
-            List<AnnotationNode> annotationNodes = node.visibleAnnotations;
-            if (annotationNodes == null)
-                continue;
+        if (index != null && index.isUnreadable())
+            progress("Index file could not be read, all classes will be scanned: " + indexFile.getName());
 
-            for (AnnotationNode annotation : annotationNodes) {
-                if (!isLocalizableAnnotation(annotation.desc))
-                    continue;
+        final RecordCache cache = _recordCache != null ? _recordCache : index;
+
+        report.addPhaseNanos(Phase.OPEN, System.nanoTime() - start);
+
+        if (file.isFile())
+            report.inputBytes = file.length();
 
-                System.out.println("@Localizable Annotation method found: " + node.name + ' ' + classNode.name);
+        final List<ClassRecord> parseQueue = new ArrayList<>(10);
+        final List<SourceEntry> parseEntries = new ArrayList<>(10);
+        final List<Integer> parseIndexes = new ArrayList<>(10);
+        final List<SourceEntry> callerEntries = new ArrayList<>(10);
+        final List<Integer> callerIndexes = new ArrayList<>(10);
+        final List<int[]> callerHashes = new ArrayList<>(10);
+        final Map<String, AnnotationInfo> annotations = new HashMap<>(10);
+        final Set<Integer> annotationHashes = new HashSet<>(10);
+        final int[] skipped = new int[1];
+        final int[] position = new int[1];
+        int total;
 
-                methodNames.add(node.name);
+        ScanPipeline<ClassRecord> pipeline = new ScanPipeline<>(_threadCount);
+
+        try {
+            start = System.nanoTime();
+
+            total = pipeline.run(source, cache, new ScanPipeline.Parser<ClassRecord>() {
+
+                @Override
+                public ClassRecord parse(SourceEntry entry, ByteBuffer bytes) {
+                    return scanClass(entry, bytes, true);
+                }
+
+            }, new ScanPipeline.Collector<ClassRecord>() {
+
+                @Override
+                public void collect(SourceEntry entry, ClassRecord record) throws IOException {
+
+                    if (cache != null)
+                        cache.put(entry, record);
+
+                    int index = position[0]++;
+
+                    // keep what is needed to find call literals once the localizable methods are known
+                    if (record.mayCall(null)) {
+                        callerEntries.add(entry);
+                        callerIndexes.add(index);
+                        callerHashes.add(record.methodHashes);
+                    }
+
+                    if (record.isSkipped()) {
+                        skipped[0]++;
+                        return;
+                    }
+
+                    if (record.annotation != null) {
+                        // get annotation first so they can be applied in classes
+                        annotations.put(record.annotation.className, record.annotation);
+                        annotationHashes.add(
+                                ConstantPoolFilter.hash('L' + record.annotation.className + ';'));
+                    }
+                    else if (!record.isEmpty()) {
+
+                        if (isStreamed) {
+                            // field literals do not need annotations, only keep what does
+                            emit(record.fieldLiterals, index, FIELD_LITERALS, report, sink);
+
+                            record = record.withoutLiterals();
+                            if (record.isEmpty())
+                                return;
+                        }
+
+                        // set aside non-annotation classes for now
+                        parseQueue.add(record);
+                        parseEntries.add(entry);
+                        parseIndexes.add(index);
+                    }
+                }
+            });
+
+            report.addPhaseNanos(Phase.SCAN, System.nanoTime() - start);
+
+            Map<String, LocalizableMethod> methods = getLocalizableMethods(parseQueue);
+
+            // jars without localizable method parameters are not read again
+            if (!methods.isEmpty()) {
+                start = System.nanoTime();
+                findCallLiterals(source, pipeline, cache, methods,
+                        callerEntries, callerIndexes, callerHashes,
+                        parseQueue, parseEntries, parseIndexes, isStreamed ? sink : null, report);
+                report.addPhaseNanos(Phase.CALLS, System.nanoTime() - start);
             }
+
+            callerEntries.clear();
+            callerIndexes.clear();
+            callerHashes.clear();
+
+            report.addPhaseNanos(Phase.READ, pipeline.getReadNanos());
+            report.addPhaseNanos(Phase.PARSE, pipeline.getParseNanos());
+            report.readBytes = pipeline.getReadBytes();
+
+            start = System.nanoTime();
+
+            if (!_classpath.isEmpty())
+                findClasspathAnnotations(parseQueue, annotations, annotationHashes);
+
+            // parse deferred classes that might use a localizable annotation and
+            // resolve the literals of each class
+            ReadBuffer buffer = new ReadBuffer();
+
+            try {
+                for (int i=0; i < parseQueue.size(); i++) {
+
+                    ClassRecord record = parseQueue.get(i);
+
+                    // release records as they are resolved
+                    parseQueue.set(i, null);
+
+                    if (record.isDeferred()) {
+
+                        if (!record.mayUse(annotationHashes)) {
+                            skipped[0]++;
+                            continue;
+                        }
+
+                        SourceEntry entry = parseEntries.get(i);
+                        ByteBuffer bytes = source.read(entry, buffer);
+
+                        report.readBytes += bytes.remaining();
+
+                        int[] methodHashes = record.methodHashes;
+                        record = LiteralExtractor.extract(entry.name, bytes);
+                        record.methodHashes = methodHashes;
+
+                        if (cache != null)
+                            cache.put(entry, record);
+                    }
+
+                    if (!emit(record, annotations, parseIndexes.get(i), report, sink))
+                        break;
+                }
+            }
+            finally {
+                buffer.close();
+            }
+
+            report.addPhaseNanos(Phase.RESOLVE, System.nanoTime() - start);
+        }
+        finally {
+            source.close();
         }
 
-        return new AnnotationInfo(classNode.name, methodNames);
+        report.classCount = total;
+        report.skippedCount = skipped[0];
+
+        // unresolved deferred classes are saved as deferred if the scan was stopped
+        if (cache != null)
+            report.reusedCount = cache.getReusedCount();
+
+        if (index != null)
+            index.save();
     }
 
-    // parse a class for localizable fields and localizable annotation usages.
-    private List<LiteralInfo> parseClass(ClassNode classNode, Map<String, AnnotationInfo> annotations) {
+    // give the literals of a record to a sink in the same order as parseClass.
+    // false if the sink stopped the scan.
+    private static boolean emit(ClassRecord record, Map<String, AnnotationInfo> annotations,
+                                int entryIndex, GeneratorReport report,
+                                PositionSink sink) throws IOException {
 
-        List<LiteralInfo> result = new ArrayList<>(10);
+        if (record.usages != null) {
 
-        // parse class annotations
-        @SuppressWarnings("unchecked")
-        List<AnnotationNode> classAnnotations = classNode.visibleAnnotations;
-        if (classAnnotations != null) {
+            List<LiteralInfo> literals = new ArrayList<>(10);
 
-            for (AnnotationNode node : classAnnotations) {
+            for (AnnotationUsage usage : record.usages) {
+                if (annotations.containsKey(usage.getClassName()))
+                    literals.addAll(parseAnnotationUsage(record, usage));
+            }
 
-                String nodeName = node.desc.substring(1, node.desc.length() - 1);
+            if (!emit(literals, entryIndex, USAGE_LITERALS, report, sink))
+                return false;
+        }
 
-                AnnotationInfo info = annotations.get(nodeName);
-                if (info == null)
-                    continue;
+        return emit(record.fieldLiterals, entryIndex, FIELD_LITERALS, report, sink)
+                && emit(record.callLiterals, entryIndex, CALL_LITERALS, report, sink);
+    }
+
+    // give literals of one kind to a sink. false if the sink stopped the scan.
+    private static boolean emit(List<LiteralInfo> literals, int entryIndex, int kind,
+                                GeneratorReport report, PositionSink sink) throws IOException {
+
+        if (literals == null)
+            return true;
+
+        for (int i=0; i < literals.size(); i++) {
+
+            report.literalCount++;
+
+            if (!sink.accept(literals.get(i), getPosition(entryIndex, kind, i)))
+                return false;
+        }
+
+        return true;
+    }
+
+    // print a progress message unless quiet
+    private void progress(String message) {
+        if (!_isQuiet)
+            System.out.println(message);
+    }
 
-                result.addAll(parseAnnotationUsage(classNode, node));
+    // the position of a literal, ordered by entry, then kind, then order within the class
+    private static long getPosition(int entryIndex, int kind, int ordinal) {
+        return ((long) entryIndex << 32) | ((long) kind << 30) | ordinal;
+    }
+
+    // get the methods with localizable parameters declared by the parsed classes
+    private static Map<String, LocalizableMethod> getLocalizableMethods(List<ClassRecord> records) {
+
+        Map<String, LocalizableMethod> methods = new HashMap<>(10);
+
+        for (ClassRecord record : records) {
+
+            if (record.localizableMethods == null)
+                continue;
+
+            for (LocalizableMethod method : record.localizableMethods) {
+                methods.put(method.getKey(), method);
             }
         }
 
-        // parse fields
-        @SuppressWarnings("unchecked")
-        List<FieldNode> fields = (List<FieldNode>)classNode.fields;
-        if (fields == null)
-            return new ArrayList<>(0);
+        return methods;
+    }
+
+    // find the String constants passed to localizable parameters. Only the classes that
+    // reference one of the methods are read, unless their literals are cached for the
+    // same methods. The records holding them are merged into the parse queue in entry
+    // order, after the record of the same entry if there is one. If a stream sink is
+    // specified the literals are given to it instead.
+    private void findCallLiterals(ClassSource source, ScanPipeline<ClassRecord> pipeline,
+                                  final RecordCache cache,
+                                  final Map<String, LocalizableMethod> methods,
+                                  List<SourceEntry> callerEntries, List<Integer> callerIndexes,
+                                  List<int[]> callerHashes,
+                                  List<ClassRecord> parseQueue, List<SourceEntry> parseEntries,
+                                  List<Integer> parseIndexes, final PositionSink streamSink,
+                                  final GeneratorReport report) throws IOException {
+
+        final Set<Integer> methodHashes = new HashSet<>(methods.size());
+        Map<Integer, List<LocalizableMethod>> hashedMethods = new HashMap<>(methods.size());
+
+        for (LocalizableMethod method : methods.values()) {
+
+            int hash = ConstantPoolFilter.hash(method.owner, method.name, method.desc);
+            methodHashes.add(hash);
+
+            List<LocalizableMethod> list = hashedMethods.get(hash);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                hashedMethods.put(hash, list);
+            }
+            list.add(method);
+        }
+
+        // the classes that might call one of the methods
+        final List<SourceEntry> callEntries = new ArrayList<>(10);
+        final List<Integer> callIndexes = new ArrayList<>(10);
+        final Map<SourceEntry, String> callKeys = new IdentityHashMap<>(10);
 
-        for (FieldNode node : fields) {
+        for (int i=0; i < callerEntries.size(); i++) {
 
-            @SuppressWarnings("unchecked")
-            List<AnnotationNode> annotationNodes = node.visibleAnnotations;
-            if (annotationNodes == null)
+            String callKey = getCallKey(callerHashes.get(i), hashedMethods, methods);
+            if (callKey == null)
                 continue;
 
-            for (AnnotationNode annotation : annotationNodes) {
-                if (!isLocalizableAnnotation(annotation.desc))
-                    continue;
+            callEntries.add(callerEntries.get(i));
+            callIndexes.add(callerIndexes.get(i));
+            callKeys.put(callerEntries.get(i), callKey);
+        }
+
+        final List<ClassRecord> records = new ArrayList<>(10);
+        final List<SourceEntry> entries = new ArrayList<>(10);
+        final List<Integer> indexes = new ArrayList<>(10);
+        final int[] position = new int[1];
+
+        ScanPipeline.Cache<ClassRecord> callCache = cache == null ? null : new ScanPipeline.Cache<ClassRecord>() {
+            @Override
+            public ClassRecord get(SourceEntry entry) {
+                return cache.getCalls(entry, callKeys.get(entry));
+            }
+        };
 
-                boolean isStatic = (node.access & Opcodes.ACC_STATIC) != 0;
-                boolean isFinal = (node.access & Opcodes.ACC_FINAL) != 0;
+        pipeline.run(source, callEntries, callCache, new ScanPipeline.Parser<ClassRecord>() {
 
-                String desc = "FIELD: " + node.name + ' ' + classNode.name;
+            @Override
+            public ClassRecord parse(SourceEntry entry, ByteBuffer bytes) {
 
-                if (!isStatic) {
-                    System.out.println("[IGNORED] @Localizable field found but isn't static: " + desc);
+                if (!FILTERS.get().referencesMethod(bytes, methodHashes))
+                    return ClassRecord.SKIPPED;
+
+                try {
+                    return CallSiteExtractor.extract(entry.name, bytes, methods);
+                }
+                catch (RuntimeException e) {
+                    LOGGER.warning("Unable to analyze the method code of class entry: " + entry.name);
+                    return ClassRecord.SKIPPED;
                 }
+            }
 
-                if (!isFinal) {
-                    System.out.println("[IGNORED] @Localizable field found but isn't final: " + desc);
+        }, new ScanPipeline.Collector<ClassRecord>() {
+
+            @Override
+            public void collect(SourceEntry entry, ClassRecord record) throws IOException {
+
+                int index = callIndexes.get(position[0]++);
+
+                if (cache != null)
+                    cache.putCalls(entry, callKeys.get(entry), record);
+
+                if (record == ClassRecord.SKIPPED)
+                    return;
+
+                if (streamSink != null) {
+                    emit(record.callLiterals, index, CALL_LITERALS, report, streamSink);
+                    return;
                 }
 
-                if (!isStatic || !isFinal)
-                    continue;
+                records.add(record);
+                entries.add(entry);
+                indexes.add(index);
+            }
+        });
+
+        if (records.isEmpty())
+            return;
+
+        int size = parseQueue.size() + records.size();
+        List<ClassRecord> mergedRecords = new ArrayList<>(size);
+        List<SourceEntry> mergedEntries = new ArrayList<>(size);
+        List<Integer> mergedIndexes = new ArrayList<>(size);
+
+        for (int i=0, j=0; i < parseQueue.size() || j < records.size();) {
+
+            if (j == records.size() ||
+                    (i < parseQueue.size() && parseIndexes.get(i) <= indexes.get(j))) {
+
+                mergedRecords.add(parseQueue.get(i));
+                mergedEntries.add(parseEntries.get(i));
+                mergedIndexes.add(parseIndexes.get(i));
+                i++;
+            }
+            else {
+                mergedRecords.add(records.get(j));
+                mergedEntries.add(entries.get(j));
+                mergedIndexes.add(indexes.get(j));
+                j++;
+            }
+        }
+
+        parseQueue.clear();
+        parseQueue.addAll(mergedRecords);
+        parseEntries.clear();
+        parseEntries.addAll(mergedEntries);
+        parseIndexes.clear();
+        parseIndexes.addAll(mergedIndexes);
+    }
+
+    // get the key of the localizable methods a class might call, built from their keys and
+    // parameters so call literals are only reused if found for the same methods. null if
+    // the class can't call any of them.
+    private static String getCallKey(int[] classHashes, Map<Integer, List<LocalizableMethod>> hashedMethods,
+                                     Map<String, LocalizableMethod> methods) {
+
+        List<LocalizableMethod> called = new ArrayList<>(5);
+
+        if (classHashes == null) {
+            called.addAll(methods.values());
+        }
+        else {
+            for (int hash : classHashes) {
+                List<LocalizableMethod> list = hashedMethods.get(hash);
+                if (list != null)
+                    called.addAll(list);
+            }
+        }
+
+        if (called.isEmpty())
+            return null;
+
+        List<String> keys = new ArrayList<>(called.size());
+        for (LocalizableMethod method : called) {
+            keys.add(method.getKey() + Arrays.toString(method.parameters));
+        }
+
+        Collections.sort(keys);
+
+        StringBuilder sb = new StringBuilder(keys.size() * 40);
+        for (String key : keys) {
+            sb.append(key).append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    // add the localizable annotations in the classpath that the classes might use
+    private void findClasspathAnnotations(List<ClassRecord> records,
+                                          Map<String, AnnotationInfo> annotations,
+                                          Set<Integer> annotationHashes) throws IOException {
 
-                if (node.value instanceof String) {
-                    System.out.println("@Localizable field found: " + desc);
+        Set<String> classNames = new HashSet<>(10);
+        Set<Integer> descriptorHashes = new HashSet<>(10);
 
-                    result.add(new LiteralInfo((String) node.value, desc));
+        for (ClassRecord record : records) {
+
+            if (record.isDeferred()) {
+                for (int hash : record.descriptorHashes) {
+                    if (!annotationHashes.contains(hash))
+                        descriptorHashes.add(hash);
                 }
-                else {
-                    System.out.println("[IGNORED] @Localizable field found but did not contain a String value: " + desc);
+            }
+            else if (record.usages != null) {
+                for (AnnotationUsage usage : record.usages) {
+                    if (!annotations.containsKey(usage.getClassName()))
+                        classNames.add(usage.getClassName());
                 }
             }
         }
 
+        if (classNames.isEmpty() && descriptorHashes.isEmpty())
+            return;
+
+        ClasspathIndex index = ClasspathIndex.load(_classpath, getClasspathCacheFile());
+        List<AnnotationInfo> found;
+
+        try {
+            found = index.findByHashes(descriptorHashes);
+
+            for (String className : classNames) {
+                AnnotationInfo info = index.find(className);
+                if (info != null)
+                    found.add(info);
+            }
+
+            index.save();
+        }
+        finally {
+            index.close();
+        }
+
+        for (AnnotationInfo info : found) {
+
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.fine("Classpath annotation found: " + info.className);
+
+            annotations.put(info.className, info);
+            annotationHashes.add(ConstantPoolFilter.hash('L' + info.className + ';'));
+        }
+    }
+
+    // resolve localizable annotation usages of a class and add its localizable fields.
+    static List<LiteralInfo> parseClass(ClassRecord record, Map<String, AnnotationInfo> annotations) {
+
+        List<LiteralInfo> result = new ArrayList<>(10);
+
+        // parse class annotations
+        if (record.usages != null) {
+
+            for (AnnotationUsage usage : record.usages) {
+
+                AnnotationInfo info = annotations.get(usage.getClassName());
+                if (info == null)
+                    continue;
+
+                result.addAll(parseAnnotationUsage(record, usage));
+            }
+        }
+
+        // add fields
+        if (record.fieldLiterals != null)
+            result.addAll(record.fieldLiterals);
+
+        // add literals passed to localizable parameters
+        if (record.callLiterals != null)
+            result.addAll(record.callLiterals);
+
         return result;
     }
 
     // parse the usage of an annotation for the localizable text
-    private List<LiteralInfo> parseAnnotationUsage(ClassNode classNode, AnnotationNode annotation) {
-
-        if (annotation.values == null)
-            return new ArrayList<>(0);
+    private static List<LiteralInfo> parseAnnotationUsage(ClassRecord record, AnnotationUsage usage) {
 
         List<LiteralInfo> result = new ArrayList<>(10);
+        String className = record.className;
+        String source = ClassSource.getArchivePath(record.entryName);
 
-        for (int i=0; i < annotation.values.size(); i+=2) {
+        for (int i=0; i < usage.values.size(); i++) {
 
-            String methodName = (String)annotation.values.get(i);
-            Object valueObject = annotation.values.get(i + 1);
+            String methodName = usage.methodNames.get(i);
+            Object valueObject = usage.values.get(i);
 
             List<String> values;
             boolean isArray;
@@ -337,7 +1271,9 @@ public class LanguageGenerator {
                 isArray = false;
             }
             else if (valueObject instanceof List) {
-                values = (List<String>)valueObject;
+                @SuppressWarnings("unchecked")
+                List<String> list = (List<String>)valueObject;
+                values = list;
                 isArray = true;
             }
             else {
@@ -352,10 +1288,12 @@ public class LanguageGenerator {
                         : "()";
 
                 String desc = "ANNOTATION METHOD: " +
-                        methodName + nameSuffix + ' ' + classNode.name + ' ' + annotation.desc;
+                        methodName + nameSuffix + ' ' + className + ' ' + usage.desc;
 
-                System.out.println("Annotation usage found: " + desc);
-                result.add(new LiteralInfo(value, desc));
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.fine("Annotation usage found: " + desc);
+
+                result.add(new LiteralInfo(value, desc, source, className));
                 count++;
             }
         }
@@ -363,13 +1301,8 @@ public class LanguageGenerator {
         return result;
     }
 
-    private static class AnnotationInfo {
-        final String className;
-        final List<String> methodNames;
-
-        AnnotationInfo(String className, List<String> methodNames) {
-            this.className = className;
-            this.methodNames = methodNames;
-        }
+    // receives literals and their position in the scan order
+    private interface PositionSink {
+        boolean accept(LiteralInfo literal, long position) throws IOException;
     }
 }
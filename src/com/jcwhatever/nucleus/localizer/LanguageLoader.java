@@ -0,0 +1,286 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads a key file and the language files that override it.
+ *
+ * <p>Each file is read in a single pass. Keys are parsed directly from the line
+ * and text is stored in an array indexed by key so no map or boxed keys are
+ * created.</p>
+ *
+ * <pre>
+ * LanguageTable table = new LanguageLoader().load(keyFile, langFile);
+ * String text = table.get(10);
+ * </pre>
+ */
+public class LanguageLoader {
+
+    private static final String VERSION_PREFIX = "version> ";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Charset _charset;
+
+    /**
+     * Constructor.
+     *
+     * <p>Files are read as UTF-16.</p>
+     */
+    public LanguageLoader() {
+        this(TextKeyFileWriter.DEFAULT_CHARSET);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param charset  The charset of the files to load.
+     */
+    public LanguageLoader(Charset charset) {
+        if (charset == null)
+            throw new IllegalArgumentException("charset cannot be null.");
+
+        _charset = charset;
+    }
+
+    /**
+     * Get the charset of the files to load.
+     */
+    public Charset getCharset() {
+        return _charset;
+    }
+
+    /**
+     * Load a key file and merge language files on top of it.
+     *
+     * @param keyFile        The key file, i.e. lang.keys.txt
+     * @param overrideFiles  The language files to merge, in order. Text in later
+     *                       files replaces text in earlier files.
+     *
+     * @throws IOException if a file cannot be read, is invalid or has versions
+     * that are not in the key file.
+     */
+    public LanguageTable load(File keyFile, File... overrideFiles) throws IOException {
+
+        List<InputStream> overrides = new ArrayList<>(overrideFiles.length);
+
+        try {
+            for (File file : overrideFiles) {
+                overrides.add(new FileInputStream(file));
+            }
+
+            return load(new FileInputStream(keyFile), keyFile.getName(),
+                    overrides, Arrays.asList(overrideFiles));
+        }
+        finally {
+            for (InputStream stream : overrides) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Load a key file and merge language files on top of it.
+     *
+     * <p>The streams are closed.</p>
+     *
+     * @param keyStream        The key file stream.
+     * @param overrideStreams  The language file streams to merge, in order.
+     *
+     * @throws IOException if a stream cannot be read, is invalid or has versions
+     * that are not in the key file.
+     */
+    public LanguageTable load(InputStream keyStream, InputStream... overrideStreams) throws IOException {
+
+        List<String> names = new ArrayList<>(overrideStreams.length);
+        for (int i=0; i < overrideStreams.length; i++) {
+            names.add("override " + (i + 1));
+        }
+
+        try {
+            return load(keyStream, "key file", Arrays.asList(overrideStreams), names);
+        }
+        finally {
+            for (InputStream stream : overrideStreams) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Load a single language file without merging it.
+     *
+     * <p>The result can be merged onto another table using
+     * {@link LanguageTable#merge}. The stream is closed.</p>
+     *
+     * @param stream  The language file stream.
+     */
+    public LanguageTable loadLayer(InputStream stream) throws IOException {
+
+        Layer layer = new Layer();
+        read(stream, "language file", layer);
+
+        return new LanguageTable(layer.versions, layer.trim());
+    }
+
+    // load the key file then apply each override
+    private LanguageTable load(InputStream keyStream, String keyName,
+                               List<InputStream> overrides, List<?> names) throws IOException {
+
+        Layer keys = new Layer();
+        read(keyStream, keyName, keys);
+
+        String[] texts = keys.trim();
+
+        for (int i=0; i < overrides.size(); i++) {
+
+            Layer layer = new Layer();
+            read(overrides.get(i), String.valueOf(names.get(i)), layer);
+
+            if (layer.versions.isEmpty() || !keys.versions.containsAll(layer.versions)) {
+                throw new IOException("Incompatible language file versions in " + names.get(i) + ": " +
+                        layer.versions + ", expected one of " + keys.versions);
+            }
+
+            LanguageTable.apply(texts, layer.texts);
+        }
+
+        return new LanguageTable(keys.versions, texts);
+    }
+
+    // read the lines of a language file into a layer
+    private void read(InputStream stream, String name, Layer layer) throws IOException {
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, _charset), BUFFER_SIZE);
+
+        try {
+            String line;
+            int lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+
+                lineNumber++;
+
+                // byte order mark left by editors
+                if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF')
+                    line = line.substring(1);
+
+                if (line.isEmpty() || line.charAt(0) == '#')
+                    continue;
+
+                if (line.startsWith(VERSION_PREFIX)) {
+                    addVersions(line, layer.versions);
+                    continue;
+                }
+
+                int end = keyEnd(line);
+                int key = parseKey(line, end);
+                if (key == -1)
+                    throw new IOException("Invalid line " + lineNumber + " in " + name + ": " + line);
+
+                String text = end + 2 <= line.length() ? line.substring(end + 2) : "";
+
+                layer.put(key, TextKeyFileWriter.unescape(text));
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    // add the comma delimited versions of a version line
+    private static void addVersions(String line, Set<String> versions) {
+
+        String[] components = line.substring(VERSION_PREFIX.length()).split(",");
+
+        for (String version : components) {
+            version = version.trim();
+
+            if (!version.isEmpty())
+                versions.add(version);
+        }
+    }
+
+    // parse the key at the start of a line, i.e. "10> ". returns -1 if invalid
+    private static int parseKey(String line, int end) {
+
+        // editors may remove the trailing space of a key with empty text
+        if (end == 0 || end > 9 || end >= line.length() || line.charAt(end) != '>' ||
+                (end + 1 < line.length() && line.charAt(end + 1) != ' ')) {
+            return -1;
+        }
+
+        int key = 0;
+        for (int i=0; i < end; i++) {
+            key = key * 10 + (line.charAt(i) - '0');
+        }
+
+        return key;
+    }
+
+    // get the index of the first character after the leading digits
+    private static int keyEnd(String line) {
+
+        int index = 0;
+        while (index < line.length() && line.charAt(index) >= '0' && line.charAt(index) <= '9') {
+            index++;
+        }
+
+        return index;
+    }
+
+    // text and versions read from a single file
+    private static class Layer {
+
+        final Set<String> versions = new LinkedHashSet<>(3);
+        String[] texts = new String[64];
+        int size;
+
+        void put(int key, String text) {
+
+            if (key >= texts.length)
+                texts = Arrays.copyOf(texts, Math.max(key + 1, texts.length * 2));
+
+            texts[key] = text;
+            size = Math.max(size, key + 1);
+        }
+
+        String[] trim() {
+            return texts.length == size ? texts : Arrays.copyOf(texts, size);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Localized text indexed by key.
+ *
+ * <p>Text is stored in an array indexed by key number. Keys that have no text
+ * return null.</p>
+ *
+ * @see LanguageLoader
+ */
+public class LanguageTable {
+
+    private final Set<String> _versions;
+    private final String[] _texts;
+
+    /**
+     * Constructor.
+     *
+     * @param versions  The versions of the language file.
+     * @param texts     The text of each key. Used directly, not copied.
+     */
+    LanguageTable(Set<String> versions, String[] texts) {
+        _versions = Collections.unmodifiableSet(versions);
+        _texts = texts;
+    }
+
+    /**
+     * Get the versions of the language file.
+     */
+    public Set<String> getVersions() {
+        return _versions;
+    }
+
+    /**
+     * Get the number of key slots, the highest key + 1.
+     */
+    public int size() {
+        return _texts.length;
+    }
+
+    /**
+     * Get the text of a key.
+     *
+     * @param key  The key.
+     *
+     * @return  The text or null if the key has no text.
+     */
+    public String get(int key) {
+        return key >= 0 && key < _texts.length ? _texts[key] : null;
+    }
+
+    /**
+     * Determine if the table can be merged on top of another table.
+     *
+     * <p>A table is compatible if it has at least one version and the other
+     * table has all of its versions.</p>
+     *
+     * @param base  The table to merge onto.
+     */
+    public boolean isCompatible(LanguageTable base) {
+        return !_versions.isEmpty() && base._versions.containsAll(_versions);
+    }
+
+    /**
+     * Create a new table with the text of another table applied on top of
+     * the text of this table.
+     *
+     * <p>Keys that are not in this table are ignored.</p>
+     *
+     * @param layer  The table to merge.
+     *
+     * @throws IllegalArgumentException if the layer is not compatible.
+     */
+    public LanguageTable merge(LanguageTable layer) {
+
+        if (!layer.isCompatible(this))
+            throw new IllegalArgumentException("Incompatible language file versions " +
+                    layer._versions + ", expected one of " + _versions);
+
+        String[] texts = Arrays.copyOf(_texts, _texts.length);
+        apply(texts, layer._texts);
+
+        return new LanguageTable(new LinkedHashSet<>(_versions), texts);
+    }
+
+    /**
+     * Copy the text of each key in a layer into a text array.
+     *
+     * @param texts  The text array to copy into.
+     * @param layer  The layer text array.
+     */
+    static void apply(String[] texts, String[] layer) {
+
+        int size = Math.min(texts.length, layer.length);
+
+        for (int i=0; i < size; i++) {
+            if (layer[i] != null)
+                texts[i] = layer[i];
+        }
+    }
+}
@@ -0,0 +1,531 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Watches a compiled classes directory and regenerates the key file when
+ * class files change.
+ *
+ * <p>The records of all classes are kept in memory. When class files change, only
+ * the changed files are read again. Changes that arrive in quick succession, i.e.
+ * from a single compile, are collected into one update.</p>
+ *
+ * <p>Keys are stable for the life of the watcher. A literal keeps its key when other
+ * classes change and new literals are given keys after the highest key in use.
+ * Keys from an existing key file are reused when the watcher starts.</p>
+ */
+public class LanguageWatcher implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(LanguageWatcher.class.getName());
+
+    private static final Pattern KEY_LINE = Pattern.compile("^(\\d+)> (.*)$");
+
+    private final File _classesDir;
+    private final File _outputFile;
+    private final String _version;
+    private final DirectoryClassSource _source;
+    private final Path _root;
+
+    // records of classes with localizable data keyed to entry name
+    private final TreeMap<String, ClassRecord> _records = new TreeMap<>();
+
+    // keys given to literals keyed to literal text
+    private final Map<String, Integer> _keys = new HashMap<>(50);
+    private int _nextKey;
+
+    // class files that could not be read, retried with the next change
+    private final Set<String> _failed = new HashSet<>(5);
+    private boolean _isRescanPending;
+
+    private final Map<WatchKey, Path> _watchKeys = new HashMap<>(20);
+    private final ReadBuffer _buffer = new ReadBuffer();
+    private WatchService _watchService;
+    private long _debounceMillis = 100;
+    private Charset _charset = TextKeyFileWriter.DEFAULT_CHARSET;
+    private boolean _isBinary;
+    private volatile boolean _isClosed;
+
+    /**
+     * Constructor.
+     *
+     * @param classesDir  The compiled classes directory to watch.
+     * @param outputFile  The output key file.
+     * @param version     The output file version.
+     */
+    public LanguageWatcher(File classesDir, File outputFile, String version) {
+
+        if (!classesDir.isDirectory())
+            throw new IllegalArgumentException("Classes directory expected: " + classesDir);
+
+        _classesDir = classesDir;
+        _outputFile = outputFile;
+        _version = version;
+        _source = new DirectoryClassSource(classesDir);
+        _root = classesDir.toPath();
+    }
+
+    /**
+     * Get the time in milliseconds to wait for more changes before updating.
+     */
+    public long getDebounceMillis() {
+        return _debounceMillis;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for more changes before updating.
+     *
+     * @param debounceMillis  The time in milliseconds.
+     */
+    public void setDebounceMillis(long debounceMillis) {
+        if (debounceMillis < 0)
+            throw new IllegalArgumentException("debounceMillis cannot be negative.");
+
+        _debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Get the charset used to read and write the key file.
+     */
+    public Charset getCharset() {
+        return _charset;
+    }
+
+    /**
+     * Set the charset used to read and write the key file.
+     *
+     * <p>Defaults to UTF-16.</p>
+     *
+     * @param charset  The charset.
+     */
+    public void setCharset(Charset charset) {
+        if (charset == null)
+            throw new IllegalArgumentException("charset cannot be null.");
+
+        _charset = charset;
+    }
+
+    /**
+     * Set writing a binary key file with the text key file.
+     *
+     * @param isBinary  True to enable.
+     *
+     * @see LanguageGenerator#setBinary
+     */
+    public void setBinary(boolean isBinary) {
+        _isBinary = isBinary;
+    }
+
+    /**
+     * Generate the key file and then update it as classes change until the
+     * watcher is closed or the thread is interrupted.
+     */
+    public void run() throws IOException {
+
+        _watchService = FileSystems.getDefault().newWatchService();
+
+        try {
+            loadKeys();
+            register(_root);
+            scanAll();
+            update();
+
+            System.out.println("Watching: " + _classesDir.getAbsolutePath());
+
+            while (!_isClosed) {
+
+                Set<String> changed = new HashSet<>(20);
+
+                // wait for changes
+                if (!poll(_watchService.take(), changed)) {
+                    rescan();
+                    continue;
+                }
+
+                // wait for burst of changes to end
+                WatchKey key;
+                boolean isOverflow = false;
+                while ((key = _watchService.poll(_debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    if (!poll(key, changed))
+                        isOverflow = true;
+                }
+
+                if (isOverflow || _isRescanPending) {
+                    rescan();
+                }
+                else if (!changed.isEmpty()) {
+                    long start = System.currentTimeMillis();
+
+                    changed.addAll(_failed);
+                    _failed.clear();
+
+                    for (String name : changed) {
+                        reload(name);
+                    }
+
+                    int keys = update();
+
+                    System.out.println("Updated " + _outputFile.getName() + ": " + changed.size()
+                            + " classes changed, " + keys + " keys in "
+                            + (System.currentTimeMillis() - start) + "ms");
+                }
+            }
+        }
+        catch (ClosedWatchServiceException | InterruptedException ignore) {
+            // stopped
+        }
+        finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _isClosed = true;
+        _buffer.close();
+
+        if (_watchService != null)
+            _watchService.close();
+    }
+
+    // collect the changed class entries from a watch key. returns false on overflow.
+    private boolean poll(WatchKey key, Set<String> changed) throws IOException {
+
+        Path dir = _watchKeys.get(key);
+        boolean isValid = true;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                isValid = false;
+                continue;
+            }
+
+            if (dir == null)
+                continue;
+
+            Path path = dir.resolve((Path) event.context());
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+
+                // new package, watch it and add its classes
+                register(path);
+                for (Path file : listClassFiles(path)) {
+                    changed.add(getEntryName(file));
+                }
+            }
+            else if (ClassSource.isClassEntry(path.toString()) || !Files.exists(path)) {
+                changed.add(getEntryName(path));
+            }
+        }
+
+        if (!key.reset())
+            _watchKeys.remove(key);
+
+        return isValid;
+    }
+
+    // discard records and scan everything again
+    private void rescan() throws IOException {
+        System.out.println("Too many changes, scanning all classes.");
+
+        _records.clear();
+        _failed.clear();
+        _isRescanPending = false;
+
+        scanAll();
+        update();
+    }
+
+    // scan all class files. if a class file changes during the scan, each class file
+    // is read on its own so one bad class file does not stop the others.
+    private void scanAll() {
+
+        ScanPipeline<ClassRecord> pipeline = new ScanPipeline<>(Runtime.getRuntime().availableProcessors());
+
+        try {
+            pipeline.run(_source, new ScanPipeline.Parser<ClassRecord>() {
+
+                @Override
+                public ClassRecord parse(SourceEntry entry, ByteBuffer bytes) {
+                    return LanguageGenerator.scanClass(entry, bytes);
+                }
+
+            }, new ScanPipeline.Collector<ClassRecord>() {
+
+                @Override
+                public void collect(SourceEntry entry, ClassRecord record) {
+                    if (record != ClassRecord.SKIPPED)
+                        _records.put(entry.name, record);
+                }
+            });
+            return;
+        }
+        catch (IOException e) {
+            LOGGER.warning("Unable to scan all class files at once, reading them one at a time: " + e);
+        }
+
+        try {
+            for (SourceEntry entry : _source.getEntries()) {
+                reload(entry.name);
+            }
+        }
+        catch (IOException e) {
+            LOGGER.warning("Unable to list class files, scanning again with the next change: " + e);
+            _isRescanPending = true;
+        }
+    }
+
+    // read a changed class file or remove it if it was deleted. a class file that
+    // can't be read, i.e. one that is still being written, keeps its previous record
+    // and is read again with the next change.
+    private void reload(String entryName) {
+
+        try {
+            reloadEntry(entryName);
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.warning("Unable to read class file, retrying with the next change: " + entryName + ": " + e);
+            _failed.add(entryName);
+        }
+    }
+
+    private void reloadEntry(String entryName) throws IOException {
+
+        Path path = _source.getPath(entryName);
+
+        if (Files.isRegularFile(path)) {
+            ClassRecord record = read(path);
+
+            if (record == ClassRecord.SKIPPED) {
+                _records.remove(entryName);
+            }
+            else {
+                _records.put(entryName, record);
+            }
+            return;
+        }
+
+        // class file or package deleted
+        _records.remove(entryName);
+
+        Iterator<String> iterator = _records.tailMap(entryName + '/').keySet().iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().startsWith(entryName + '/'))
+                break;
+
+            iterator.remove();
+        }
+    }
+
+    private ClassRecord read(Path path) throws IOException {
+        SourceEntry entry = _source.createEntry(path);
+        return LanguageGenerator.scanClass(entry, _source.read(entry, _buffer));
+    }
+
+    // resolve literals and write the key file. returns the number of keys written.
+    private int update() throws IOException {
+
+        Map<String, AnnotationInfo> annotations = new HashMap<>(10);
+        Set<Integer> annotationHashes = new HashSet<>(10);
+
+        for (ClassRecord record : _records.values()) {
+            if (record.annotation != null) {
+                annotations.put(record.annotation.className, record.annotation);
+                annotationHashes.add(ConstantPoolFilter.hash('L' + record.annotation.className + ';'));
+            }
+        }
+
+        List<LiteralInfo> literals = new ArrayList<>(50);
+
+        for (Map.Entry<String, ClassRecord> mapEntry : _records.entrySet()) {
+
+            ClassRecord record = mapEntry.getValue();
+
+            if (record.isDeferred()) {
+
+                if (!record.mayUse(annotationHashes))
+                    continue;
+
+                // parse deferred class, keep the parsed record
+                Path path = _source.getPath(mapEntry.getKey());
+                if (!Files.isRegularFile(path))
+                    continue;
+
+                try {
+                    record = LiteralExtractor.extract(mapEntry.getKey(),
+                            _source.read(_source.createEntry(path), _buffer));
+                }
+                catch (IOException | RuntimeException e) {
+                    LOGGER.warning("Unable to read class file, retrying with the next change: "
+                            + mapEntry.getKey() + ": " + e);
+                    _failed.add(mapEntry.getKey());
+                    continue;
+                }
+
+                mapEntry.setValue(record);
+            }
+
+            if (record.annotation == null)
+                literals.addAll(LanguageGenerator.parseClass(record, annotations));
+        }
+
+        final List<LiteralInfo> unique = LanguageGenerator.removeDuplicates(literals);
+        final Map<LiteralInfo, Integer> keys = new HashMap<>(unique.size());
+
+        for (LiteralInfo literal : unique) {
+
+            Integer key = _keys.get(literal.getLiteral());
+            if (key == null) {
+                key = _nextKey++;
+                _keys.put(literal.getLiteral(), key);
+            }
+
+            keys.put(literal, key);
+        }
+
+        // write in key order
+        Collections.sort(unique, new Comparator<LiteralInfo>() {
+            @Override
+            public int compare(LiteralInfo o1, LiteralInfo o2) {
+                return Integer.compare(keys.get(o1), keys.get(o2));
+            }
+        });
+
+        int[] keyArray = new int[unique.size()];
+        for (int i=0; i < keyArray.length; i++) {
+            keyArray[i] = keys.get(unique.get(i));
+        }
+
+        LanguageGenerator.writeKeyFile(
+                LanguageGenerator.openWriters(_outputFile, _charset, _isBinary), _version, unique, keyArray);
+
+        return unique.size();
+    }
+
+    // load keys from an existing key file so they are not changed
+    private void loadKeys() throws IOException {
+
+        if (!_outputFile.exists())
+            return;
+
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(_outputFile), _charset));
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                Matcher matcher = KEY_LINE.matcher(line);
+                if (!matcher.matches())
+                    continue;
+
+                int key = Integer.parseInt(matcher.group(1));
+                String literal = TextKeyFileWriter.unescape(matcher.group(2));
+
+                _keys.put(literal, key);
+                _nextKey = Math.max(_nextKey, key + 1);
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid key in existing key file: " + _outputFile, e);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    // watch a directory and its sub directories
+    private void register(Path dir) throws IOException {
+
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) throws IOException {
+
+                WatchKey key = path.register(_watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+
+                _watchKeys.put(key, path);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private List<Path> listClassFiles(Path dir) throws IOException {
+
+        final List<Path> files = new ArrayList<>(10);
+
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (ClassSource.isClassEntry(file.toString()))
+                    files.add(file);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return files;
+    }
+
+    private String getEntryName(Path path) {
+        return _root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+}
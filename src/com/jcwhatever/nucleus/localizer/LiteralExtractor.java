@@ -0,0 +1,512 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import com.jcwhatever.nucleus.localizer.ClassRecord.AnnotationUsage;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams a class file for localizable fields, localizable annotation methods
+ * and class annotation usages without building a tree of the class.
+ *
+ * <p>Method bodies, frames and debug information are skipped. The methods of
+ * annotation classes are kept to find localizable annotation methods. The methods
+ * of other classes are only checked for localizable parameters.</p>
+ *
+ * <p>A new instance is required for each class.</p>
+ */
+class LiteralExtractor implements ClassVisitor {
+
+    private static final Logger LOGGER = Logger.getLogger(LiteralExtractor.class.getName());
+
+    static final String LOCALIZABLE_CLASSPATH =
+            "Lcom/jcwhatever/nucleus/managed/language/Localizable;";
+
+    static final int PARSE_FLAGS =
+            ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+    private final String _entryName;
+    private ClassRecord _record;
+    private List<MethodNode> _annotationMethods;
+
+    /**
+     * Extract the localizable data from a class file.
+     *
+     * @param entryName  The name of the entry the class is read from.
+     * @param bytes      The class file bytes.
+     */
+    static ClassRecord extract(String entryName, byte[] bytes) {
+        return extract(entryName, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Extract the localizable data from a class file.
+     *
+     * <p>Array backed buffers are parsed in place. Other buffers are copied.</p>
+     *
+     * @param entryName  The name of the entry the class is read from.
+     * @param bytes      The buffer containing the class file from its position to its limit.
+     */
+    static ClassRecord extract(String entryName, ByteBuffer bytes) {
+
+        if (bytes.hasArray())
+            return extract(entryName, bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.duplicate().get(copy);
+
+        return extract(entryName, copy);
+    }
+
+    private static ClassRecord extract(String entryName, byte[] bytes, int offset, int length) {
+
+        LiteralExtractor extractor = new LiteralExtractor(entryName);
+        new ClassReader(bytes, offset, length).accept(extractor, PARSE_FLAGS);
+
+        return extractor._record;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param entryName  The name of the entry the class is read from.
+     */
+    LiteralExtractor(String entryName) {
+        _entryName = entryName;
+    }
+
+    /**
+     * Get the extracted record. Available after the class is visited.
+     */
+    ClassRecord getRecord() {
+        return _record;
+    }
+
+    static boolean isLocalizableAnnotation(String annotationName) {
+        return annotationName.equals(LOCALIZABLE_CLASSPATH);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature,
+                      String superName, String[] interfaces) {
+
+        _record = new ClassRecord(_entryName, name);
+
+        if (interfaces == null)
+            return;
+
+        // check if class is an annotation
+        for (String type : interfaces) {
+            if (type.equals("java/lang/annotation/Annotation")) {
+                _annotationMethods = new ArrayList<>(5);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+
+        // annotations can't be used to localize other annotations
+        if (!visible || _annotationMethods != null)
+            return null;
+
+        AnnotationUsage usage = new AnnotationUsage(desc);
+        _record.addUsage(usage);
+
+        return new UsageVisitor(usage, null);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc,
+                                   String signature, Object value) {
+
+        if (_annotationMethods != null)
+            return null;
+
+        return new LocalizableFieldVisitor(access, name, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc,
+                                     String signature, String[] exceptions) {
+
+        if (_annotationMethods == null)
+            return new LocalizableParameterVisitor(name, desc);
+
+        MethodNode node = new MethodNode(access, name, desc, signature, exceptions);
+        _annotationMethods.add(node);
+        return node;
+    }
+
+    @Override
+    public void visitEnd() {
+
+        if (_annotationMethods != null) {
+            _record.annotation = parseAnnotation();
+            _annotationMethods = null;
+        }
+        else if (_record.usages != null) {
+
+            // discard usages that have no text
+            for (int i = _record.usages.size() - 1; i >= 0; i--) {
+                if (_record.usages.get(i).values.isEmpty())
+                    _record.usages.remove(i);
+            }
+        }
+    }
+
+    @Override
+    public void visitSource(String source, String debug) {
+        // do nothing
+    }
+
+    @Override
+    public void visitOuterClass(String owner, String name, String desc) {
+        // do nothing
+    }
+
+    @Override
+    public void visitAttribute(Attribute attr) {
+        // do nothing
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+        // do nothing
+    }
+
+    // parse an annotation for localizable methods
+    private AnnotationInfo parseAnnotation() {
+
+        List<String> methodNames = new ArrayList<>(5);
+
+        for (MethodNode node : _annotationMethods) {
+
+            @SuppressWarnings("unchecked")
+            List<AnnotationNode> annotationNodes = node.visibleAnnotations;
+            if (annotationNodes == null)
+                continue;
+
+            for (AnnotationNode annotation : annotationNodes) {
+                if (!isLocalizableAnnotation(annotation.desc))
+                    continue;
+
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.fine("@Localizable Annotation method found: " + node.name + ' ' + _record.className);
+
+                methodNames.add(node.name);
+            }
+        }
+
+        return new AnnotationInfo(_record.className, methodNames);
+    }
+
+    // checks fields for the localizable annotation
+    private class LocalizableFieldVisitor implements FieldVisitor {
+
+        final int access;
+        final String name;
+        final Object value;
+
+        LocalizableFieldVisitor(int access, String name, Object value) {
+            this.access = access;
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+
+            if (!visible || !isLocalizableAnnotation(desc))
+                return null;
+
+            boolean isStatic = (access & Opcodes.ACC_STATIC) != 0;
+            boolean isFinal = (access & Opcodes.ACC_FINAL) != 0;
+
+            String fieldDesc = "FIELD: " + name + ' ' + _record.className;
+
+            if (!isStatic) {
+                LOGGER.warning("[IGNORED] @Localizable field found but isn't static: " + fieldDesc);
+            }
+
+            if (!isFinal) {
+                LOGGER.warning("[IGNORED] @Localizable field found but isn't final: " + fieldDesc);
+            }
+
+            if (!isStatic || !isFinal)
+                return null;
+
+            if (value instanceof String) {
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.fine("@Localizable field found: " + fieldDesc);
+
+                _record.addFieldLiteral(new LiteralInfo((String) value, fieldDesc,
+                        ClassSource.getArchivePath(_entryName), _record.className));
+            }
+            else {
+                LOGGER.warning("[IGNORED] @Localizable field found but did not contain a String value: " + fieldDesc);
+            }
+
+            return null;
+        }
+
+        @Override
+        public void visitAttribute(Attribute attr) {
+            // do nothing
+        }
+
+        @Override
+        public void visitEnd() {
+            // do nothing
+        }
+    }
+
+    // checks method parameters for the localizable annotation
+    private class LocalizableParameterVisitor implements MethodVisitor {
+
+        final String name;
+        final String desc;
+        int[] parameters;
+
+        LocalizableParameterVisitor(String name, String desc) {
+            this.name = name;
+            this.desc = desc;
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+
+            if (!visible || !isLocalizableAnnotation(desc))
+                return null;
+
+            if (parameters == null) {
+                parameters = new int[] { parameter };
+            }
+            else {
+                int[] expanded = new int[parameters.length + 1];
+                System.arraycopy(parameters, 0, expanded, 0, parameters.length);
+                expanded[parameters.length] = parameter;
+                parameters = expanded;
+            }
+
+            return null;
+        }
+
+        @Override
+        public void visitEnd() {
+
+            if (parameters == null)
+                return;
+
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.fine("@Localizable method parameter found: " + name + ' ' + _record.className);
+
+            _record.addLocalizableMethod(
+                    new LocalizableMethod(_record.className, name, desc, parameters));
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            return null;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            return null;
+        }
+
+        @Override
+        public void visitAttribute(Attribute attr) {
+            // do nothing
+        }
+
+        @Override
+        public void visitCode() {
+            // do nothing
+        }
+
+        @Override
+        public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+            // do nothing
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            // do nothing
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            // do nothing
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            // do nothing
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            // do nothing
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            // do nothing
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+            // do nothing
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            // do nothing
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            // do nothing
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst) {
+            // do nothing
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            // do nothing
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label[] labels) {
+            // do nothing
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            // do nothing
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+            // do nothing
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            // do nothing
+        }
+
+        @Override
+        public void visitLocalVariable(String name, String desc, String signature,
+                                       Label start, Label end, int index) {
+            // do nothing
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            // do nothing
+        }
+
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            // do nothing
+        }
+    }
+
+    // collects the String values of a class annotation. If an array
+    // is given, collects the String elements of an annotation array.
+    private static class UsageVisitor implements AnnotationVisitor {
+
+        final AnnotationUsage usage;
+        final List<String> array;
+
+        UsageVisitor(AnnotationUsage usage, List<String> array) {
+            this.usage = usage;
+            this.array = array;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+
+            if (!(value instanceof String))
+                return;
+
+            if (array != null) {
+                array.add((String) value);
+            }
+            else {
+                usage.add(name, value);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+
+            if (array != null)
+                return null;
+
+            List<String> values = new ArrayList<>(5);
+            usage.add(name, values);
+
+            return new UsageVisitor(usage, values);
+        }
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            // do nothing
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            return null;
+        }
+
+        @Override
+        public void visitEnd() {
+            // do nothing
+        }
+    }
+}
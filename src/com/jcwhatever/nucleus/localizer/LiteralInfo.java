@@ -24,18 +24,22 @@
 
 package com.jcwhatever.nucleus.localizer;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Stores information about a localizable literal.
  */
 public class LiteralInfo {
 
-    private static final Pattern PATTERN_FILEPATH_SLASH = Pattern.compile("[\\/\\\\]");
-
     private final String _literal;
-    private final String _comment;
+    private final String _rawComment;
+    private final String _source;
+    private final String _className;
+    private final List<LiteralInfo> _duplicates;
+
+    private String _comment;
 
     /**
      * Constructor.
@@ -45,10 +49,55 @@ public class LiteralInfo {
      *                 information about the text.
      */
     LiteralInfo(String literal, String comment) {
+        this(literal, comment, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param literal  The literal text that can be localized.
+     * @param comment  Comment to be included int output key file to give context
+     *                 information about the text.
+     * @param source   The path of the nested jar file the literal was found in or
+     *                 null if found in the scanned jar or directory.
+     */
+    LiteralInfo(String literal, String comment, String source) {
+        this(literal, comment, source, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param literal    The literal text that can be localized.
+     * @param comment    Comment to be included int output key file to give context
+     *                   information about the text.
+     * @param source     The path of the nested jar file the literal was found in or
+     *                   null if found in the scanned jar or directory.
+     * @param className  The internal name of the class the literal was found in or null.
+     */
+    LiteralInfo(String literal, String comment, String source, String className) {
         _literal = literal;
+        _rawComment = comment;
+        _source = source;
+        _className = className;
+        _duplicates = null;
+    }
 
-        Matcher matcher = PATTERN_FILEPATH_SLASH.matcher(comment);
-        _comment = matcher.replaceAll(".");
+    /**
+     * Constructor.
+     *
+     * <p>Creates a literal that also lists the locations of its duplicates.</p>
+     *
+     * @param first       The first location of the literal.
+     * @param duplicates  The other locations of the literal.
+     */
+    LiteralInfo(LiteralInfo first, List<LiteralInfo> duplicates) {
+        _literal = first._literal;
+        _rawComment = first._rawComment;
+        _source = first._source;
+        _className = first._className;
+        _comment = first._comment;
+        _duplicates = duplicates;
     }
 
     /**
@@ -58,13 +107,81 @@ public class LiteralInfo {
         return _literal;
     }
 
+    /**
+     * Get the path of the nested jar file the literal was found in.
+     *
+     * @return  The path or null if found in the scanned jar or directory.
+     */
+    public String getSource() {
+        return _source;
+    }
+
+    /**
+     * Get the name of the class the literal was found in, i.e. com.example.Foo.
+     *
+     * @return  The class name or null if not known.
+     */
+    public String getClassName() {
+        return _className == null ? null : _className.replace('/', '.');
+    }
+
     /**
      * Get the text comment.
      */
     public String getComment() {
+
+        // normalized when needed since most duplicate comments are never written
+        if (_comment == null) {
+            String comment = _rawComment.replace('/', '.').replace('\\', '.');
+
+            _comment = _source == null
+                    ? comment
+                    : comment + " (" + _source + ')';
+        }
+
         return _comment;
     }
 
+    /**
+     * Get the comment as given to the constructor.
+     */
+    String getRawComment() {
+        return _rawComment;
+    }
+
+    /**
+     * Get the class name as given to the constructor.
+     */
+    String getRawClassName() {
+        return _className;
+    }
+
+    /**
+     * Get the comments of every location the literal was found, starting with
+     * the comment of the first location.
+     */
+    public List<String> getComments() {
+
+        if (_duplicates == null)
+            return Collections.singletonList(getComment());
+
+        List<String> comments = new ArrayList<>(_duplicates.size() + 1);
+        comments.add(getComment());
+
+        for (LiteralInfo duplicate : _duplicates) {
+            comments.add(duplicate.getComment());
+        }
+
+        return comments;
+    }
+
+    /**
+     * Get the number of other locations the literal was found.
+     */
+    public int getDuplicateCount() {
+        return _duplicates == null ? 0 : _duplicates.size();
+    }
+
     @Override
     public int hashCode() {
         return _literal.hashCode();
@@ -0,0 +1,175 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects literals and groups duplicates by literal text.
+ *
+ * <p>Uses an open addressing table of indexes into the list of unique literals
+ * with linear probing. The hash of each unique literal is kept so probes only
+ * compare text when the hashes match.</p>
+ */
+class LiteralTable {
+
+    private final List<LiteralInfo> _literals;
+    private final List<List<LiteralInfo>> _duplicates;
+
+    // index + 1 of the literal in each slot, 0 is empty
+    private int[] _slots;
+    private int[] _hashes;
+    private int _duplicateCount;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize  The expected number of literals.
+     */
+    LiteralTable(int expectedSize) {
+
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+
+        _literals = new ArrayList<>(expectedSize);
+        _duplicates = new ArrayList<>(expectedSize);
+        _slots = new int[capacity];
+        _hashes = new int[capacity / 2];
+    }
+
+    /**
+     * Get the number of unique literals.
+     */
+    int size() {
+        return _literals.size();
+    }
+
+    /**
+     * Get the number of literals that were duplicates of an added literal.
+     */
+    int getDuplicateCount() {
+        return _duplicateCount;
+    }
+
+    /**
+     * Add a literal.
+     *
+     * @param literal  The literal.
+     *
+     * @return  True if added, false if the literal is a duplicate.
+     */
+    boolean add(LiteralInfo literal) {
+
+        String text = literal.getLiteral();
+        int hash = mix(text.hashCode());
+        int mask = _slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+
+            int index = _slots[slot] - 1;
+
+            if (index == -1) {
+                _slots[slot] = _literals.size() + 1;
+                _hashes[_literals.size()] = hash;
+                _literals.add(literal);
+                _duplicates.add(null);
+
+                if (_literals.size() * 2 >= _slots.length)
+                    resize();
+
+                return true;
+            }
+
+            if (_hashes[index] == hash && _literals.get(index).getLiteral().equals(text)) {
+
+                List<LiteralInfo> duplicates = _duplicates.get(index);
+                if (duplicates == null) {
+                    duplicates = new ArrayList<>(2);
+                    _duplicates.set(index, duplicates);
+                }
+
+                duplicates.add(literal);
+                _duplicateCount++;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Get the unique literals in the order they were added.
+     *
+     * <p>Literals that have duplicates are returned as a new literal
+     * that includes the locations of each duplicate.</p>
+     */
+    List<LiteralInfo> getLiterals() {
+
+        List<LiteralInfo> result = new ArrayList<>(_literals.size());
+
+        for (int i=0; i < _literals.size(); i++) {
+
+            List<LiteralInfo> duplicates = _duplicates.get(i);
+
+            result.add(duplicates == null
+                    ? _literals.get(i)
+                    : new LiteralInfo(_literals.get(i), duplicates));
+        }
+
+        return result;
+    }
+
+    // double the number of slots and re-insert the literal indexes
+    private void resize() {
+
+        int capacity = _slots.length * 2;
+        int mask = capacity - 1;
+
+        int[] slots = new int[capacity];
+
+        for (int i=0; i < _literals.size(); i++) {
+
+            int slot = _hashes[i] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            slots[slot] = i + 1;
+        }
+
+        int[] hashes = new int[capacity / 2];
+        System.arraycopy(_hashes, 0, hashes, 0, _literals.size());
+
+        _slots = slots;
+        _hashes = hashes;
+    }
+
+    // spread the hash bits so sequential string hashes do not cluster
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,72 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+/**
+ * A method that has one or more parameters annotated with the
+ * Localizable annotation.
+ */
+class LocalizableMethod {
+
+    final String owner;
+    final String name;
+    final String desc;
+
+    // indexes of the localizable parameters
+    final int[] parameters;
+
+    /**
+     * Constructor.
+     *
+     * @param owner       The internal name of the class that declares the method.
+     * @param name        The method name.
+     * @param desc        The method descriptor.
+     * @param parameters  The indexes of the localizable parameters.
+     */
+    LocalizableMethod(String owner, String name, String desc, int[] parameters) {
+        this.owner = owner;
+        this.name = name;
+        this.desc = desc;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Get the key used to match method instructions to the method.
+     */
+    String getKey() {
+        return getKey(owner, name, desc);
+    }
+
+    /**
+     * Get the key used to match a method instruction.
+     *
+     * @param owner  The internal name of the method owner.
+     * @param name   The method name.
+     * @param desc   The method descriptor.
+     */
+    static String getKey(String owner, String name, String desc) {
+        return owner + '.' + name + desc;
+    }
+}
@@ -0,0 +1,382 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long running process that generates key files on request.
+ *
+ * <p>Listens on a loopback socket for requests from {@link DaemonClient}. The records
+ * extracted from each class are kept in a memory bound {@link ClassCache} so repeat
+ * requests for mostly unchanged inputs only read the classes that changed. Requests
+ * also avoid the JVM startup and class loading cost and run on warm code.</p>
+ *
+ * <p>Each connection carries a single request and its response.</p>
+ *
+ * <p>Any local process can connect to the port, so the daemon writes a random token
+ * to a file only the current user can read when it starts and rejects requests that
+ * do not include it. The file is deleted when the daemon stops.</p>
+ */
+public class LocalizerDaemon {
+
+    /**
+     * The default port.
+     */
+    public static final int DEFAULT_PORT = 47283;
+
+    /**
+     * The default estimated maximum size of the class cache in bytes.
+     */
+    public static final long DEFAULT_CACHE_BYTES = 256L * 1024 * 1024;
+
+    static final int PROTOCOL_VERSION = 4;
+
+    static final byte COMMAND_SCAN = 1;
+    static final byte COMMAND_STOP = 2;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    private static final int TOKEN_BYTES = 32;
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private final int _port;
+    private final ClassCache _cache;
+    private final File _tokenFile;
+
+    private volatile ServerSocket _server;
+    private volatile byte[] _token;
+
+    /**
+     * Get the default token file of a daemon port, i.e. ~/.nucleus-localizer/daemon-47283.token
+     *
+     * @param port  The daemon port.
+     */
+    public static File getDefaultTokenFile(int port) {
+        return new File(new File(System.getProperty("user.home"), ".nucleus-localizer"),
+                "daemon-" + port + ".token");
+    }
+
+    /**
+     * Constructor.
+     *
+     * <p>Uses the default token file of the port.</p>
+     *
+     * @param port        The loopback port to listen on.
+     * @param cacheBytes  The estimated maximum size of the class cache in bytes.
+     */
+    public LocalizerDaemon(int port, long cacheBytes) {
+        this(port, cacheBytes, getDefaultTokenFile(port));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param port        The loopback port to listen on.
+     * @param cacheBytes  The estimated maximum size of the class cache in bytes.
+     * @param tokenFile   The file the request token is written to.
+     */
+    public LocalizerDaemon(int port, long cacheBytes, File tokenFile) {
+        _port = port;
+        _cache = new ClassCache(cacheBytes);
+        _tokenFile = tokenFile;
+    }
+
+    /**
+     * Get the port.
+     */
+    public int getPort() {
+        return _port;
+    }
+
+    /**
+     * Get the file the request token is written to.
+     */
+    public File getTokenFile() {
+        return _tokenFile;
+    }
+
+    /**
+     * Listen for and handle requests until a stop request is received or
+     * {@link #stop} is invoked.
+     */
+    public void run() throws IOException {
+
+        ServerSocket server = new ServerSocket(_port, 50, InetAddress.getLoopbackAddress());
+
+        // written after binding so a daemon already on the port keeps its token
+        try {
+            _token = writeToken(_tokenFile);
+        }
+        catch (IOException e) {
+            server.close();
+            throw e;
+        }
+
+        ExecutorService executor = Executors.newCachedThreadPool(new RequestThreadFactory());
+
+        _server = server;
+
+        System.out.println("Localizer daemon listening on port " + _port + ", token file "
+                + _tokenFile.getAbsolutePath() + '.');
+
+        try {
+            while (!server.isClosed()) {
+
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                }
+                catch (SocketException e) {
+                    // closed by stop
+                    if (server.isClosed())
+                        break;
+
+                    throw e;
+                }
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            }
+        }
+        finally {
+            server.close();
+            executor.shutdown();
+            Files.deleteIfExists(_tokenFile.toPath());
+        }
+
+        System.out.println("Localizer daemon stopped.");
+    }
+
+    /**
+     * Stop listening for requests. Requests in progress are completed.
+     */
+    public void stop() {
+
+        ServerSocket server = _server;
+        if (server == null)
+            return;
+
+        try {
+            server.close();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // handle the request of a connection
+    private void handle(Socket socket) {
+
+        try {
+            DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+
+            int version = input.readInt();
+            if (version != PROTOCOL_VERSION) {
+                writeError(output, "Unsupported protocol version: " + version);
+                return;
+            }
+
+            byte[] token = input.readUTF().getBytes(US_ASCII);
+            if (!MessageDigest.isEqual(token, _token)) {
+                writeError(output, "Invalid daemon token. Token file: " + _tokenFile.getAbsolutePath());
+                return;
+            }
+
+            byte command = input.readByte();
+
+            switch (command) {
+                case COMMAND_SCAN:
+                    scan(input, output);
+                    break;
+
+                case COMMAND_STOP:
+                    output.writeByte(STATUS_OK);
+                    output.flush();
+                    stop();
+                    break;
+
+                default:
+                    writeError(output, "Unknown command: " + command);
+            }
+        }
+        catch (EOFException ignore) {
+            // closed without a request
+        }
+        catch (IOException e) {
+            System.out.println("Failed to handle request: " + e.getMessage());
+        }
+        finally {
+            try {
+                socket.close();
+            }
+            catch (IOException ignore) {
+                // nothing left to do
+            }
+        }
+    }
+
+    // run a scan request
+    private void scan(DataInputStream input, DataOutputStream output) throws IOException {
+
+        File jarFile = new File(input.readUTF());
+        String version = input.readUTF();
+        File outputFile = new File(input.readUTF());
+        String charsetName = input.readUTF();
+        boolean isBinary = input.readBoolean();
+        int nestedDepth = input.readInt();
+
+        int count = input.readInt();
+        List<File> classpath = new ArrayList<>(count);
+
+        for (int i=0; i < count; i++) {
+            classpath.add(new File(input.readUTF()));
+        }
+
+        GeneratorReport report;
+
+        try {
+            LanguageGenerator generator = new LanguageGenerator(jarFile, outputFile, version);
+            generator.setRecordCache(_cache.forInput(jarFile));
+            generator.setCharset(Charset.forName(charsetName));
+            generator.setBinary(isBinary);
+
+            if (nestedDepth != -1)
+                generator.setNestedDepth(nestedDepth);
+
+            generator.setClasspath(classpath);
+
+            report = generator.generate();
+        }
+        catch (IOException | RuntimeException e) {
+            writeError(output, e.getClass().getSimpleName() + ": " + e.getMessage());
+            return;
+        }
+
+        System.out.println("Cache: " + _cache.size() + " classes, "
+                + (_cache.getBytes() / 1024) + "KB.");
+
+        output.writeByte(STATUS_OK);
+        report.write(output);
+        output.flush();
+    }
+
+    // write a new random token to a file only the current user can read
+    private static byte[] writeToken(File tokenFile) throws IOException {
+
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+
+        StringBuilder token = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : random) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16));
+            token.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        Path path = tokenFile.toPath().toAbsolutePath();
+        boolean isPosix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+        if (!Files.isDirectory(path.getParent())) {
+            if (isPosix) {
+                Files.createDirectories(path.getParent(),
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            }
+            else {
+                Files.createDirectories(path.getParent());
+            }
+        }
+
+        // created new with its permissions so it is never readable by others and
+        // moved in place so clients never read it partly written. without posix
+        // permissions, i.e. on windows, the user home is private.
+        Path temp = isPosix
+                ? Files.createTempFile(path.getParent(), "daemon", ".tmp",
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                : Files.createTempFile(path.getParent(), "daemon", ".tmp");
+
+        byte[] bytes = token.toString().getBytes(US_ASCII);
+
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+
+        return bytes;
+    }
+
+    private static void writeError(DataOutputStream output, String message) throws IOException {
+        output.writeByte(STATUS_ERROR);
+        output.writeUTF(String.valueOf(message));
+        output.flush();
+    }
+
+    private static class RequestThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger _count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                    "NucleusLocalizer-daemon-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
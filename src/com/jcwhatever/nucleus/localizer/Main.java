@@ -24,20 +24,88 @@
 
 package com.jcwhatever.nucleus.localizer;
 
+import java.io.Console;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 public class Main {
 
+    private static final int DEFAULT_DEPTH = -1;
+    private static final int INVALID_DEPTH = -2;
+    private static final int INVALID_PORT = -1;
+
+    private static final Logger VERBOSE_LOGGER = Logger.getLogger(Main.class.getPackage().getName());
+
     public static void main(String args[]) {
 
-        if (args.length != 2) {
+        List<String> arguments = new ArrayList<>(2);
+        Map<String, String> options = new HashMap<>(5);
+
+        parseArguments(args, arguments, options);
+
+        Charset charset = getCharset(options);
+        if (charset == null)
+            return;
+
+        int nestedDepth = getNestedDepth(options);
+        if (nestedDepth == INVALID_DEPTH)
+            return;
+
+        List<File> classpath = getClasspath(options);
+
+        long memoryBudget = getMemoryBudget(options);
+        if (memoryBudget < 0)
+            return;
+
+        ShardMapper shardMapper = null;
+        if (options.containsKey("shard-depth") || options.containsKey("shard-map")) {
+            shardMapper = getShardMapper(options);
+            if (shardMapper == null)
+                return;
+        }
+
+        if (options.containsKey("verbose"))
+            enableVerboseLogging();
+
+        if (options.containsKey("daemon")) {
+            runDaemon(options);
+            return;
+        }
+
+        if (options.containsKey("stop-daemon")) {
+            stopDaemon(options);
+            return;
+        }
+
+        if (options.containsKey("batch")) {
+            runBatch(arguments, options, charset, nestedDepth, classpath, memoryBudget);
+            return;
+        }
+
+        if (arguments.size() != 2) {
             printHelp();
             return;
         }
 
-        String inputJarName = args[0];
-        String version = args[1];
+        String inputJarName = arguments.get(0);
+        String version = arguments.get(1);
 
         File jarFile = new File(inputJarName);
         if (!jarFile.exists()) {
@@ -45,28 +113,502 @@ public class Main {
             return;
         }
 
-        if (!inputJarName.endsWith(".jar") || !jarFile.isFile()) {
-            System.out.println("jar file expected: " + inputJarName);
+        if (!jarFile.isDirectory() && (!inputJarName.endsWith(".jar") || !jarFile.isFile())) {
+            System.out.println("jar file or classes directory expected: " + inputJarName);
             return;
         }
 
         File outFile = new File("lang.keys.txt");
 
+        if (options.containsKey("watch")) {
+            runWatcher(jarFile, outFile, version, charset, options.containsKey("binary"));
+            return;
+        }
+
+        // shards keep their keys and are updated in place
+        if (shardMapper == null && outFile.exists() && !confirmOverwrite())
+            return;
+
+        if (options.containsKey("use-daemon")
+                && (shardMapper != null || options.containsKey("update-jar") || memoryBudget > 0)) {
+            System.out.println("Sharded key files, jar updates and memory budgets are generated in-process.");
+        }
+        else if (options.containsKey("use-daemon")
+                && runClient(jarFile, outFile, version, options, charset, nestedDepth, classpath)) {
+            return;
+        }
+
         LanguageGenerator generator = new LanguageGenerator(jarFile, outFile, version);
+        generator.setIncremental(options.containsKey("incremental"));
+        generator.setCharset(charset);
+        generator.setBinary(options.containsKey("binary"));
+
+        if (nestedDepth != DEFAULT_DEPTH)
+            generator.setNestedDepth(nestedDepth);
+
+        generator.setClasspath(classpath);
+        generator.setShardMapper(shardMapper);
+        generator.setMemoryBudget(memoryBudget);
+
+        // "--update-jar" updates the input jar, "--update-jar=<file>" writes a copy
+        String updateJar = options.get("update-jar");
+        if (updateJar != null) {
+
+            if (jarFile.isDirectory()) {
+                System.out.println("--update-jar requires a jar file input.");
+                return;
+            }
+
+            generator.setUpdatedJarFile(updateJar.isEmpty() ? jarFile : new File(updateJar));
+        }
+
+        try {
+            GeneratorReport report = generator.generate();
+            writeReport(options, report.toJson());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    // generate the key file using the daemon. false if the daemon is not running.
+    private static boolean runClient(File jarFile, File outFile, String version,
+                                     Map<String, String> options, Charset charset, int nestedDepth,
+                                     List<File> classpath) {
+
+        int port = getPort(options);
+        if (port == INVALID_PORT)
+            return true;
+
+        DaemonClient client = new DaemonClient(port);
+
+        try {
+            GeneratorReport report = client.generate(jarFile, outFile, version,
+                    charset, options.containsKey("binary"), nestedDepth, classpath);
+
+            System.out.println(report.getKeyCount() + " keys, " + report.getLiteralCount() + " literals, "
+                    + report.getReusedCount() + " of " + report.getClassCount() + " classes reused in "
+                    + report.getElapsedMillis() + "ms.");
+
+            writeReport(options, report.toJson());
+        }
+        catch (ConnectException e) {
+            System.out.println("Daemon is not running, generating in-process.");
+            return false;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return true;
+    }
+
+    // generate key files on request until stopped
+    private static void runDaemon(Map<String, String> options) {
+
+        int port = getPort(options);
+        if (port == INVALID_PORT)
+            return;
+
+        long cacheBytes = LocalizerDaemon.DEFAULT_CACHE_BYTES;
+        String cacheSize = options.get("cache-size");
+
+        if (cacheSize != null) {
+            try {
+                cacheBytes = Long.parseLong(cacheSize) * 1024 * 1024;
+            }
+            catch (NumberFormatException e) {
+                cacheBytes = -1;
+            }
+
+            if (cacheBytes < 0) {
+                System.out.println("Invalid cache size: " + cacheSize);
+                return;
+            }
+        }
+
+        try {
+            new LocalizerDaemon(port, cacheBytes).run();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // stop a running daemon
+    private static void stopDaemon(Map<String, String> options) {
+
+        int port = getPort(options);
+        if (port == INVALID_PORT)
+            return;
+
+        try {
+            new DaemonClient(port).stop();
+            System.out.println("Daemon stopped.");
+        }
+        catch (ConnectException e) {
+            System.out.println("Daemon is not running.");
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // regenerate the key file as classes change
+    private static void runWatcher(File classesDir, File outFile, String version,
+                                   Charset charset, boolean isBinary) {
+
+        if (!classesDir.isDirectory()) {
+            System.out.println("classes directory expected: " + classesDir);
+            return;
+        }
+
+        LanguageWatcher watcher = new LanguageWatcher(classesDir, outFile, version);
+        watcher.setCharset(charset);
+        watcher.setBinary(isBinary);
+
+        try {
+            watcher.run();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // generate key files for many jar files
+    private static void runBatch(List<String> arguments, Map<String, String> options,
+                                 Charset charset, int nestedDepth, List<File> classpath,
+                                 long memoryBudget) {
+
+        if (arguments.size() < 2) {
+            printHelp();
+            return;
+        }
+
+        String version = arguments.get(0);
+        List<File> inputs = new ArrayList<>(arguments.size() - 1);
+
+        for (String name : arguments.subList(1, arguments.size())) {
 
+            File input = new File(name);
+            if (!input.exists()) {
+                System.out.println("File not found: " + name);
+                return;
+            }
+
+            inputs.add(input);
+        }
+
+        String outputDir = options.get("out");
+        if (outputDir == null || outputDir.isEmpty())
+            outputDir = ".";
+
+        BatchGenerator batch;
         try {
-            generator.generate();
+            batch = new BatchGenerator(inputs, new File(outputDir), version);
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        batch.setIncremental(options.containsKey("incremental"));
+        batch.setCharset(charset);
+        batch.setBinary(options.containsKey("binary"));
+
+        if (nestedDepth != DEFAULT_DEPTH)
+            batch.setNestedDepth(nestedDepth);
+
+        batch.setClasspath(classpath);
+        batch.setMemoryBudget(memoryBudget);
+        batch.setSharedPool(options.containsKey("shared-pool"));
+
+        List<GeneratorReport> reports = batch.generate();
+
+        int keys = 0;
+        int failed = 0;
+
+        System.out.println();
+        System.out.println("Summary:");
+
+        for (GeneratorReport report : reports) {
+
+            String name = report.getInputFile().getName();
+
+            if (report.getError() != null) {
+                System.out.println("  [FAILED] " + name + ": " + report.getError().getMessage());
+                failed++;
+                continue;
+            }
+
+            System.out.println("  " + name + ": " + report.getKeyCount() + " keys, "
+                    + report.getLiteralCount() + " literals, "
+                    + report.getClassCount() + " classes in "
+                    + report.getElapsedMillis() + "ms");
+
+            keys += report.getKeyCount();
+        }
+
+        System.out.println(reports.size() + " jar files, " + keys + " keys, " + failed + " failed.");
+
+        try {
+            writeReport(options, GeneratorReport.toJson(reports));
         } catch (IOException e) {
             e.printStackTrace();
         }
+    }
+
+    // ask the user if the existing key file should be overwritten. true if there is no console.
+    private static boolean confirmOverwrite() {
+
+        Console console = System.console();
+        if (console == null)
+            return true;
+
+        // find out if user wants to overwrite existing file.
+        while (true) {
+            System.out.print("Language key file already exists. Overwrite? (Y or N)");
+
+            String input = console.readLine();
+            if (input == null)
+                return false;
+
+            if (input.equalsIgnoreCase("Y")) {
+                return true;
+            }
+            else if (input.equalsIgnoreCase("N")) {
+                return false;
+            }
+        }
+    }
+
+    // write the JSON run report to the file of the "--report" option, if any
+    private static void writeReport(Map<String, String> options, String json) throws IOException {
+
+        String fileName = options.get("report");
+        if (fileName == null || fileName.isEmpty())
+            return;
+
+        Files.write(Paths.get(fileName), json.getBytes("UTF-8"));
+
+        System.out.println("Report written: " + fileName);
+    }
+
+    // log the details of each class, field and annotation found
+    private static void enableVerboseLogging() {
+
+        ConsoleHandler handler = new ConsoleHandler();
+        handler.setLevel(Level.FINE);
+        handler.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return record.getLevel() + ": " + formatMessage(record) + '\n';
+            }
+        });
 
+        // keep a reference, loggers are weakly referenced by the log manager
+        VERBOSE_LOGGER.setLevel(Level.FINE);
+        VERBOSE_LOGGER.setUseParentHandlers(false);
+        VERBOSE_LOGGER.addHandler(handler);
     }
 
+    // get the daemon port from the "--port" option
+    private static int getPort(Map<String, String> options) {
+
+        String value = options.get("port");
+        if (value == null)
+            return LocalizerDaemon.DEFAULT_PORT;
+
+        try {
+            int port = Integer.parseInt(value);
+            if (port > 0 && port <= 0xFFFF)
+                return port;
+        }
+        catch (NumberFormatException ignore) {
+            // reported below
+        }
+
+        System.out.println("Invalid port: " + value);
+        return INVALID_PORT;
+    }
+
+    // get the dependency jar files and directories from the "--classpath" option
+    private static List<File> getClasspath(Map<String, String> options) {
+
+        String value = options.get("classpath");
+        if (value == null || value.isEmpty())
+            return new ArrayList<>(0);
+
+        String[] paths = value.split(File.pathSeparator);
+        List<File> classpath = new ArrayList<>(paths.length);
+
+        for (String path : paths) {
+            if (!path.isEmpty())
+                classpath.add(new File(path));
+        }
+
+        return classpath;
+    }
+
+    // get the shard mapper from the "--shard-depth" and "--shard-map" options
+    private static ShardMapper getShardMapper(Map<String, String> options) {
+
+        String value = options.get("shard-depth");
+        int depth = 0;
+
+        if (value != null) {
+            try {
+                depth = Integer.parseInt(value);
+            }
+            catch (NumberFormatException e) {
+                depth = -1;
+            }
+
+            if (depth < 0) {
+                System.out.println("Invalid shard depth: " + value);
+                return null;
+            }
+        }
+
+        PackageShardMapper mapper = new PackageShardMapper(depth);
+
+        String mapFile = options.get("shard-map");
+        if (mapFile == null)
+            return mapper;
+
+        Properties prefixes = new Properties();
+
+        try {
+            Reader reader = new InputStreamReader(new FileInputStream(mapFile), "UTF-8");
+            try {
+                prefixes.load(reader);
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Unable to read shard map: " + mapFile);
+            return null;
+        }
+
+        for (String prefix : prefixes.stringPropertyNames()) {
+
+            String shard = prefixes.getProperty(prefix).trim();
+            if (shard.isEmpty()) {
+                System.out.println("Missing shard name in shard map: " + prefix);
+                return null;
+            }
+
+            mapper.addPrefix(prefix.trim(), shard);
+        }
+
+        return mapper;
+    }
+
+    // get the memory budget in bytes from the "--memory-budget" option. 0 if not set, -1 if invalid.
+    private static long getMemoryBudget(Map<String, String> options) {
+
+        String value = options.get("memory-budget");
+        if (value == null)
+            return 0;
+
+        try {
+            long megabytes = Long.parseLong(value);
+            if (megabytes > 0)
+                return megabytes * 1024 * 1024;
+        }
+        catch (NumberFormatException ignore) {
+            // reported below
+        }
+
+        System.out.println("Invalid memory budget: " + value);
+        return -1;
+    }
+
+    // get the nested jar depth from the "--nested-depth" option
+    private static int getNestedDepth(Map<String, String> options) {
+
+        String value = options.get("nested-depth");
+        if (value == null)
+            return DEFAULT_DEPTH;
+
+        try {
+            int depth = Integer.parseInt(value);
+            if (depth >= 0)
+                return depth;
+        }
+        catch (NumberFormatException ignore) {
+            // reported below
+        }
+
+        System.out.println("Invalid nested depth: " + value);
+        return INVALID_DEPTH;
+    }
+
+    // get the key file charset from the "--encoding" option
+    private static Charset getCharset(Map<String, String> options) {
+
+        String name = options.get("encoding");
+        if (name == null || name.isEmpty())
+            return TextKeyFileWriter.DEFAULT_CHARSET;
+
+        try {
+            return Charset.forName(name);
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println("Unsupported encoding: " + name);
+            return null;
+        }
+    }
+
+    // separate "--name" and "--name=value" options from arguments
+    private static void parseArguments(String[] args, List<String> arguments, Map<String, String> options) {
+
+        for (String arg : args) {
+
+            if (!arg.startsWith("--")) {
+                arguments.add(arg);
+                continue;
+            }
+
+            int index = arg.indexOf('=');
+            if (index == -1) {
+                options.put(arg.substring(2), "");
+            }
+            else {
+                options.put(arg.substring(2, index), arg.substring(index + 1));
+            }
+        }
+    }
 
     private static void printHelp() {
 
         System.out.println("Format expect:");
-        System.out.println("jar -jar NucleusLocalizer.jar <jarFileName> <version>");
+        System.out.println("jar -jar NucleusLocalizer.jar <jarFileName|classesDir> <version> [options]");
+        System.out.println("jar -jar NucleusLocalizer.jar --batch [--out=<dir>] <version> <jarFile|dir>... [options]");
+        System.out.println("jar -jar NucleusLocalizer.jar --daemon [--port=<n>] [--cache-size=<MB>]");
+        System.out.println("jar -jar NucleusLocalizer.jar --stop-daemon [--port=<n>]");
+        System.out.println();
+        System.out.println("Options:");
+        System.out.println("  --incremental       Only re-scan classes that changed since the last run.");
+        System.out.println("  --batch             Scan many jar files. Key files are written to <dir>/<jarName>/lang.keys.txt");
+        System.out.println("  --shared-pool       With --batch, also write one string pool for all jar files to <dir>/lang.pool.bin");
+        System.out.println("                      and an index into it for each jar file, i.e. <dir>/<jarName>/lang.keys.idx");
+        System.out.println("  --encoding=<cs>     The key file encoding, i.e. UTF-8. Defaults to UTF-16.");
+        System.out.println("  --binary            Also write a binary key file, i.e. lang.keys.bin");
+        System.out.println("  --nested-depth=<n>  Scan jar files nested up to n levels deep. Defaults to 3, 0 disables.");
+        System.out.println("  --classpath=<path>  Dependency jar files and directories searched for Localizable annotations.");
+        System.out.println("  --update-jar        Add the key files to the input jar. --update-jar=<file> writes a copy instead.");
+        System.out.println("  --shard-depth=<n>   Split the key file into shards by the first n package names, 0 for each package.");
+        System.out.println("  --shard-map=<file>  Properties file mapping package prefixes to shard names, i.e. com.example.economy=economy");
+        System.out.println("  --memory-budget=<MB> Sort literals on disk once they exceed the budget. Split across --batch jar files.");
+        System.out.println("  --verbose           Log each localizable field, annotation and method argument found.");
+        System.out.println("  --report=<file>     Write a JSON report with counts and time spent in each phase.");
+        System.out.println("  --watch             Watch a classes directory and update the key file as classes change.");
+        System.out.println("  --daemon            Run a daemon that generates key files for --use-daemon and caches class results.");
+        System.out.println("                      Clients must be able to read its token file, ~/.nucleus-localizer/daemon-<port>.token");
+        System.out.println("  --use-daemon        Generate the key file using the daemon. Runs in-process if the daemon is not running.");
+        System.out.println("  --port=<n>          The daemon port on the loopback address. Defaults to " + LocalizerDaemon.DEFAULT_PORT + '.');
+        System.out.println("  --cache-size=<MB>   The daemon class cache memory bound. Defaults to 256.");
     }
 
 }
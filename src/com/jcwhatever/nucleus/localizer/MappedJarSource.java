@@ -0,0 +1,413 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads class entries from a memory mapped jar file.
+ *
+ * <p>Entries are found by parsing the zip central directory directly. Stored
+ * entries are returned as slices of the mapped file without copying and deflated
+ * entries are inflated into the reading threads {@link ReadBuffer}.</p>
+ *
+ * <p>Zip64 archives, archives larger than 2GB and encrypted or split archives are
+ * not supported. The constructor throws a {@link ZipException} for these so the
+ * caller can fall back to a different reader.</p>
+ *
+ * <p>A source opened from a file unmaps the file when it is closed so the file
+ * can be replaced right away, i.e. when a jar file is updated in place on Windows.
+ * Buffers returned by {@link #read} and nested sources of stored archives are views
+ * of the mapping and must not be used after the source is closed. If the runtime
+ * does not allow unmapping, the mapping is released when it is garbage collected.</p>
+ */
+class MappedJarSource extends ClassSource {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int LOCAL_SIZE = 30;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final int FLAG_ENCRYPTED = 1;
+
+    private static final Logger LOGGER = Logger.getLogger(MappedJarSource.class.getName());
+
+    private final String _name;
+    private final ByteBuffer _buffer;
+    private final MappedByteBuffer _mapping;
+    private final List<SourceEntry> _entries = new ArrayList<>(50);
+    private final List<SourceEntry> _archives = new ArrayList<>(0);
+
+    private volatile boolean _isClosed;
+
+    /**
+     * Constructor.
+     *
+     * @param file  The jar file.
+     *
+     * @throws ZipException if the file is not a zip file or uses unsupported features.
+     */
+    MappedJarSource(File file) throws IOException {
+
+        _name = file.getName();
+
+        RandomAccessFile randomAccess = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccess.getChannel();
+
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new ZipException("Archive is too large to map: " + _name);
+
+            _mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            _buffer = _mapping.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        finally {
+            // the mapping remains valid after the channel is closed
+            randomAccess.close();
+        }
+
+        try {
+            readCentralDirectory();
+        }
+        catch (ZipException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Create a source from a buffer that contains a zip archive.
+     *
+     * @param name    The name of the archive.
+     * @param buffer  The buffer.
+     *
+     * @throws ZipException if the buffer is not a zip archive or uses unsupported features.
+     */
+    MappedJarSource(String name, ByteBuffer buffer) throws ZipException {
+        _name = name;
+        _buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        _mapping = null;
+        readCentralDirectory();
+    }
+
+    @Override
+    List<SourceEntry> getEntries() {
+        return _entries;
+    }
+
+    @Override
+    List<SourceEntry> getArchiveEntries() {
+        return _archives;
+    }
+
+    @Override
+    ClassSource openArchive(SourceEntry sourceEntry) throws IOException {
+
+        checkOpen();
+
+        Entry entry = (Entry) sourceEntry;
+
+        // stored archives are used in place
+        if (entry.method == METHOD_STORED)
+            return open(entry.name, getData(entry));
+
+        // inflate into an array owned by the nested source
+        byte[] bytes = new byte[(int) entry.size];
+        ByteBuffer data = getData(entry);
+
+        byte[] input = new byte[(int) entry.compressedSize + 1];
+        data.get(input, 0, input.length - 1);
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflate(entry, inflater, input, bytes);
+        }
+        finally {
+            inflater.end();
+        }
+
+        return open(entry.name, ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    ByteBuffer read(SourceEntry sourceEntry, ReadBuffer buffer) throws IOException {
+
+        checkOpen();
+
+        Entry entry = (Entry) sourceEntry;
+        ByteBuffer data = getData(entry);
+
+        if (entry.method == METHOD_STORED)
+            return data;
+
+        // Inflater only accepts arrays as input
+        int compressedSize = (int) entry.compressedSize;
+        byte[] input = buffer.input(compressedSize + 1);
+        data.get(input, 0, compressedSize);
+
+        // trailing byte required by the inflater in nowrap mode
+        input[compressedSize] = 0;
+
+        int size = (int) entry.size;
+        byte[] output = buffer.bytes(size);
+
+        inflate(entry, buffer.inflater(), input, output);
+
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    @Override
+    public void close() {
+
+        if (_isClosed)
+            return;
+
+        _isClosed = true;
+
+        // sources of in memory and stored nested archives do not own their buffer
+        if (_mapping != null)
+            unmap(_mapping);
+    }
+
+    // throw if the source is closed, reading an unmapped buffer crashes the jvm
+    private void checkOpen() throws IOException {
+        if (_isClosed)
+            throw new IOException("Source is closed: " + _name);
+    }
+
+    // release a mapping without waiting for the buffer to be garbage collected
+    private static void unmap(MappedByteBuffer mapping) {
+
+        try {
+            try {
+                // java 9 and later
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+
+                invokeCleaner.invoke(field.get(null), mapping);
+            }
+            catch (NoSuchMethodException e) {
+                // java 7 and 8
+                Method cleanerMethod = mapping.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+
+                Object cleaner = cleanerMethod.invoke(mapping);
+                if (cleaner != null)
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.fine("Mapped jar file is released when garbage collected: " + e);
+        }
+    }
+
+    // inflate an entry. the input includes the trailing byte required in nowrap mode
+    private static void inflate(Entry entry, Inflater inflater, byte[] input, byte[] output) throws ZipException {
+
+        int size = (int) entry.size;
+        inflater.setInput(input, 0, (int) entry.compressedSize + 1);
+
+        try {
+            int length = 0;
+            while (length < size) {
+                int len = inflater.inflate(output, length, size - length);
+                if (len == 0 && (inflater.finished() || inflater.needsInput()))
+                    break;
+
+                length += len;
+            }
+
+            if (length != size)
+                throw new ZipException("Unexpected end of entry: " + entry.name);
+        }
+        catch (DataFormatException e) {
+            throw new ZipException("Invalid deflate data in entry " + entry.name + ": " + e.getMessage());
+        }
+    }
+
+    // get the entry data using the local file header
+    private ByteBuffer getData(Entry entry) throws ZipException {
+
+        int local = (int) entry.localOffset;
+
+        if (local + LOCAL_SIZE > _buffer.limit() || _buffer.getInt(local) != LOCAL_SIGNATURE)
+            throw new ZipException("Invalid local header for entry: " + entry.name);
+
+        int nameLength = _buffer.getShort(local + 26) & 0xFFFF;
+        int extraLength = _buffer.getShort(local + 28) & 0xFFFF;
+
+        long start = (long) local + LOCAL_SIZE + nameLength + extraLength;
+        long end = start + entry.compressedSize;
+
+        if (end > _buffer.limit())
+            throw new ZipException("Entry extends past end of archive: " + entry.name);
+
+        ByteBuffer data = _buffer.duplicate();
+        data.position((int) start);
+        data.limit((int) end);
+        return data.slice();
+    }
+
+    // find the class and nested jar entries in the central directory
+    private void readCentralDirectory() throws ZipException {
+
+        int end = findEndRecord();
+
+        int total = _buffer.getShort(end + 10) & 0xFFFF;
+        long size = _buffer.getInt(end + 12) & 0xFFFFFFFFL;
+        long offset = _buffer.getInt(end + 16) & 0xFFFFFFFFL;
+
+        if (total == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL)
+            throw new ZipException("Zip64 archives are not supported: " + _name);
+
+        if (offset + size > end)
+            throw new ZipException("Invalid central directory: " + _name);
+
+        int index = (int) offset;
+
+        for (int i=0; i < total; i++) {
+
+            if (index + CENTRAL_SIZE > end || _buffer.getInt(index) != CENTRAL_SIGNATURE)
+                throw new ZipException("Invalid central directory entry: " + _name);
+
+            int flags = _buffer.getShort(index + 8) & 0xFFFF;
+            int method = _buffer.getShort(index + 10) & 0xFFFF;
+            long crc = _buffer.getInt(index + 16) & 0xFFFFFFFFL;
+            long compressedSize = _buffer.getInt(index + 20) & 0xFFFFFFFFL;
+            long entrySize = _buffer.getInt(index + 24) & 0xFFFFFFFFL;
+            int nameLength = _buffer.getShort(index + 28) & 0xFFFF;
+            int extraLength = _buffer.getShort(index + 30) & 0xFFFF;
+            int commentLength = _buffer.getShort(index + 32) & 0xFFFF;
+            long localOffset = _buffer.getInt(index + 42) & 0xFFFFFFFFL;
+
+            String name = readName(index + CENTRAL_SIZE, nameLength);
+
+            index += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+
+            boolean isArchive = isArchiveEntry(name);
+
+            if (name.endsWith("/") || (!isClassEntry(name) && !isArchive))
+                continue;
+
+            if ((flags & FLAG_ENCRYPTED) != 0)
+                throw new ZipException("Encrypted entries are not supported: " + name);
+
+            if (method != METHOD_STORED && method != METHOD_DEFLATED)
+                throw new ZipException("Unsupported compression method " + method + ": " + name);
+
+            if (compressedSize == 0xFFFFFFFFL || entrySize == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL)
+                throw new ZipException("Zip64 entries are not supported: " + name);
+
+            if (entrySize > Integer.MAX_VALUE - 8)
+                throw new ZipException("Entry is too large: " + name);
+
+            Entry entry = new Entry(name, crc, entrySize, compressedSize, method, localOffset);
+
+            if (isArchive) {
+                _archives.add(entry);
+            }
+            else {
+                _entries.add(entry);
+            }
+        }
+
+        sort(_entries);
+        sort(_archives);
+    }
+
+    // find the end of central directory record
+    private int findEndRecord() throws ZipException {
+
+        int limit = _buffer.limit();
+        int min = Math.max(0, limit - END_SIZE - MAX_COMMENT);
+
+        for (int i = limit - END_SIZE; i >= min; i--) {
+            if (_buffer.getInt(i) == END_SIGNATURE &&
+                    i + END_SIZE + (_buffer.getShort(i + 20) & 0xFFFF) == limit) {
+
+                if ((_buffer.getShort(i + 4) & 0xFFFF) != 0)
+                    throw new ZipException("Split archives are not supported: " + _name);
+
+                return i;
+            }
+        }
+
+        throw new ZipException("Not a zip archive: " + _name);
+    }
+
+    private String readName(int offset, int length) {
+
+        byte[] bytes = new byte[length];
+
+        ByteBuffer buffer = _buffer.duplicate();
+        buffer.position(offset);
+        buffer.get(bytes);
+
+        return new String(bytes, UTF_8);
+    }
+
+    // central directory entry
+    private static class Entry extends SourceEntry {
+
+        final long compressedSize;
+        final int method;
+        final long localOffset;
+
+        Entry(String name, long crc, long size, long compressedSize, int method, long localOffset) {
+            super(name, crc, size);
+
+            this.compressedSize = compressedSize;
+            this.method = method;
+            this.localOffset = localOffset;
+        }
+    }
+}
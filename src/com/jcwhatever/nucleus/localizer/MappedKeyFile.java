@@ -0,0 +1,168 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a binary key file written by the generator.
+ *
+ * <p>The file is memory mapped and the text of a key is looked up directly
+ * from the offset table without parsing the rest of the file. Text is only
+ * decoded when it is requested.</p>
+ *
+ * <p>Instances are safe to use from multiple threads.</p>
+ */
+public class MappedKeyFile {
+
+    private final File _file;
+    private final ByteBuffer _buffer;
+    private final String _version;
+    private final int _size;
+    private final int _tableOffset;
+    private final int _blobOffset;
+
+    /**
+     * Constructor.
+     *
+     * @param file  The binary key file.
+     *
+     * @throws IOException if the file cannot be read or is not a binary key file.
+     */
+    public MappedKeyFile(File file) throws IOException {
+
+        _file = file;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Key file is too large: " + file);
+
+            _buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (_buffer.getInt() != BinaryKeyFileWriter.MAGIC)
+                throw new IOException("Not a binary key file: " + file);
+
+            int format = _buffer.getInt();
+            if (format != BinaryKeyFileWriter.FORMAT_VERSION)
+                throw new IOException("Unsupported binary key file format " + format + ": " + file);
+
+            int versionLength = _buffer.getInt();
+            if (versionLength < 0 || versionLength > _buffer.remaining())
+                throw new IOException("Invalid binary key file: " + file);
+
+            _version = decode(_buffer.position(), versionLength);
+            _buffer.position(_buffer.position() + versionLength);
+
+            _size = _buffer.getInt();
+            _tableOffset = _buffer.position();
+
+            long blobOffset = _tableOffset + _size * 8L;
+            if (_size < 0 || blobOffset > _buffer.limit())
+                throw new IOException("Invalid binary key file: " + file);
+
+            _blobOffset = (int) blobOffset;
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Invalid binary key file: " + file, e);
+        }
+    }
+
+    /**
+     * Get the key file.
+     */
+    public File getFile() {
+        return _file;
+    }
+
+    /**
+     * Get the key file version.
+     */
+    public String getVersion() {
+        return _version;
+    }
+
+    /**
+     * Get the number of key slots, the highest key + 1.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Determine if a key has text.
+     *
+     * @param key  The key.
+     */
+    public boolean contains(int key) {
+        return key >= 0 && key < _size && _buffer.getInt(_tableOffset + key * 8 + 4) != -1;
+    }
+
+    /**
+     * Get the text of a key.
+     *
+     * @param key  The key.
+     *
+     * @return  The text or null if the key has no text.
+     */
+    public String get(int key) {
+
+        if (key < 0 || key >= _size)
+            return null;
+
+        int entry = _tableOffset + key * 8;
+        int offset = _buffer.getInt(entry);
+        int length = _buffer.getInt(entry + 4);
+
+        if (length == -1)
+            return null;
+
+        int start = _blobOffset + offset;
+
+        if (offset < 0 || length < 0 || start + length > _buffer.limit())
+            throw new IllegalStateException("Invalid offset for key " + key + " in " + _file);
+
+        return decode(start, length);
+    }
+
+    // decode UTF-8 text at an absolute position of the mapped file
+    private String decode(int position, int length) {
+
+        // duplicate so lookups from different threads do not share a position
+        ByteBuffer slice = _buffer.duplicate();
+        slice.limit(position + length);
+        slice.position(position);
+
+        return BinaryKeyFileWriter.UTF_8.decode(slice).toString();
+    }
+}
@@ -0,0 +1,411 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+/**
+ * Adds the class entries of nested jar files to the entries of a source.
+ *
+ * <p>Nested archives are read into memory, or used in place when they are
+ * stored uncompressed in a mapped jar, and are never extracted to disk. The
+ * archives are opened in parallel to list their class entries and are released
+ * once listed.</p>
+ *
+ * <p>Reading a nested entry opens its archive again. Entries are sorted by name
+ * so the entries of an archive are read together, an archive is released as soon
+ * as reading moves on to another archive and no read of it is in progress. At most
+ * one archive that is not being read is held in memory.</p>
+ *
+ * <p>Nested entry names include the path of the archive they are in, i.e.
+ * "lib/inner.jar!/com/example/Foo.class".</p>
+ */
+class NestedJarSource extends ClassSource {
+
+    static final String SEPARATOR = "!/";
+
+    private static final Logger LOGGER = Logger.getLogger(NestedJarSource.class.getName());
+
+    private final ClassSource _source;
+    private final int _maxDepth;
+
+    // guards the open state of every archive
+    private final Object _lock = new Object();
+    private final List<Archive> _open = new ArrayList<>(5);
+    private Archive _current;
+
+    private List<SourceEntry> _entries;
+
+    /**
+     * Constructor.
+     *
+     * @param source    The outer source.
+     * @param maxDepth  The maximum nesting depth. 1 only includes archives
+     *                  directly inside the outer source.
+     */
+    NestedJarSource(ClassSource source, int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("maxDepth must be at least 1.");
+
+        _source = source;
+        _maxDepth = maxDepth;
+    }
+
+    /**
+     * Get the number of nested archives currently open.
+     */
+    int getOpenCount() {
+        synchronized (_lock) {
+            return _open.size();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("serial") // fork join tasks are never serialized
+    List<SourceEntry> getEntries() throws IOException {
+
+        if (_entries != null)
+            return _entries;
+
+        List<SourceEntry> entries = new ArrayList<>(_source.getEntries());
+        final List<SourceEntry> archives = _source.getArchiveEntries();
+
+        if (!archives.isEmpty()) {
+
+            ForkJoinPool pool = new ForkJoinPool();
+
+            try {
+                entries.addAll(pool.invoke(new RecursiveTask<List<SourceEntry>>() {
+                    @Override
+                    protected List<SourceEntry> compute() {
+                        return listAll(_source, null, archives, "", 1);
+                    }
+                }));
+            }
+            finally {
+                pool.shutdown();
+            }
+
+            sort(entries);
+        }
+
+        _entries = entries;
+        return entries;
+    }
+
+    @Override
+    ByteBuffer read(SourceEntry entry, ReadBuffer buffer) throws IOException {
+
+        if (!(entry instanceof NestedEntry))
+            return _source.read(entry, buffer);
+
+        NestedEntry nested = (NestedEntry) entry;
+        Archive archive = nested.archive;
+        ClassSource source = acquire(archive);
+
+        try {
+            SourceEntry sourceEntry = archive.entries.get(nested.innerName);
+            if (sourceEntry == null)
+                throw new IOException("Nested entry not found: " + nested.name);
+
+            // the buffer outlives the release. nested archive memory is on the heap
+            // or belongs to the outer source.
+            return source.read(sourceEntry, buffer);
+        }
+        finally {
+            release(archive);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        synchronized (_lock) {
+            for (Archive archive : _open) {
+                archive.source.close();
+                archive.source = null;
+                archive.entries = null;
+                archive.users = 0;
+            }
+            _open.clear();
+            _current = null;
+        }
+
+        _source.close();
+    }
+
+    // list the class entries of archives in parallel
+    private List<SourceEntry> listAll(ClassSource parentSource, Archive parent,
+                                      List<SourceEntry> archives, String prefix, int depth) {
+
+        List<ListTask> tasks = new ArrayList<>(archives.size());
+
+        for (SourceEntry archive : archives) {
+            ListTask task = new ListTask(parentSource, parent, archive, prefix, depth);
+            task.fork();
+            tasks.add(task);
+        }
+
+        List<SourceEntry> entries = new ArrayList<>(50);
+
+        for (ListTask task : tasks) {
+            entries.addAll(task.join());
+        }
+
+        return entries;
+    }
+
+    // open an archive for reading, or use it if it is already open. each call
+    // must be followed by a call to release.
+    private ClassSource acquire(Archive archive) throws IOException {
+
+        // only one thread opens an archive, the others wait for it
+        synchronized (archive) {
+
+            synchronized (_lock) {
+                if (archive.source != null) {
+                    archive.users++;
+                    return archive.source;
+                }
+            }
+
+            ClassSource parentSource = _source;
+            SourceEntry archiveEntry = archive.entry;
+
+            if (archive.parent != null) {
+                parentSource = acquire(archive.parent);
+                archiveEntry = archive.parent.entries.get(archive.entry.name);
+            }
+
+            ClassSource source = null;
+            Map<String, SourceEntry> entries = null;
+
+            try {
+                if (archiveEntry == null)
+                    throw new IOException("Nested archive not found: " + archive.path);
+
+                source = parentSource.openArchive(archiveEntry);
+                entries = getEntryMap(source);
+            }
+            finally {
+                if (entries == null) {
+
+                    if (source != null)
+                        source.close();
+
+                    if (archive.parent != null)
+                        release(archive.parent);
+                }
+            }
+
+            synchronized (_lock) {
+
+                archive.source = source;
+                archive.entries = entries;
+                archive.users = 1;
+                _open.add(archive);
+
+                Archive previous = _current;
+                _current = archive;
+
+                // reading has moved on
+                if (previous != null && previous.source != null && previous.users == 0)
+                    closeArchive(previous);
+            }
+
+            return source;
+        }
+    }
+
+    // release an archive acquired for reading
+    private void release(Archive archive) throws IOException {
+        synchronized (_lock) {
+
+            archive.users--;
+
+            // the current archive is kept for the reads that follow
+            if (archive.users == 0 && archive != _current && archive.source != null)
+                closeArchive(archive);
+        }
+    }
+
+    // close an open archive that is not in use. holds the lock.
+    private void closeArchive(Archive archive) throws IOException {
+
+        ClassSource source = archive.source;
+
+        archive.source = null;
+        archive.entries = null;
+        _open.remove(archive);
+
+        try {
+            source.close();
+        }
+        finally {
+            // an open archive holds its parent
+            if (archive.parent != null)
+                release(archive.parent);
+        }
+    }
+
+    // get the class and archive entries of a source by name
+    private static Map<String, SourceEntry> getEntryMap(ClassSource source) throws IOException {
+
+        List<SourceEntry> classEntries = source.getEntries();
+        List<SourceEntry> archives = source.getArchiveEntries();
+
+        Map<String, SourceEntry> entries = new HashMap<>(
+                (int) ((classEntries.size() + archives.size()) / 0.75f) + 1);
+
+        for (SourceEntry entry : classEntries) {
+            entries.put(entry.name, entry);
+        }
+
+        for (SourceEntry entry : archives) {
+            entries.put(entry.name, entry);
+        }
+
+        return entries;
+    }
+
+    // lists the entries of a nested archive. never serialized.
+    @SuppressWarnings("serial")
+    private class ListTask extends RecursiveTask<List<SourceEntry>> {
+
+        final ClassSource parentSource;
+        final Archive parent;
+        final SourceEntry entry;
+        final String prefix;
+        final int depth;
+
+        ListTask(ClassSource parentSource, Archive parent, SourceEntry entry, String prefix, int depth) {
+            this.parentSource = parentSource;
+            this.parent = parent;
+            this.entry = entry;
+            this.prefix = prefix;
+            this.depth = depth;
+        }
+
+        @Override
+        protected List<SourceEntry> compute() {
+
+            String path = prefix + entry.name;
+            ClassSource source;
+            List<SourceEntry> classEntries;
+            List<SourceEntry> archives;
+
+            try {
+                source = parentSource.openArchive(entry);
+            }
+            catch (IOException e) {
+                // one unreadable library should not stop the scan
+                LOGGER.warning("Nested archive skipped, " + path + ": " + e.getMessage());
+                return Collections.emptyList();
+            }
+
+            try {
+                classEntries = source.getEntries();
+                archives = source.getArchiveEntries();
+
+                // entries of the outer source stay valid, others are found by name when reopened
+                Archive archive = new Archive(parent,
+                        parent == null ? entry : new SourceEntry(entry.name, entry.crc, entry.size), path);
+
+                List<SourceEntry> entries = new ArrayList<>(classEntries.size());
+
+                for (SourceEntry classEntry : classEntries) {
+                    entries.add(new NestedEntry(path + SEPARATOR + classEntry.name, archive, classEntry));
+                }
+
+                if (archives.isEmpty())
+                    return entries;
+
+                if (depth < _maxDepth) {
+                    entries.addAll(listAll(source, archive, archives, path + SEPARATOR, depth + 1));
+                }
+                else {
+                    LOGGER.warning("Nested archive depth limit reached, " + archives.size()
+                            + " archives in " + path + " skipped.");
+                }
+
+                return entries;
+            }
+            catch (IOException e) {
+                LOGGER.warning("Nested archive skipped, " + path + ": " + e.getMessage());
+                return Collections.emptyList();
+            }
+            finally {
+                try {
+                    source.close();
+                }
+                catch (IOException e) {
+                    LOGGER.warning("Failed to close nested archive " + path + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // nested archive that is opened when its entries are read
+    private static class Archive {
+
+        final Archive parent;      // null if the archive is in the outer source
+        final SourceEntry entry;   // the archive entry in its parent
+        final String path;
+
+        // guarded by the source lock
+        ClassSource source;
+        Map<String, SourceEntry> entries;
+        int users;
+
+        Archive(Archive parent, SourceEntry entry, String path) {
+            this.parent = parent;
+            this.entry = entry;
+            this.path = path;
+        }
+    }
+
+    // entry of a nested archive
+    private static class NestedEntry extends SourceEntry {
+
+        final Archive archive;
+        final String innerName;
+
+        NestedEntry(String name, Archive archive, SourceEntry entry) {
+            super(name, entry.crc, entry.size);
+
+            this.archive = archive;
+            this.innerName = entry.name;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps classes to key file shards by package.
+ *
+ * <p>Classes are mapped to the first packages of their package name up to the
+ * specified depth, i.e. with a depth of 3, the class com.example.economy.shop.Item
+ * is mapped to the shard "com.example.economy". Explicit mappings from a package
+ * prefix to a shard name take precedence, the longest matching prefix is used.</p>
+ */
+public class PackageShardMapper implements ShardMapper {
+
+    private final int _depth;
+
+    // package prefixes and their shard names, longest prefix first
+    private final List<String> _prefixes = new ArrayList<>(5);
+    private final List<String> _shards = new ArrayList<>(5);
+
+    /**
+     * Constructor.
+     *
+     * @param depth  The number of package names in a shard name. 0 maps each package
+     *               to its own shard.
+     */
+    public PackageShardMapper(int depth) {
+        if (depth < 0)
+            throw new IllegalArgumentException("depth cannot be negative.");
+
+        _depth = depth;
+    }
+
+    /**
+     * Get the number of package names in a shard name.
+     */
+    public int getDepth() {
+        return _depth;
+    }
+
+    /**
+     * Map the classes in a package and its sub packages to a shard.
+     *
+     * @param packagePrefix  The package name, i.e. com.example.economy.
+     * @param shard          The shard name.
+     */
+    public void addPrefix(String packagePrefix, String shard) {
+        if (packagePrefix == null || packagePrefix.isEmpty())
+            throw new IllegalArgumentException("packagePrefix cannot be empty.");
+
+        if (shard == null || shard.isEmpty())
+            throw new IllegalArgumentException("shard cannot be empty.");
+
+        int index = 0;
+        while (index < _prefixes.size() && _prefixes.get(index).length() >= packagePrefix.length()) {
+            index++;
+        }
+
+        _prefixes.add(index, packagePrefix);
+        _shards.add(index, shard);
+    }
+
+    @Override
+    public String getShard(String className) {
+
+        for (int i=0; i < _prefixes.size(); i++) {
+
+            String prefix = _prefixes.get(i);
+
+            if (className.startsWith(prefix) &&
+                    (className.length() == prefix.length() || className.charAt(prefix.length()) == '.')) {
+                return _shards.get(i);
+            }
+        }
+
+        int end = className.lastIndexOf('.');
+        if (end == -1)
+            return null;
+
+        if (_depth == 0)
+            return className.substring(0, end);
+
+        int index = -1;
+
+        for (int i=0; i < _depth; i++) {
+            index = className.indexOf('.', index + 1);
+            if (index == -1 || index >= end)
+                return className.substring(0, end);
+        }
+
+        return className.substring(0, index);
+    }
+}
@@ -0,0 +1,186 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Reads the index file of a plugin whose key file text is stored in a
+ * {@link SharedKeyPool}.
+ *
+ * <p>The index only holds the pool index of each key. Text is looked up in
+ * the pool so plugins that use the same text share a single String instance.</p>
+ *
+ * <p>Instances are safe to use from multiple threads.</p>
+ */
+public class PooledKeyFile {
+
+    private final File _file;
+    private final SharedKeyPool _pool;
+    private final String _version;
+    private final int[] _indexes;
+
+    /**
+     * Constructor.
+     *
+     * @param indexFile  The index file.
+     * @param pool       The pool the index file was written for.
+     *
+     * @throws IOException if the file cannot be read, is not an index file or was
+     *                     written for a different pool.
+     */
+    public PooledKeyFile(File indexFile, SharedKeyPool pool) throws IOException {
+
+        if (pool == null)
+            throw new IllegalArgumentException("pool cannot be null.");
+
+        _file = indexFile;
+        _pool = pool;
+
+        try (DataInputStream stream = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile), 64 * 1024))) {
+
+            if (stream.readInt() != SharedPoolWriter.INDEX_MAGIC)
+                throw new IOException("Not a key index file: " + indexFile);
+
+            int format = stream.readInt();
+            if (format != SharedPoolWriter.INDEX_FORMAT_VERSION)
+                throw new IOException("Unsupported key index file format " + format + ": " + indexFile);
+
+            int versionLength = stream.readInt();
+            if (versionLength < 0 || versionLength > indexFile.length())
+                throw new IOException("Invalid key index file: " + indexFile);
+
+            byte[] version = new byte[versionLength];
+            stream.readFully(version);
+            _version = new String(version, BinaryKeyFileWriter.UTF_8);
+
+            if (stream.readLong() != pool.getChecksum())
+                throw new IOException("Key index file was written for a different pool: " + indexFile);
+
+            int size = stream.readInt();
+            if (size < 0 || size * 4L > indexFile.length())
+                throw new IOException("Invalid key index file: " + indexFile);
+
+            _indexes = new int[size];
+
+            for (int i=0; i < size; i++) {
+
+                int index = stream.readInt();
+                if (index < -1 || index >= pool.size())
+                    throw new IOException("Invalid pool index for key " + i + " in " + indexFile);
+
+                _indexes[i] = index;
+            }
+        }
+        catch (EOFException e) {
+            throw new IOException("Invalid key index file: " + indexFile, e);
+        }
+    }
+
+    /**
+     * Get the index file.
+     */
+    public File getFile() {
+        return _file;
+    }
+
+    /**
+     * Get the pool the keys are stored in.
+     */
+    public SharedKeyPool getPool() {
+        return _pool;
+    }
+
+    /**
+     * Get the key file version.
+     */
+    public String getVersion() {
+        return _version;
+    }
+
+    /**
+     * Get the number of key slots, the highest key + 1.
+     */
+    public int size() {
+        return _indexes.length;
+    }
+
+    /**
+     * Determine if a key has text.
+     *
+     * @param key  The key.
+     */
+    public boolean contains(int key) {
+        return key >= 0 && key < _indexes.length && _indexes[key] != -1;
+    }
+
+    /**
+     * Get the text of a key.
+     *
+     * @param key  The key.
+     *
+     * @return  The text or null if the key has no text.
+     */
+    public String get(int key) {
+
+        if (key < 0 || key >= _indexes.length)
+            return null;
+
+        return _pool.get(_indexes[key]);
+    }
+
+    /**
+     * Create a language table of the keys so language files can be merged on
+     * top of it. The text of the table is shared with the pool.
+     */
+    public LanguageTable toTable() {
+
+        String[] texts = new String[_indexes.length];
+
+        for (int i=0; i < texts.length; i++) {
+            texts[i] = _pool.get(_indexes[i]);
+        }
+
+        // comma delimited, the same as the version line of a key file
+        Set<String> versions = new LinkedHashSet<>(5);
+
+        for (String version : _version.split(",")) {
+            version = version.trim();
+
+            if (!version.isEmpty())
+                versions.add(version);
+        }
+
+        return new LanguageTable(versions, texts);
+    }
+}
@@ -0,0 +1,115 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Inflater;
+
+/**
+ * Reusable buffers used to read class entries. Not thread safe; each
+ * reading thread uses its own instance.
+ */
+class ReadBuffer implements Closeable {
+
+    private byte[] _bytes = new byte[16 * 1024];
+    private byte[] _input = new byte[0];
+    private Inflater _inflater;
+
+    /**
+     * Get the output buffer, sized to hold at least the specified number of bytes.
+     * The contents are not preserved when the buffer grows.
+     */
+    byte[] bytes(int size) {
+        if (_bytes.length < size)
+            _bytes = new byte[Math.max(size, _bytes.length * 2)];
+
+        return _bytes;
+    }
+
+    /**
+     * Get the input buffer, sized to hold at least the specified number of bytes.
+     */
+    byte[] input(int size) {
+        if (_input.length < size)
+            _input = new byte[Math.max(size, _input.length * 2)];
+
+        return _input;
+    }
+
+    /**
+     * Get the inflater for raw deflate data. The inflater is reset.
+     */
+    Inflater inflater() {
+        if (_inflater == null) {
+            _inflater = new Inflater(true);
+        }
+        else {
+            _inflater.reset();
+        }
+        return _inflater;
+    }
+
+    /**
+     * Read a stream fully into the output buffer.
+     *
+     * @param stream  The stream to read.
+     * @param size    The expected size or -1 if not known.
+     *
+     * @return  A buffer wrapping the bytes read.
+     */
+    ByteBuffer readFully(InputStream stream, long size) throws IOException {
+
+        byte[] bytes = bytes(size > 0 && size <= Integer.MAX_VALUE ? (int) size : 0);
+        int length = 0;
+
+        while (true) {
+
+            if (length == bytes.length) {
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                _bytes = bytes = grown;
+            }
+
+            int len = stream.read(bytes, length, bytes.length - length);
+            if (len == -1)
+                break;
+
+            length += len;
+        }
+
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    @Override
+    public void close() {
+        if (_inflater != null) {
+            _inflater.end();
+            _inflater = null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+/**
+ * Cache of the records extracted from the class entries of a class source.
+ *
+ * <p>Records are only reused if the CRC and size of the entry have not changed.
+ * The call literals of an entry are cached separately since they also depend on
+ * the localizable methods found in other classes.</p>
+ */
+interface RecordCache extends ScanPipeline.Cache<ClassRecord> {
+
+    /**
+     * Add the record of an entry. Invoked from the collector thread.
+     *
+     * @param sourceEntry  The source entry.
+     * @param record       The record extracted from the entry.
+     */
+    void put(SourceEntry sourceEntry, ClassRecord record);
+
+    /**
+     * Get the call literals of an entry if they were found for the same
+     * localizable methods. Invoked from the reader thread.
+     *
+     * @param sourceEntry  The source entry.
+     * @param callKey      Identifies the localizable methods the class references.
+     *
+     * @return  The record holding the call literals, {@link ClassRecord#SKIPPED} if
+     * there were none or null if they need to be found.
+     */
+    ClassRecord getCalls(SourceEntry sourceEntry, String callKey);
+
+    /**
+     * Add the call literals of an entry. Invoked from the collector thread after
+     * the record of the entry was added.
+     *
+     * @param sourceEntry  The source entry.
+     * @param callKey      Identifies the localizable methods the class references.
+     * @param record       The record holding the call literals or {@link ClassRecord#SKIPPED}.
+     */
+    void putCalls(SourceEntry sourceEntry, String callKey, ClassRecord record);
+
+    /**
+     * Get the number of records reused from the cache.
+     */
+    int getReusedCount();
+}
@@ -0,0 +1,528 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import com.jcwhatever.nucleus.localizer.ClassRecord.AnnotationUsage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent index of the records extracted from the class entries of a class source.
+ *
+ * <p>Records are keyed to the entry name and are only reused if the CRC and size
+ * of the entry have not changed. Annotation usages are stored unresolved. Call
+ * literals are stored with the key of the localizable methods they were found
+ * for and are only reused for the same key.</p>
+ */
+class ScanIndex implements RecordCache {
+
+    private static final int MAGIC = 0x4E4C4958;
+    private static final int FORMAT_VERSION = 4;
+
+    private static final byte STATE_SKIPPED = 0;
+    private static final byte STATE_RECORD = 1;
+    private static final byte STATE_CALLER = 2;
+
+    private static final byte VALUE_STRING = 0;
+    private static final byte VALUE_ARRAY = 1;
+
+    private final File _file;
+    private final Map<String, Entry> _previous;
+    private final Map<String, Entry> _current;
+    private final AtomicInteger _reused = new AtomicInteger();
+    private boolean _isUnreadable;
+
+    /**
+     * Load an index file. If the file does not exist or cannot be read, an
+     * empty index is returned.
+     *
+     * @param file  The index file.
+     */
+    static ScanIndex load(File file) {
+
+        Map<String, Entry> entries = new HashMap<>(0);
+        boolean isUnreadable = false;
+
+        if (file.exists()) {
+            try {
+                entries = read(file);
+            }
+            catch (IOException e) {
+                isUnreadable = true;
+            }
+        }
+
+        ScanIndex index = new ScanIndex(file, entries);
+        index._isUnreadable = isUnreadable;
+        return index;
+    }
+
+    private ScanIndex(File file, Map<String, Entry> previous) {
+        _file = file;
+        _previous = previous;
+        _current = new HashMap<>(Math.max(16, previous.size()));
+    }
+
+    /**
+     * Determine if the index file exists but could not be read. All classes
+     * are scanned and the file is replaced when saved.
+     */
+    boolean isUnreadable() {
+        return _isUnreadable;
+    }
+
+    /**
+     * Get the number of records reused from the index file.
+     */
+    @Override
+    public int getReusedCount() {
+        return _reused.get();
+    }
+
+    @Override
+    public ClassRecord get(SourceEntry sourceEntry) {
+
+        Entry entry = _previous.get(sourceEntry.name);
+        if (entry == null || !entry.matches(sourceEntry))
+            return null;
+
+        _reused.incrementAndGet();
+        return entry.record;
+    }
+
+    /**
+     * Add the record of an entry to be saved.
+     *
+     * @param sourceEntry  The source entry.
+     * @param record       The record extracted from the entry.
+     */
+    @Override
+    public void put(SourceEntry sourceEntry, ClassRecord record) {
+
+        // entries without a known crc can't be validated
+        if (sourceEntry.crc == -1 || sourceEntry.size == -1)
+            return;
+
+        Entry entry = new Entry(sourceEntry.crc, sourceEntry.size, record);
+
+        // deferred records are added again once parsed, keep their call literals
+        Entry previous = _current.put(sourceEntry.name, entry);
+        if (previous != null && previous.matches(sourceEntry)) {
+            entry.callKey = previous.callKey;
+            entry.calls = previous.calls;
+        }
+    }
+
+    @Override
+    public ClassRecord getCalls(SourceEntry sourceEntry, String callKey) {
+
+        Entry entry = _previous.get(sourceEntry.name);
+        if (entry == null || !entry.matches(sourceEntry) || !callKey.equals(entry.callKey))
+            return null;
+
+        return entry.calls;
+    }
+
+    @Override
+    public void putCalls(SourceEntry sourceEntry, String callKey, ClassRecord record) {
+
+        Entry entry = _current.get(sourceEntry.name);
+        if (entry == null || !entry.matches(sourceEntry))
+            return;
+
+        entry.callKey = callKey;
+        entry.calls = record;
+    }
+
+    /**
+     * Save the records added to the index to the index file.
+     *
+     * <p>The file is replaced once written, a failed save leaves the previous
+     * index file in place.</p>
+     */
+    void save() throws IOException {
+
+        AtomicFile atomicFile = new AtomicFile(_file);
+
+        try {
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(atomicFile.openStream()));
+
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(_current.size());
+
+                for (Map.Entry<String, Entry> mapEntry : _current.entrySet()) {
+
+                    Entry entry = mapEntry.getValue();
+
+                    writeString(output, mapEntry.getKey());
+                    output.writeLong(entry.crc);
+                    output.writeLong(entry.size);
+                    writeRecord(output, entry.record);
+                    writeCalls(output, entry.callKey, entry.calls);
+                }
+            }
+            finally {
+                output.close();
+            }
+
+            atomicFile.commit();
+        }
+        finally {
+            atomicFile.discard();
+        }
+    }
+
+    private static Map<String, Entry> read(File file) throws IOException {
+
+        DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION)
+                throw new IOException("Unsupported index file.");
+
+            int size = input.readInt();
+            Map<String, Entry> entries = new HashMap<>(size * 2);
+
+            for (int i=0; i < size; i++) {
+
+                String name = readString(input);
+                long crc = input.readLong();
+                long entrySize = input.readLong();
+                Entry entry = new Entry(crc, entrySize, readRecord(input, name));
+
+                if (input.readBoolean()) {
+                    entry.callKey = readString(input);
+                    entry.calls = readCalls(input, name);
+                }
+
+                entries.put(name, entry);
+            }
+
+            return entries;
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private static void writeRecord(DataOutputStream output, ClassRecord record) throws IOException {
+
+        if (record == ClassRecord.SKIPPED) {
+            output.writeByte(STATE_SKIPPED);
+            return;
+        }
+
+        if (record.isSkipped()) {
+            output.writeByte(STATE_CALLER);
+            writeHashes(output, record.methodHashes);
+            return;
+        }
+
+        output.writeByte(STATE_RECORD);
+        writeString(output, record.className);
+
+        // deferred descriptor hashes
+        writeHashes(output, record.descriptorHashes);
+
+        // referenced method hashes
+        writeHashes(output, record.methodHashes);
+
+        // annotation
+        output.writeBoolean(record.annotation != null);
+        if (record.annotation != null) {
+            writeStrings(output, record.annotation.methodNames);
+        }
+
+        // annotation usages
+        List<AnnotationUsage> usages = record.usages;
+        output.writeInt(usages == null ? 0 : usages.size());
+        if (usages != null) {
+            for (AnnotationUsage usage : usages) {
+
+                writeString(output, usage.desc);
+                output.writeInt(usage.values.size());
+
+                for (int i=0; i < usage.values.size(); i++) {
+                    writeString(output, usage.methodNames.get(i));
+
+                    Object value = usage.values.get(i);
+                    if (value instanceof String) {
+                        output.writeByte(VALUE_STRING);
+                        writeString(output, (String) value);
+                    }
+                    else {
+                        @SuppressWarnings("unchecked")
+                        List<String> values = (List<String>) value;
+
+                        output.writeByte(VALUE_ARRAY);
+                        writeStrings(output, values);
+                    }
+                }
+            }
+        }
+
+        // field literals
+        List<LiteralInfo> literals = record.fieldLiterals;
+        output.writeInt(literals == null ? 0 : literals.size());
+        if (literals != null) {
+            for (LiteralInfo literal : literals) {
+                writeString(output, literal.getLiteral());
+                writeString(output, literal.getRawComment());
+            }
+        }
+
+        // methods with localizable parameters
+        List<LocalizableMethod> methods = record.localizableMethods;
+        output.writeInt(methods == null ? 0 : methods.size());
+        if (methods != null) {
+            for (LocalizableMethod method : methods) {
+                writeString(output, method.name);
+                writeString(output, method.desc);
+
+                output.writeInt(method.parameters.length);
+                for (int parameter : method.parameters) {
+                    output.writeInt(parameter);
+                }
+            }
+        }
+    }
+
+    private static ClassRecord readRecord(DataInputStream input, String entryName) throws IOException {
+
+        byte state = input.readByte();
+        if (state == STATE_SKIPPED)
+            return ClassRecord.SKIPPED;
+
+        if (state == STATE_CALLER)
+            return ClassRecord.caller(entryName, readHashes(input));
+
+        if (state != STATE_RECORD)
+            throw new IOException("Invalid record state: " + state);
+
+        ClassRecord record = new ClassRecord(entryName, readString(input));
+
+        // deferred descriptor hashes
+        record.descriptorHashes = readHashes(input);
+
+        // referenced method hashes
+        record.methodHashes = readHashes(input);
+
+        // annotation
+        if (input.readBoolean()) {
+            record.annotation = new AnnotationInfo(record.className, readStrings(input));
+        }
+
+        // annotation usages
+        int usageCount = input.readInt();
+        for (int i=0; i < usageCount; i++) {
+
+            AnnotationUsage usage = new AnnotationUsage(readString(input));
+            int valueCount = input.readInt();
+
+            for (int j=0; j < valueCount; j++) {
+
+                String methodName = readString(input);
+                byte type = input.readByte();
+
+                if (type == VALUE_STRING) {
+                    usage.add(methodName, readString(input));
+                }
+                else if (type == VALUE_ARRAY) {
+                    usage.add(methodName, readStrings(input));
+                }
+                else {
+                    throw new IOException("Invalid annotation value type: " + type);
+                }
+            }
+
+            record.addUsage(usage);
+        }
+
+        // field literals
+        int literalCount = input.readInt();
+        String source = ClassSource.getArchivePath(entryName);
+
+        for (int i=0; i < literalCount; i++) {
+            record.addFieldLiteral(new LiteralInfo(
+                    readString(input), readString(input), source, record.className));
+        }
+
+        // methods with localizable parameters
+        int methodCount = input.readInt();
+        for (int i=0; i < methodCount; i++) {
+
+            String name = readString(input);
+            String desc = readString(input);
+            int[] parameters = new int[input.readInt()];
+
+            for (int j=0; j < parameters.length; j++) {
+                parameters[j] = input.readInt();
+            }
+
+            record.addLocalizableMethod(new LocalizableMethod(record.className, name, desc, parameters));
+        }
+
+        return record;
+    }
+
+    private static void writeCalls(DataOutputStream output, String callKey,
+                                   ClassRecord record) throws IOException {
+
+        output.writeBoolean(record != null);
+        if (record == null)
+            return;
+
+        writeString(output, callKey);
+
+        List<LiteralInfo> literals = record.callLiterals;
+        output.writeInt(literals == null ? 0 : literals.size());
+        if (literals != null) {
+            writeString(output, record.className);
+
+            for (LiteralInfo literal : literals) {
+                writeString(output, literal.getLiteral());
+                writeString(output, literal.getRawComment());
+            }
+        }
+    }
+
+    private static ClassRecord readCalls(DataInputStream input, String entryName) throws IOException {
+
+        int literalCount = input.readInt();
+        if (literalCount == 0)
+            return ClassRecord.SKIPPED;
+
+        ClassRecord record = new ClassRecord(entryName, readString(input));
+        String source = ClassSource.getArchivePath(entryName);
+
+        for (int i=0; i < literalCount; i++) {
+            record.addCallLiteral(new LiteralInfo(
+                    readString(input), readString(input), source, record.className));
+        }
+
+        return record;
+    }
+
+    private static void writeHashes(DataOutputStream output, int[] hashes) throws IOException {
+
+        if (hashes == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        output.writeInt(hashes.length);
+        for (int hash : hashes) {
+            output.writeInt(hash);
+        }
+    }
+
+    private static int[] readHashes(DataInputStream input) throws IOException {
+
+        int size = input.readInt();
+        if (size == -1)
+            return null;
+
+        int[] hashes = new int[size];
+        for (int i=0; i < size; i++) {
+            hashes[i] = input.readInt();
+        }
+        return hashes;
+    }
+
+    private static void writeStrings(DataOutputStream output, List<String> strings) throws IOException {
+        output.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(output, string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        List<String> strings = new ArrayList<>(size);
+        for (int i=0; i < size; i++) {
+            strings.add(readString(input));
+        }
+        return strings;
+    }
+
+    // stored as chars, unlike an encoding they keep unpaired surrogates.
+    // DataOutputStream#writeUTF is limited to 64K
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        if (string == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        output.writeInt(string.length());
+        output.writeChars(string);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length == -1)
+            return null;
+
+        char[] chars = new char[length];
+        for (int i=0; i < length; i++) {
+            chars[i] = input.readChar();
+        }
+        return new String(chars);
+    }
+
+    private static class Entry {
+        final long crc;
+        final long size;
+        final ClassRecord record;
+
+        // call literals and the key of the localizable methods they were found for
+        String callKey;
+        ClassRecord calls;
+
+        Entry(long crc, long size, ClassRecord record) {
+            this.crc = crc;
+            this.size = size;
+            this.record = record;
+        }
+
+        boolean matches(SourceEntry sourceEntry) {
+            return crc == sourceEntry.crc && size == sourceEntry.size;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged pipeline used to read and parse the class entries of a {@link ClassSource}.
+ *
+ * <p>A single reader stage pulls the class entries and looks up cached results,
+ * a pool of parser workers reads and converts the entry bytes into results and the
+ * collector stage, which runs on the calling thread, receives the results. Each
+ * worker reads entries using its own {@link ReadBuffer} so buffers and inflaters
+ * are reused from one entry to the next.</p>
+ *
+ * <p>The stages are joined by bounded queues and the number of entries that have
+ * been read but not yet collected is capped so memory use does not depend on the
+ * size of the jar file.</p>
+ *
+ * <p>Entries are processed in order of their names and results are always given
+ * to the collector in that same order regardless of which worker parsed them.</p>
+ *
+ * <p>{@link #run} does not return until every stage thread has stopped, even when
+ * it fails, so the caller can close the source as soon as it returns. Buffers read
+ * from a memory mapped source are only valid until the source is closed.</p>
+ *
+ * @param <T>  The parsed result type.
+ */
+class ScanPipeline<T> {
+
+    private static final int ENTRIES_PER_THREAD = 16;
+
+    private final int _threadCount;
+    private final int _capacity;
+
+    // totals of all runs, summed across worker threads
+    private final AtomicLong _readNanos = new AtomicLong();
+    private final AtomicLong _parseNanos = new AtomicLong();
+    private final AtomicLong _readBytes = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param threadCount  The number of parser worker threads.
+     */
+    ScanPipeline(int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("threadCount must be at least 1.");
+
+        _threadCount = threadCount;
+        _capacity = threadCount * ENTRIES_PER_THREAD;
+    }
+
+    /**
+     * Get the time worker threads spent reading entries in nanoseconds.
+     */
+    long getReadNanos() {
+        return _readNanos.get();
+    }
+
+    /**
+     * Get the time worker threads spent parsing entries in nanoseconds.
+     */
+    long getParseNanos() {
+        return _parseNanos.get();
+    }
+
+    /**
+     * Get the number of entry bytes read by worker threads.
+     */
+    long getReadBytes() {
+        return _readBytes.get();
+    }
+
+    /**
+     * Parses the class entries of a class source.
+     *
+     * @param source     The class source to read.
+     * @param parser     The parser used by the worker threads.
+     * @param collector  The collector that receives the parsed results.
+     *
+     * @return  The number of class entries processed.
+     *
+     * @throws IOException
+     */
+    int run(ClassSource source, Parser<T> parser, Collector<T> collector) throws IOException {
+        return run(source, null, parser, collector);
+    }
+
+    /**
+     * Parses the class entries of a class source.
+     *
+     * @param source     The class source to read.
+     * @param cache      Cache of previously parsed results or null. Entries with
+     *                   a cached result are not read or parsed.
+     * @param parser     The parser used by the worker threads.
+     * @param collector  The collector that receives the parsed results.
+     *
+     * @return  The number of class entries processed.
+     *
+     * @throws IOException
+     */
+    int run(ClassSource source, Cache<T> cache,
+            Parser<T> parser, Collector<T> collector) throws IOException {
+        return run(source, source.getEntries(), cache, parser, collector);
+    }
+
+    /**
+     * Parses some of the class entries of a class source.
+     *
+     * @param source     The class source to read.
+     * @param entries    The entries of the source to parse, in the order they are collected.
+     * @param cache      Cache of previously parsed results or null. Entries with
+     *                   a cached result are not read or parsed.
+     * @param parser     The parser used by the worker threads.
+     * @param collector  The collector that receives the parsed results.
+     *
+     * @return  The number of class entries processed.
+     *
+     * @throws IOException
+     */
+    int run(ClassSource source, final List<SourceEntry> entries, Cache<T> cache,
+            Parser<T> parser, Collector<T> collector) throws IOException {
+
+        if (entries.isEmpty())
+            return 0;
+
+        final BlockingQueue<Item<T>> parseQueue = new ArrayBlockingQueue<>(_capacity);
+        final BlockingQueue<Item<T>> collectQueue = new ArrayBlockingQueue<>(_capacity);
+        final Semaphore inFlight = new Semaphore(_capacity);
+
+        ExecutorService executor = Executors.newFixedThreadPool(_threadCount + 1, new StageThreadFactory());
+
+        try {
+
+            executor.execute(new Reader<>(entries, cache, parseQueue, collectQueue, inFlight, _threadCount));
+
+            for (int i=0; i < _threadCount; i++) {
+                executor.execute(new Worker<>(this, source, parser, parseQueue, collectQueue));
+            }
+
+            // results may arrive out of order, hold them until their turn
+            Map<Integer, Item<T>> pending = new HashMap<>(_capacity);
+            int next = 0;
+
+            while (next < entries.size()) {
+
+                Item<T> item = collectQueue.take();
+
+                if (item.error instanceof Error)
+                    throw (Error) item.error;
+
+                if (item.error != null)
+                    throw (IOException) item.error;
+
+                pending.put(item.index, item);
+
+                while ((item = pending.remove(next)) != null) {
+                    collector.collect(item.entry, item.result);
+                    inFlight.release();
+                    next++;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning class files.");
+        }
+        finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+        }
+
+        return entries.size();
+    }
+
+    // wait until the stage threads have stopped using the source. a parse in
+    // progress is not interrupted, so the wait is bounded by a single entry.
+    private static void awaitTermination(ExecutorService executor) {
+
+        boolean isInterrupted = false;
+
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS))
+                    break;
+            }
+            catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+
+        if (isInterrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Parses the raw bytes of a class entry. Invoked from worker threads.
+     */
+    interface Parser<T> {
+
+        /**
+         * Parse a class entry.
+         *
+         * @param entry  The entry.
+         * @param bytes  The entry bytes. Only valid for the duration of the call.
+         */
+        T parse(SourceEntry entry, ByteBuffer bytes) throws IOException;
+    }
+
+    /**
+     * Receives parsed results in entry name order. Invoked from the calling thread.
+     */
+    interface Collector<T> {
+
+        /**
+         * Collect a parsed result.
+         *
+         * @param entry   The entry.
+         * @param result  The parsed result.
+         */
+        void collect(SourceEntry entry, T result) throws IOException;
+    }
+
+    /**
+     * Provides previously parsed results. Invoked from the reader thread.
+     */
+    interface Cache<T> {
+
+        /**
+         * Get the cached result of an entry.
+         *
+         * @param entry  The entry.
+         *
+         * @return  The result or null if the entry needs to be parsed.
+         */
+        T get(SourceEntry entry);
+    }
+
+    // reader stage
+    private static class Reader<T> implements Runnable {
+
+        final List<SourceEntry> entries;
+        final Cache<T> cache;
+        final BlockingQueue<Item<T>> parseQueue;
+        final BlockingQueue<Item<T>> collectQueue;
+        final Semaphore inFlight;
+        final int workers;
+
+        Reader(List<SourceEntry> entries, Cache<T> cache,
+               BlockingQueue<Item<T>> parseQueue, BlockingQueue<Item<T>> collectQueue,
+               Semaphore inFlight, int workers) {
+
+            this.entries = entries;
+            this.cache = cache;
+            this.parseQueue = parseQueue;
+            this.collectQueue = collectQueue;
+            this.inFlight = inFlight;
+            this.workers = workers;
+        }
+
+        @Override
+        public void run() {
+
+            try {
+                for (int i=0; i < entries.size(); i++) {
+
+                    inFlight.acquire();
+
+                    Item<T> item = new Item<>(i, entries.get(i));
+
+                    if (cache != null) {
+                        item.result = cache.get(item.entry);
+
+                        // skip straight to the collector
+                        if (item.result != null) {
+                            collectQueue.put(item);
+                            continue;
+                        }
+                    }
+
+                    parseQueue.put(item);
+                }
+
+                // signal workers to finish
+                for (int i=0; i < workers; i++) {
+                    parseQueue.put(Item.<T>end());
+                }
+            }
+            catch (InterruptedException ignore) {
+                // pipeline cancelled
+            }
+            catch (Throwable e) {
+                // the collector would otherwise wait for entries that never arrive
+                Item<T> item = new Item<>(-1, null);
+                item.error = e instanceof Error
+                        ? e
+                        : new IOException("Failed to read class entries.", e);
+
+                try {
+                    collectQueue.put(item);
+                }
+                catch (InterruptedException ignore) {
+                    // pipeline cancelled
+                }
+            }
+        }
+    }
+
+    // parser stage
+    private static class Worker<T> implements Runnable {
+
+        final ScanPipeline<T> pipeline;
+        final ClassSource source;
+        final Parser<T> parser;
+        final BlockingQueue<Item<T>> parseQueue;
+        final BlockingQueue<Item<T>> collectQueue;
+
+        Worker(ScanPipeline<T> pipeline, ClassSource source, Parser<T> parser,
+               BlockingQueue<Item<T>> parseQueue, BlockingQueue<Item<T>> collectQueue) {
+            this.pipeline = pipeline;
+            this.source = source;
+            this.parser = parser;
+            this.parseQueue = parseQueue;
+            this.collectQueue = collectQueue;
+        }
+
+        @Override
+        public void run() {
+
+            ReadBuffer buffer = new ReadBuffer();
+
+            try {
+                while (true) {
+
+                    Item<T> item = parseQueue.take();
+                    if (item.isEnd())
+                        return;
+
+                    try {
+                        long start = System.nanoTime();
+                        ByteBuffer bytes = source.read(item.entry, buffer);
+                        long read = System.nanoTime();
+
+                        pipeline._readBytes.addAndGet(bytes.remaining());
+                        item.result = parser.parse(item.entry, bytes);
+
+                        pipeline._readNanos.addAndGet(read - start);
+                        pipeline._parseNanos.addAndGet(System.nanoTime() - read);
+                    }
+                    catch (IOException e) {
+                        item.error = e;
+                    }
+                    catch (RuntimeException e) {
+                        item.error = new IOException("Failed to parse class entry: " + item.entry.name, e);
+                    }
+                    catch (Error e) {
+                        // forwarded so the collector fails instead of waiting for the entry
+                        item.error = e;
+                    }
+
+                    collectQueue.put(item);
+                }
+            }
+            catch (InterruptedException ignore) {
+                // pipeline cancelled
+            }
+            finally {
+                buffer.close();
+            }
+        }
+    }
+
+    // entry passed between stages
+    private static class Item<T> {
+
+        final int index;
+        final SourceEntry entry;
+        T result;
+        Throwable error;  // IOException or Error
+
+        Item(int index, SourceEntry entry) {
+            this.index = index;
+            this.entry = entry;
+        }
+
+        boolean isEnd() {
+            return index == -1;
+        }
+
+        static <T> Item<T> end() {
+            return new Item<>(-1, null);
+        }
+    }
+
+    private static class StageThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+        private final int _pool = POOL_COUNT.incrementAndGet();
+        private final AtomicInteger _count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                    "NucleusLocalizer-scan-" + _pool + '-' + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
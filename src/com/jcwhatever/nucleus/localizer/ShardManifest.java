@@ -0,0 +1,255 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The manifest of a sharded key file.
+ *
+ * <p>Maps each shard name to the range of keys reserved for it. The keys of a
+ * shard are always within its range so a loader can find the shard of a key
+ * without reading the shards. The hash of each shard's content is used to skip
+ * writing shards that did not change.</p>
+ *
+ * <pre>
+ * version&gt; 1.0
+ * encoding&gt; UTF-16
+ * binary&gt; false
+ * shard&gt; com.example.economy 0 63 9f3a1c0e7d2b4a51
+ * </pre>
+ *
+ * <p>Each shard line lists the shard name, the first and last key of the range,
+ * inclusive, and the content hash.</p>
+ */
+class ShardManifest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String _version;
+    private final String _encoding;
+    private final boolean _isBinary;
+    private final Map<String, Shard> _shards = new LinkedHashMap<>(10);
+
+    /**
+     * Constructor.
+     *
+     * @param version   The key file version.
+     * @param encoding  The name of the text shard charset.
+     * @param isBinary  True if binary shards are also written.
+     */
+    ShardManifest(String version, String encoding, boolean isBinary) {
+        _version = version;
+        _encoding = encoding;
+        _isBinary = isBinary;
+    }
+
+    /**
+     * Load a manifest file.
+     *
+     * @param file  The manifest file.
+     *
+     * @return  The manifest or null if the file does not exist.
+     *
+     * @throws IOException  If the file cannot be read or is not a manifest.
+     */
+    static ShardManifest load(File file) throws IOException {
+
+        if (!file.exists())
+            return null;
+
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), UTF_8));
+
+        try {
+            String version = readHeader(reader, "version> ", file);
+            String encoding = readHeader(reader, "encoding> ", file);
+            boolean isBinary = Boolean.parseBoolean(readHeader(reader, "binary> ", file));
+
+            ShardManifest manifest = new ShardManifest(version, encoding, isBinary);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                if (line.isEmpty())
+                    continue;
+
+                String[] parts = line.split(" ");
+                if (parts.length != 5 || !parts[0].equals("shard>"))
+                    throw new IOException("Invalid shard manifest line in " + file + ": " + line);
+
+                manifest.add(new Shard(parts[1], Integer.parseInt(parts[2]),
+                        Integer.parseInt(parts[3]), new BigInteger(parts[4], 16).longValue()));
+            }
+
+            return manifest;
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid shard manifest: " + file, e);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Determine if shards written with the specified settings have the same
+     * format as the shards of the manifest.
+     *
+     * @param version   The key file version.
+     * @param encoding  The name of the text shard charset.
+     * @param isBinary  True if binary shards are also written.
+     */
+    boolean isSameFormat(String version, String encoding, boolean isBinary) {
+        return _version.equals(version) && _encoding.equals(encoding) && _isBinary == isBinary;
+    }
+
+    /**
+     * Get a shard.
+     *
+     * @param name  The shard name.
+     *
+     * @return  The shard or null if the manifest does not have it.
+     */
+    Shard get(String name) {
+        return _shards.get(name);
+    }
+
+    /**
+     * Get all shards in the order they were added.
+     */
+    Collection<Shard> getShards() {
+        return new ArrayList<>(_shards.values());
+    }
+
+    /**
+     * Get the key after the last key range.
+     */
+    int getEnd() {
+        int end = 0;
+        for (Shard shard : _shards.values()) {
+            end = Math.max(end, shard.last + 1);
+        }
+        return end;
+    }
+
+    /**
+     * Add a shard.
+     *
+     * @param shard  The shard.
+     */
+    void add(Shard shard) {
+        _shards.put(shard.name, shard);
+    }
+
+    /**
+     * Save the manifest.
+     *
+     * @param file  The manifest file.
+     */
+    void save(File file) throws IOException {
+
+        AtomicFile atomicFile = new AtomicFile(file);
+
+        try {
+            OutputStream stream = atomicFile.openStream();
+            Writer writer = new OutputStreamWriter(stream, UTF_8);
+
+            try {
+                writer.write("version> " + _version + '\n');
+                writer.write("encoding> " + _encoding + '\n');
+                writer.write("binary> " + _isBinary + '\n');
+
+                for (Shard shard : _shards.values()) {
+                    writer.write("shard> " + shard.name + ' ' + shard.first + ' ' + shard.last + ' '
+                            + Long.toHexString(shard.hash) + '\n');
+                }
+            }
+            finally {
+                writer.close();
+            }
+
+            atomicFile.commit();
+        }
+        finally {
+            atomicFile.discard();
+        }
+    }
+
+    private static String readHeader(BufferedReader reader, String prefix, File file) throws IOException {
+
+        String line = reader.readLine();
+        if (line == null || !line.startsWith(prefix))
+            throw new IOException("Invalid shard manifest, expected \"" + prefix.trim() + "\": " + file);
+
+        return line.substring(prefix.length());
+    }
+
+    /**
+     * A shard and its key range.
+     */
+    static class Shard {
+
+        final String name;
+        final int first;
+        final int last;
+        final long hash;
+
+        /**
+         * Constructor.
+         *
+         * @param name   The shard name.
+         * @param first  The first key of the range.
+         * @param last   The last key of the range, inclusive.
+         * @param hash   The hash of the shard content.
+         */
+        Shard(String name, int first, int last, long hash) {
+            this.name = name;
+            this.first = first;
+            this.last = last;
+            this.hash = hash;
+        }
+
+        /**
+         * Get the number of keys in the range.
+         */
+        int getCapacity() {
+            return last - first + 1;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import com.jcwhatever.nucleus.localizer.ShardManifest.Shard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Writes localizable literals to key file shards and a manifest of their key ranges.
+ *
+ * <p>A shard keeps its key range from one run to the next as long as its literals
+ * fit, so a change in one shard does not change the keys of the others. New shards
+ * and shards that outgrow their range are given a new range after the last one.
+ * Ranges are reserved with room to grow.</p>
+ *
+ * <p>Only shards whose content or key range changed are written. The shards are
+ * written concurrently.</p>
+ *
+ * <p>For the output file lang.keys.txt, the manifest is lang.keys.manifest and the
+ * shards are lang.keys.&lt;shard&gt;.txt.</p>
+ */
+class ShardWriter {
+
+    /**
+     * The shard of literals whose class is not known or is not mapped to a shard.
+     */
+    static final String DEFAULT_SHARD = "default";
+
+    private static final int MIN_HEADROOM = 16;
+
+    private static final Pattern SHARD_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+
+    private final File _outputFile;
+    private final String _version;
+    private final Charset _charset;
+    private final boolean _isBinary;
+    private final int _threadCount;
+
+    private final List<File> _files = new ArrayList<>(10);
+    private int _shardCount;
+
+    /**
+     * Constructor.
+     *
+     * @param outputFile   The output key file the shard file names are based on.
+     * @param version      The key file version.
+     * @param charset      The text shard charset.
+     * @param isBinary     True to also write binary shards.
+     * @param threadCount  The maximum number of shards written at the same time.
+     */
+    ShardWriter(File outputFile, String version, Charset charset, boolean isBinary, int threadCount) {
+        _outputFile = outputFile;
+        _version = version;
+        _charset = charset;
+        _isBinary = isBinary;
+        _threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Get the manifest file of a sharded key file.
+     *
+     * @param outputFile  The output key file.
+     */
+    static File getManifestFile(File outputFile) {
+        return new File(outputFile.getAbsoluteFile().getParentFile(), getBaseName(outputFile) + ".manifest");
+    }
+
+    /**
+     * Get the text file of a key file shard.
+     *
+     * @param outputFile  The output key file.
+     * @param shard       The shard name.
+     */
+    static File getShardFile(File outputFile, String shard) {
+        return new File(outputFile.getAbsoluteFile().getParentFile(),
+                getBaseName(outputFile) + '.' + shard + ".txt");
+    }
+
+    /**
+     * Get the number of shards in the last write.
+     */
+    int getShardCount() {
+        return _shardCount;
+    }
+
+    /**
+     * Get the manifest and the files of every shard in the last write,
+     * including shards that were not changed.
+     */
+    List<File> getFiles() {
+        return new ArrayList<>(_files);
+    }
+
+    /**
+     * Write the shards and the manifest.
+     *
+     * @param literals  The unique literals in key order.
+     * @param mapper    The mapper that gives the shard of each literal.
+     *
+     * @return  The number of shards written.
+     *
+     * @throws IOException
+     */
+    int write(List<LiteralInfo> literals, ShardMapper mapper) throws IOException {
+
+        // group literals by shard in order of first appearance
+        Map<String, List<LiteralInfo>> groups = new LinkedHashMap<>(10);
+
+        for (LiteralInfo literal : literals) {
+
+            String shard = getShardName(literal, mapper);
+
+            List<LiteralInfo> group = groups.get(shard);
+            if (group == null) {
+                group = new ArrayList<>(10);
+                groups.put(shard, group);
+            }
+
+            group.add(literal);
+        }
+
+        File manifestFile = getManifestFile(_outputFile);
+        ShardManifest previous = ShardManifest.load(manifestFile);
+        ShardManifest manifest = new ShardManifest(_version, _charset.name(), _isBinary);
+
+        boolean isSameFormat = previous != null && previous.isSameFormat(_version, _charset.name(), _isBinary);
+        int nextKey = previous != null ? previous.getEnd() : 0;
+
+        final List<Shard> changed = new ArrayList<>(groups.size());
+        final List<List<LiteralInfo>> changedLiterals = new ArrayList<>(groups.size());
+
+        for (Map.Entry<String, List<LiteralInfo>> entry : groups.entrySet()) {
+
+            String name = entry.getKey();
+            List<LiteralInfo> group = entry.getValue();
+            Shard old = previous != null ? previous.get(name) : null;
+
+            Shard shard;
+
+            if (old != null && group.size() <= old.getCapacity()) {
+                shard = new Shard(name, old.first, old.last, hash(group));
+            }
+            else {
+                int capacity = group.size() + Math.max(MIN_HEADROOM, group.size() / 4);
+                shard = new Shard(name, nextKey, nextKey + capacity - 1, hash(group));
+                nextKey += capacity;
+            }
+
+            manifest.add(shard);
+
+            if (!isSameFormat || old == null || old.first != shard.first
+                    || old.hash != shard.hash || !isWritten(name)) {
+                changed.add(shard);
+                changedLiterals.add(group);
+            }
+        }
+
+        writeShards(changed, changedLiterals);
+
+        // remove the files of shards that no longer have literals
+        if (previous != null) {
+            for (Shard shard : previous.getShards()) {
+                if (manifest.get(shard.name) == null)
+                    deleteShard(shard.name);
+            }
+        }
+
+        manifest.save(manifestFile);
+
+        _files.clear();
+        _files.add(manifestFile);
+
+        for (String name : groups.keySet()) {
+            File file = getShardFile(_outputFile, name);
+            _files.add(file);
+
+            if (_isBinary)
+                _files.add(BinaryKeyFileWriter.getBinaryFile(file));
+        }
+
+        _shardCount = groups.size();
+        return changed.size();
+    }
+
+    // write shards concurrently
+    private void writeShards(final List<Shard> shards, final List<List<LiteralInfo>> literals) throws IOException {
+
+        if (shards.isEmpty())
+            return;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(_threadCount, shards.size()));
+
+        try {
+            List<Future<Void>> futures = new ArrayList<>(shards.size());
+
+            for (int i=0; i < shards.size(); i++) {
+
+                final Shard shard = shards.get(i);
+                final List<LiteralInfo> group = literals.get(i);
+
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        writeShard(shard, group);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing key file shards.");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            throw new IOException("Failed to write key file shard.", cause);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeShard(Shard shard, List<LiteralInfo> literals) throws IOException {
+
+        int[] keys = new int[literals.size()];
+        for (int i=0; i < keys.length; i++) {
+            keys[i] = shard.first + i;
+        }
+
+        LanguageGenerator.writeKeyFile(
+                LanguageGenerator.openWriters(getShardFile(_outputFile, shard.name), _charset, _isBinary),
+                _version, literals, keys);
+    }
+
+    // determine if the files of a shard exist
+    private boolean isWritten(String shard) {
+
+        File file = getShardFile(_outputFile, shard);
+
+        return file.exists() && (!_isBinary || BinaryKeyFileWriter.getBinaryFile(file).exists());
+    }
+
+    private void deleteShard(String shard) throws IOException {
+        File file = getShardFile(_outputFile, shard);
+        Files.deleteIfExists(file.toPath());
+        Files.deleteIfExists(BinaryKeyFileWriter.getBinaryFile(file).toPath());
+    }
+
+    private static String getShardName(LiteralInfo literal, ShardMapper mapper) {
+
+        String className = literal.getClassName();
+        String shard = className != null ? mapper.getShard(className) : null;
+
+        if (shard == null)
+            return DEFAULT_SHARD;
+
+        if (!SHARD_NAME.matcher(shard).matches())
+            throw new IllegalArgumentException("Invalid shard name: " + shard);
+
+        return shard;
+    }
+
+    // hash the text and comments of the literals of a shard
+    private static long hash(List<LiteralInfo> literals) {
+
+        long hash = 0xcbf29ce484222325L;
+
+        for (LiteralInfo literal : literals) {
+            hash = hash(hash, literal.getLiteral());
+
+            for (String comment : literal.getComments()) {
+                hash = hash(hash, comment);
+            }
+        }
+
+        return hash;
+    }
+
+    // FNV-1a over the chars of a string and a terminating zero
+    private static long hash(long hash, String text) {
+
+        for (int i=0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+
+        return hash * 0x100000001b3L;
+    }
+
+    private static String getBaseName(File outputFile) {
+
+        String name = outputFile.getName();
+        if (name.endsWith(".txt"))
+            name = name.substring(0, name.length() - 4);
+
+        return name;
+    }
+}
@@ -0,0 +1,209 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a string pool shared by the key files of many plugins.
+ *
+ * <p>Pools are opened through {@link #open} so every plugin in the process that
+ * uses the same pool file gets the same instance. The pool file is mapped once
+ * and each string is decoded the first time it is requested, after which the
+ * same String instance is returned to every plugin.</p>
+ *
+ * <p>If the pool file is regenerated, the next {@link #open} returns a new instance
+ * for the new file. Instances opened before keep reading the file they mapped.</p>
+ *
+ * <pre>
+ * SharedKeyPool pool = SharedKeyPool.open(poolFile);
+ * LanguageTable table = new PooledKeyFile(indexFile, pool).toTable();
+ * </pre>
+ *
+ * <p>Instances are safe to use from multiple threads.</p>
+ */
+public class SharedKeyPool {
+
+    private static final Map<String, SharedKeyPool> POOLS = new HashMap<>(5);
+
+    private final MappedKeyFile _keyFile;
+    private final AtomicReferenceArray<String> _texts;
+    private final long _checksum;
+
+    // attributes of the file when it was opened, guarded by POOLS
+    private BasicFileAttributes _attributes;
+
+    /**
+     * Get the pool of a pool file, opening the file if it is not open already
+     * or if it changed since it was opened.
+     *
+     * @param poolFile  The pool file.
+     *
+     * @throws IOException if the file cannot be read or is not a pool file.
+     */
+    public static SharedKeyPool open(File poolFile) throws IOException {
+
+        String path = poolFile.getCanonicalPath();
+
+        synchronized (POOLS) {
+
+            BasicFileAttributes attributes = Files.readAttributes(poolFile.toPath(), BasicFileAttributes.class);
+            SharedKeyPool pool = POOLS.get(path);
+
+            if (pool != null && !isSameFile(pool._attributes, attributes)) {
+
+                // touched or replaced with the same content, keep the strings decoded so far
+                if (checksum(poolFile) == pool._checksum) {
+                    pool._attributes = attributes;
+                }
+                else {
+                    pool = null;
+                }
+            }
+
+            if (pool == null) {
+                pool = new SharedKeyPool(poolFile, attributes);
+                POOLS.put(path, pool);
+            }
+
+            return pool;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param poolFile    The pool file.
+     * @param attributes  The attributes of the pool file.
+     */
+    private SharedKeyPool(File poolFile, BasicFileAttributes attributes) throws IOException {
+        _keyFile = new MappedKeyFile(poolFile);
+        _texts = new AtomicReferenceArray<>(_keyFile.size());
+        _checksum = checksum(poolFile);
+        _attributes = attributes;
+    }
+
+    /**
+     * Get the pool file.
+     */
+    public File getFile() {
+        return _keyFile.getFile();
+    }
+
+    /**
+     * Get the pool version.
+     */
+    public String getVersion() {
+        return _keyFile.getVersion();
+    }
+
+    /**
+     * Get the number of strings in the pool.
+     */
+    public int size() {
+        return _texts.length();
+    }
+
+    /**
+     * Get a string.
+     *
+     * @param index  The pool index of the string.
+     *
+     * @return  The string or null if the index is not in the pool.
+     */
+    public String get(int index) {
+
+        if (index < 0 || index >= _texts.length())
+            return null;
+
+        String text = _texts.get(index);
+        if (text != null)
+            return text;
+
+        text = _keyFile.get(index);
+        if (text == null)
+            return null;
+
+        // keep the first decoded instance if another thread decoded it first
+        if (!_texts.compareAndSet(index, null, text))
+            text = _texts.get(index);
+
+        return text;
+    }
+
+    /**
+     * Get the checksum of the pool file.
+     */
+    long getChecksum() {
+        return _checksum;
+    }
+
+    // determine if file attributes are of the same unchanged file
+    private static boolean isSameFile(BasicFileAttributes a, BasicFileAttributes b) {
+
+        // the file key is null on file systems without one, i.e. windows
+        Object key = a.fileKey();
+
+        return a.size() == b.size()
+                && a.lastModifiedTime().equals(b.lastModifiedTime())
+                && (key == null ? b.fileKey() == null : key.equals(b.fileKey()));
+    }
+
+    /**
+     * Get the CRC-32 checksum of a pool file.
+     *
+     * @param poolFile  The pool file.
+     */
+    static long checksum(File poolFile) throws IOException {
+
+        ByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(poolFile.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,182 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a string pool shared by the key files of many plugins and an index
+ * file for each plugin that maps its keys into the pool.
+ *
+ * <p>The pool is written in the binary key file format with the pool index of
+ * each string as its key, so it can also be read by {@link MappedKeyFile}. Text
+ * found in more than one key file is only written once. Strings are added to the
+ * pool in the order key files are added.</p>
+ *
+ * <p>Index file format:</p>
+ *
+ * <pre>
+ * int     magic
+ * int     format version
+ * int     version length, followed by the version in UTF-8
+ * long    checksum of the pool file the index was written for
+ * int     slot count, the highest key + 1
+ * int[]   pool index of each key. Keys with no text are -1.
+ * </pre>
+ *
+ * @see SharedKeyPool
+ * @see PooledKeyFile
+ */
+class SharedPoolWriter {
+
+    static final int INDEX_MAGIC = 0x4E4C4B49;
+    static final int INDEX_FORMAT_VERSION = 1;
+
+    private final File _poolFile;
+    private final String _version;
+
+    private final Map<String, Integer> _pool = new LinkedHashMap<>(1024);
+    private final List<File> _indexFiles = new ArrayList<>(10);
+    private final List<int[]> _indexes = new ArrayList<>(10);
+    private int _keyCount;
+
+    /**
+     * Constructor.
+     *
+     * @param poolFile  The pool file.
+     * @param version   The version written to the pool and index files.
+     */
+    SharedPoolWriter(File poolFile, String version) {
+        _poolFile = poolFile;
+        _version = version;
+    }
+
+    /**
+     * Get the number of strings in the pool.
+     */
+    int getPoolSize() {
+        return _pool.size();
+    }
+
+    /**
+     * Get the number of keys with text in the added key files.
+     */
+    int getKeyCount() {
+        return _keyCount;
+    }
+
+    /**
+     * Add the keys of a key file to the pool.
+     *
+     * @param indexFile  The index file to write for the key file.
+     * @param keys       The loaded key file.
+     */
+    void add(File indexFile, LanguageTable keys) {
+
+        int[] index = new int[keys.size()];
+
+        for (int i=0; i < index.length; i++) {
+
+            String text = keys.get(i);
+            if (text == null) {
+                index[i] = -1;
+                continue;
+            }
+
+            Integer poolIndex = _pool.get(text);
+            if (poolIndex == null) {
+                poolIndex = _pool.size();
+                _pool.put(text, poolIndex);
+            }
+
+            index[i] = poolIndex;
+            _keyCount++;
+        }
+
+        _indexFiles.add(indexFile);
+        _indexes.add(index);
+    }
+
+    /**
+     * Write the pool file, then the index file of each added key file.
+     */
+    void write() throws IOException {
+
+        BinaryKeyFileWriter poolWriter = new BinaryKeyFileWriter(_poolFile);
+
+        try {
+            poolWriter.begin(_version);
+
+            for (Map.Entry<String, Integer> entry : _pool.entrySet()) {
+                poolWriter.write(entry.getValue(), new LiteralInfo(entry.getKey(), ""));
+            }
+
+            poolWriter.commit();
+        }
+        finally {
+            poolWriter.close();
+        }
+
+        // index files are tied to the pool they were written for
+        long checksum = SharedKeyPool.checksum(_poolFile);
+
+        byte[] version = _version.getBytes(BinaryKeyFileWriter.UTF_8);
+
+        for (int i=0; i < _indexFiles.size(); i++) {
+
+            int[] index = _indexes.get(i);
+            AtomicFile file = new AtomicFile(_indexFiles.get(i));
+
+            try {
+                try (DataOutputStream stream = new DataOutputStream(
+                        new BufferedOutputStream(file.openStream(), 64 * 1024))) {
+
+                    stream.writeInt(INDEX_MAGIC);
+                    stream.writeInt(INDEX_FORMAT_VERSION);
+                    stream.writeInt(version.length);
+                    stream.write(version);
+                    stream.writeLong(checksum);
+                    stream.writeInt(index.length);
+
+                    for (int poolIndex : index) {
+                        stream.writeInt(poolIndex);
+                    }
+                }
+
+                file.commit();
+            }
+            finally {
+                file.discard();
+            }
+        }
+    }
+}
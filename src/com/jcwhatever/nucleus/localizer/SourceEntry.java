@@ -0,0 +1,54 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+/**
+ * A class file entry in a {@link ClassSource}.
+ */
+class SourceEntry {
+
+    final String name;
+    final long crc;
+    final long size;
+
+    /**
+     * Constructor.
+     *
+     * @param name  The entry name. i.e. "com/example/Foo.class"
+     * @param crc   The CRC-32 of the entry contents, or for class files on disk the
+     *              last modified time, or -1 if not known.
+     * @param size  The uncompressed size of the entry or -1 if not known.
+     */
+    SourceEntry(String name, long crc, long size) {
+        this.name = name;
+        this.crc = crc;
+        this.size = size;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,203 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the text key file format.
+ *
+ * <pre>
+ * version&gt; 1.0
+ *
+ * # comment
+ * 0&gt; text
+ * </pre>
+ *
+ * <p>Literals found in more than one location have a comment line for
+ * each location.</p>
+ *
+ * <p>Each entry must be on a single line so line breaks in the text are escaped
+ * as {@code \n} and {@code \r}. Other characters, including backslashes, are
+ * written as is since the key file format read by NucleusFramework defines no
+ * other escapes. Text that contains a backslash followed by n or r reads back as
+ * a line break.</p>
+ */
+class TextKeyFileWriter implements KeyFileWriter {
+
+    /**
+     * The charset used by default for compatibility with existing key files.
+     */
+    static final Charset DEFAULT_CHARSET = Charset.forName("UTF-16");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AtomicFile _file;
+    private final Writer _writer;
+    private final char[] _digits = new char[11];
+    private boolean _isClosed;
+
+    /**
+     * Constructor.
+     *
+     * @param outputFile  The key file.
+     * @param charset     The charset to write.
+     */
+    TextKeyFileWriter(File outputFile, Charset charset) throws IOException {
+        _file = new AtomicFile(outputFile);
+        _writer = new BufferedWriter(new OutputStreamWriter(_file.openStream(), charset), BUFFER_SIZE);
+    }
+
+    @Override
+    public void begin(String version) throws IOException {
+        _writer.write("version> ");
+        _writer.write(version);
+        _writer.write("\n\n");
+    }
+
+    @Override
+    public void write(int key, LiteralInfo literal) throws IOException {
+
+        // write a comment for each location
+        if (literal.getDuplicateCount() == 0) {
+            writeComment(literal.getComment());
+        }
+        else {
+            for (String comment : literal.getComments()) {
+                writeComment(comment);
+            }
+        }
+
+        // write string literal key
+        writeInt(key);
+        _writer.write("> ");
+        writeEscaped(literal.getLiteral());
+        _writer.write('\n');
+        _writer.write('\n');
+    }
+
+    @Override
+    public void commit() throws IOException {
+        _isClosed = true;
+        _writer.close();
+        _file.commit();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (!_isClosed) {
+            _isClosed = true;
+            _writer.close();
+        }
+
+        _file.discard();
+    }
+
+    /**
+     * Restore the line breaks of text read from a key file.
+     *
+     * @param text  The escaped text.
+     */
+    static String unescape(String text) {
+
+        int index = text.indexOf('\\');
+        if (index == -1)
+            return text;
+
+        StringBuilder sb = new StringBuilder(text.length());
+        sb.append(text, 0, index);
+
+        for (int i=index; i < text.length(); i++) {
+
+            char ch = text.charAt(i);
+
+            if (ch == '\\' && i + 1 < text.length()) {
+
+                char next = text.charAt(i + 1);
+
+                if (next == 'n' || next == 'r') {
+                    sb.append(next == 'n' ? '\n' : '\r');
+                    i++;
+                    continue;
+                }
+            }
+
+            sb.append(ch);
+        }
+
+        return sb.toString();
+    }
+
+    // write a comment line
+    private void writeComment(String comment) throws IOException {
+        _writer.write("# ");
+        _writer.write(comment);
+        _writer.write('\n');
+    }
+
+    // write text, escaping line breaks. unescaped runs are written as is.
+    private void writeEscaped(String text) throws IOException {
+
+        int start = 0;
+        int length = text.length();
+
+        for (int i=0; i < length; i++) {
+
+            char ch = text.charAt(i);
+
+            if (ch != '\n' && ch != '\r')
+                continue;
+
+            if (i > start)
+                _writer.write(text, start, i - start);
+
+            _writer.write('\\');
+            _writer.write(ch == '\n' ? 'n' : 'r');
+            start = i + 1;
+        }
+
+        if (start < length)
+            _writer.write(text, start, length - start);
+    }
+
+    // write a non-negative int without creating a String
+    private void writeInt(int value) throws IOException {
+
+        int index = _digits.length;
+
+        do {
+            _digits[--index] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+
+        _writer.write(_digits, index, _digits.length - index);
+    }
+}
@@ -0,0 +1,156 @@
+/* This file is part of NucleusLocalizer, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.jcwhatever.nucleus.localizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the class and nested jar entries of an in memory zip archive using a
+ * {@link ZipInputStream}.
+ *
+ * <p>Used for nested archives the mapped reader does not support. The archive
+ * is streamed once and the entries that are needed are kept in memory.</p>
+ */
+class ZipStreamSource extends ClassSource {
+
+    private final List<SourceEntry> _entries = new ArrayList<>(50);
+    private final List<SourceEntry> _archives = new ArrayList<>(0);
+
+    /**
+     * Constructor.
+     *
+     * @param name    The name of the archive.
+     * @param buffer  The archive contents from its position to its limit.
+     */
+    ZipStreamSource(String name, ByteBuffer buffer) throws IOException {
+
+        byte[] bytes;
+        int offset;
+
+        if (buffer.hasArray()) {
+            bytes = buffer.array();
+            offset = buffer.arrayOffset() + buffer.position();
+        }
+        else {
+            bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            offset = 0;
+        }
+
+        ZipInputStream stream = new ZipInputStream(
+                new ByteArrayInputStream(bytes, offset, buffer.remaining()));
+
+        ReadBuffer readBuffer = new ReadBuffer();
+        CRC32 crc = new CRC32();
+
+        try {
+            ZipEntry zipEntry;
+            while ((zipEntry = stream.getNextEntry()) != null) {
+
+                String entryName = zipEntry.getName();
+                boolean isArchive = isArchiveEntry(entryName);
+
+                if (zipEntry.isDirectory() || (!isClassEntry(entryName) && !isArchive))
+                    continue;
+
+                ByteBuffer data = readBuffer.readFully(stream, zipEntry.getSize());
+                byte[] entryBytes = new byte[data.remaining()];
+                data.get(entryBytes);
+
+                crc.reset();
+                crc.update(entryBytes);
+
+                Entry entry = new Entry(entryName, crc.getValue(), entryBytes);
+
+                if (isArchive) {
+                    _archives.add(entry);
+                }
+                else {
+                    _entries.add(entry);
+                }
+            }
+        }
+        finally {
+            readBuffer.close();
+            stream.close();
+        }
+
+        if (_entries.isEmpty() && _archives.isEmpty() && bytes.length > 0 && !isZip(bytes, offset))
+            throw new IOException("Not a zip archive: " + name);
+
+        sort(_entries);
+        sort(_archives);
+    }
+
+    @Override
+    List<SourceEntry> getEntries() {
+        return _entries;
+    }
+
+    @Override
+    List<SourceEntry> getArchiveEntries() {
+        return _archives;
+    }
+
+    @Override
+    ByteBuffer read(SourceEntry entry, ReadBuffer buffer) {
+        return ByteBuffer.wrap(((Entry) entry).bytes);
+    }
+
+    @Override
+    ClassSource openArchive(SourceEntry entry) throws IOException {
+        return open(entry.name, ByteBuffer.wrap(((Entry) entry).bytes));
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    // check for the local file header signature
+    private static boolean isZip(byte[] bytes, int offset) {
+        return bytes.length - offset >= 4 &&
+                bytes[offset] == 'P' && bytes[offset + 1] == 'K' &&
+                bytes[offset + 2] == 3 && bytes[offset + 3] == 4;
+    }
+
+    // entry with its contents
+    private static class Entry extends SourceEntry {
+
+        final byte[] bytes;
+
+        Entry(String name, long crc, byte[] bytes) {
+            super(name, crc, bytes.length);
+            this.bytes = bytes;
+        }
+    }
+}
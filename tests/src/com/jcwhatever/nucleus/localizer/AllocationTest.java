@@ -0,0 +1,196 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Guards the scanner against regressions in allocation and retained heap.
+ *
+ * <p>Limits are several times the measured values so they only fail when
+ * per-class garbage or whole class trees are brought back.</p>
+ */
+public class AllocationTest {
+
+    private static final int CLASS_COUNT = 20000;
+
+    // about 3 times the measured 680 bytes. skipped classes allocate about
+    // 180 bytes, parsed classes about 2600.
+    private static final long SCAN_BYTES_PER_CLASS = 2048;
+
+    // about 3 times the measured 450 bytes
+    private static final long RESOLVE_BYTES_PER_LITERAL = 1536;
+
+    // about 4 times the measured 250 bytes
+    private static final long RETAINED_BYTES_PER_CLASS = 1024;
+
+    @ClassRule
+    public static TemporaryFolder _folder = new TemporaryFolder();
+
+    private static File _jarFile;
+    private static com.sun.management.ThreadMXBean _threadBean;
+
+    @BeforeClass
+    public static void init() throws IOException {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            _threadBean = (com.sun.management.ThreadMXBean) bean;
+            _threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        _jarFile = new SyntheticJarBuilder()
+                .setClassCount(CLASS_COUNT)
+                .build(_folder.newFile("allocation.jar"));
+    }
+
+    /**
+     * Allocation of the read and filter or parse done for each class entry by the
+     * scan workers, measured on the test thread.
+     */
+    @Test
+    public void testScanAllocation() throws IOException {
+
+        assumeTrue(_threadBean != null);
+
+        try (ClassSource source = ClassSource.open(_jarFile)) {
+
+            List<SourceEntry> entries = source.getEntries();
+            ReadBuffer buffer = new ReadBuffer();
+
+            // warm up so class loading and buffer growth are not measured
+            scan(source, entries, buffer);
+
+            long start = allocatedBytes();
+            scan(source, entries, buffer);
+            long perClass = (allocatedBytes() - start) / entries.size();
+
+            buffer.close();
+
+            assertTrue("Scan allocated " + perClass + " bytes per class",
+                    perClass <= SCAN_BYTES_PER_CLASS);
+        }
+    }
+
+    /**
+     * Allocation of annotation usage resolution and field literal collection.
+     */
+    @Test
+    public void testResolveAllocation() throws IOException {
+
+        assumeTrue(_threadBean != null);
+
+        List<ClassRecord> records = new ArrayList<>(CLASS_COUNT);
+        Map<String, AnnotationInfo> annotations = new HashMap<>(10);
+
+        try (ClassSource source = ClassSource.open(_jarFile)) {
+
+            ReadBuffer buffer = new ReadBuffer();
+
+            for (SourceEntry entry : source.getEntries()) {
+
+                ClassRecord record = LiteralExtractor.extract(entry.name, source.read(entry, buffer));
+
+                if (record.annotation != null) {
+                    annotations.put(record.annotation.className, record.annotation);
+                }
+                else if (!record.isEmpty()) {
+                    records.add(record);
+                }
+            }
+
+            buffer.close();
+        }
+
+        resolve(records, annotations);
+
+        long start = allocatedBytes();
+        int literals = resolve(records, annotations);
+        long perLiteral = (allocatedBytes() - start) / literals;
+
+        assertTrue("Resolve allocated " + perLiteral + " bytes per literal",
+                perLiteral <= RESOLVE_BYTES_PER_LITERAL);
+    }
+
+    /**
+     * Heap retained by the records the generator keeps after the scan.
+     */
+    @Test
+    public void testRetainedHeap() throws IOException {
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final List<ClassRecord> retained = new ArrayList<>(CLASS_COUNT);
+
+        long before = usedHeap(memory);
+
+        try (ClassSource source = ClassSource.open(_jarFile)) {
+
+            new ScanPipeline<ClassRecord>(2).run(source, new ScanPipeline.Parser<ClassRecord>() {
+                @Override
+                public ClassRecord parse(SourceEntry entry, ByteBuffer bytes) {
+                    return LanguageGenerator.scanClass(entry, bytes);
+                }
+            }, new ScanPipeline.Collector<ClassRecord>() {
+                @Override
+                public void collect(SourceEntry entry, ClassRecord record) {
+                    // the generator keeps every record that is not skipped
+                    if (record != ClassRecord.SKIPPED)
+                        retained.add(record);
+                }
+            });
+        }
+
+        long perClass = (usedHeap(memory) - before) / CLASS_COUNT;
+
+        // keep the records reachable until measured
+        assertTrue(retained.size() > 0);
+        assertTrue("Scan retained " + perClass + " bytes per class",
+                perClass <= RETAINED_BYTES_PER_CLASS);
+    }
+
+    private static void scan(ClassSource source, List<SourceEntry> entries, ReadBuffer buffer) throws IOException {
+        for (SourceEntry entry : entries) {
+            LanguageGenerator.scanClass(entry, source.read(entry, buffer));
+        }
+    }
+
+    private static int resolve(List<ClassRecord> records, Map<String, AnnotationInfo> annotations) {
+
+        int count = 0;
+
+        for (ClassRecord record : records) {
+            count += LanguageGenerator.parseClass(record, annotations).size();
+        }
+
+        return count;
+    }
+
+    private static long allocatedBytes() {
+        return _threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+
+        for (int i=0; i < 3; i++) {
+            System.gc();
+        }
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
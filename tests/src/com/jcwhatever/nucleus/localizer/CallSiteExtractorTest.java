@@ -0,0 +1,332 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.jcwhatever.nucleus.localizer.GeneratorReport.Phase;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class CallSiteExtractorTest {
+
+    private static final String MESSAGES_CLASS = "synthetic/calls/Messages";
+    private static final String CALLER_CLASS = "synthetic/calls/Caller";
+    private static final String PLAIN_CLASS = "synthetic/calls/Plain";
+
+    private static final String TELL_DESC = "(Ljava/lang/Object;Ljava/lang/String;[Ljava/lang/Object;)V";
+    private static final String LOG_DESC = "(JLjava/lang/String;)V";
+
+    @ClassRule
+    public static TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void testCallLiterals() throws IOException {
+
+        File jarFile = _folder.newFile("calls.jar");
+        writeJar(jarFile, true);
+
+        final List<LiteralInfo> found = new ArrayList<>(5);
+
+        LanguageGenerator generator = new LanguageGenerator(jarFile);
+        GeneratorReport report = generator.scan(new LiteralSink() {
+            @Override
+            public boolean accept(LiteralInfo literal) {
+                found.add(literal);
+                return true;
+            }
+        });
+
+        assertEquals(2, found.size());
+        assertEquals("Hello", found.get(0).getLiteral());
+        assertEquals("METHOD ARGUMENT: greet() synthetic.calls.Caller synthetic.calls.Messages.tell[2]",
+                found.get(0).getRawComment());
+        assertEquals("Long argument", found.get(1).getLiteral());
+        assertEquals(2, report.getLiteralCount());
+        assertTrue(report.getPhaseNanos(Phase.CALLS) > 0);
+    }
+
+    @Test
+    public void testNoLocalizableMethods() throws IOException {
+
+        File jarFile = _folder.newFile("nocalls.jar");
+        writeJar(jarFile, false);
+
+        LanguageGenerator generator = new LanguageGenerator(jarFile);
+        GeneratorReport report = generator.scan(new LiteralSink() {
+            @Override
+            public boolean accept(LiteralInfo literal) {
+                return true;
+            }
+        });
+
+        // classes are not read again
+        assertEquals(0, report.getLiteralCount());
+        assertEquals(0, report.getPhaseNanos(Phase.CALLS));
+    }
+
+    @Test
+    public void testOnlyCallersRead() throws IOException {
+
+        File jarFile = _folder.newFile("callers.jar");
+        writeJar(jarFile, true);
+
+        GeneratorReport report = new LanguageGenerator(jarFile).scan(new LiteralSink() {
+            @Override
+            public boolean accept(LiteralInfo literal) {
+                return true;
+            }
+        });
+
+        // every class once, then only the class that references a localizable method
+        long allBytes = createCallerClass().length + createMessagesClass().length + createPlainClass().length;
+
+        assertEquals(2, report.getLiteralCount());
+        assertEquals(allBytes + createCallerClass().length, report.getReadBytes());
+    }
+
+    @Test
+    public void testIncrementalCallLiterals() throws IOException {
+
+        File jarFile = _folder.newFile("incremental-calls.jar");
+        writeJar(jarFile, true);
+
+        File outputFile = new File(_folder.getRoot(), "incremental-calls.txt");
+
+        LanguageGenerator generator = new LanguageGenerator(jarFile, outputFile, "1.0");
+        generator.setIncremental(true);
+
+        GeneratorReport first = generator.generate();
+        String firstOutput = new String(Files.readAllBytes(outputFile.toPath()), "UTF-16");
+
+        generator = new LanguageGenerator(jarFile, outputFile, "1.0");
+        generator.setIncremental(true);
+
+        GeneratorReport second = generator.generate();
+
+        // records and call literals are reused from the index without reading any class
+        assertEquals(2, first.getLiteralCount());
+        assertEquals(2, second.getLiteralCount());
+        assertEquals(3, second.getReusedCount());
+        assertEquals(0, second.getReadBytes());
+        assertEquals(firstOutput, new String(Files.readAllBytes(outputFile.toPath()), "UTF-16"));
+    }
+
+    @Test
+    public void testCachedCallLiterals() throws IOException {
+
+        File jarFile = _folder.newFile("cached-calls.jar");
+        writeJar(jarFile, true);
+
+        ClassCache cache = new ClassCache(LocalizerDaemon.DEFAULT_CACHE_BYTES);
+        final List<String> found = new ArrayList<>(4);
+
+        LiteralSink sink = new LiteralSink() {
+            @Override
+            public boolean accept(LiteralInfo literal) {
+                found.add(literal.getLiteral());
+                return true;
+            }
+        };
+
+        LanguageGenerator generator = new LanguageGenerator(jarFile);
+        generator.setRecordCache(cache.forInput(jarFile));
+        generator.scan(sink);
+
+        generator = new LanguageGenerator(jarFile);
+        generator.setRecordCache(cache.forInput(jarFile));
+        GeneratorReport report = generator.scan(sink);
+
+        assertEquals(0, report.getReadBytes());
+        assertEquals("[Hello, Long argument, Hello, Long argument]", found.toString());
+    }
+
+    @Test
+    public void testMethodHashes() {
+
+        ConstantPoolFilter filter = new ConstantPoolFilter();
+
+        ByteBuffer caller = ByteBuffer.wrap(createCallerClass());
+        filter.check(caller);
+        int[] hashes = filter.getMethodHashes(caller);
+
+        // methods of the java packages are left out
+        assertEquals(2, hashes.length);
+        assertTrue(contains(hashes, ConstantPoolFilter.hash(MESSAGES_CLASS, "tell", TELL_DESC)));
+        assertTrue(contains(hashes, ConstantPoolFilter.hash(MESSAGES_CLASS, "log", LOG_DESC)));
+
+        ByteBuffer plain = ByteBuffer.wrap(createPlainClass());
+        filter.check(plain);
+        assertEquals(0, filter.getMethodHashes(plain).length);
+    }
+
+    @Test
+    public void testReferencesMethod() {
+
+        ConstantPoolFilter filter = new ConstantPoolFilter();
+
+        Set<Integer> hashes = new HashSet<>(1);
+        hashes.add(ConstantPoolFilter.hash(MESSAGES_CLASS, "tell", TELL_DESC));
+
+        assertTrue(filter.referencesMethod(ByteBuffer.wrap(createCallerClass()), hashes));
+        assertFalse(filter.referencesMethod(ByteBuffer.wrap(createPlainClass()), hashes));
+    }
+
+    private static boolean contains(int[] hashes, int hash) {
+        for (int value : hashes) {
+            if (value == hash)
+                return true;
+        }
+        return false;
+    }
+
+    private static void writeJar(File jarFile, boolean includeMessages) throws IOException {
+
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(jarFile));
+        try {
+            write(stream, CALLER_CLASS, createCallerClass());
+
+            if (includeMessages)
+                write(stream, MESSAGES_CLASS, createMessagesClass());
+
+            write(stream, PLAIN_CLASS, createPlainClass());
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    // class declaring methods with a localizable parameter
+    private static byte[] createMessagesClass() {
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, MESSAGES_CLASS, null, "java/lang/Object", null);
+
+        addLocalizableMethod(writer, "tell", TELL_DESC, 1);
+        addLocalizableMethod(writer, "log", LOG_DESC, 1);
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void addLocalizableMethod(ClassWriter writer, String name, String desc, int parameter) {
+
+        MethodVisitor method = writer.visitMethod(
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, desc, null, null);
+
+        method.visitParameterAnnotation(parameter, LiteralExtractor.LOCALIZABLE_CLASSPATH, true).visitEnd();
+        method.visitCode();
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    // class calling the localizable methods
+    private static byte[] createCallerClass() {
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, CALLER_CLASS, null, "java/lang/Object", null);
+
+        // tell(null, "Hello", new Object[0])
+        MethodVisitor method = writer.visitMethod(
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "greet", "()V", null, null);
+        method.visitCode();
+        method.visitInsn(Opcodes.ACONST_NULL);
+        method.visitLdcInsn("Hello");
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, MESSAGES_CLASS, "tell", TELL_DESC);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        // log(5L, "Long argument")
+        method = writer.visitMethod(
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "log", "()V", null, null);
+        method.visitCode();
+        method.visitLdcInsn(5L);
+        method.visitLdcInsn("Long argument");
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, MESSAGES_CLASS, "log", LOG_DESC);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        // tell(null, flag ? "Yes" : "No", new Object[0]) is not a single constant
+        method = writer.visitMethod(
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "choose", "(Z)V", null, null);
+        method.visitCode();
+        method.visitInsn(Opcodes.ACONST_NULL);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        Label no = new Label();
+        Label end = new Label();
+        method.visitJumpInsn(Opcodes.IFEQ, no);
+        method.visitLdcInsn("Yes");
+        method.visitJumpInsn(Opcodes.GOTO, end);
+        method.visitLabel(no);
+        method.visitLdcInsn("No");
+        method.visitLabel(end);
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, MESSAGES_CLASS, "tell", TELL_DESC);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        // tell(null, text, new Object[0])
+        method = writer.visitMethod(
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "forward", "(Ljava/lang/String;)V", null, null);
+        method.visitCode();
+        method.visitInsn(Opcodes.ACONST_NULL);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, MESSAGES_CLASS, "tell", TELL_DESC);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] createPlainClass() {
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, PLAIN_CLASS, null, "java/lang/Object", null);
+
+        MethodVisitor method = writer.visitMethod(
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "text", "()Ljava/lang/String;", null, null);
+        method.visitCode();
+        method.visitLdcInsn("Not localizable");
+        method.visitInsn(Opcodes.ARETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void write(JarOutputStream stream, String className, byte[] bytes) throws IOException {
+        stream.putNextEntry(new JarEntry(className + ".class"));
+        stream.write(bytes);
+        stream.closeEntry();
+    }
+}
@@ -0,0 +1,115 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+public class ConstantPoolFilterTest {
+
+    private static final String TEST_PACKAGE = "com/jcwhatever/nucleus/language/test/";
+
+    @Test
+    public void testLocalizableClassesAreParsed() throws IOException {
+
+        ConstantPoolFilter filter = new ConstantPoolFilter();
+
+        byte[] fields = readTestJarEntry(TEST_PACKAGE + "LocalizedFields.class");
+        assertEquals(ConstantPoolFilter.PARSE, filter.check(fields, 0, fields.length));
+
+        byte[] annotation = readTestJarEntry(TEST_PACKAGE + "LocalizableAnnotation.class");
+        assertEquals(ConstantPoolFilter.PARSE, filter.check(annotation, 0, annotation.length));
+    }
+
+    @Test
+    public void testAnnotatedClassIsDeferred() throws IOException {
+
+        ConstantPoolFilter filter = new ConstantPoolFilter();
+
+        // this class has visible @Test annotations
+        byte[] bytes = readClass(ConstantPoolFilterTest.class);
+
+        assertEquals(ConstantPoolFilter.DEFER, filter.check(bytes, 0, bytes.length));
+        assertEquals("com/jcwhatever/nucleus/localizer/ConstantPoolFilterTest", filter.getClassName());
+
+        Set<Integer> hashes = new HashSet<>(1);
+        hashes.add(ConstantPoolFilter.hash("Lorg/junit/Test;"));
+
+        ClassRecord record = ClassRecord.deferred("", filter.getClassName(), filter.getDescriptorHashes());
+        assertTrue(record.mayUse(hashes));
+
+        hashes.clear();
+        hashes.add(ConstantPoolFilter.hash('L' + Deprecated.class.getName().replace('.', '/') + ';'));
+        assertFalse(record.mayUse(hashes));
+    }
+
+    @Test
+    public void testPlainClassIsSkipped() throws IOException {
+
+        ConstantPoolFilter filter = new ConstantPoolFilter();
+
+        byte[] bytes = readClass(ScanPipeline.class);
+
+        assertEquals(ConstantPoolFilter.SKIP, filter.check(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testMalformedClassIsParsed() {
+
+        ConstantPoolFilter filter = new ConstantPoolFilter();
+
+        byte[] bytes = new byte[] { (byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE, 0, 0, 0, 50, 0, 5, 1, 0 };
+
+        assertEquals(ConstantPoolFilter.PARSE, filter.check(bytes, 0, bytes.length));
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+
+        InputStream stream = clazz.getResourceAsStream('/' + clazz.getName().replace('.', '/') + ".class");
+        try {
+            return readAll(stream);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    private static byte[] readTestJarEntry(String name) throws IOException {
+
+        JarInputStream stream = new JarInputStream(
+                ConstantPoolFilterTest.class.getResourceAsStream("/NucleusLocalizerTest.jar"));
+
+        try {
+            JarEntry entry;
+            while ((entry = stream.getNextJarEntry()) != null) {
+                if (entry.getName().equals(name))
+                    return readAll(stream);
+            }
+        }
+        finally {
+            stream.close();
+        }
+
+        throw new IOException("Entry not found: " + name);
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(1024);
+        byte[] buffer = new byte[1024];
+        int len;
+        while ((len = stream.read(buffer)) != -1) {
+            output.write(buffer, 0, len);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,90 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ExternalLiteralTableTest {
+
+    @Test
+    public void testSameAsLiteralTable() throws IOException {
+
+        Random random = new Random(42);
+        List<LiteralInfo> added = new ArrayList<>(5000);
+
+        for (int i=0; i < 5000; i++) {
+            // duplicates within and across runs, and text that is not valid UTF-16
+            String text = random.nextInt(4) == 0
+                    ? "bad \uD800 text " + random.nextInt(50)
+                    : "text " + random.nextInt(2000);
+
+            String source = random.nextBoolean() ? null : "libs/nested" + i + ".jar";
+
+            added.add(new LiteralInfo(text, "com/example/Class" + i, source, "com/example/Class" + i));
+        }
+
+        LiteralTable expected = new LiteralTable(added.size());
+
+        // small enough to write more runs than are merged at once
+        ExternalLiteralTable table = new ExternalLiteralTable(8 * 1024);
+
+        try {
+            for (LiteralInfo literal : added) {
+                expected.add(literal);
+                table.add(literal);
+            }
+
+            assertEquals(5000, table.size());
+            assertEquals(expected.size(), table.finish());
+            assertEquals(expected.getDuplicateCount(), table.getDuplicateCount());
+            assertTrue(table.getRunCount() > 64);
+
+            assertSame(expected.getLiterals(), table.getLiterals());
+        }
+        finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+
+        ExternalLiteralTable table = new ExternalLiteralTable(Long.MAX_VALUE);
+
+        try {
+            table.add(new LiteralInfo("first", "com/example/First"));
+            table.add(new LiteralInfo("second", "com/example/Second"));
+            table.add(new LiteralInfo("first", "com/example/Third"));
+
+            assertEquals(2, table.finish());
+            assertEquals(1, table.getDuplicateCount());
+            assertEquals(0, table.getRunCount());
+
+            List<LiteralInfo> literals = table.getLiterals();
+
+            assertEquals("first", literals.get(0).getLiteral());
+            assertEquals(1, literals.get(0).getDuplicateCount());
+            assertEquals("second", literals.get(1).getLiteral());
+        }
+        finally {
+            table.close();
+        }
+    }
+
+    private static void assertSame(List<LiteralInfo> expected, List<LiteralInfo> actual) {
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int i=0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getLiteral(), actual.get(i).getLiteral());
+            assertEquals(expected.get(i).getComments(), actual.get(i).getComments());
+            assertEquals(expected.get(i).getClassName(), actual.get(i).getClassName());
+        }
+    }
+}
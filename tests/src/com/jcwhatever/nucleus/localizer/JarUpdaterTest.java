@@ -0,0 +1,233 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+public class JarUpdaterTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void testAddAndReplace() throws IOException {
+
+        File jarFile = createJar();
+        File updated = new File(_folder.getRoot(), "updated.jar");
+
+        JarUpdater updater = new JarUpdater(jarFile);
+        updater.put("lang.keys.txt", "new keys".getBytes("UTF-8"));
+        updater.put("lang.keys.bin", new byte[] { 1, 2, 3 });
+        updater.write(updated);
+
+        ZipFile zip = new ZipFile(updated);
+        try {
+            List<String> names = new ArrayList<>(5);
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement().getName());
+            }
+
+            // existing entries keep their order, added entries are last
+            assertEquals("[stored.txt, deflated.txt, dir/, dir/big.txt, lang.keys.txt, lang.keys.bin]",
+                    names.toString());
+
+            assertEquals("stored text", read(zip, "stored.txt"));
+            assertEquals("deflated text", read(zip, "deflated.txt"));
+            assertEquals(bigText(), read(zip, "dir/big.txt"));
+            assertEquals("new keys", read(zip, "lang.keys.txt"));
+            assertArrayEquals(new byte[] { 1, 2, 3 }, readBytes(zip.getInputStream(zip.getEntry("lang.keys.bin"))));
+            assertEquals("archive comment", zip.getComment());
+        }
+        finally {
+            zip.close();
+        }
+
+        // local headers are valid for streaming readers
+        JarInputStream stream = new JarInputStream(new FileInputStream(updated));
+        try {
+            int count = 0;
+            JarEntry entry;
+            while ((entry = stream.getNextJarEntry()) != null) {
+                readBytes(stream);
+                assertNotNull(entry.getName());
+                count++;
+            }
+            assertEquals(6, count);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testUpdateInPlace() throws IOException {
+
+        File jarFile = createJar();
+
+        JarUpdater updater = new JarUpdater(jarFile);
+        updater.put("lang.keys.txt", "in place".getBytes("UTF-8"));
+        updater.write(jarFile);
+
+        ZipFile zip = new ZipFile(jarFile);
+        try {
+            assertEquals("in place", read(zip, "lang.keys.txt"));
+            assertEquals(bigText(), read(zip, "dir/big.txt"));
+            assertEquals(5, zip.size());
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void testUpdateInPlaceAfterScan() throws IOException {
+
+        File jarFile = new SyntheticJarBuilder().setClassCount(10)
+                .build(_folder.newFile("scanned.jar"));
+
+        ClassSource source = ClassSource.open(jarFile);
+        SourceEntry entry = source.getEntries().get(0);
+
+        ReadBuffer buffer = new ReadBuffer();
+        try {
+            assertNotNull(source.read(entry, buffer));
+            source.close();
+
+            // the mapping is released when the source is closed, not when collected
+            File maps = new File("/proc/self/maps");
+            if (maps.exists()) {
+                String mapped = new String(Files.readAllBytes(maps.toPath()), "UTF-8");
+                assertFalse(mapped.contains(jarFile.getCanonicalPath()));
+            }
+
+            try {
+                source.read(entry, buffer);
+                fail("Closed source was read.");
+            }
+            catch (IOException ignore) {
+                // expected
+            }
+        }
+        finally {
+            buffer.close();
+        }
+
+        JarUpdater updater = new JarUpdater(jarFile);
+        updater.put("lang.keys.txt", "after scan".getBytes("UTF-8"));
+        updater.write(jarFile);
+
+        ZipFile zip = new ZipFile(jarFile);
+        try {
+            assertEquals("after scan", read(zip, "lang.keys.txt"));
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void testNotZip() throws IOException {
+
+        File file = _folder.newFile("notzip.jar");
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write("not a zip file".getBytes("UTF-8"));
+        }
+        finally {
+            stream.close();
+        }
+
+        new JarUpdater(file).write(new File(_folder.getRoot(), "out.jar"));
+    }
+
+    // jar with a stored entry, deflated entries with data descriptors and a comment
+    private File createJar() throws IOException {
+
+        File jarFile = _folder.newFile();
+
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(jarFile));
+        try {
+            byte[] stored = "stored text".getBytes("UTF-8");
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+
+            JarEntry entry = new JarEntry("stored.txt");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            entry.setCrc(crc.getValue());
+            stream.putNextEntry(entry);
+            stream.write(stored);
+            stream.closeEntry();
+
+            stream.putNextEntry(new JarEntry("deflated.txt"));
+            stream.write("deflated text".getBytes("UTF-8"));
+            stream.closeEntry();
+
+            stream.putNextEntry(new JarEntry("dir/"));
+            stream.closeEntry();
+
+            stream.putNextEntry(new JarEntry("dir/big.txt"));
+            stream.write(bigText().getBytes("UTF-8"));
+            stream.closeEntry();
+
+            stream.putNextEntry(new JarEntry("lang.keys.txt"));
+            stream.write("old keys".getBytes("UTF-8"));
+            stream.closeEntry();
+
+            stream.setComment("archive comment");
+        }
+        finally {
+            stream.close();
+        }
+
+        return jarFile;
+    }
+
+    private static String bigText() {
+        StringBuilder sb = new StringBuilder(100000);
+        for (int i=0; i < 10000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String read(ZipFile zip, String name) throws IOException {
+        return new String(readBytes(zip.getInputStream(zip.getEntry(name))), "UTF-8");
+    }
+
+    private static byte[] readBytes(InputStream stream) throws IOException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int len;
+        while ((len = stream.read(buffer)) != -1) {
+            output.write(buffer, 0, len);
+        }
+        return output.toByteArray();
+    }
+}
@@ -16,16 +16,24 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
 
 public class LanguageGeneratorTest {
 
     private static File _testJarFile;
     private static Map<String, String> _expected = new HashMap<>(10);
+    private static Map<String, String> _expectedDuplicates = new HashMap<>(10);
 
 
     @ClassRule
@@ -111,6 +119,11 @@ public class LanguageGeneratorTest {
         _expected.put(
                 "# FIELD: TEST2 com.jcwhatever.nucleus.language.test.LocalizedFields",
                 "Test Localization Text Field 2");
+
+        // duplicates are listed under the entry of the first location
+        _expectedDuplicates.put(
+                "# FIELD: DUPLICATE_TEST com.jcwhatever.nucleus.language.test.LocalizedFields",
+                "Test Localization Text Field 2");
     }
 
     @Test
@@ -122,6 +135,384 @@ public class LanguageGeneratorTest {
 
         generator.generate();
 
+        assertOutput(output);
+    }
+
+    @Test
+    public void testReport() throws IOException {
+
+        File output = _folder.newFile("testoutput-report.txt");
+
+        LanguageGenerator generator = new LanguageGenerator(_testJarFile, output, "1.0");
+
+        GeneratorReport report = generator.generate();
+
+        assertEquals(true, report.isWritten());
+        assertEquals(6, report.getLiteralCount());
+        assertEquals(5, report.getKeyCount());
+        assertEquals(_testJarFile.length(), report.getInputBytes());
+        assertEquals(true, report.getReadBytes() > 0);
+        assertEquals(true, report.getPhaseNanos(GeneratorReport.Phase.SCAN) > 0);
+        assertEquals(true, report.getPhaseNanos(GeneratorReport.Phase.WRITE) > 0);
+
+        String json = report.toJson();
+        assertEquals(true, json.contains("\"keys\":5"));
+        assertEquals(true, json.contains("\"phaseNanos\":{\"open\":"));
+    }
+
+    @Test
+    public void testScan() throws IOException {
+
+        final Map<String, String> found = new HashMap<>(10);
+
+        LanguageGenerator generator = new LanguageGenerator(_testJarFile);
+
+        GeneratorReport report = generator.scan(new LiteralSink() {
+            @Override
+            public boolean accept(LiteralInfo literal) {
+                found.put("# " + literal.getComment(), literal.getLiteral());
+                return true;
+            }
+        });
+
+        Map<String, String> expected = new HashMap<>(_expected);
+        expected.putAll(_expectedDuplicates);
+
+        assertEquals(expected, found);
+        assertEquals(6, report.getLiteralCount());
+        assertEquals(false, report.isWritten());
+        assertEquals(null, report.getOutputFile());
+
+        // stop after the first literal
+        final int[] count = new int[1];
+
+        report = generator.scan(new LiteralSink() {
+            @Override
+            public boolean accept(LiteralInfo literal) {
+                count[0]++;
+                return false;
+            }
+        });
+
+        assertEquals(1, count[0]);
+        assertEquals(1, report.getLiteralCount());
+    }
+
+    @Test
+    public void testSyntheticJar() throws IOException {
+
+        SyntheticJarBuilder builder = new SyntheticJarBuilder()
+                .setClassCount(500)
+                .setDuplicateRate(0.2);
+
+        File jarFile = builder.build(_folder.newFile("synthetic.jar"));
+        File output = _folder.newFile("testoutput-synthetic.txt");
+
+        LanguageGenerator generator = new LanguageGenerator(jarFile, output, "1.0");
+
+        GeneratorReport report = generator.generate();
+
+        assertEquals(501, report.getClassCount());
+        assertEquals(builder.getLiteralCount(), report.getLiteralCount());
+        assertEquals(true, report.getKeyCount() < report.getLiteralCount());
+    }
+
+    @Test
+    public void testMemoryBudget() throws IOException {
+
+        SyntheticJarBuilder builder = new SyntheticJarBuilder()
+                .setClassCount(500)
+                .setDuplicateRate(0.2);
+
+        File jarFile = builder.build(_folder.newFile("synthetic-budget.jar"));
+        File expected = _folder.newFile("testoutput-nobudget.txt");
+        File output = _folder.newFile("testoutput-budget.txt");
+
+        new LanguageGenerator(jarFile, expected, "1.0").generate();
+
+        LanguageGenerator generator = new LanguageGenerator(jarFile, output, "1.0");
+        generator.setMemoryBudget(16 * 1024);
+
+        GeneratorReport report = generator.generate();
+
+        assertEquals(true, report.getSpillCount() > 1);
+        assertEquals(true, Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(output.toPath())));
+    }
+
+    @Test(timeout = 120000)
+    public void testMemoryBudgetHeap() throws IOException, InterruptedException {
+
+        // about 120,000 field literals, more than fit in the heap of the child process
+        File jarFile = new SyntheticJarBuilder()
+                .setClassCount(6000)
+                .setLocalizableClassRatio(1)
+                .setFieldsPerClass(20)
+                .setLocalizableFieldRatio(1)
+                .setAnnotationUsageRatio(0)
+                .build(_folder.newFile("synthetic-heap.jar"));
+
+        File expected = _folder.newFile("testoutput-heap.txt");
+        new LanguageGenerator(jarFile, expected, "1.0").generate();
+
+        File dir = _folder.newFolder("heap");
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+
+        Process process = new ProcessBuilder(java, "-Xmx24m",
+                "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(), jarFile.getAbsolutePath(), "1.0", "--memory-budget=2")
+                .directory(dir)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(dir, "console.txt"))
+                .start();
+
+        assertEquals(0, process.waitFor());
+
+        File output = new File(dir, "lang.keys.txt");
+        assertEquals(true, Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(output.toPath())));
+    }
+
+    @Test
+    public void testNestedJars() throws IOException {
+
+        File inner = new SyntheticJarBuilder()
+                .setClassCount(50)
+                .setDuplicateRate(0)
+                .build(_folder.newFile("nested-inner.jar"));
+
+        // stored and deflated jars in the outer jar, the test jar nested one level deeper
+        File middle = _folder.newFile("nested-middle.jar");
+        writeJar(middle, new File[] { _testJarFile }, new String[] { "lib/test.jar" }, false);
+
+        File outer = _folder.newFile("nested-outer.jar");
+        writeJar(outer, new File[] { inner, middle },
+                new String[] { "lib/stored.jar", "lib/middle.jar" }, true);
+
+        File output = _folder.newFile("testoutput-nested.txt");
+
+        LanguageGenerator generator = new LanguageGenerator(outer, output, "1.0");
+
+        GeneratorReport report = generator.generate();
+
+        String text = new String(Files.readAllBytes(output.toPath()), "UTF-16");
+
+        assertEquals(true, text.contains(
+                "# FIELD: TEST1 com.jcwhatever.nucleus.language.test.LocalizedFields (lib/middle.jar!/lib/test.jar)"));
+        assertEquals(true, text.contains("(lib/stored.jar)"));
+        assertEquals(51 + 2, report.getClassCount());
+
+        // depth limit
+        generator.setNestedDepth(1);
+        report = generator.generate();
+
+        assertEquals(51, report.getClassCount());
+    }
+
+    @Test
+    public void testNestedJarsOpenedOneAtATime() throws IOException {
+
+        File first = new SyntheticJarBuilder()
+                .setClassCount(20)
+                .setDuplicateRate(0)
+                .build(_folder.newFile("nested-first.jar"));
+
+        File second = new SyntheticJarBuilder()
+                .setClassCount(30)
+                .setDuplicateRate(0)
+                .build(_folder.newFile("nested-second.jar"));
+
+        File middle = _folder.newFile("nested-open-middle.jar");
+        writeJar(middle, new File[] { _testJarFile }, new String[] { "lib/test.jar" }, false);
+
+        File outer = _folder.newFile("nested-open-outer.jar");
+        writeJar(outer, new File[] { first, second, middle },
+                new String[] { "lib/first.jar", "lib/second.jar", "lib/middle.jar" }, true);
+
+        NestedJarSource source = new NestedJarSource(ClassSource.open(outer), 2);
+        ReadBuffer buffer = new ReadBuffer();
+
+        try {
+            List<SourceEntry> entries = source.getEntries();
+
+            // listing releases every archive
+            assertEquals(21 + 31 + 2, entries.size());
+            assertEquals(0, source.getOpenCount());
+
+            for (SourceEntry entry : entries) {
+                assertEquals(entry.size, source.read(entry, buffer).remaining());
+
+                // the archive being read and the archive it is in
+                assertEquals(true, source.getOpenCount() <= 2);
+            }
+
+            // read again out of order
+            assertEquals(entries.get(0).size, source.read(entries.get(0), buffer).remaining());
+            assertEquals(true, source.getOpenCount() <= 2);
+        }
+        finally {
+            buffer.close();
+            source.close();
+        }
+
+        assertEquals(0, source.getOpenCount());
+    }
+
+    @Test
+    public void testClasspathAnnotations() throws IOException {
+
+        SyntheticJarBuilder builder = new SyntheticJarBuilder()
+                .setClassCount(200)
+                .setDuplicateRate(0);
+
+        File synthetic = builder.build(_folder.newFile("classpath-all.jar"));
+
+        // move the annotation class to a dependency jar
+        File jarFile = _folder.newFile("classpath-main.jar");
+        File dependency = _folder.newFile("classpath-dependency.jar");
+        String annotationEntry = SyntheticJarBuilder.ANNOTATION_CLASS + ".class";
+
+        JarInputStream input = new JarInputStream(new FileInputStream(synthetic));
+        JarOutputStream mainOutput = new JarOutputStream(new FileOutputStream(jarFile));
+        JarOutputStream dependencyOutput = new JarOutputStream(new FileOutputStream(dependency));
+
+        try {
+            JarEntry entry;
+            byte[] buffer = new byte[4096];
+
+            while ((entry = input.getNextJarEntry()) != null) {
+
+                JarOutputStream output = entry.getName().equals(annotationEntry)
+                        ? dependencyOutput
+                        : mainOutput;
+
+                output.putNextEntry(new JarEntry(entry.getName()));
+
+                int len;
+                while ((len = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, len);
+                }
+
+                output.closeEntry();
+            }
+        }
+        finally {
+            input.close();
+            mainOutput.close();
+            dependencyOutput.close();
+        }
+
+        File output = _folder.newFile("testoutput-classpath.txt");
+        LanguageGenerator generator = new LanguageGenerator(jarFile, output, "1.0");
+
+        // only field literals without the annotation class
+        GeneratorReport report = generator.generate();
+        assertEquals(true, report.getLiteralCount() < builder.getLiteralCount());
+
+        generator.setClasspath(Arrays.asList(_testJarFile, dependency));
+
+        report = generator.generate();
+        assertEquals(builder.getLiteralCount(), report.getLiteralCount());
+        assertEquals(true, generator.getClasspathCacheFile().exists());
+
+        // again using the cached lookups
+        report = generator.generate();
+        assertEquals(builder.getLiteralCount(), report.getLiteralCount());
+    }
+
+    @Test
+    public void testIncremental() throws IOException {
+
+        File output = _folder.newFile("testoutput-incremental.txt");
+
+        LanguageGenerator generator = new LanguageGenerator(_testJarFile, output, "1.0");
+        generator.setIncremental(true);
+
+        // first run creates the index
+        generator.generate();
+
+        assertEquals(true, generator.getIndexFile().exists());
+        assertOutput(output);
+
+        // second run reads from the index
+        generator.generate();
+
+        assertOutput(output);
+    }
+
+    @Test
+    public void testClassesDirectory() throws IOException {
+
+        File classesDir = _folder.newFolder("classes");
+
+        // extract test jar into classes directory
+        JarInputStream jarStream = new JarInputStream(new FileInputStream(_testJarFile));
+        try {
+            JarEntry entry;
+            while ((entry = jarStream.getNextJarEntry()) != null) {
+
+                File file = new File(classesDir, entry.getName());
+
+                if (entry.isDirectory()) {
+                    assertEquals(true, file.mkdirs());
+                    continue;
+                }
+
+                OutputStream outputStream = new FileOutputStream(file);
+                try {
+                    byte[] buffer = new byte[1024];
+                    int len;
+                    while ((len = jarStream.read(buffer)) != -1) {
+                        outputStream.write(buffer, 0, len);
+                    }
+                }
+                finally {
+                    outputStream.close();
+                }
+            }
+        }
+        finally {
+            jarStream.close();
+        }
+
+        File output = _folder.newFile("testoutput-classes.txt");
+
+        LanguageGenerator generator = new LanguageGenerator(classesDir, output, "1.0");
+
+        generator.generate();
+
+        assertOutput(output);
+    }
+
+    // write files into a jar. the first file is stored, the others deflated if compress is true
+    private static void writeJar(File jarFile, File[] files, String[] names, boolean compress) throws IOException {
+
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(jarFile));
+        try {
+            for (int i=0; i < files.length; i++) {
+
+                byte[] bytes = Files.readAllBytes(files[i].toPath());
+                JarEntry entry = new JarEntry(names[i]);
+
+                if (i == 0 || !compress) {
+                    CRC32 crc = new CRC32();
+                    crc.update(bytes);
+
+                    entry.setMethod(JarEntry.STORED);
+                    entry.setSize(bytes.length);
+                    entry.setCrc(crc.getValue());
+                }
+
+                stream.putNextEntry(entry);
+                stream.write(bytes);
+                stream.closeEntry();
+            }
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    private void assertOutput(File output) throws IOException {
+
         FileInputStream stream = null;
 
         try {
@@ -136,6 +527,7 @@ public class LanguageGeneratorTest {
 
 
             Set<String> commentLines = new HashSet<>(5); // store the parsed comment lines for further validation
+            Set<String> duplicateLines = new HashSet<>(5);
 
             while (scanner.hasNext()) {
                 String line = scanner.nextLine();
@@ -159,12 +551,24 @@ public class LanguageGeneratorTest {
                 String value = scanner.nextLine();
                 System.out.println(value);
 
+                // comments of duplicate locations follow the first comment
+                while (value.startsWith("#")) {
+                    assertEquals(expected, _expectedDuplicates.get(value));
+                    duplicateLines.add(value);
+
+                    assertEquals(true, scanner.hasNext());
+
+                    value = scanner.nextLine();
+                    System.out.println(value);
+                }
+
                 // 3 is the space taken by the index that precedes the value (order is not important)
                 assertEquals(expected, value.substring(3));
             }
 
             // all expected values should have been found
             assertEquals(_expected.keySet().size(), commentLines.size());
+            assertEquals(_expectedDuplicates.keySet().size(), duplicateLines.size());
 
         }
         catch (Exception e) {
@@ -0,0 +1,84 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class LanguageLoaderTest {
+
+    private static final String KEYS =
+            "version> 1.0, 1.1\n" +
+            "\n" +
+            "# FIELD: TEST1 com.example.Fields\n" +
+            "0> First\n" +
+            "\n" +
+            "# FIELD: TEST2 com.example.Fields\n" +
+            "1> Second\\nline\n" +
+            "\n" +
+            "# FIELD: TEST3 com.example.Fields\n" +
+            "2> Third\n";
+
+    @Test
+    public void testKeyFile() throws IOException {
+
+        LanguageTable table = new LanguageLoader().load(stream(KEYS));
+
+        assertEquals(3, table.size());
+        assertTrue(table.getVersions().contains("1.0"));
+        assertTrue(table.getVersions().contains("1.1"));
+        assertEquals("First", table.get(0));
+        assertEquals("Second\nline", table.get(1));
+        assertEquals("Third", table.get(2));
+        assertNull(table.get(3));
+    }
+
+    @Test
+    public void testOverrides() throws IOException {
+
+        LanguageTable table = new LanguageLoader().load(stream(KEYS),
+                stream("version> 1.0\n1> Zweite\n"),
+                stream("version> 1.1\n2> Dritte\n5> Not a key\n"));
+
+        assertEquals(3, table.size());
+        assertEquals("First", table.get(0));
+        assertEquals("Zweite", table.get(1));
+        assertEquals("Dritte", table.get(2));
+    }
+
+    @Test
+    public void testMergeLayers() throws IOException {
+
+        LanguageLoader loader = new LanguageLoader();
+        LanguageTable base = loader.load(stream(KEYS));
+        LanguageTable layer = loader.loadLayer(stream("version> 1.0\n0> Erste\n"));
+
+        LanguageTable merged = base.merge(layer);
+
+        assertEquals("Erste", merged.get(0));
+        assertEquals("First", base.get(0));
+        assertEquals("Third", merged.get(2));
+
+        assertFalse(loader.loadLayer(stream("0> Erste\n")).isCompatible(base));
+    }
+
+    @Test(expected = IOException.class)
+    public void testIncompatibleVersion() throws IOException {
+        new LanguageLoader().load(stream(KEYS), stream("version> 2.0\n0> Erste\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidLine() throws IOException {
+        new LanguageLoader().load(stream("version> 1.0\n0 First\n"));
+    }
+
+    private static InputStream stream(String text) throws IOException {
+        return new ByteArrayInputStream(text.getBytes("UTF-16"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class LiteralTableTest {
+
+    @Test
+    public void testDuplicatesAreGrouped() {
+
+        LiteralTable table = new LiteralTable(0);
+
+        // enough literals to resize the table several times
+        for (int i=0; i < 1000; i++) {
+            assertTrue(table.add(new LiteralInfo("text" + i, "com/example/First" + i)));
+        }
+
+        assertFalse(table.add(new LiteralInfo("text5", "com/example/Second")));
+        assertFalse(table.add(new LiteralInfo("text5", "com/example/Third")));
+
+        assertEquals(1000, table.size());
+        assertEquals(2, table.getDuplicateCount());
+
+        List<LiteralInfo> literals = table.getLiterals();
+
+        assertEquals("text0", literals.get(0).getLiteral());
+        assertEquals("text999", literals.get(999).getLiteral());
+        assertEquals(0, literals.get(4).getDuplicateCount());
+
+        LiteralInfo grouped = literals.get(5);
+        assertEquals(2, grouped.getDuplicateCount());
+        assertEquals(Arrays.asList("com.example.First5", "com.example.Second", "com.example.Third"),
+                grouped.getComments());
+    }
+}
@@ -0,0 +1,172 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.List;
+
+public class LocalizerDaemonTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void testRepeatRequestReusesClasses() throws Exception {
+
+        SyntheticJarBuilder builder = new SyntheticJarBuilder().setClassCount(200);
+
+        File jarFile = builder.build(_folder.newFile("daemon.jar"));
+        File output = new File(_folder.getRoot(), "daemon.keys.txt");
+
+        File tokenFile = new File(_folder.getRoot(), "daemon.token");
+
+        final LocalizerDaemon daemon = new LocalizerDaemon(getFreePort(), LocalizerDaemon.DEFAULT_CACHE_BYTES, tokenFile);
+        Thread thread = startDaemon(daemon);
+
+        try {
+            DaemonClient client = new DaemonClient(daemon.getPort(), tokenFile);
+            Charset charset = Charset.forName("UTF-16");
+            List<File> classpath = Collections.emptyList();
+
+            GeneratorReport first = client.generate(jarFile, output, "1.0", charset, false, -1, classpath);
+
+            assertEquals(true, first.isWritten());
+            assertEquals(201, first.getClassCount());
+            assertEquals(0, first.getReusedCount());
+            assertEquals(builder.getLiteralCount(), first.getLiteralCount());
+
+            GeneratorReport second = client.generate(jarFile, output, "1.0", charset, false, -1, classpath);
+
+            assertEquals(201, second.getReusedCount());
+            assertEquals(first.getKeyCount(), second.getKeyCount());
+            assertTrue(output.exists());
+
+            client.stop();
+        }
+        finally {
+            daemon.stop();
+            thread.join(10000);
+        }
+
+        assertEquals(false, thread.isAlive());
+        assertEquals(false, tokenFile.exists());
+    }
+
+    @Test
+    public void testRequestWithoutTokenRejected() throws Exception {
+
+        File jarFile = new SyntheticJarBuilder().setClassCount(10).build(_folder.newFile("token.jar"));
+        File output = new File(_folder.getRoot(), "token.keys.txt");
+        File tokenFile = new File(new File(_folder.getRoot(), "tokens"), "daemon.token");
+        File wrongFile = _folder.newFile("wrong.token");
+
+        Files.write(wrongFile.toPath(), "0123456789abcdef".getBytes("US-ASCII"));
+
+        LocalizerDaemon daemon = new LocalizerDaemon(getFreePort(), LocalizerDaemon.DEFAULT_CACHE_BYTES, tokenFile);
+        Thread thread = startDaemon(daemon);
+
+        try {
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                assertEquals("rw-------", PosixFilePermissions.toString(
+                        Files.getPosixFilePermissions(tokenFile.toPath())));
+            }
+
+            try {
+                new DaemonClient(daemon.getPort(), wrongFile).generate(jarFile, output, "1.0",
+                        Charset.forName("UTF-8"), false, -1, Collections.<File>emptyList());
+                fail("Request with an invalid token was accepted.");
+            }
+            catch (IOException e) {
+                assertTrue(e.getMessage().contains("Invalid daemon token"));
+            }
+
+            assertEquals(false, output.exists());
+
+            // still running for requests with the token
+            new DaemonClient(daemon.getPort(), tokenFile).stop();
+        }
+        finally {
+            daemon.stop();
+            thread.join(10000);
+        }
+
+        assertEquals(false, thread.isAlive());
+    }
+
+    @Test(expected = ConnectException.class)
+    public void testDaemonNotRunning() throws IOException {
+
+        new DaemonClient(getFreePort(), new File(_folder.getRoot(), "none.token")).stop();
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+
+        ClassCache cache = new ClassCache(10000);
+        RecordCache view = cache.forInput(new File("test.jar"));
+
+        for (int i=0; i < 1000; i++) {
+
+            ClassRecord record = new ClassRecord("com/example/Class" + i + ".class", "com/example/Class" + i);
+            record.addFieldLiteral(new LiteralInfo("text" + i, "FIELD: TEXT com/example/Class" + i));
+
+            view.put(new SourceEntry(record.entryName, i, 100), record);
+        }
+
+        assertTrue(cache.getBytes() <= 10000);
+        assertTrue(cache.size() > 0 && cache.size() < 1000);
+
+        // the most recent record is kept, a changed entry is not reused
+        assertTrue(view.get(new SourceEntry("com/example/Class999.class", 999, 100)) != null);
+        assertEquals(null, view.get(new SourceEntry("com/example/Class999.class", 1, 100)));
+        assertEquals(null, view.get(new SourceEntry("com/example/Class0.class", 0, 100)));
+    }
+
+    private static int getFreePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    // run the daemon and wait until it accepts connections
+    private static Thread startDaemon(final LocalizerDaemon daemon) throws InterruptedException {
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    daemon.run();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        thread.start();
+
+        // the token file is written once the port is bound
+        for (int i=0; i < 100 && !daemon.getTokenFile().exists(); i++) {
+            Thread.sleep(50);
+        }
+
+        return thread;
+    }
+}
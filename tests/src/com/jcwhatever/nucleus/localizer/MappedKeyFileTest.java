@@ -0,0 +1,64 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class MappedKeyFileTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void testLookup() throws IOException {
+
+        File output = new File(_folder.getRoot(), "lang.keys.bin");
+
+        try (KeyFileWriter writer = new BinaryKeyFileWriter(output)) {
+            writer.begin("1.2");
+            writer.write(0, new LiteralInfo("zero", "comment"));
+            writer.write(2, new LiteralInfo("two\nlines \u00e9\u4e2d", "comment"));
+            writer.write(3, new LiteralInfo("", "comment"));
+            writer.commit();
+        }
+
+        MappedKeyFile keyFile = new MappedKeyFile(output);
+
+        assertEquals("1.2", keyFile.getVersion());
+        assertEquals(4, keyFile.size());
+        assertEquals("zero", keyFile.get(0));
+        assertEquals("two\nlines \u00e9\u4e2d", keyFile.get(2));
+        assertEquals("", keyFile.get(3));
+
+        // missing keys
+        assertNull(keyFile.get(1));
+        assertNull(keyFile.get(4));
+        assertNull(keyFile.get(-1));
+        assertFalse(keyFile.contains(1));
+        assertTrue(keyFile.contains(3));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws IOException {
+
+        File file = _folder.newFile("lang.keys.txt");
+        Files.write(file.toPath(), "version> 1.0".getBytes("UTF-8"));
+
+        new MappedKeyFile(file);
+    }
+
+    @Test
+    public void testBinaryFileName() {
+        assertEquals("lang.keys.bin", BinaryKeyFileWriter.getBinaryFile(new File("lang.keys.txt")).getName());
+        assertEquals("keys.bin", BinaryKeyFileWriter.getBinaryFile(new File("keys")).getName());
+    }
+}
@@ -0,0 +1,60 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+public class ScanIndexTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void testUnpairedSurrogates() throws IOException {
+
+        File file = new File(_folder.getRoot(), "index.bin");
+        SourceEntry entry = new SourceEntry("com/example/Foo.class", 1234, 100);
+
+        // text that is not valid UTF-16
+        ClassRecord record = new ClassRecord(entry.name, "com/example/Foo");
+        record.fieldLiterals = new ArrayList<>(1);
+        record.fieldLiterals.add(new LiteralInfo("bad \uD800 text \uDC00", "com/example/Foo.TEXT"));
+
+        ScanIndex index = ScanIndex.load(file);
+        index.put(entry, record);
+        index.save();
+
+        ClassRecord loaded = ScanIndex.load(file).get(entry);
+
+        assertNotNull(loaded);
+        assertEquals("bad \uD800 text \uDC00", loaded.fieldLiterals.get(0).getLiteral());
+
+        // nothing left behind by the save
+        assertEquals(1, _folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testUnreadableFile() throws IOException {
+
+        File file = new File(_folder.getRoot(), "index.bin");
+        Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+
+        ScanIndex index = ScanIndex.load(file);
+        assertEquals(true, index.isUnreadable());
+
+        // replaced when saved
+        index.put(new SourceEntry("com/example/Foo.class", 1234, 100), ClassRecord.SKIPPED);
+        index.save();
+
+        assertEquals(false, ScanIndex.load(file).isUnreadable());
+        assertEquals(false, ScanIndex.load(new File(_folder.getRoot(), "missing.bin")).isUnreadable());
+    }
+}
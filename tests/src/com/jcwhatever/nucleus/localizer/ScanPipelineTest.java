@@ -0,0 +1,147 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ScanPipelineTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test(timeout = 10000)
+    public void testFailureWaitsForWorkers() throws IOException {
+
+        File jarFile = new SyntheticJarBuilder().setClassCount(50)
+                .build(_folder.newFile("pipeline.jar"));
+
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        final String failName = getFirstEntry(jarFile);
+
+        ClassSource source = ClassSource.open(jarFile);
+        try {
+            new ScanPipeline<String>(4).run(source, new ScanPipeline.Parser<String>() {
+                @Override
+                public String parse(SourceEntry entry, ByteBuffer bytes) throws IOException {
+
+                    if (entry.name.equals(failName))
+                        throw new IOException("Invalid class.");
+
+                    started.incrementAndGet();
+
+                    // a long parse that does not respond to interrupts
+                    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+                    while (System.nanoTime() < end) {
+                        bytes.get(0);
+                    }
+
+                    finished.incrementAndGet();
+                    return entry.name;
+                }
+            }, new ScanPipeline.Collector<String>() {
+                @Override
+                public void collect(SourceEntry entry, String result) {
+                    // do nothing
+                }
+            });
+
+            fail("Failed entry was not reported.");
+        }
+        catch (IOException e) {
+            assertEquals("Invalid class.", e.getMessage());
+        }
+        finally {
+            source.close();
+        }
+
+        // the source is only closed once no worker can read from it
+        assertTrue(started.get() > 0);
+        assertEquals(started.get(), finished.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testParserErrorFails() throws IOException {
+
+        File jarFile = new SyntheticJarBuilder().setClassCount(50)
+                .build(_folder.newFile("error.jar"));
+
+        ClassSource source = ClassSource.open(jarFile);
+        try {
+            new ScanPipeline<String>(2).run(source, new ScanPipeline.Parser<String>() {
+                @Override
+                public String parse(SourceEntry entry, ByteBuffer bytes) {
+
+                    // i.e. a deeply nested class
+                    if (entry.name.endsWith("5.class"))
+                        throw new StackOverflowError();
+
+                    return entry.name;
+                }
+            }, new ScanPipeline.Collector<String>() {
+                @Override
+                public void collect(SourceEntry entry, String result) {
+                    // do nothing
+                }
+            });
+
+            fail("Parser error was not reported.");
+        }
+        catch (StackOverflowError expected) {
+            // the scan fails instead of waiting for the entry
+        }
+        finally {
+            source.close();
+        }
+    }
+
+    @Test(timeout = 10000, expected = IOException.class)
+    public void testCacheErrorFails() throws IOException {
+
+        File jarFile = new SyntheticJarBuilder().setClassCount(50)
+                .build(_folder.newFile("cache.jar"));
+
+        ClassSource source = ClassSource.open(jarFile);
+        try {
+            new ScanPipeline<String>(2).run(source, new ScanPipeline.Cache<String>() {
+                @Override
+                public String get(SourceEntry entry) {
+                    throw new IllegalStateException("Corrupt cache.");
+                }
+            }, new ScanPipeline.Parser<String>() {
+                @Override
+                public String parse(SourceEntry entry, ByteBuffer bytes) {
+                    return entry.name;
+                }
+            }, new ScanPipeline.Collector<String>() {
+                @Override
+                public void collect(SourceEntry entry, String result) {
+                    // do nothing
+                }
+            });
+        }
+        finally {
+            source.close();
+        }
+    }
+
+    private static String getFirstEntry(File jarFile) throws IOException {
+        ClassSource source = ClassSource.open(jarFile);
+        try {
+            return source.getEntries().get(0).name;
+        }
+        finally {
+            source.close();
+        }
+    }
+}
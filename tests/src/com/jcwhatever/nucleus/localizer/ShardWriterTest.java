@@ -0,0 +1,133 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.jcwhatever.nucleus.localizer.ShardManifest.Shard;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ShardWriterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void testPackageShardMapper() {
+
+        PackageShardMapper mapper = new PackageShardMapper(2);
+        mapper.addPrefix("com.example.economy", "economy");
+        mapper.addPrefix("com.example", "example");
+
+        assertEquals("economy", mapper.getShard("com.example.economy.shop.Item"));
+        assertEquals("example", mapper.getShard("com.example.Main"));
+        assertEquals("org.other", mapper.getShard("org.other.deep.Foo"));
+        assertEquals("org", mapper.getShard("org.Foo"));
+        assertNull(mapper.getShard("Foo"));
+
+        // partial package names do not match
+        assertEquals("com.examples", mapper.getShard("com.examples.Foo"));
+
+        assertEquals("org.other.deep", new PackageShardMapper(0).getShard("org.other.deep.Foo"));
+    }
+
+    @Test
+    public void testShards() throws IOException {
+
+        File output = new File(_folder.getRoot(), "lang.keys.txt");
+        PackageShardMapper mapper = new PackageShardMapper(2);
+
+        List<LiteralInfo> literals = new ArrayList<>(10);
+        literals.add(literal("first", "com/a/First"));
+        literals.add(literal("second", "com/b/Second"));
+        literals.add(literal("third", "com/a/Third"));
+        literals.add(new LiteralInfo("unknown", "comment"));
+
+        ShardWriter writer = new ShardWriter(output, "1.0", UTF_8, false, 2);
+
+        assertEquals(3, writer.write(literals, mapper));
+        assertEquals(3, writer.getShardCount());
+        assertFalse(output.exists());
+
+        ShardManifest manifest = ShardManifest.load(ShardWriter.getManifestFile(output));
+        assertNotNull(manifest);
+
+        Shard a = manifest.get("com.a");
+        Shard b = manifest.get("com.b");
+        assertEquals(0, a.first);
+        assertTrue(b.first > a.last);
+        assertNotNull(manifest.get(ShardWriter.DEFAULT_SHARD));
+
+        LanguageTable table = load(output, "com.a");
+        assertEquals("first", table.get(a.first));
+        assertEquals("third", table.get(a.first + 1));
+        assertEquals("second", load(output, "com.b").get(b.first));
+
+        // nothing changed
+        assertEquals(0, writer.write(literals, mapper));
+
+        // only the changed shard is written, other ranges are kept
+        literals.add(literal("fourth", "com/b/Fourth"));
+        assertEquals(1, writer.write(literals, mapper));
+
+        manifest = ShardManifest.load(ShardWriter.getManifestFile(output));
+        assertEquals(a.first, manifest.get("com.a").first);
+        assertEquals(b.first, manifest.get("com.b").first);
+        assertEquals("fourth", load(output, "com.b").get(b.first + 1));
+
+        // a shard that outgrows its range is moved after the last range
+        int end = manifest.getEnd();
+        for (int i=0; i < b.getCapacity(); i++) {
+            literals.add(literal("more" + i, "com/b/More"));
+        }
+
+        assertEquals(1, writer.write(literals, mapper));
+
+        manifest = ShardManifest.load(ShardWriter.getManifestFile(output));
+        assertEquals(a.first, manifest.get("com.a").first);
+        assertEquals(end, manifest.get("com.b").first);
+
+        // files of removed shards are deleted
+        literals.remove(0);
+        literals.remove(1);
+
+        writer.write(literals, mapper);
+
+        assertNull(ShardManifest.load(ShardWriter.getManifestFile(output)).get("com.a"));
+        assertFalse(ShardWriter.getShardFile(output, "com.a").exists());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidShardName() throws IOException {
+
+        List<LiteralInfo> literals = new ArrayList<>(1);
+        literals.add(literal("text", "com/a/First"));
+
+        PackageShardMapper mapper = new PackageShardMapper(0);
+        mapper.addPrefix("com.a", "../escape");
+
+        new ShardWriter(new File(_folder.getRoot(), "lang.keys.txt"), "1.0", UTF_8, false, 1)
+                .write(literals, mapper);
+    }
+
+    private static LiteralInfo literal(String text, String className) {
+        return new LiteralInfo(text, "FIELD: TEXT " + className, null, className);
+    }
+
+    private static LanguageTable load(File output, String shard) throws IOException {
+        return new LanguageLoader(UTF_8).load(ShardWriter.getShardFile(output, shard));
+    }
+}
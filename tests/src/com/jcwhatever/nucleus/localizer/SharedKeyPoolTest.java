@@ -0,0 +1,145 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class SharedKeyPoolTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void testBatchPool() throws IOException {
+
+        File first = new SyntheticJarBuilder().setClassCount(200).setSeed(1)
+                .build(_folder.newFile("First.jar"));
+
+        File second = new SyntheticJarBuilder().setClassCount(300).setSeed(2)
+                .build(_folder.newFile("Second.jar"));
+
+        File outputDir = _folder.newFolder("out");
+
+        BatchGenerator batch = new BatchGenerator(Arrays.asList(first, second), outputDir, "1.0");
+        batch.setSharedPool(true);
+
+        List<GeneratorReport> reports = batch.generate();
+
+        for (GeneratorReport report : reports) {
+            assertNull(report.getError());
+        }
+
+        SharedKeyPool pool = SharedKeyPool.open(batch.getPoolFile());
+
+        // the same instance for each plugin
+        assertSame(pool, SharedKeyPool.open(batch.getPoolFile()));
+        assertEquals("1.0", pool.getVersion());
+
+        PooledKeyFile firstKeys = new PooledKeyFile(batch.getIndexFile(first), pool);
+        PooledKeyFile secondKeys = new PooledKeyFile(batch.getIndexFile(second), pool);
+
+        assertKeys(batch.getOutputFile(first), firstKeys);
+        assertKeys(batch.getOutputFile(second), secondKeys);
+
+        // shared text is only stored once
+        int keyCount = reports.get(0).getKeyCount() + reports.get(1).getKeyCount();
+        assertTrue(pool.size() < keyCount);
+
+        boolean isShared = false;
+
+        for (int i=0; i < firstKeys.size(); i++) {
+            for (int j=0; j < secondKeys.size(); j++) {
+                if (firstKeys.get(i).equals(secondKeys.get(j))) {
+                    assertSame(firstKeys.get(i), secondKeys.get(j));
+                    isShared = true;
+                }
+            }
+        }
+
+        assertTrue(isShared);
+
+        LanguageTable table = firstKeys.toTable();
+        assertEquals(firstKeys.size(), table.size());
+        assertSame(firstKeys.get(0), table.get(0));
+        assertTrue(table.getVersions().contains("1.0"));
+    }
+
+    @Test
+    public void testDifferentPool() throws IOException {
+
+        File jarFile = new SyntheticJarBuilder().setClassCount(50)
+                .build(_folder.newFile("Plugin.jar"));
+
+        BatchGenerator batch = new BatchGenerator(Arrays.asList(jarFile), _folder.newFolder("first"), "1.0");
+        batch.setSharedPool(true);
+        batch.generate();
+
+        BatchGenerator other = new BatchGenerator(Arrays.asList(jarFile), _folder.newFolder("second"), "2.0");
+        other.setSharedPool(true);
+        other.generate();
+
+        SharedKeyPool pool = SharedKeyPool.open(other.getPoolFile());
+
+        try {
+            new PooledKeyFile(batch.getIndexFile(jarFile), pool);
+            fail();
+        }
+        catch (IOException ignore) {
+            // expected, written for the first pool
+        }
+    }
+
+    @Test
+    public void testRegeneratedPool() throws IOException {
+
+        File jarFile = new SyntheticJarBuilder().setClassCount(50)
+                .build(_folder.newFile("Reloaded.jar"));
+
+        File outputDir = _folder.newFolder("reloaded");
+
+        BatchGenerator batch = new BatchGenerator(Arrays.asList(jarFile), outputDir, "1.0");
+        batch.setSharedPool(true);
+        batch.generate();
+
+        SharedKeyPool first = SharedKeyPool.open(batch.getPoolFile());
+        assertEquals("1.0", new PooledKeyFile(batch.getIndexFile(jarFile), first).getVersion());
+
+        // regenerated in the same process, i.e. across a plugin reload
+        BatchGenerator other = new BatchGenerator(Arrays.asList(jarFile), outputDir, "2.0");
+        other.setSharedPool(true);
+        other.generate();
+
+        SharedKeyPool second = SharedKeyPool.open(other.getPoolFile());
+
+        assertEquals(false, first == second);
+        assertEquals("2.0", second.getVersion());
+        assertEquals("2.0", new PooledKeyFile(other.getIndexFile(jarFile), second).getVersion());
+        assertSame(second, SharedKeyPool.open(other.getPoolFile()));
+
+        // the first instance keeps reading the file it mapped
+        assertEquals("1.0", first.getVersion());
+        assertEquals(first.get(0), second.get(0));
+    }
+
+    private static void assertKeys(File keyFile, PooledKeyFile keys) throws IOException {
+
+        LanguageTable expected = new LanguageLoader().load(keyFile);
+
+        assertEquals(expected.size(), keys.size());
+
+        for (int i=0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), keys.get(i));
+        }
+    }
+}
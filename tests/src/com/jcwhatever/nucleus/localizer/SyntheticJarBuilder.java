@@ -0,0 +1,278 @@
+package com.jcwhatever.nucleus.localizer;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Builds jar files of generated classes for tests and benchmarks.
+ *
+ * <p>Classes are either plain classes, which the constant pool filter skips,
+ * or localizable classes. Localizable classes have static final String fields,
+ * some annotated with @Localizable, and may use a custom annotation whose
+ * methods are @Localizable with a String value and optionally a String array
+ * value.</p>
+ *
+ * <p>The same settings and seed always produce the same classes.</p>
+ */
+public class SyntheticJarBuilder {
+
+    public static final String ANNOTATION_CLASS = "synthetic/annotation/LocalizedText";
+
+    private static final String ANNOTATION_DESC = 'L' + ANNOTATION_CLASS + ';';
+    private static final String STRING_DESC = "Ljava/lang/String;";
+
+    private int _classCount = 100;
+    private double _localizableClassRatio = 0.2;
+    private int _fieldsPerClass = 4;
+    private double _localizableFieldRatio = 0.5;
+    private double _annotationUsageRatio = 0.5;
+    private double _arrayValueRatio = 0.5;
+    private double _duplicateRate = 0.1;
+    private long _seed = 1;
+
+    private int _literalCount;
+
+    /**
+     * Set the number of classes, not including the annotation class.
+     */
+    public SyntheticJarBuilder setClassCount(int classCount) {
+        _classCount = classCount;
+        return this;
+    }
+
+    /**
+     * Set the fraction of classes that contain localizable fields or
+     * annotation usages.
+     */
+    public SyntheticJarBuilder setLocalizableClassRatio(double ratio) {
+        _localizableClassRatio = ratio;
+        return this;
+    }
+
+    /**
+     * Set the number of static final String fields in each localizable class.
+     */
+    public SyntheticJarBuilder setFieldsPerClass(int fieldsPerClass) {
+        _fieldsPerClass = fieldsPerClass;
+        return this;
+    }
+
+    /**
+     * Set the fraction of fields in localizable classes that are @Localizable.
+     */
+    public SyntheticJarBuilder setLocalizableFieldRatio(double ratio) {
+        _localizableFieldRatio = ratio;
+        return this;
+    }
+
+    /**
+     * Set the fraction of localizable classes that use the custom annotation.
+     */
+    public SyntheticJarBuilder setAnnotationUsageRatio(double ratio) {
+        _annotationUsageRatio = ratio;
+        return this;
+    }
+
+    /**
+     * Set the fraction of annotation usages that also have an array value.
+     */
+    public SyntheticJarBuilder setArrayValueRatio(double ratio) {
+        _arrayValueRatio = ratio;
+        return this;
+    }
+
+    /**
+     * Set the chance that a localizable text repeats an earlier text.
+     */
+    public SyntheticJarBuilder setDuplicateRate(double rate) {
+        _duplicateRate = rate;
+        return this;
+    }
+
+    /**
+     * Set the random seed.
+     */
+    public SyntheticJarBuilder setSeed(long seed) {
+        _seed = seed;
+        return this;
+    }
+
+    /**
+     * Get the number of localizable literals, including duplicates, in the
+     * last built jar.
+     */
+    public int getLiteralCount() {
+        return _literalCount;
+    }
+
+    /**
+     * Build the jar file.
+     *
+     * @param jarFile  The jar file to write.
+     */
+    public File build(File jarFile) throws IOException {
+
+        Random random = new Random(_seed);
+        List<String> texts = new ArrayList<>(1000);
+
+        _literalCount = 0;
+
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(jarFile));
+
+        try {
+            write(stream, ANNOTATION_CLASS, createAnnotationClass());
+
+            for (int i=0; i < _classCount; i++) {
+
+                String className = "synthetic/pkg" + (i % 100) + "/Class" + i;
+
+                byte[] bytes = random.nextDouble() < _localizableClassRatio
+                        ? createLocalizableClass(className, random, texts)
+                        : createPlainClass(className);
+
+                write(stream, className, bytes);
+            }
+        }
+        finally {
+            stream.close();
+        }
+
+        return jarFile;
+    }
+
+    // annotation with a localizable value and a localizable array value
+    private static byte[] createAnnotationClass() {
+
+        ClassWriter writer = new ClassWriter(0);
+
+        writer.visit(Opcodes.V1_6,
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_ANNOTATION | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT,
+                ANNOTATION_CLASS, null, "java/lang/Object", new String[] { "java/lang/annotation/Annotation" });
+
+        addAnnotationMethod(writer, "value", "()Ljava/lang/String;");
+        addAnnotationMethod(writer, "lines", "()[Ljava/lang/String;");
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void addAnnotationMethod(ClassWriter writer, String name, String desc) {
+
+        MethodVisitor method = writer.visitMethod(
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, name, desc, null, null);
+
+        method.visitAnnotation(LiteralExtractor.LOCALIZABLE_CLASSPATH, true).visitEnd();
+        method.visitEnd();
+    }
+
+    // class with a constructor and a method but no annotations
+    private static byte[] createPlainClass(String className) {
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", null);
+
+        addConstructor(writer);
+
+        MethodVisitor method = writer.visitMethod(
+                Opcodes.ACC_PUBLIC, "toString", "()Ljava/lang/String;", null, null);
+        method.visitCode();
+        method.visitLdcInsn("plain " + className);
+        method.visitInsn(Opcodes.ARETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    // class with localizable fields and an optional annotation usage
+    private byte[] createLocalizableClass(String className, Random random, List<String> texts) {
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", null);
+
+        if (random.nextDouble() < _annotationUsageRatio) {
+
+            AnnotationVisitor annotation = writer.visitAnnotation(ANNOTATION_DESC, true);
+            annotation.visit("value", nextText(random, texts));
+
+            if (random.nextDouble() < _arrayValueRatio) {
+
+                AnnotationVisitor array = annotation.visitArray("lines");
+                int size = 2 + random.nextInt(3);
+
+                for (int i=0; i < size; i++) {
+                    array.visit(null, nextText(random, texts));
+                }
+
+                array.visitEnd();
+            }
+
+            annotation.visitEnd();
+        }
+
+        for (int i=0; i < _fieldsPerClass; i++) {
+
+            boolean isLocalizable = random.nextDouble() < _localizableFieldRatio;
+            String value = isLocalizable
+                    ? nextText(random, texts)
+                    : "constant " + i;
+
+            FieldVisitor field = writer.visitField(
+                    Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+                    "FIELD" + i, STRING_DESC, null, value);
+
+            if (isLocalizable)
+                field.visitAnnotation(LiteralExtractor.LOCALIZABLE_CLASSPATH, true).visitEnd();
+
+            field.visitEnd();
+        }
+
+        addConstructor(writer);
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void addConstructor(ClassWriter writer) {
+
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        method.visitCode();
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    // get a new text or, at the duplicate rate, an earlier text
+    private String nextText(Random random, List<String> texts) {
+
+        _literalCount++;
+
+        if (!texts.isEmpty() && random.nextDouble() < _duplicateRate)
+            return texts.get(random.nextInt(texts.size()));
+
+        String text = "Synthetic text " + texts.size();
+        texts.add(text);
+        return text;
+    }
+
+    private static void write(JarOutputStream stream, String className, byte[] bytes) throws IOException {
+        stream.putNextEntry(new JarEntry(className + ".class"));
+        stream.write(bytes);
+        stream.closeEntry();
+    }
+}
@@ -0,0 +1,87 @@
+package com.jcwhatever.nucleus.localizer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+public class TextKeyFileWriterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testLineBreaksAreEscaped() throws IOException {
+
+        File dir = Files.createTempDirectory("writer-test").toFile();
+        File output = new File(dir, "lang.keys.txt");
+
+        try (KeyFileWriter writer = new TextKeyFileWriter(output, UTF_8)) {
+            writer.begin("1.0");
+            writer.write(10, new LiteralInfo("line\none\r\ntwo", "comment"));
+            writer.commit();
+        }
+
+        String text = new String(Files.readAllBytes(output.toPath()), UTF_8);
+
+        assertEquals("version> 1.0\n\n# comment\n10> line\\none\\r\\ntwo\n\n", text);
+        assertEquals("line\none\r\ntwo", TextKeyFileWriter.unescape("line\\none\\r\\ntwo"));
+        assertEquals(1, dir.list().length);
+    }
+
+    @Test
+    public void testOtherCharactersAreNotEscaped() throws IOException {
+
+        File dir = Files.createTempDirectory("writer-test").toFile();
+        File output = new File(dir, "lang.keys.txt");
+
+        String[] texts = {
+                "C:\\path\\file.txt\\",
+                "tab\there",
+                "not an escape \\u0041 or \\t",
+                "line\none\r\ntwo"
+        };
+
+        try (KeyFileWriter writer = new TextKeyFileWriter(output, UTF_8)) {
+            writer.begin("1.0");
+
+            for (int i=0; i < texts.length; i++) {
+                writer.write(i, new LiteralInfo(texts[i], "comment"));
+            }
+
+            writer.commit();
+        }
+
+        String text = new String(Files.readAllBytes(output.toPath()), UTF_8);
+
+        // the format only defines line break escapes
+        assertEquals(true, text.contains("0> C:\\path\\file.txt\\\n"));
+        assertEquals(true, text.contains("1> tab\there\n"));
+
+        LanguageTable table = new LanguageLoader(UTF_8).load(output);
+
+        for (int i=0; i < texts.length; i++) {
+            assertEquals(texts[i], table.get(i));
+        }
+    }
+
+    @Test
+    public void testCloseWithoutCommitKeepsExistingFile() throws IOException {
+
+        File dir = Files.createTempDirectory("writer-test").toFile();
+        File output = new File(dir, "lang.keys.txt");
+
+        Files.write(output.toPath(), "existing".getBytes(UTF_8));
+
+        try (KeyFileWriter writer = new TextKeyFileWriter(output, UTF_8)) {
+            writer.begin("1.0");
+            writer.write(0, new LiteralInfo("text", "comment"));
+        }
+
+        assertEquals("existing", new String(Files.readAllBytes(output.toPath()), UTF_8));
+        assertEquals(1, dir.list().length);
+    }
+}